@@ -0,0 +1,140 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.simonemallei.gungeonrecognizer.core.CropVariants;
+import com.simonemallei.gungeonrecognizer.core.ImagePreprocessor;
+import com.simonemallei.gungeonrecognizer.core.TopKSelector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Instrumented benchmark of the test-time augmentation: latency of a recognition
+ * scoring N = 1, 4 and 8 crop variants, and its accuracy on labelled samples.
+ * The samples are read from the test assets' "tta_samples" folder, named
+ * "<item index>_<anything>.png" and centered on the item; since they are not part of
+ * the repository, the accuracy test is skipped when the folder is empty.
+ * Results are written in logcat (tag CropVariantsBenchmark).
+ */
+@RunWith(AndroidJUnit4.class)
+public class CropVariantsBenchmark {
+
+    private static final String TAG_LOG = "CropVariantsBenchmark";
+    private static final String SAMPLES_PATH = "tta_samples";
+    private static final int[] VARIANTS = {1, 4, 8};
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 50;
+    private static final int EDGE = 400;
+    private static final int NUM_ITEMS = 10;
+
+    private RecognizerSession mSession;
+
+    @Before
+    public void setUp() {
+        Context mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mSession = new RecognizerSession(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        mSession.release();
+    }
+
+    /**
+     * Scores the variants of the green square given and selects the best items,
+     * as RecognizeThread does.
+     */
+    private TopKSelector score(int[] pixels, int width, int height, int left, int top, int edge,
+                               int variants) throws IOException {
+        mSession.prepare();
+        ImagePreprocessor mPreprocessor = mSession.getPreprocessor();
+        if (variants == 1) {
+            mPreprocessor.preprocess(pixels, top * width + left, width, edge, edge, mSession.getInput());
+            return mSession.score(NUM_ITEMS);
+        }
+        CropVariants.preprocess(mPreprocessor, pixels, width, width, height, left, top, edge, variants,
+                mSession.getInput(variants));
+        return mSession.score(variants, NUM_ITEMS);
+    }
+
+    @Test
+    public void latency() throws IOException {
+        int contextEdge = CropVariants.contextEdge(EDGE, CropVariants.MAX_VARIANTS);
+        int margin = (contextEdge - EDGE) / 2;
+        int[] pixels = new int[contextEdge * contextEdge];
+        Random mRandom = new Random(0);
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | mRandom.nextInt(1 << 24);
+
+        synchronized (mSession) {
+            for (int variants : VARIANTS) {
+                long[] times = new long[RUNS];
+                for (int i = 0; i < WARMUP_RUNS + RUNS; i++) {
+                    long startTime = SystemClock.elapsedRealtimeNanos();
+                    score(pixels, contextEdge, contextEdge, margin, margin, EDGE, variants);
+                    if (i >= WARMUP_RUNS)
+                        times[i - WARMUP_RUNS] = SystemClock.elapsedRealtimeNanos() - startTime;
+                }
+                Arrays.sort(times);
+                Log.i(TAG_LOG, "N = " + variants + ": median " + times[RUNS / 2] / 1000 + " us, p90 "
+                        + times[RUNS * 9 / 10] / 1000 + " us");
+            }
+        }
+    }
+
+    @Test
+    public void accuracy() throws IOException {
+        AssetManager mAssets = InstrumentationRegistry.getInstrumentation().getContext().getAssets();
+        String[] samples = mAssets.list(SAMPLES_PATH);
+        assumeTrue("No labelled samples in " + SAMPLES_PATH, samples != null && samples.length > 0);
+
+        int[] top1 = new int[VARIANTS.length], topK = new int[VARIANTS.length];
+        synchronized (mSession) {
+            for (String sample : samples) {
+                int label = Integer.parseInt(sample.substring(0, sample.indexOf('_')));
+                Bitmap mBitmap;
+                try (InputStream mStream = mAssets.open(SAMPLES_PATH + "/" + sample)) {
+                    mBitmap = BitmapFactory.decodeStream(mStream);
+                }
+                int width = mBitmap.getWidth(), height = mBitmap.getHeight();
+                int[] pixels = new int[width * height];
+                mBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+                // The green square is the centered square leaving room to the variants
+                int edge = (int) (Math.min(width, height) * EDGE
+                        / (float) CropVariants.contextEdge(EDGE, CropVariants.MAX_VARIANTS));
+                for (int i = 0; i < VARIANTS.length; i++) {
+                    TopKSelector mSelector = score(pixels, width, height, (width - edge) / 2,
+                            (height - edge) / 2, edge, VARIANTS[i]);
+                    if (mSelector.getIndex(0) == label)
+                        top1[i]++;
+                    for (int rank = 0; rank < mSelector.getCount(); rank++)
+                        if (mSelector.getIndex(rank) == label)
+                            topK[i]++;
+                }
+            }
+        }
+        for (int i = 0; i < VARIANTS.length; i++)
+            Log.i(TAG_LOG, "N = " + VARIANTS[i] + ": top-1 " + top1[i] + "/" + samples.length
+                    + ", top-" + NUM_ITEMS + " " + topK[i] + "/" + samples.length);
+        assertTrue(samples.length > 0);
+    }
+}
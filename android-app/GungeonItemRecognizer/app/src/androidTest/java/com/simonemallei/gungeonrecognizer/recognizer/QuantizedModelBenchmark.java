@@ -0,0 +1,134 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.simonemallei.gungeonrecognizer.core.TopKSelector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.DataType;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Instrumented benchmark of the quantized model against the float one: latency of
+ * preprocessing and scoring the same crops, and agreement of their best predictions.
+ * The quantized model is produced by quantizeModel.py in the Python project and must be
+ * copied in the application's "recognizer_model" assets; since it is not part of the
+ * repository, the benchmark is skipped when it is missing.
+ * Results are written in logcat (tag QuantizedModelBenchmark).
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuantizedModelBenchmark {
+
+    private static final String TAG_LOG = "QuantizedModelBenchmark";
+    private static final String QUANTIZED_MODEL_NAME = "GungeonModel_uint8.tflite";
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 50;
+    private static final int CROPS = 20;
+    private static final int EDGE = 400;
+    private static final int NUM_ITEMS = 10;
+
+    private RecognizerSession mFloatSession, mQuantizedSession;
+    private int[][] mCrops;
+
+    @Before
+    public void setUp() {
+        Context mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        boolean found;
+        try (AssetFileDescriptor mDescriptor = mContext.getAssets()
+                .openFd(RecognizerSession.FILE_PATH + QUANTIZED_MODEL_NAME)) {
+            found = mDescriptor.getLength() > 0;
+        } catch (IOException e) {
+            found = false;
+        }
+        assumeTrue("No quantized model in the assets", found);
+        mFloatSession = new RecognizerSession(mContext);
+        mQuantizedSession = new RecognizerSession(mContext, QUANTIZED_MODEL_NAME);
+
+        Random mRandom = new Random(0);
+        mCrops = new int[CROPS][EDGE * EDGE];
+        for (int[] crop : mCrops)
+            for (int i = 0; i < crop.length; i++)
+                crop[i] = 0xff000000 | mRandom.nextInt(1 << 24);
+    }
+
+    @After
+    public void tearDown() {
+        if (mFloatSession != null)
+            mFloatSession.release();
+        if (mQuantizedSession != null)
+            mQuantizedSession.release();
+    }
+
+    /**
+     * Preprocesses and scores a crop, as RecognizeThread does with a single variant.
+     */
+    private static TopKSelector score(RecognizerSession mSession, int[] crop) throws IOException {
+        mSession.prepare();
+        mSession.getPreprocessor().preprocess(crop, 0, EDGE, EDGE, EDGE, mSession.getInput());
+        return mSession.score(NUM_ITEMS);
+    }
+
+    /**
+     * Measures the median and the p90 latency (in microseconds) of the session given.
+     */
+    private long[] measure(RecognizerSession mSession) throws IOException {
+        long[] times = new long[RUNS];
+        synchronized (mSession) {
+            for (int i = 0; i < WARMUP_RUNS + RUNS; i++) {
+                long startTime = SystemClock.elapsedRealtimeNanos();
+                score(mSession, mCrops[i % CROPS]);
+                if (i >= WARMUP_RUNS)
+                    times[i - WARMUP_RUNS] = SystemClock.elapsedRealtimeNanos() - startTime;
+            }
+        }
+        Arrays.sort(times);
+        return new long[]{times[RUNS / 2] / 1000, times[RUNS * 9 / 10] / 1000};
+    }
+
+    @Test
+    public void latency() throws IOException {
+        long[] floatTimes = measure(mFloatSession);
+        long[] quantizedTimes = measure(mQuantizedSession);
+        Log.i(TAG_LOG, "Float model: median " + floatTimes[0] + " us, p90 " + floatTimes[1] + " us");
+        Log.i(TAG_LOG, "Quantized model (" + mQuantizedSession.getInputType() + " input, "
+                + mQuantizedSession.getOutputType() + " output): median " + quantizedTimes[0]
+                + " us, p90 " + quantizedTimes[1] + " us");
+        assertNotEquals(DataType.FLOAT32, mQuantizedSession.getInputType());
+    }
+
+    @Test
+    public void agreement() throws IOException {
+        int top1 = 0;
+        float maxScoreError = 0.0f;
+        synchronized (mFloatSession) {
+            synchronized (mQuantizedSession) {
+                for (int[] crop : mCrops) {
+                    TopKSelector mFloat = score(mFloatSession, crop);
+                    int floatIndex = mFloat.getIndex(0);
+                    float floatScore = mFloat.getScore(0);
+                    TopKSelector mQuantized = score(mQuantizedSession, crop);
+                    if (mQuantized.getIndex(0) == floatIndex)
+                        top1++;
+                    maxScoreError = Math.max(maxScoreError, Math.abs(mQuantized.getScore(0) - floatScore));
+                }
+            }
+        }
+        Log.i(TAG_LOG, "Same top-1 prediction on " + top1 + "/" + CROPS
+                + " crops, max top-1 score error " + maxScoreError);
+    }
+}
@@ -2,6 +2,27 @@ package com.simonemallei.gungeonrecognizer;
 
 import android.annotation.SuppressLint;
 import android.app.Application;
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.core.Recognizer;
+import com.simonemallei.gungeonrecognizer.core.RecognizerSelector;
+import com.simonemallei.gungeonrecognizer.core.SaliencyRoiFinder;
+import com.simonemallei.gungeonrecognizer.core.WindowScanner;
+import com.simonemallei.gungeonrecognizer.listener.OnRecognitionListener;
+import com.simonemallei.gungeonrecognizer.recognizer.InterpreterProbe;
+import com.simonemallei.gungeonrecognizer.recognizer.ModelComparator;
+import com.simonemallei.gungeonrecognizer.recognizer.ModelInfo;
+import com.simonemallei.gungeonrecognizer.recognizer.ModelRegistry;
+import com.simonemallei.gungeonrecognizer.recognizer.RecognizerCascade;
+import com.simonemallei.gungeonrecognizer.recognizer.RecognizerConfig;
+import com.simonemallei.gungeonrecognizer.recognizer.RecognizerSession;
+import com.simonemallei.gungeonrecognizer.recognizer.StageTracer;
+import com.simonemallei.gungeonrecognizer.recognizer.TemplateRecognizer;
+import com.simonemallei.gungeonrecognizer.recognizer.TfliteRecognizer;
+import com.simonemallei.gungeonrecognizer.thread.RecognitionScheduler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 /*
  * Class Name
  * com.simonemallei.gungeonrecognizer.GungeonRecognizerApplication
@@ -18,9 +39,440 @@ import android.app.Application;
  */
 public class GungeonRecognizerApplication extends Application {
 
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = GungeonRecognizerApplication.class.getName();
+
+    /**
+     * A RecognizerSession object shared by every recognition of the application.
+     */
+    private RecognizerSession mSession;
+    /**
+     * A ModelRegistry object containing the recognition models of the application.
+     */
+    private ModelRegistry mRegistry;
+    /**
+     * A boolean that verifies whether the comparison mode is enabled.
+     */
+    private volatile boolean mComparing = false;
+    /**
+     * A ModelComparator object scoring every recognized crop with another model too
+     * (null if the comparison mode is disabled or there is no other model).
+     */
+    private volatile ModelComparator mComparator = null;
+    /**
+     * A RecognizerCascade object scoring every crop with a small first-stage model
+     * (null if the cascade is disabled).
+     */
+    private volatile RecognizerCascade mCascade = null;
+    /**
+     * A RecognitionScheduler object performing every recognition of the application.
+     */
+    private RecognitionScheduler mScheduler;
+    /**
+     * A StageTracer object measuring the stages of every recognition of the application.
+     */
+    private StageTracer mTracer;
+    /**
+     * A ForkJoinPool object, with a worker for each available processor, shared by the
+     * parallel stages (created on first use).
+     */
+    private ForkJoinPool mPool = null;
+    /**
+     * A WindowScanner object scanning the whole frame in scan mode (created on first use).
+     */
+    private WindowScanner mScanner = null;
+    /**
+     * A TemplateRecognizer object matching the crops against the items' sprites
+     * (created on first use).
+     */
+    private TemplateRecognizer mTemplates = null;
+    /**
+     * A TfliteRecognizer object recognizing the crops with the model (created on first use).
+     */
+    private TfliteRecognizer mTflite = null;
+    /**
+     * A RecognizerSelector object choosing the engine of each recognition (created on
+     * first use).
+     */
+    private RecognizerSelector mSelector = null;
+    /**
+     * A SaliencyRoiFinder object tightening the crop of the recognitions.
+     */
+    private final SaliencyRoiFinder mRoiFinder = new SaliencyRoiFinder();
+    /**
+     * A boolean that verifies whether the interpreter's configuration is being probed.
+     */
+    private boolean mProbing = false;
+    /**
+     * A boolean that verifies whether a warm-up has been requested during the probe.
+     */
+    private boolean mWarmUpRequested = false;
+    /**
+     * A long containing the time (in milliseconds) spent by the last warm-up
+     * (-1 if the recognizer has not been warmed up).
+     */
+    private volatile long mWarmUpMillis = -1L;
+
     @SuppressLint("WrongConstant")
     @Override
     public void onCreate() {
         super.onCreate();
+        mTracer = new StageTracer();
+        // Counting allocations slows down the whole process, hence only debug builds do it
+        mTracer.setAllocationCounting(BuildConfig.DEBUG);
+        mRegistry = new ModelRegistry(this);
+        mSession = new RecognizerSession(this, mRegistry.getActive(), RecognizerConfig.DEFAULT);
+        mSession.setTracer(mTracer);
+        mScheduler = new RecognitionScheduler();
+
+        // Using the fastest interpreter's configuration found on the device, probing
+        // it once (through the scheduler, so that it never overlaps a recognition)
+        RecognizerConfig mConfig = InterpreterProbe.getStoredConfig(this, mSession.getModelName());
+        if (mConfig != null)
+            mSession.setConfig(mConfig);
+        else {
+            mProbing = true;
+            mScheduler.submit(this, new InterpreterProbe(this, mSession.getModelName()),
+                    new OnRecognitionListener<RecognizerConfig>() {
+                @Override
+                public void onRecognition(RecognizerConfig result) {
+                    mSession.setConfig(result);
+                    onProbed();
+                }
+            });
+        }
+    }
+
+    /**
+     * Warms up the recognizer in background (for instance during the splash screen):
+     * the model is mapped, the interpreter created and run once on a zero input, so
+     * that the first recognition finds it hot. If the interpreter's configuration is
+     * being probed, the warm-up follows the probe, since the new configuration
+     * releases the interpreter.
+     * The warm-up is owned by the application, hence it only replaces a previous
+     * warm-up waiting for the scheduler, never a recognition asked by the user.
+     */
+    public synchronized void warmUp() {
+        if (mProbing) {
+            mWarmUpRequested = true;
+            return;
+        }
+        mScheduler.submit(this, new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return mSession.warmUp();
+            }
+        }, new OnRecognitionListener<Long>() {
+            @Override
+            public void onRecognition(Long result) {
+                mWarmUpMillis = result;
+                Log.i(TAG_LOG, "Recognizer warmed up in " + result + " ms (model loaded in "
+                        + mSession.getLoadTimeMillis() + " ms)");
+            }
+        });
+    }
+
+    /**
+     * Performs the warm-up requested during the probe, if any.
+     */
+    private synchronized void onProbed() {
+        mProbing = false;
+        if (mWarmUpRequested) {
+            mWarmUpRequested = false;
+            warmUp();
+        }
+    }
+
+    /**
+     * Gets the time spent by the last warm-up, which the first recognition would have
+     * paid otherwise.
+     *
+     * @return A long containing the warm-up time in milliseconds (-1 if the recognizer
+     *         has not been warmed up).
+     */
+    public long getWarmUpMillis() {
+        return mWarmUpMillis;
+    }
+
+    /**
+     * Gets the recognizer session owned by the application.
+     *
+     * @return The RecognizerSession object of the application.
+     */
+    public RecognizerSession getRecognizerSession() {
+        return mSession;
+    }
+
+    /**
+     * Gets the registry of the recognition models.
+     *
+     * @return The ModelRegistry object of the application.
+     */
+    public ModelRegistry getModelRegistry() {
+        return mRegistry;
+    }
+
+    /**
+     * Activates a registered model: the recognizer session swaps to it at the next
+     * recognition (without waiting for the current one), and the model is warmed up.
+     * The choice is kept by later launches. In comparison mode, the active model is
+     * then compared with another one.
+     *
+     * @param id String containing the identifier of a registered model.
+     * @throws IllegalArgumentException if the model is not registered.
+     */
+    public synchronized void setActiveModel(String id) {
+        ModelInfo mModel = mRegistry.setActive(id);
+        if (mModel.getId().equals(mSession.getNextModelInfo().getId()))
+            return;
+        mSession.setModel(mModel);
+        Log.i(TAG_LOG, "Active model: " + mModel);
+        if (mComparing) {
+            setComparison(false);
+            setComparison(true);
+        }
+        warmUp();
+    }
+
+    /**
+     * Enables or disables the comparison mode, in which every recognized crop is also
+     * matched against the items' templates and, if another model is registered, scored
+     * by it, whose agreement and latency are logged.
+     * The session of the other model is released on the scheduler's worker, after the
+     * recognitions that may be comparing with it.
+     *
+     * @param enabled boolean that verifies whether the comparison must be enabled.
+     * @return A boolean that verifies whether the comparison mode is enabled.
+     */
+    public synchronized boolean setComparison(boolean enabled) {
+        final ModelComparator mOld = mComparator;
+        if (enabled) {
+            if (mComparing)
+                return true;
+            ModelInfo mCandidate = mRegistry.getAlternative(mSession.getNextModelInfo());
+            if (mCandidate != null) {
+                mComparator = new ModelComparator(this, mCandidate, mSession.getConfig());
+                Log.i(TAG_LOG, "Comparing " + mSession.getNextModelInfo() + " with " + mCandidate);
+            }
+            else
+                Log.i(TAG_LOG, "Comparing " + mSession.getNextModelInfo() + " with the templates only");
+            mComparing = true;
+            return true;
+        }
+        mComparing = false;
+        mComparator = null;
+        if (mOld != null)
+            mScheduler.submit(mOld, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    mOld.release();
+                    return null;
+                }
+            }, null);
+        return false;
+    }
+
+    /**
+     * Verifies whether the comparison mode is enabled.
+     *
+     * @return True if the recognized crops are compared.
+     */
+    public boolean isComparing() {
+        return mComparing;
+    }
+
+    /**
+     * Enables or disables the cascade declared by the registry, in which a small
+     * first-stage model scores every crop and the active model runs only when the
+     * first stage is uncertain.
+     * The session of the first stage is released on the scheduler's worker, after the
+     * recognitions that may be using the cascade.
+     *
+     * @param enabled boolean that verifies whether the cascade must be enabled.
+     * @return A boolean that verifies whether the cascade is enabled (false if the
+     *         registry declares no cascade).
+     */
+    public synchronized boolean setCascade(boolean enabled) {
+        final RecognizerCascade mOld = mCascade;
+        if (enabled) {
+            if (mOld != null)
+                return true;
+            ModelInfo mFirst = mRegistry.getFirstStage();
+            if (mFirst == null)
+                return false;
+            RecognizerCascade mNew = new RecognizerCascade(this, mFirst, mRegistry.getCascadeMargin(),
+                    mSession.getConfig());
+            mNew.setTracer(mTracer);
+            mCascade = mNew;
+            Log.i(TAG_LOG, "Cascade from " + mFirst + " (minimum margin " + mRegistry.getCascadeMargin() + ")");
+            return true;
+        }
+        mCascade = null;
+        if (mOld != null)
+            mScheduler.submit(mOld, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    mOld.release();
+                    return null;
+                }
+            }, null);
+        return false;
+    }
+
+    /**
+     * Gets the recognizer cascade.
+     *
+     * @return The RecognizerCascade object of the application (null if the cascade
+     *         is disabled).
+     */
+    public RecognizerCascade getCascade() {
+        return mCascade;
+    }
+
+    /**
+     * Gets the model comparator of the comparison mode.
+     *
+     * @return The ModelComparator object of the application (null if the comparison
+     *         mode is disabled or there is no other model).
+     */
+    public ModelComparator getComparator() {
+        return mComparator;
+    }
+
+    /**
+     * Gets the recognition scheduler owned by the application.
+     *
+     * @return The RecognitionScheduler object of the application.
+     */
+    public RecognitionScheduler getRecognitionScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Gets the stage tracer owned by the application.
+     *
+     * @return The StageTracer object of the application.
+     */
+    public StageTracer getStageTracer() {
+        return mTracer;
+    }
+
+    /**
+     * Gets the fork/join pool shared by the parallel stages, which has a worker for
+     * each available processor.
+     *
+     * @return The ForkJoinPool object of the application.
+     */
+    private synchronized ForkJoinPool getPool() {
+        if (mPool == null)
+            mPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return mPool;
+    }
+
+    /**
+     * Gets the window scanner owned by the application.
+     *
+     * @return The WindowScanner object of the application.
+     */
+    public synchronized WindowScanner getWindowScanner() {
+        if (mScanner == null)
+            mScanner = new WindowScanner(getPool());
+        return mScanner;
+    }
+
+    /**
+     * Gets the template recognizer owned by the application, used when the model can
+     * not be loaded and as a baseline in comparison mode.
+     *
+     * @return The TemplateRecognizer object of the application.
+     */
+    public synchronized TemplateRecognizer getTemplateRecognizer() {
+        if (mTemplates == null) {
+            mTemplates = new TemplateRecognizer(this, getPool());
+            mTemplates.setTracer(mTracer);
+        }
+        return mTemplates;
+    }
+
+    /**
+     * Gets the recognition engine of the model owned by the application.
+     *
+     * @return The TfliteRecognizer object of the application.
+     */
+    public synchronized TfliteRecognizer getTfliteRecognizer() {
+        if (mTflite == null)
+            mTflite = new TfliteRecognizer(this);
+        return mTflite;
+    }
+
+    /**
+     * Gets the engine selector owned by the application, which recognizes each crop
+     * with the fastest healthy engine: the model, or the templates (faster but less
+     * accurate, hence a fallback) if the model keeps failing.
+     *
+     * @return The RecognizerSelector object of the application.
+     */
+    public synchronized RecognizerSelector getRecognizer() {
+        if (mSelector == null)
+            mSelector = new RecognizerSelector(new Recognizer[]{getTfliteRecognizer()},
+                    new Recognizer[]{getTemplateRecognizer()});
+        return mSelector;
+    }
+
+    /**
+     * Gets the salient object finder owned by the application: it must be used only
+     * while holding the recognizer session's lock, as the recognitions do.
+     *
+     * @return The SaliencyRoiFinder object of the application.
+     */
+    public SaliencyRoiFinder getRoiFinder() {
+        return mRoiFinder;
+    }
+
+    /**
+     * When the system is running low on memory, releases the recognizer sessions.
+     */
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        releaseSessions();
+    }
+
+    /**
+     * Releases the recognizer sessions if the process is in background or if
+     * the system is critically low on memory.
+     *
+     * @param level integer containing the context of the trim.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL)
+            releaseSessions();
+    }
+
+    /**
+     * Releases the recognizer session, and the ones of the comparison mode and of the
+     * cascade if enabled, on the scheduler's worker: a running recognition holds the
+     * sessions' locks, hence the main thread would wait for it otherwise.
+     * The release is owned by the session, so that repeated requests collapse into one
+     * without replacing a warm-up or a recognition.
+     */
+    private void releaseSessions() {
+        mScheduler.submit(mSession, new Callable<Void>() {
+            @Override
+            public Void call() {
+                mSession.release();
+                ModelComparator mCurrentComparator = mComparator;
+                if (mCurrentComparator != null)
+                    mCurrentComparator.release();
+                RecognizerCascade mCurrentCascade = mCascade;
+                if (mCurrentCascade != null)
+                    mCurrentCascade.release();
+                return null;
+            }
+        }, null);
     }
 }
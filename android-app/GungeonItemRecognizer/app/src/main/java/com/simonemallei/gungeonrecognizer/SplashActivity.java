@@ -35,7 +35,8 @@ import java.util.Random;
  */
 
 /**
- * Splash Activity class containing application initial steps.
+ * Splash Activity class containing application initial steps: while the items
+ * database is loaded, the recognizer is warmed up in background.
  */
 public class SplashActivity extends AppCompatActivity {
 
@@ -176,6 +177,11 @@ public class SplashActivity extends AppCompatActivity {
             }
         });
 
+        // Warming up the recognizer in background, so that the first photo finds
+        // the interpreter ready (only once: not when the activity is recreated)
+        if (savedInstanceState == null)
+            ((GungeonRecognizerApplication) getApplication()).warmUp();
+
         // Loading the items database
         ApplicationModel.init(this);
         ApplicationModel.loadModel(this);
@@ -0,0 +1,21 @@
+package com.simonemallei.gungeonrecognizer.listener;
+
+/*
+ * Interface Name
+ * com.simonemallei.gungeonrecognizer.listener.OnRecognitionListener
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * OnRecognitionListener interface containing the method called when a scheduled
+ * recognition has been completed without being cancelled.
+ */
+public interface OnRecognitionListener<T> {
+    // Listener on recognition completion (called on the scheduler's thread)
+    void onRecognition(T result);
+}
@@ -0,0 +1,198 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.BuildConfig;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.InterpreterProbe
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * InterpreterProbe class containing the one-time search of the fastest interpreter's
+ * configuration on the device: each candidate configuration loads the model in its own
+ * session, scores a synthetic crop a few times to warm up, then its median latency
+ * over a few more runs is measured.
+ * The fastest configuration is stored in the application's SharedPreferences together
+ * with the model probed, so that later launches use it without probing again.
+ * If every configuration fails, the default one is stored as a fallback, marked with
+ * the application's version: the device is probed again only by another version (whose
+ * interpreter may support it) or for another model.
+ */
+public class InterpreterProbe implements Callable<RecognizerConfig> {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = InterpreterProbe.class.getName();
+    /**
+     * A String containing the name of the SharedPreferences file.
+     */
+    private final static String PREFS_NAME = "recognizer_config";
+    /**
+     * Strings containing the keys of the stored configuration, of its model and of the
+     * application's version that stored a fallback (absent if the configuration has
+     * been measured).
+     */
+    private final static String KEY_CONFIG = "config";
+    private final static String KEY_MODEL = "model";
+    private final static String KEY_FALLBACK_VERSION = "fallback_version";
+    /**
+     * An integer containing the number of runs that warm up each configuration.
+     */
+    private final static int WARMUP_RUNS = 3;
+    /**
+     * An integer containing the number of timed runs of each configuration.
+     */
+    private final static int RUNS = 10;
+    /**
+     * An integer containing the edge of the synthetic crop.
+     */
+    private final static int EDGE = 256;
+    /**
+     * A Context reference to the application's context.
+     */
+    private final Context mContext;
+    /**
+     * A String containing the file name of the model probed.
+     */
+    private final String mModelName;
+    /**
+     * A List of RecognizerConfig objects containing the configurations probed.
+     */
+    private final List<RecognizerConfig> mCandidates;
+
+    public InterpreterProbe(Context context, String modelName) {
+        this(context, modelName, RecognizerConfig.candidates(Runtime.getRuntime().availableProcessors()));
+    }
+
+    public InterpreterProbe(Context context, String modelName, List<RecognizerConfig> candidates) {
+        this.mContext = context.getApplicationContext();
+        this.mModelName = modelName;
+        this.mCandidates = candidates;
+    }
+
+    /**
+     * Gets the configuration stored by the last probe of the model given.
+     *
+     * @param context Context used to read the SharedPreferences.
+     * @param modelName String containing the file name of the model.
+     * @return The RecognizerConfig object stored, or null if the model has never been
+     *         probed (or only a fallback has been stored by another version).
+     */
+    public static RecognizerConfig getStoredConfig(Context context, String modelName) {
+        SharedPreferences mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!modelName.equals(mPrefs.getString(KEY_MODEL, null)))
+            return null;
+        int fallbackVersion = mPrefs.getInt(KEY_FALLBACK_VERSION, -1);
+        if (fallbackVersion >= 0 && fallbackVersion != BuildConfig.VERSION_CODE)
+            return null;
+        return RecognizerConfig.decode(mPrefs.getString(KEY_CONFIG, null));
+    }
+
+    /**
+     * Stores the configuration given as the fastest one for the model probed.
+     *
+     * @param config RecognizerConfig object to store.
+     * @param fallback boolean that verifies whether the configuration is the fallback
+     *                 stored when every configuration has failed.
+     */
+    public void store(RecognizerConfig config, boolean fallback) {
+        SharedPreferences.Editor mEditor = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_MODEL, mModelName)
+                .putString(KEY_CONFIG, config.encode());
+        if (fallback)
+            mEditor.putInt(KEY_FALLBACK_VERSION, BuildConfig.VERSION_CODE);
+        else
+            mEditor.remove(KEY_FALLBACK_VERSION);
+        mEditor.apply();
+    }
+
+    /**
+     * Probes every candidate configuration and stores the fastest one.
+     *
+     * @return The fastest RecognizerConfig object (RecognizerConfig.DEFAULT, stored as
+     *         a fallback, if every configuration fails).
+     */
+    @Override
+    public RecognizerConfig call() {
+        int[] crop = new int[EDGE * EDGE];
+        Random mRandom = new Random(0);
+        for (int i = 0; i < crop.length; i++)
+            crop[i] = 0xff000000 | mRandom.nextInt(1 << 24);
+
+        RecognizerConfig mBest = null;
+        long bestNanos = Long.MAX_VALUE;
+        for (RecognizerConfig mConfig : mCandidates) {
+            if (Thread.currentThread().isInterrupted())
+                break;
+            try {
+                long nanos = measure(mConfig, crop);
+                Log.i(TAG_LOG, mConfig + ": median " + nanos / 1000 + " us");
+                if (nanos < bestNanos) {
+                    bestNanos = nanos;
+                    mBest = mConfig;
+                }
+            } catch (IOException | RuntimeException e) {
+                // A configuration that can not be created on the device is skipped
+                e.printStackTrace();
+            }
+        }
+        if (mBest == null) {
+            // Not storing anything if interrupted, since the probe has not been completed
+            if (!Thread.currentThread().isInterrupted()) {
+                Log.i(TAG_LOG, "Every configuration failed, falling back to " + RecognizerConfig.DEFAULT);
+                store(RecognizerConfig.DEFAULT, true);
+            }
+            return RecognizerConfig.DEFAULT;
+        }
+        Log.i(TAG_LOG, "Fastest configuration: " + mBest);
+        store(mBest, false);
+        return mBest;
+    }
+
+    /**
+     * Measures the median latency of a recognition with the configuration given.
+     *
+     * @param mConfig RecognizerConfig object to measure.
+     * @param crop array of integers containing the ARGB pixels of the crop scored.
+     * @return A long containing the median latency in nanoseconds.
+     * @throws IOException if the model can not be loaded.
+     */
+    private long measure(RecognizerConfig mConfig, int[] crop) throws IOException {
+        RecognizerSession mSession = new RecognizerSession(mContext, mModelName, mConfig);
+        long[] times = new long[RUNS];
+        try {
+            synchronized (mSession) {
+                mSession.prepare();
+                for (int i = 0; i < WARMUP_RUNS + RUNS; i++) {
+                    long startTime = SystemClock.elapsedRealtimeNanos();
+                    mSession.getPreprocessor().preprocess(crop, 0, EDGE, EDGE, EDGE, mSession.getInput());
+                    mSession.score(1);
+                    if (i >= WARMUP_RUNS)
+                        times[i - WARMUP_RUNS] = SystemClock.elapsedRealtimeNanos() - startTime;
+                }
+            }
+        } finally {
+            mSession.release();
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+}
@@ -0,0 +1,151 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.core.CropVariants;
+import com.simonemallei.gungeonrecognizer.core.ImagePreprocessor;
+import com.simonemallei.gungeonrecognizer.core.ModelComparison;
+import com.simonemallei.gungeonrecognizer.core.TopKSelector;
+
+import java.io.IOException;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.ModelComparator
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * ModelComparator class containing the comparison mode: every crop recognized by the
+ * active model is scored by a candidate model too, in its own RecognizerSession, and
+ * the best items and latencies of both models are recorded in a ModelComparison.
+ * The candidate preprocesses the same pixels with its own settings (its input may
+ * have another shape or type), and its latency covers the same stages measured for the
+ * active model: preprocessing and inference.
+ * It must be used only by the recognition scheduler's worker, after the active model's
+ * recognition: its result is not shown, hence a faster model can be evaluated on real
+ * crops before being activated.
+ */
+public class ModelComparator {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = ModelComparator.class.getName();
+    /**
+     * An integer containing the number of best items compared.
+     */
+    private final static int COMPARED_ITEMS = 5;
+    /**
+     * An integer containing the number of comparisons between two reports in logcat.
+     */
+    private final static int LOG_INTERVAL = 20;
+    /**
+     * A RecognizerSession object containing the candidate model.
+     */
+    private final RecognizerSession mCandidate;
+    /**
+     * A ModelComparison object containing the measures of the comparison.
+     */
+    private final ModelComparison mComparison = new ModelComparison();
+    /**
+     * A TopKSelector object used to find the best items of the active model.
+     */
+    private final TopKSelector mPrimarySelector = new TopKSelector(COMPARED_ITEMS);
+    /**
+     * Arrays of integers containing the best items of each model (catalogue's indexes).
+     */
+    private final int[] mPrimaryItems = new int[COMPARED_ITEMS];
+    private final int[] mCandidateItems = new int[COMPARED_ITEMS];
+
+    public ModelComparator(Context context, ModelInfo candidate, RecognizerConfig config) {
+        this.mCandidate = new RecognizerSession(context, candidate, config);
+    }
+
+    /**
+     * Gets the metadata of the candidate model.
+     *
+     * @return The ModelInfo object of the candidate.
+     */
+    public ModelInfo getCandidate() {
+        return mCandidate.getNextModelInfo();
+    }
+
+    /**
+     * Gets the measures of the comparison, which can be read by any thread.
+     *
+     * @return The ModelComparison object of the comparator.
+     */
+    public ModelComparison getComparison() {
+        return mComparison;
+    }
+
+    /**
+     * Scores the crop recognized by the active model with the candidate, then records
+     * the best items and the latencies of both models.
+     *
+     * @param pixels array of integers containing the ARGB pixels read around the crop.
+     * @param width integer containing the width of the pixels' region.
+     * @param height integer containing the height of the pixels' region.
+     * @param left integer containing the left column of the crop.
+     * @param top integer containing the top row of the crop.
+     * @param edge integer containing the length of the crop's edge.
+     * @param variants integer containing the number of crop variants scored.
+     * @param primaryScores array of floats containing the scores of the active model.
+     * @param primaryModel ModelInfo object of the active model.
+     * @param primaryNanos long containing the latency of the active model in nanoseconds.
+     */
+    public void compare(int[] pixels, int width, int height, int left, int top, int edge, int variants,
+                        float[] primaryScores, ModelInfo primaryModel, long primaryNanos) {
+        int primaryCount = Math.min(primaryModel.getItems(), primaryScores.length);
+        if (mPrimarySelector.select(primaryScores, primaryCount, COMPARED_ITEMS) < COMPARED_ITEMS)
+            return;
+        for (int i = 0; i < COMPARED_ITEMS; i++)
+            mPrimaryItems[i] = primaryModel.getItem(mPrimarySelector.getIndex(i));
+
+        // The first run of the candidate pays its loading, hence it is not recorded
+        boolean warm = mCandidate.isWarm();
+        long startTime = StageTracer.now();
+        try {
+            synchronized (mCandidate) {
+                mCandidate.prepare();
+                ImagePreprocessor mPreprocessor = mCandidate.getPreprocessor();
+                if (variants == 1)
+                    mPreprocessor.preprocess(pixels, top * width + left, width, edge, edge, mCandidate.getInput());
+                else
+                    CropVariants.preprocess(mPreprocessor, pixels, width, width, height, left, top, edge,
+                            variants, mCandidate.getInput(variants));
+                TopKSelector mSelector = mCandidate.getSelector();
+                float[] mScores = mCandidate.scoreAll(variants);
+                if (mSelector.select(mScores, mCandidate.getItems(), COMPARED_ITEMS) < COMPARED_ITEMS)
+                    return;
+                ModelInfo mModel = mCandidate.getModelInfo();
+                for (int i = 0; i < COMPARED_ITEMS; i++)
+                    mCandidateItems[i] = mModel.getItem(mSelector.getIndex(i));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        long candidateNanos = StageTracer.now() - startTime;
+        if (!warm)
+            return;
+
+        mComparison.record(mPrimaryItems, mCandidateItems, COMPARED_ITEMS, primaryNanos, candidateNanos);
+        if (mComparison.getCompared() % LOG_INTERVAL == 1)
+            Log.i(TAG_LOG, primaryModel + " vs " + getCandidate() + ": " + mComparison.report());
+    }
+
+    /**
+     * Releases the candidate's interpreter.
+     */
+    public void release() {
+        mCandidate.release();
+    }
+}
@@ -0,0 +1,158 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import com.simonemallei.gungeonrecognizer.core.Prediction;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.ModelInfo
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * ModelInfo class containing the metadata of a registered recognition model: its
+ * identifier and version, its file in the assets, the shape of its input, the number
+ * of its scores and the mapping from each score to an item of the catalogue.
+ * Without a label mapping, the i-th score refers to the i-th item of the catalogue
+ * (whose ID is i + 1), as for the models trained so far.
+ */
+public final class ModelInfo {
+
+    /**
+     * Strings containing the identifier, the version and the file name of the model.
+     */
+    private final String mId, mVersion, mFile;
+    /**
+     * Integers containing the width and the height of the model's input.
+     */
+    private final int mWidth, mHeight;
+    /**
+     * An integer containing the number of scores of the model's output.
+     */
+    private final int mItems;
+    /**
+     * An array of integers containing the catalogue's index of each score (null if
+     * the i-th score refers to the i-th item).
+     */
+    private final int[] mLabels;
+
+    public ModelInfo(String id, String version, String file, int width, int height, int items,
+                     int[] labels) {
+        if (labels != null && labels.length < items)
+            throw new IllegalArgumentException("Model " + id + " maps " + labels.length
+                    + " labels out of " + items + " scores");
+        this.mId = id;
+        this.mVersion = version;
+        this.mFile = file;
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mItems = items;
+        this.mLabels = labels == null ? null : labels.clone();
+    }
+
+    /**
+     * Creates the metadata of a model file with the default shapes and no label mapping.
+     *
+     * @param file String containing the model's file name in the assets.
+     * @return The ModelInfo object of the file.
+     */
+    public static ModelInfo forFile(String file) {
+        return new ModelInfo(file, "", file, RecognizerSession.WIDTH_VAL, RecognizerSession.HEIGHT_VAL,
+                RecognizerSession.ITEMS_NUM, null);
+    }
+
+    /**
+     * Reads the metadata of a model from an entry of the registry.
+     *
+     * @param mEntry JSONObject containing the "id", "version", "file", "width", "height"
+     *               and "items" of the model.
+     * @param labels array of integers containing the catalogue's index of each score
+     *               (null if the i-th score refers to the i-th item).
+     * @return The ModelInfo object of the entry.
+     * @throws JSONException if a mandatory value is missing.
+     */
+    public static ModelInfo fromJson(JSONObject mEntry, int[] labels) throws JSONException {
+        return new ModelInfo(mEntry.getString("id"), mEntry.optString("version", ""),
+                mEntry.getString("file"), mEntry.optInt("width", RecognizerSession.WIDTH_VAL),
+                mEntry.optInt("height", RecognizerSession.HEIGHT_VAL),
+                mEntry.optInt("items", RecognizerSession.ITEMS_NUM), labels);
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public String getVersion() {
+        return mVersion;
+    }
+
+    public String getFile() {
+        return mFile;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getItems() {
+        return mItems;
+    }
+
+    /**
+     * Gets the item of the catalogue referred to by a score.
+     *
+     * @param index integer containing the index of the score.
+     * @return An integer containing the catalogue's index of the item.
+     */
+    public int getItem(int index) {
+        return mLabels == null ? index : mLabels[index];
+    }
+
+    /**
+     * Verifies whether another model scores the same items in the same order, so that
+     * their scores can replace each other.
+     *
+     * @param other ModelInfo object of the other model.
+     * @return True if both models have the same number of scores and the same mapping.
+     */
+    public boolean hasSameItems(ModelInfo other) {
+        return mItems == other.mItems && Arrays.equals(mLabels, other.mLabels);
+    }
+
+    /**
+     * Maps the predictions of the model to the items of the catalogue.
+     *
+     * @param predictions List of Prediction objects whose indexes are the scores' ones.
+     * @return The List of Prediction objects whose indexes are the catalogue's ones
+     *         (the same list if the model has no label mapping).
+     */
+    public List<Prediction> toItems(List<Prediction> predictions) {
+        if (mLabels == null)
+            return predictions;
+        List<Prediction> mItems = new ArrayList<>(predictions.size());
+        for (Prediction mPrediction : predictions)
+            mItems.add(new Prediction(mLabels[mPrediction.getIndex()], mPrediction.getScore(),
+                    mPrediction.getRank()));
+        return mItems;
+    }
+
+    @Override
+    public String toString() {
+        return mVersion.isEmpty() ? mId : mId + " (" + mVersion + ")";
+    }
+}
@@ -0,0 +1,254 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.ModelRegistry
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * ModelRegistry class containing the recognition models shipped with the application,
+ * described by the REGISTRY_FILE of the models' assets: for each model its identifier,
+ * version, file, input shape, number of scores and (optionally) the file of its label
+ * mapping, which contains the item ID of each score, one per line.
+ * The registry may declare a cascade too: the identifier of a small first-stage model,
+ * whose results are kept if their top-1 margin reaches the minimum one given.
+ * The models whose file is missing from the assets are not registered. If the registry
+ * can not be read, the default model is the only one registered.
+ * The active model is stored in the application's SharedPreferences, so that it is kept
+ * by later launches.
+ */
+public class ModelRegistry {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = ModelRegistry.class.getName();
+    /**
+     * A String containing the file name of the registry in the models' assets.
+     */
+    public final static String REGISTRY_FILE = "models.json";
+    /**
+     * A String containing the name of the SharedPreferences file.
+     */
+    private final static String PREFS_NAME = "recognizer_model";
+    /**
+     * A String containing the key of the active model's identifier.
+     */
+    private final static String KEY_ACTIVE = "active";
+    /**
+     * A float containing the minimum top-1 margin of a cascade that declares none.
+     */
+    private final static float DEFAULT_CASCADE_MARGIN = 0.3f;
+    /**
+     * A Context reference to the application's context.
+     */
+    private final Context mContext;
+    /**
+     * A List of ModelInfo objects containing the registered models.
+     */
+    private final List<ModelInfo> mModels = new ArrayList<>();
+    /**
+     * A String containing the identifier of the registry's default model.
+     */
+    private String mDefaultId = null;
+    /**
+     * A String containing the identifier of the cascade's first-stage model (null if
+     * the registry declares no cascade).
+     */
+    private String mFirstStageId = null;
+    /**
+     * A float containing the minimum top-1 margin of the cascade's first stage.
+     */
+    private float mCascadeMargin = DEFAULT_CASCADE_MARGIN;
+
+    public ModelRegistry(Context context) {
+        this.mContext = context.getApplicationContext();
+        load();
+    }
+
+    /**
+     * Reads the registry from the assets, keeping the models whose file is present.
+     */
+    private void load() {
+        try {
+            JSONObject mRegistry = new JSONObject(readAsset(RecognizerSession.FILE_PATH + REGISTRY_FILE));
+            JSONArray mEntries = mRegistry.getJSONArray("models");
+            for (int i = 0; i < mEntries.length(); i++) {
+                JSONObject mEntry = mEntries.getJSONObject(i);
+                String file = mEntry.getString("file");
+                if (!isAsset(RecognizerSession.FILE_PATH + file)) {
+                    Log.i(TAG_LOG, "Model " + file + " not found in the assets, skipped.");
+                    continue;
+                }
+                String labelsFile = mEntry.optString("labels", "");
+                int[] labels = labelsFile.isEmpty() ? null : readLabels(RecognizerSession.FILE_PATH + labelsFile);
+                mModels.add(ModelInfo.fromJson(mEntry, labels));
+            }
+            mDefaultId = mRegistry.optString("default", null);
+            JSONObject mCascade = mRegistry.optJSONObject("cascade");
+            if (mCascade != null) {
+                mFirstStageId = mCascade.getString("first");
+                mCascadeMargin = (float) mCascade.optDouble("margin", DEFAULT_CASCADE_MARGIN);
+            }
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        if (mModels.isEmpty())
+            mModels.add(ModelInfo.forFile(RecognizerSession.MODEL_NAME));
+        Log.i(TAG_LOG, "Registered models: " + mModels);
+    }
+
+    /**
+     * Reads a text file of the assets.
+     */
+    private String readAsset(String path) throws IOException {
+        StringBuilder mText = new StringBuilder();
+        try (InputStream mStream = mContext.getAssets().open(path);
+             BufferedReader mReader = new BufferedReader(new InputStreamReader(mStream))) {
+            String line;
+            while ((line = mReader.readLine()) != null)
+                mText.append(line).append('\n');
+        }
+        return mText.toString();
+    }
+
+    /**
+     * Reads a label mapping: the item ID of each score, one per line.
+     *
+     * @param path String containing the path of the mapping in the assets.
+     * @return An array of integers containing the catalogue's index of each score.
+     * @throws IOException if the mapping can not be read.
+     */
+    private int[] readLabels(String path) throws IOException {
+        String[] lines = readAsset(path).trim().split("\\s+");
+        int[] labels = new int[lines.length];
+        try {
+            for (int i = 0; i < lines.length; i++)
+                labels[i] = Integer.parseInt(lines[i]) - 1;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid label mapping " + path, e);
+        }
+        return labels;
+    }
+
+    /**
+     * Verifies whether a file is present in the assets (without reading it).
+     */
+    private boolean isAsset(String path) {
+        try (AssetFileDescriptor mDescriptor = mContext.getAssets().openFd(path)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the registered models.
+     *
+     * @return An unmodifiable List of ModelInfo objects (never empty).
+     */
+    public List<ModelInfo> getModels() {
+        return Collections.unmodifiableList(mModels);
+    }
+
+    /**
+     * Gets a registered model.
+     *
+     * @param id String containing the model's identifier.
+     * @return The ModelInfo object of the model (null if not registered).
+     */
+    public ModelInfo get(String id) {
+        for (ModelInfo mModel : mModels)
+            if (mModel.getId().equals(id))
+                return mModel;
+        return null;
+    }
+
+    /**
+     * Gets the active model: the one stored, otherwise the registry's default one,
+     * otherwise the first registered.
+     *
+     * @return The ModelInfo object of the active model.
+     */
+    public ModelInfo getActive() {
+        SharedPreferences mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        ModelInfo mActive = get(mPrefs.getString(KEY_ACTIVE, null));
+        if (mActive == null)
+            mActive = get(mDefaultId);
+        return mActive != null ? mActive : mModels.get(0);
+    }
+
+    /**
+     * Stores the active model.
+     *
+     * @param id String containing the identifier of a registered model.
+     * @return The ModelInfo object of the new active model.
+     * @throws IllegalArgumentException if the model is not registered.
+     */
+    public ModelInfo setActive(String id) {
+        ModelInfo mModel = get(id);
+        if (mModel == null)
+            throw new IllegalArgumentException("Model not registered: " + id);
+        mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_ACTIVE, id)
+                .apply();
+        return mModel;
+    }
+
+    /**
+     * Gets the first-stage model of the cascade.
+     *
+     * @return The ModelInfo object of the first stage (null if the registry declares no
+     *         cascade or its model is not registered).
+     */
+    public ModelInfo getFirstStage() {
+        return mFirstStageId == null ? null : get(mFirstStageId);
+    }
+
+    /**
+     * Gets the minimum top-1 margin of the cascade's first stage: below it, the
+     * request is escalated to the active model.
+     *
+     * @return A float containing the minimum margin.
+     */
+    public float getCascadeMargin() {
+        return mCascadeMargin;
+    }
+
+    /**
+     * Gets the first registered model other than the given one, for instance to
+     * compare it with the active model.
+     *
+     * @param mModel ModelInfo object of the model excluded.
+     * @return The ModelInfo object of another model (null if it is the only one).
+     */
+    public ModelInfo getAlternative(ModelInfo mModel) {
+        for (ModelInfo mOther : mModels)
+            if (!mOther.getId().equals(mModel.getId()))
+                return mOther;
+        return null;
+    }
+}
@@ -0,0 +1,180 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.core.CascadeStats;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.RecognizerCascade
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * RecognizerCascade class containing a two-tier recognizer: a small first-stage model,
+ * in its own RecognizerSession, scores every crop, and the active model runs only when
+ * the first stage is uncertain (its top-1 margin is below the cascade's minimum).
+ * The first stage scores the input tensor preprocessed by the active model's session,
+ * hence the input is built once: both models must read inputs of the same shape and
+ * type, and score the same items, otherwise the active model scores every crop.
+ * The escalation rate and the latencies are recorded in a CascadeStats.
+ * No first-stage model is shipped yet: the python project's firstStageModel.py trains
+ * it, and the cascade is enabled once its file is added to the assets and declared by
+ * the models' registry.
+ * It must be used only by the recognition scheduler's worker.
+ */
+public class RecognizerCascade {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = RecognizerCascade.class.getName();
+    /**
+     * An integer containing the number of requests between two reports in logcat.
+     */
+    private final static int LOG_INTERVAL = 50;
+    /**
+     * A RecognizerSession object containing the first-stage model.
+     */
+    private final RecognizerSession mFirst;
+    /**
+     * A CascadeStats object containing the escalation rule and the measures of the cascade.
+     */
+    private final CascadeStats mStats;
+    /**
+     * A StageTracer object measuring the first stage (null if it is not measured).
+     */
+    private StageTracer mTracer = null;
+    /**
+     * A ModelInfo object containing the last active model that can not be cascaded
+     * (null if none), so that the mismatch is logged once.
+     */
+    private ModelInfo mRejected = null;
+
+    public RecognizerCascade(Context context, ModelInfo first, float minMargin, RecognizerConfig config) {
+        this.mFirst = new RecognizerSession(context, first, config);
+        this.mStats = new CascadeStats(minMargin);
+    }
+
+    /**
+     * Gets the metadata of the first-stage model.
+     *
+     * @return The ModelInfo object of the first stage.
+     */
+    public ModelInfo getFirstStage() {
+        return mFirst.getNextModelInfo();
+    }
+
+    /**
+     * Gets the measures of the cascade, which can be read by any thread.
+     *
+     * @return The CascadeStats object of the cascade.
+     */
+    public CascadeStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Sets the tracer measuring the first stage (as Stage.FIRST_STAGE).
+     *
+     * @param tracer StageTracer object (null if the first stage is not measured).
+     */
+    public void setTracer(StageTracer tracer) {
+        this.mTracer = tracer;
+    }
+
+    /**
+     * Scores the batched input tensor preprocessed by the active model's session with
+     * the first stage, escalating it to the active model if the first stage is uncertain.
+     * It must be called while holding the active session's lock, after preprocessing
+     * its input tensor.
+     *
+     * @param mSession RecognizerSession object of the active model.
+     * @param batch integer containing the number of inputs (at most MAX_BATCH).
+     * @return An array of floats whose first mSession.getItems() values are the scores: it
+     *         must be used only while holding the active session's lock, until the next
+     *         recognition.
+     * @throws IOException if a model can not be read from the assets or is not supported.
+     */
+    public float[] scoreAll(RecognizerSession mSession, int batch) throws IOException {
+        return scoreAll(mSession, mSession.getInput(batch), batch);
+    }
+
+    /**
+     * Scores a batched input tensor preprocessed for the active model (for instance by
+     * a pipeline) with the first stage, escalating it to the active model if the first
+     * stage is uncertain. It must be called while holding the active session's lock.
+     *
+     * @param mSession RecognizerSession object of the active model.
+     * @param input ByteBuffer containing the input tensor, preprocessed for the active model.
+     * @param batch integer containing the number of inputs (at most MAX_BATCH).
+     * @return An array of floats whose first mSession.getItems() values are the scores: it
+     *         must be used only while holding the active session's lock, until the next
+     *         recognition.
+     * @throws IOException if a model can not be read from the assets or is not supported.
+     */
+    public float[] scoreAll(RecognizerSession mSession, ByteBuffer input, int batch) throws IOException {
+        ModelInfo mModel = mSession.getModelInfo();
+        if (!accepts(mSession, mModel))
+            return mSession.scoreAll(input, batch);
+
+        long startTime = StageTracer.now();
+        float[] mScores;
+        if (mTracer != null)
+            mTracer.begin(Stage.FIRST_STAGE);
+        try {
+            mScores = mFirst.scoreAll(input, batch);
+        } finally {
+            if (mTracer != null)
+                mTracer.end(Stage.FIRST_STAGE);
+        }
+        long firstNanos = StageTracer.now() - startTime;
+
+        long fullNanos = -1L;
+        if (mStats.escalates(mScores, mSession.getItems())) {
+            startTime = StageTracer.now();
+            mScores = mSession.scoreAll(input, batch);
+            fullNanos = StageTracer.now() - startTime;
+        }
+        mStats.record(firstNanos, fullNanos);
+        if (mStats.getRequests() % LOG_INTERVAL == 1)
+            Log.i(TAG_LOG, mFirst.getModelInfo() + " -> " + mModel + ": " + mStats.report());
+        return mScores;
+    }
+
+    /**
+     * Verifies whether the first stage can score the active model's inputs and replace
+     * its scores, loading the first stage if needed.
+     */
+    private boolean accepts(RecognizerSession mSession, ModelInfo mModel) throws IOException {
+        ModelInfo mFirstModel = mFirst.getModelInfo();
+        if (mModel.getId().equals(mFirstModel.getId()))
+            return false;
+        mFirst.prepare();
+        boolean accepted = mModel.hasSameItems(mFirstModel) && mFirst.getItems() == mSession.getItems()
+                && mFirst.acceptsInput(mSession);
+        if (!accepted && mModel != mRejected) {
+            mRejected = mModel;
+            Log.i(TAG_LOG, "First stage " + mFirstModel + " does not match " + mModel
+                    + ", scoring every crop with it");
+        }
+        return accepted;
+    }
+
+    /**
+     * Releases the first stage's interpreter.
+     */
+    public void release() {
+        mFirst.release();
+    }
+}
@@ -0,0 +1,138 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.RecognizerConfig
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * RecognizerConfig class containing an (immutable) configuration of the interpreter:
+ * the number of CPU threads and the CPU delegate used (XNNPACK or the built-in kernels).
+ * Every configuration runs on CPU only. A configuration can be encoded as a String
+ * in order to store it (for instance the fastest one found by InterpreterProbe).
+ */
+public final class RecognizerConfig {
+
+    /**
+     * A RecognizerConfig object containing the configuration used until a probe has
+     * found the fastest one: a single thread and the XNNPACK delegate.
+     */
+    public final static RecognizerConfig DEFAULT = new RecognizerConfig(1, true);
+    /**
+     * An array of integers containing the numbers of threads probed.
+     */
+    private final static int[] THREADS = {1, 2, 4};
+    /**
+     * A String containing the separator of the encoded fields.
+     */
+    private final static String SEPARATOR = ",";
+    /**
+     * An integer containing the number of threads used by the interpreter.
+     */
+    private final int mNumThreads;
+    /**
+     * A boolean that verifies whether the XNNPACK delegate is used.
+     */
+    private final boolean mUseXnnpack;
+
+    public RecognizerConfig(int numThreads, boolean useXnnpack) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("Number of threads must be positive: " + numThreads);
+        this.mNumThreads = numThreads;
+        this.mUseXnnpack = useXnnpack;
+    }
+
+    public int getNumThreads() {
+        return mNumThreads;
+    }
+
+    public boolean isUseXnnpack() {
+        return mUseXnnpack;
+    }
+
+    /**
+     * Creates the interpreter's options corresponding to the configuration.
+     *
+     * @return The Interpreter.Options object of the configuration.
+     */
+    public Interpreter.Options toOptions() {
+        return new Interpreter.Options()
+                .setNumThreads(mNumThreads)
+                .setUseXNNPACK(mUseXnnpack);
+    }
+
+    /**
+     * Gets the configurations worth probing on a device: every number of threads in
+     * THREADS not exceeding the processors, with and without XNNPACK.
+     *
+     * @param processors integer containing the number of available processors.
+     * @return The List of the RecognizerConfig objects to probe.
+     */
+    public static List<RecognizerConfig> candidates(int processors) {
+        List<RecognizerConfig> configs = new ArrayList<>();
+        for (int numThreads : THREADS)
+            if (numThreads == 1 || numThreads <= processors) {
+                configs.add(new RecognizerConfig(numThreads, false));
+                configs.add(new RecognizerConfig(numThreads, true));
+            }
+        return configs;
+    }
+
+    /**
+     * Encodes the configuration as a String.
+     *
+     * @return A String that decode() converts back into the configuration.
+     */
+    public String encode() {
+        return mNumThreads + SEPARATOR + mUseXnnpack;
+    }
+
+    /**
+     * Decodes a configuration encoded by encode().
+     *
+     * @param encoded String containing the encoded configuration (it may be null).
+     * @return The RecognizerConfig object encoded, or null if the String is not valid.
+     */
+    public static RecognizerConfig decode(String encoded) {
+        if (encoded == null)
+            return null;
+        String[] fields = encoded.split(SEPARATOR);
+        if (fields.length != 2 || !(fields[1].equals("true") || fields[1].equals("false")))
+            return null;
+        try {
+            int numThreads = Integer.parseInt(fields[0]);
+            return numThreads < 1 ? null : new RecognizerConfig(numThreads, Boolean.parseBoolean(fields[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof RecognizerConfig))
+            return false;
+        RecognizerConfig mOther = (RecognizerConfig) other;
+        return mNumThreads == mOther.mNumThreads && mUseXnnpack == mOther.mUseXnnpack;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mNumThreads + (mUseXnnpack ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "RecognizerConfig{threads=" + mNumThreads + ", xnnpack=" + mUseXnnpack + "}";
+    }
+}
@@ -0,0 +1,905 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.core.CropVariants;
+import com.simonemallei.gungeonrecognizer.core.ImagePreprocessor;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.RecognitionCache;
+import com.simonemallei.gungeonrecognizer.core.TopKSelector;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.RecognizerSession
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * RecognizerSession class containing the TensorFlow Lite interpreter shared by every
+ * recognition performed in the application.
+ * The model is mapped once and the interpreter (with its allocated tensors) is reused
+ * until release() is called, for instance when the system is running low on memory.
+ * The interpreter's threads and CPU delegate are set by a RecognizerConfig.
+ * The types, shapes and quantization parameters of the tensors are read from the model
+ * when it is loaded: float32 models and uint8/int8 quantized ones are both supported.
+ * A quantized input is written directly as bytes by the preprocessor, while quantized
+ * scores are selected on their raw values and only the K best ones are dequantized.
+ * Batched inputs (one tensor for each crop variant) are scored in a single invocation
+ * by resizing the batch dimension of the input; if the model does not allow it,
+ * the inputs of the batch are scored one at a time.
+ * The scores of the recent images are kept in a RecognitionCache, since they depend
+ * only on the session's model.
+ * The model is described by a ModelInfo (registered in the ModelRegistry) and can be
+ * swapped at runtime by setModel(): the next recognition releases the interpreter,
+ * clears the cache and loads the new model.
+ */
+public class RecognizerSession {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = RecognizerSession.class.getName();
+    /**
+     * A String containing the path to the recognition model.
+     */
+    public final static String FILE_PATH = "recognizer_model/";
+    /**
+     * A String containing the file name of the recognition model.
+     */
+    public final static String MODEL_NAME = "GungeonModel.tflite";
+    /**
+     * An integer containing the scaled width of the image considered by the default model.
+     */
+    public final static int WIDTH_VAL = 32;
+    /**
+     * An integer containing the scaled height of the image considered by the default model.
+     */
+    public final static int HEIGHT_VAL = 32;
+    /**
+     * An integer containing the number of the channels of the image.
+     */
+    public final static int NUM_CHANNELS = 3;
+    /**
+     * An integer containing the number of items
+     * (hence the size of the output array obtained by the neural network).
+     */
+    public final static int ITEMS_NUM = 509;
+    /**
+     * An integer containing the number of images whose scores are cached.
+     */
+    public final static int CACHE_SIZE = 16;
+    /**
+     * An integer containing the maximum Hamming distance between the perceptual hashes
+     * of two images considered the same by the cache.
+     */
+    public final static int CACHE_DISTANCE = 4;
+    /**
+     * An integer containing the maximum number of inputs of a batch (the crop variants
+     * of a recognition, or the windows of a scan).
+     */
+    public final static int MAX_BATCH = Math.max(CropVariants.MAX_VARIANTS, 16);
+    /**
+     * A Context reference to the application's context (used to open the assets).
+     */
+    private final Context mContext;
+    /**
+     * A ModelInfo object containing the metadata of the model used by the session.
+     */
+    private volatile ModelInfo mModel;
+    /**
+     * A ModelInfo object containing the metadata of the model that will replace the
+     * session's one at the next recognition (null if none).
+     */
+    private volatile ModelInfo mPendingModel = null;
+    /**
+     * A RecognizerConfig object containing the threads and the delegate of the interpreter.
+     */
+    private RecognizerConfig mConfig;
+    /**
+     * A StageTracer object measuring the loading, the inference and the selection
+     * (null if they are not measured).
+     */
+    private StageTracer mTracer = null;
+    /**
+     * An Interpreter object containing the loaded model (null if not loaded yet).
+     */
+    private Interpreter mInterpreter = null;
+    /**
+     * A MappedByteBuffer containing the model mapped in memory.
+     */
+    private MappedByteBuffer mModelBuffer = null;
+    /**
+     * A long containing the time (in milliseconds) spent by the last model loading.
+     */
+    private long mLoadTimeMillis = -1L;
+    /**
+     * A boolean that verifies whether the loaded interpreter has already run once.
+     */
+    private boolean mWarm = false;
+    /**
+     * An ImagePreprocessor object whose buffers are reused by every recognition.
+     */
+    private ImagePreprocessor mPreprocessor = new ImagePreprocessor(WIDTH_VAL, HEIGHT_VAL);
+    /**
+     * Integers containing the width and the height of the model's input.
+     */
+    private int mWidth = WIDTH_VAL, mHeight = HEIGHT_VAL;
+    /**
+     * DataType objects containing the types of the model's input and output.
+     */
+    private DataType mInputType = DataType.FLOAT32, mOutputType = DataType.FLOAT32;
+    /**
+     * A float and an integer containing the quantization scale and zero point
+     * of the model's input (used only if the input is quantized).
+     */
+    private float mInputScale = 1.0f;
+    private int mInputZeroPoint = 0;
+    /**
+     * An integer containing the number of scores of the model's output.
+     */
+    private int mItems = ITEMS_NUM;
+    /**
+     * A float and an integer containing the quantization scale and zero point
+     * of the model's output (used only if the output is quantized).
+     */
+    private float mOutputScale = 1.0f;
+    private int mOutputZeroPoint = 0;
+    /**
+     * A TopKSelector object used to find the best predictions of every recognition.
+     */
+    private TopKSelector mSelector = new TopKSelector(ITEMS_NUM);
+    /**
+     * An array of floats containing the scores averaged over a batch.
+     */
+    private float[] mScores = new float[ITEMS_NUM];
+    /**
+     * A RecognitionCache object containing the scores of the recent images.
+     */
+    private RecognitionCache mCache = new RecognitionCache(CACHE_SIZE, ITEMS_NUM, CACHE_DISTANCE);
+    /**
+     * An array of arrays of floats containing the dequantized scores of each input of
+     * a batch (allocated on first use, only if the output is quantized).
+     */
+    private float[][] mBatchScores = null;
+    /**
+     * An integer containing the batch size of the interpreter's input.
+     */
+    private int mBatchSize = 1;
+    /**
+     * A ModelInfo object containing the model whose interpreter has rejected batches of
+     * more than one input with the current configuration (null if none): its batches
+     * are scored one input at a time, without resizing the interpreter again.
+     */
+    private ModelInfo mUnbatchedModel = null;
+    /**
+     * An array of direct ByteBuffers (native order) containing, for each batch size, the
+     * input tensor (allocated on first use, since its capacity must match the tensor).
+     */
+    private final ByteBuffer[] mInputs = new ByteBuffer[MAX_BATCH + 1];
+    /**
+     * An array containing, for each batch size, the output tensor
+     * (float[batch][items], or byte[batch][items] if the output is quantized).
+     */
+    private final Object[] mOutputs = new Object[MAX_BATCH + 1];
+    /**
+     * Arrays containing, for each batch size, the input tensor whose inputs have been
+     * sliced, its inputs and the rows of the output tensor, wrapped as tensors of a single
+     * input, used when the inputs are scored one at a time (allocated on first use).
+     */
+    private final ByteBuffer[] mItemSources = new ByteBuffer[MAX_BATCH + 1];
+    private final ByteBuffer[][] mItemInputs = new ByteBuffer[MAX_BATCH + 1][];
+    private final Object[][] mItemOutputs = new Object[MAX_BATCH + 1][];
+
+    public RecognizerSession(Context context) {
+        this(context, MODEL_NAME);
+    }
+
+    public RecognizerSession(Context context, String modelName) {
+        this(context, modelName, RecognizerConfig.DEFAULT);
+    }
+
+    public RecognizerSession(Context context, String modelName, RecognizerConfig config) {
+        this(context, ModelInfo.forFile(modelName), config);
+    }
+
+    public RecognizerSession(Context context, ModelInfo model, RecognizerConfig config) {
+        this.mContext = context.getApplicationContext();
+        this.mModel = model;
+        this.mConfig = config;
+    }
+
+    /**
+     * Maps the model and creates the interpreter, if they are not loaded yet.
+     *
+     * @return The Interpreter object of the session.
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    private Interpreter load() throws IOException {
+        if (mInterpreter == null) {
+            long startTime = SystemClock.elapsedRealtime();
+            begin(Stage.MODEL_LOAD);
+            try {
+                // Mapping the TensorFlow Lite model: the mapping stays valid after
+                // the descriptor and its channel are closed
+                try (AssetFileDescriptor mDescriptor = mContext.getAssets().openFd(FILE_PATH + mModel.getFile());
+                     FileInputStream mStream = new FileInputStream(mDescriptor.getFileDescriptor());
+                     FileChannel mChannel = mStream.getChannel()) {
+                    mModelBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY,
+                            mDescriptor.getStartOffset(), mDescriptor.getDeclaredLength());
+                }
+                mInterpreter = new Interpreter((ByteBuffer) (mModelBuffer), mConfig.toOptions());
+                try {
+                    configure();
+                } catch (IOException e) {
+                    release();
+                    throw e;
+                }
+            } finally {
+                end(Stage.MODEL_LOAD);
+            }
+            mLoadTimeMillis = SystemClock.elapsedRealtime() - startTime;
+            Log.i(TAG_LOG, "Model " + mModel + " loaded in " + mLoadTimeMillis + " ms with " + mConfig);
+        }
+        return mInterpreter;
+    }
+
+    /**
+     * Reads the types, shapes and quantization parameters of the model's tensors,
+     * then prepares the preprocessor and the buffers accordingly.
+     *
+     * @throws IOException if the tensors of the model are not supported.
+     */
+    private void configure() throws IOException {
+        Tensor mInputTensor = mInterpreter.getInputTensor(0);
+        int[] inputShape = mInputTensor.shape();
+        if (inputShape.length != 4 || inputShape[3] != NUM_CHANNELS)
+            throw new IOException("Unsupported input shape: " + Arrays.toString(inputShape));
+        if (inputShape[2] != mWidth || inputShape[1] != mHeight) {
+            mWidth = inputShape[2];
+            mHeight = inputShape[1];
+            mPreprocessor = new ImagePreprocessor(mWidth, mHeight);
+        }
+        mInputType = mInputTensor.dataType();
+        switch (mInputType) {
+            case FLOAT32:
+                mPreprocessor.setFloatInput();
+                break;
+            case UINT8:
+            case INT8:
+                Tensor.QuantizationParams mParams = mInputTensor.quantizationParams();
+                mInputScale = mParams.getScale();
+                mInputZeroPoint = mParams.getZeroPoint();
+                mPreprocessor.setQuantizedInput(mInputScale, mInputZeroPoint, mInputType == DataType.INT8);
+                break;
+            default:
+                throw new IOException("Unsupported input type: " + mInputType);
+        }
+
+        Tensor mOutputTensor = mInterpreter.getOutputTensor(0);
+        int[] outputShape = mOutputTensor.shape();
+        mOutputType = mOutputTensor.dataType();
+        switch (mOutputType) {
+            case FLOAT32:
+                break;
+            case UINT8:
+            case INT8:
+                mOutputScale = mOutputTensor.quantizationParams().getScale();
+                mOutputZeroPoint = mOutputTensor.quantizationParams().getZeroPoint();
+                break;
+            default:
+                throw new IOException("Unsupported output type: " + mOutputType);
+        }
+        if (outputShape[outputShape.length - 1] != mItems) {
+            mItems = outputShape[outputShape.length - 1];
+            mSelector = new TopKSelector(mItems);
+            mScores = new float[mItems];
+            mCache = new RecognitionCache(CACHE_SIZE, mItems, CACHE_DISTANCE);
+        }
+        if (mModel.getItems() < mItems)
+            throw new IOException("Model " + mModel + " has " + mItems + " scores, "
+                    + mModel.getItems() + " registered");
+        if (mModel.getWidth() != mWidth || mModel.getHeight() != mHeight)
+            Log.i(TAG_LOG, "Model " + mModel + " registered with a " + mModel.getWidth() + "x"
+                    + mModel.getHeight() + " input, reading " + mWidth + "x" + mHeight);
+
+        // The tensors of the previous model may have different sizes or types
+        Arrays.fill(mInputs, null);
+        Arrays.fill(mOutputs, null);
+        Arrays.fill(mItemSources, null);
+        Arrays.fill(mItemInputs, null);
+        Arrays.fill(mItemOutputs, null);
+        mBatchSize = 1;
+        Log.i(TAG_LOG, "Input " + mInputType + " " + Arrays.toString(inputShape)
+                + ", output " + mOutputType + " " + Arrays.toString(outputShape));
+    }
+
+    /**
+     * Replaces the session's model with the pending one (if any): the interpreter is
+     * released and the cached scores, which depend on the model, are removed.
+     */
+    private void swapModel() {
+        ModelInfo mNext = mPendingModel;
+        if (mNext == null)
+            return;
+        mPendingModel = null;
+        if (mNext != mModel) {
+            release();
+            mModel = mNext;
+            mCache.clear();
+            Log.i(TAG_LOG, "Model swapped to " + mNext);
+        }
+    }
+
+    /**
+     * Sets the model used from the next recognition on (from its prepare() or warmUp()),
+     * without waiting for the running one: it can be called by any thread.
+     *
+     * @param model ModelInfo object of the model to use.
+     */
+    public void setModel(ModelInfo model) {
+        mPendingModel = model;
+    }
+
+    /**
+     * Gets the metadata of the session's model: while holding the session's lock after
+     * prepare(), it is the model scoring the input tensors.
+     *
+     * @return The ModelInfo object of the session's model.
+     */
+    public ModelInfo getModelInfo() {
+        return mModel;
+    }
+
+    /**
+     * Gets the metadata of the model used by the next recognition: it can be called by
+     * any thread.
+     *
+     * @return The ModelInfo object of the pending model (or of the session's one).
+     */
+    public ModelInfo getNextModelInfo() {
+        ModelInfo mNext = mPendingModel;
+        return mNext != null ? mNext : mModel;
+    }
+
+    /**
+     * Loads the model if needed: it must be called before using the preprocessor and
+     * the input tensors, since they depend on the model.
+     *
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    public synchronized void prepare() throws IOException {
+        swapModel();
+        load();
+    }
+
+    /**
+     * Loads the model if needed and runs it once on a zero input tensor, so that the first
+     * recognition finds the interpreter's tensors allocated and its kernels prepared.
+     * The scores of the zero input are discarded (they are not cached).
+     *
+     * @return A long containing the time spent in milliseconds (0 if already warm).
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    public synchronized long warmUp() throws IOException {
+        swapModel();
+        if (mWarm && mInterpreter != null)
+            return 0L;
+        long startTime = SystemClock.elapsedRealtime();
+        begin(Stage.WARM_UP);
+        try {
+            load();
+            ByteBuffer mInput = getInput(1);
+            mInput.clear();
+            while (mInput.hasRemaining())
+                mInput.put((byte) 0);
+            mInput.clear();
+            run(mInput, getOutput(1), 1);
+            mWarm = true;
+        } finally {
+            end(Stage.WARM_UP);
+        }
+        return SystemClock.elapsedRealtime() - startTime;
+    }
+
+    /**
+     * Verifies whether the loaded interpreter has already run once (by a warm-up
+     * or by a recognition).
+     *
+     * @return True if the interpreter is loaded and warm.
+     */
+    public synchronized boolean isWarm() {
+        return mWarm && mInterpreter != null;
+    }
+
+    /**
+     * Runs the model on the input tensor obtained by getInput() and selects its best scores.
+     *
+     * @param k integer containing the number of results requested.
+     * @return The TopKSelector object of the session containing the results.
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    public synchronized TopKSelector score(int k) throws IOException {
+        return score(1, k);
+    }
+
+    /**
+     * Runs the model on the batched input tensor obtained by getInput(batch)
+     * and selects the best scores averaged over the batch.
+     *
+     * @param batch integer containing the number of inputs (at most MAX_BATCH).
+     * @param k integer containing the number of results requested.
+     * @return The TopKSelector object of the session containing the results.
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    public synchronized TopKSelector score(int batch, int k) throws IOException {
+        Object mOutput = infer(batch);
+
+        begin(Stage.TOP_K);
+        if (mOutputType == DataType.FLOAT32) {
+            float[][] mFloatOutput = (float[][]) mOutput;
+            if (batch == 1)
+                mSelector.select(mFloatOutput[0], mItems, k);
+            else {
+                CropVariants.average(mFloatOutput, batch, mItems, mScores);
+                mSelector.select(mScores, mItems, k);
+            }
+        }
+        else {
+            // Selecting the raw quantized scores, since dequantization preserves their order
+            byte[][] mByteOutput = (byte[][]) mOutput;
+            boolean signed = mOutputType == DataType.INT8;
+            if (batch == 1)
+                mSelector.select(mByteOutput[0], mItems, k, signed);
+            else {
+                average(mByteOutput, batch, signed);
+                mSelector.select(mScores, mItems, k);
+            }
+            mSelector.dequantize(mOutputScale, mOutputZeroPoint);
+        }
+        end(Stage.TOP_K);
+        return mSelector;
+    }
+
+    /**
+     * Runs the model on the batched input tensor obtained by getInput(batch) and gets
+     * every score, averaged over the batch and dequantized if needed (for instance in
+     * order to aggregate the scores of consecutive frames).
+     *
+     * @param batch integer containing the number of inputs (at most MAX_BATCH).
+     * @return An array of floats whose first getItems() values are the scores: it must be
+     *         used only while holding the session's lock, until the next recognition.
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    public synchronized float[] scoreAll(int batch) throws IOException {
+        return toScores(infer(batch), batch);
+    }
+
+    /**
+     * Runs the model on a batched input tensor that is not the session's one and gets
+     * every score, averaged over the batch and dequantized if needed. The input may be
+     * preprocessed by another session accepted by acceptsInput() (for instance by the
+     * full model of a cascade, so that the input is built once), or by a copy of the
+     * session's preprocessor (for instance on another thread, by a pipeline).
+     *
+     * @param input ByteBuffer containing the input tensor [batch][height][width][NUM_CHANNELS].
+     * @param batch integer containing the number of inputs (at most MAX_BATCH).
+     * @return An array of floats whose first getItems() values are the scores: it must be
+     *         used only while holding the session's lock, until the next recognition.
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    public synchronized float[] scoreAll(ByteBuffer input, int batch) throws IOException {
+        load();
+        return toScores(infer(input, batch), batch);
+    }
+
+    /**
+     * Verifies whether the input tensors preprocessed by another session can be scored
+     * by this session's model: both models must be loaded (by prepare()) and read inputs
+     * of the same shape, type and quantization. It must be called while holding the
+     * other session's lock too.
+     *
+     * @param source RecognizerSession object whose input tensors would be scored.
+     * @return True if the inputs of the other session are valid inputs of this one.
+     */
+    public synchronized boolean acceptsInput(RecognizerSession source) {
+        return mInterpreter != null && source.mInterpreter != null
+                && mWidth == source.mWidth && mHeight == source.mHeight
+                && mInputType == source.mInputType
+                && (mInputType == DataType.FLOAT32 || (mInputScale == source.mInputScale
+                && mInputZeroPoint == source.mInputZeroPoint));
+    }
+
+    /**
+     * Averages the scores of a batch and dequantizes them if needed.
+     *
+     * @param mOutput Object containing the output tensor (float[batch][items] or byte[batch][items]).
+     * @param batch integer containing the number of inputs of the batch.
+     * @return An array of floats whose first getItems() values are the scores.
+     */
+    private float[] toScores(Object mOutput, int batch) {
+        if (mOutputType == DataType.FLOAT32) {
+            float[][] mFloatOutput = (float[][]) mOutput;
+            if (batch == 1)
+                return mFloatOutput[0];
+            CropVariants.average(mFloatOutput, batch, mItems, mScores);
+        }
+        else {
+            average((byte[][]) mOutput, batch, mOutputType == DataType.INT8);
+            for (int j = 0; j < mItems; j++)
+                mScores[j] = mOutputScale * (mScores[j] - mOutputZeroPoint);
+        }
+        return mScores;
+    }
+
+    /**
+     * Runs the model on the batched input tensor obtained by getInput(batch) and gets
+     * the scores of each input (dequantized if needed), for instance in order to score
+     * the windows of a scan.
+     *
+     * @param batch integer containing the number of inputs (at most MAX_BATCH).
+     * @return An array of arrays of floats whose first batch rows contain the first getItems()
+     *         scores of each input: it must be used only while holding the session's lock,
+     *         until the next recognition.
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    public synchronized float[][] scoreBatch(int batch) throws IOException {
+        Object mOutput = infer(batch);
+        if (mOutputType == DataType.FLOAT32)
+            return (float[][]) mOutput;
+        if (mBatchScores == null || mBatchScores[0].length != mItems)
+            mBatchScores = new float[MAX_BATCH][mItems];
+        byte[][] mByteOutput = (byte[][]) mOutput;
+        boolean signed = mOutputType == DataType.INT8;
+        for (int i = 0; i < batch; i++)
+            for (int j = 0; j < mItems; j++)
+                mBatchScores[i][j] = mOutputScale * ((signed ? mByteOutput[i][j] : mByteOutput[i][j] & 0xff)
+                        - mOutputZeroPoint);
+        return mBatchScores;
+    }
+
+    /**
+     * Gets the number of scores of the model's output.
+     *
+     * @return An integer containing the number of items scored.
+     */
+    public synchronized int getItems() {
+        return mItems;
+    }
+
+    /**
+     * Gets the cache of the scores computed by the session's model.
+     *
+     * @return The RecognitionCache object of the session.
+     */
+    public synchronized RecognitionCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * Loads the model if needed and runs it on the batched input tensor.
+     *
+     * @param batch integer containing the number of inputs of the batch.
+     * @return An Object containing the output tensor (float[batch][items] or byte[batch][items]).
+     * @throws IOException if the model can not be read from the assets or is not supported.
+     */
+    private Object infer(int batch) throws IOException {
+        load();
+        return infer(getInput(batch), batch);
+    }
+
+    /**
+     * Runs the loaded model on a batched input tensor.
+     *
+     * @param input ByteBuffer containing the input tensor.
+     * @param batch integer containing the number of inputs of the batch.
+     * @return An Object containing the output tensor (float[batch][items] or byte[batch][items]).
+     */
+    private Object infer(ByteBuffer input, int batch) {
+        Object mOutput = getOutput(batch);
+        begin(Stage.INFERENCE);
+        try {
+            run(input, mOutput, batch);
+            mWarm = true;
+        } finally {
+            end(Stage.INFERENCE);
+        }
+        return mOutput;
+    }
+
+    /**
+     * Begins the measure of a stage, if the session is traced.
+     */
+    private void begin(Stage stage) {
+        if (mTracer != null)
+            mTracer.begin(stage);
+    }
+
+    /**
+     * Ends the measure of a stage, if the session is traced.
+     */
+    private void end(Stage stage) {
+        if (mTracer != null)
+            mTracer.end(stage);
+    }
+
+    /**
+     * Averages the raw quantized scores of a batch in mScores (dequantizing
+     * the average is the same as averaging the dequantized scores).
+     *
+     * @param output array of bytes with shape [batch][items] containing the scores.
+     * @param batch integer containing the number of inputs of the batch.
+     * @param signed boolean that is true for int8 scores, false for uint8 ones.
+     */
+    private void average(byte[][] output, int batch, boolean signed) {
+        Arrays.fill(mScores, 0, mItems, 0.0f);
+        for (int i = 0; i < batch; i++)
+            for (int j = 0; j < mItems; j++)
+                mScores[j] += signed ? output[i][j] : output[i][j] & 0xff;
+        for (int j = 0; j < mItems; j++)
+            mScores[j] /= batch;
+    }
+
+    /**
+     * Runs the model on a (batched) input tensor.
+     *
+     * @param input ByteBuffer containing the input tensor.
+     * @param output Object that will contain the output tensor.
+     * @param batch integer containing the number of inputs of the batch.
+     */
+    private void run(ByteBuffer input, Object output, int batch) {
+        if (batch == 1) {
+            resize(1);
+            mInterpreter.run(input, output);
+            return;
+        }
+        if (mUnbatchedModel != mModel) {
+            try {
+                resize(batch);
+                mInterpreter.run(input, output);
+                return;
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // Remembering the failure, so that it is neither retried nor logged again
+                e.printStackTrace();
+                Log.i(TAG_LOG, "Batched inputs not supported by " + mModel + ", scoring them one at a time.");
+                mUnbatchedModel = mModel;
+            }
+        }
+        resize(1);
+        ByteBuffer[] mItemInput = getItemInputs(input, batch);
+        Object[] mItemOutput = getItemOutputs(output, batch);
+        for (int i = 0; i < batch; i++) {
+            mItemInput[i].rewind();
+            mInterpreter.run(mItemInput[i], mItemOutput[i]);
+        }
+    }
+
+    /**
+     * Gets the inputs of a batched input tensor, each one as a tensor of a single input
+     * sharing its content: they are sliced again only when the input tensor changes.
+     *
+     * @param input ByteBuffer containing the batched input tensor.
+     * @param batch integer containing the number of inputs of the batch.
+     * @return An array of ByteBuffers containing the inputs of the batch.
+     */
+    private ByteBuffer[] getItemInputs(ByteBuffer input, int batch) {
+        if (mItemSources[batch] != input) {
+            int inputBytes = mPreprocessor.getInputBytes();
+            ByteBuffer[] mSlices = new ByteBuffer[batch];
+            for (int i = 0; i < batch; i++) {
+                input.limit((i + 1) * inputBytes).position(i * inputBytes);
+                mSlices[i] = input.slice().order(ByteOrder.nativeOrder());
+            }
+            input.clear();
+            mItemInputs[batch] = mSlices;
+            mItemSources[batch] = input;
+        }
+        return mItemInputs[batch];
+    }
+
+    /**
+     * Gets the rows of a batch's output tensor, each one wrapped as the output tensor
+     * of a single input.
+     *
+     * @param output Object containing the output tensor of the batch (see getOutput()).
+     * @param batch integer containing the number of inputs of the batch.
+     * @return An array containing the output tensor of each input.
+     */
+    private Object[] getItemOutputs(Object output, int batch) {
+        if (mItemOutputs[batch] == null) {
+            Object[] mItemOutput = new Object[batch];
+            for (int i = 0; i < batch; i++)
+                mItemOutput[i] = mOutputType == DataType.FLOAT32 ? new float[][]{((float[][]) output)[i]}
+                        : new byte[][]{((byte[][]) output)[i]};
+            mItemOutputs[batch] = mItemOutput;
+        }
+        return mItemOutputs[batch];
+    }
+
+    /**
+     * Resizes the batch dimension of the interpreter's input, if needed.
+     *
+     * @param batch integer containing the number of inputs of the batch.
+     */
+    private void resize(int batch) {
+        if (batch != mBatchSize) {
+            // Invalidating the size first, so that a failure is retried by the next run
+            mBatchSize = -1;
+            mInterpreter.resizeInput(0, new int[]{batch, mHeight, mWidth, NUM_CHANNELS});
+            mInterpreter.allocateTensors();
+            mBatchSize = batch;
+        }
+    }
+
+    /**
+     * Gets the output tensor of the session for the batch size given.
+     *
+     * @param batch integer containing the number of inputs of the batch.
+     * @return An array of floats or bytes with shape [batch][items].
+     */
+    private Object getOutput(int batch) {
+        if (mOutputs[batch] == null)
+            mOutputs[batch] = mOutputType == DataType.FLOAT32 ? new float[batch][mItems]
+                    : new byte[batch][mItems];
+        return mOutputs[batch];
+    }
+
+    /**
+     * Gets the preprocessor of the session: its buffers must be used only
+     * while holding the session's lock, after prepare().
+     *
+     * @return The ImagePreprocessor object of the session.
+     */
+    public ImagePreprocessor getPreprocessor() {
+        return mPreprocessor;
+    }
+
+    /**
+     * Gets the input tensor of the session: it must be used only
+     * while holding the session's lock, after prepare().
+     *
+     * @return A direct ByteBuffer containing the input tensor [1][height][width][NUM_CHANNELS].
+     */
+    public ByteBuffer getInput() {
+        return getInput(1);
+    }
+
+    /**
+     * Gets the batched input tensor of the session: it must be used only
+     * while holding the session's lock, after prepare().
+     *
+     * @param batch integer containing the number of inputs (at most MAX_BATCH).
+     * @return A direct ByteBuffer containing the input tensor [batch][height][width][NUM_CHANNELS].
+     */
+    public ByteBuffer getInput(int batch) {
+        if (mInputs[batch] == null)
+            mInputs[batch] = ByteBuffer.allocateDirect(batch * mPreprocessor.getInputBytes())
+                    .order(ByteOrder.nativeOrder());
+        return mInputs[batch];
+    }
+
+    /**
+     * Gets the top-K selector of the session: it must be used only
+     * while holding the session's lock.
+     *
+     * @return The TopKSelector object of the session.
+     */
+    public TopKSelector getSelector() {
+        return mSelector;
+    }
+
+    /**
+     * Gets the type of the model's input tensor.
+     *
+     * @return The DataType of the input (FLOAT32 until the model is loaded).
+     */
+    public synchronized DataType getInputType() {
+        return mInputType;
+    }
+
+    /**
+     * Gets the type of the model's output tensor.
+     *
+     * @return The DataType of the output (FLOAT32 until the model is loaded).
+     */
+    public synchronized DataType getOutputType() {
+        return mOutputType;
+    }
+
+    /**
+     * Gets the file name of the model used by the next recognition.
+     *
+     * @return A String containing the model's file name in the assets.
+     */
+    public String getModelName() {
+        return getNextModelInfo().getFile();
+    }
+
+    /**
+     * Sets the tracer measuring the stages performed by the session.
+     *
+     * @param tracer StageTracer object (null in order to stop measuring).
+     */
+    public synchronized void setTracer(StageTracer tracer) {
+        this.mTracer = tracer;
+    }
+
+    /**
+     * Gets the configuration of the interpreter.
+     *
+     * @return The RecognizerConfig object of the session.
+     */
+    public synchronized RecognizerConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Sets the configuration of the interpreter: if it changes, the interpreter is
+     * released and the next recognition loads it again with the new configuration.
+     *
+     * @param config RecognizerConfig object to use.
+     */
+    public synchronized void setConfig(RecognizerConfig config) {
+        if (!config.equals(mConfig)) {
+            release();
+            mConfig = config;
+            mUnbatchedModel = null;
+            Log.i(TAG_LOG, "Configuration set to " + config);
+        }
+    }
+
+    /**
+     * Verifies whether the model is currently loaded or not.
+     *
+     * @return True if the interpreter is ready to be used.
+     */
+    public synchronized boolean isLoaded() {
+        return mInterpreter != null;
+    }
+
+    /**
+     * Gets the time spent by the last model loading, which is the latency saved
+     * by every recognition that reuses the session.
+     *
+     * @return A long containing the loading time in milliseconds (-1 if never loaded).
+     */
+    public synchronized long getLoadTimeMillis() {
+        return mLoadTimeMillis;
+    }
+
+    /**
+     * Closes the interpreter and drops the mapped model: the next recognition
+     * will load them again. It waits for the running recognition, which holds the
+     * session's lock, hence the main thread should ask the recognitions' worker to
+     * call it (as the application does when the system is low on memory).
+     */
+    public synchronized void release() {
+        if (mInterpreter != null) {
+            mInterpreter.close();
+            mInterpreter = null;
+            mModelBuffer = null;
+            mBatchSize = 1;
+            mWarm = false;
+            Log.i(TAG_LOG, "Model released.");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.core.PipelineStats;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.StageTracer
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * StageTracer class containing the instrumentation of the recognition pipeline's stages:
+ * each stage between begin() and end() is measured with the monotonic clock, shown as an
+ * android.os.Trace section (in systrace/Perfetto) and recorded in the PipelineStats registry.
+ * If enabled, the objects allocated by the stage's thread are counted too.
+ * The start of each stage is kept in primitive arrays, hence measuring never allocates:
+ * a stage must not be measured by two threads at the same time, which holds since
+ * recognitions are serialized by the scheduler, the live frames are converted and
+ * preprocessed on the analyzer's thread only and the UI stages run on the main thread.
+ */
+public class StageTracer {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = StageTracer.class.getName();
+    /**
+     * A PipelineStats object containing the measures of the stages.
+     */
+    private final PipelineStats mStats = new PipelineStats();
+    /**
+     * Arrays of longs containing, for each stage, the time (in nanoseconds) and the
+     * allocation count of its thread when it began.
+     */
+    private final long[] mStartNanos = new long[Stage.values().length];
+    private final long[] mStartAllocations = new long[Stage.values().length];
+    /**
+     * A boolean that verifies whether the allocations are counted.
+     */
+    private volatile boolean mCountAllocations = false;
+
+    /**
+     * Gets the current time of the monotonic clock used by the measures.
+     *
+     * @return A long containing the time in nanoseconds.
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Enables or disables the allocation counting of the stages (it slows down the
+     * allocations of the whole process, hence it is meant for debugging).
+     *
+     * @param countAllocations True in order to count the allocations.
+     */
+    public synchronized void setAllocationCounting(boolean countAllocations) {
+        if (countAllocations == mCountAllocations)
+            return;
+        if (countAllocations)
+            Debug.startAllocCounting();
+        else
+            Debug.stopAllocCounting();
+        mCountAllocations = countAllocations;
+    }
+
+    /**
+     * Begins a stage on the current thread.
+     *
+     * @param stage Stage beginning.
+     */
+    public void begin(Stage stage) {
+        Trace.beginSection(stage.getSectionName());
+        if (mCountAllocations)
+            mStartAllocations[stage.ordinal()] = Debug.getThreadAllocCount();
+        mStartNanos[stage.ordinal()] = now();
+    }
+
+    /**
+     * Ends a stage begun on the current thread and records it.
+     *
+     * @param stage Stage ending.
+     * @return A long containing the latency of the stage in nanoseconds.
+     */
+    public long end(Stage stage) {
+        long nanos = now() - mStartNanos[stage.ordinal()];
+        if (mCountAllocations)
+            mStats.recordAllocations(stage, Debug.getThreadAllocCount() - mStartAllocations[stage.ordinal()]);
+        Trace.endSection();
+        mStats.record(stage, nanos);
+        return nanos;
+    }
+
+    /**
+     * Records a stage begun at the time given, possibly on another thread
+     * (hence without trace section and allocation count).
+     *
+     * @param stage Stage ending.
+     * @param startNanos long containing the time (obtained by now()) the stage began.
+     */
+    public void record(Stage stage, long startNanos) {
+        mStats.record(stage, now() - startNanos);
+    }
+
+    /**
+     * Gets the registry of the measures, which can be queried at any moment.
+     *
+     * @return The PipelineStats object of the tracer.
+     */
+    public PipelineStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Writes the percentiles of every stage measured in logcat.
+     */
+    public void dump() {
+        String mReport = mStats.report();
+        if (mReport.isEmpty())
+            return;
+        for (String line : mReport.split("\n"))
+            Log.i(TAG_LOG, line);
+    }
+}
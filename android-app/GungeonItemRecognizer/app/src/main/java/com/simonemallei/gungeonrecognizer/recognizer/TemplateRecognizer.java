@@ -0,0 +1,300 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.core.ColorSignatureIndex;
+import com.simonemallei.gungeonrecognizer.core.ImagePreprocessor;
+import com.simonemallei.gungeonrecognizer.core.ModelComparison;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.Prediction;
+import com.simonemallei.gungeonrecognizer.core.PruningStats;
+import com.simonemallei.gungeonrecognizer.core.Recognizer;
+import com.simonemallei.gungeonrecognizer.core.TemplateMatcher;
+import com.simonemallei.gungeonrecognizer.core.TopKSelector;
+import com.simonemallei.gungeonrecognizer.model.ApplicationModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.TemplateRecognizer
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * TemplateRecognizer class containing the recognition engine without a model: the
+ * equalized crop is matched against the templates of the items' sprites (the ones
+ * shown by the catalogue, item_image/<id>.png in the assets) by a TemplateMatcher,
+ * and the best scored items are returned as predictions, as the model's ones (their
+ * scores are NCC values in range [-1; 1]).
+ * Only the candidates whose colour signature is the most similar to the crop's one
+ * (found by a ColorSignatureIndex) are matched.
+ * It is used as a fallback when the model can not be loaded, and as a baseline in
+ * comparison mode, where its best items and latency are compared with the active
+ * model's ones; there, the recall of the pruning (whether the model's best item is a
+ * candidate) and the time it saves (against matching every template) are measured too.
+ * The templates and the signatures are built on first use, once the items are loaded.
+ * The methods are synchronized, since the preprocessor and the buffers are shared.
+ */
+public class TemplateRecognizer implements Recognizer {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = TemplateRecognizer.class.getName();
+    /**
+     * An integer containing the number of best items compared with the active model.
+     */
+    private final static int COMPARED_ITEMS = 5;
+    /**
+     * An integer containing the number of comparisons between two reports in logcat.
+     */
+    private final static int LOG_INTERVAL = 20;
+    /**
+     * An integer containing the number of candidates matched after the pruning.
+     */
+    private final static int PRUNED_CANDIDATES = 128;
+    /**
+     * A Context object used to read the sprites from the assets.
+     */
+    private final Context mContext;
+    /**
+     * A ForkJoinPool object matching the candidates in parallel.
+     */
+    private final ForkJoinPool mPool;
+    /**
+     * A TemplateMatcher object containing the templates (null until they are built).
+     */
+    private TemplateMatcher mMatcher = null;
+    /**
+     * A ColorSignatureIndex object containing the colour signatures of the sprites (null
+     * until they are built).
+     */
+    private ColorSignatureIndex mIndex = null;
+    /**
+     * An array of integers containing the candidates kept by the last pruning.
+     */
+    private final int[] mCandidates = new int[PRUNED_CANDIDATES];
+    /**
+     * A PruningStats object containing the measures of the pruning in comparison mode.
+     */
+    private final PruningStats mPruning = new PruningStats(PRUNED_CANDIDATES);
+    /**
+     * An ImagePreprocessor object equalizing and scaling the crops (with the default
+     * settings of the models).
+     */
+    private final ImagePreprocessor mPreprocessor =
+            new ImagePreprocessor(RecognizerSession.WIDTH_VAL, RecognizerSession.HEIGHT_VAL);
+    /**
+     * A ByteBuffer containing the normalized crop written by the preprocessor (unused).
+     */
+    private final ByteBuffer mInput = ByteBuffer.allocateDirect(mPreprocessor.getInputBytes())
+            .order(ByteOrder.nativeOrder());
+    /**
+     * An array of floats containing the score of each item.
+     */
+    private float[] mScores = new float[0];
+    /**
+     * A TopKSelector object used to find the best scored items (sized for every item).
+     */
+    private TopKSelector mSelector = new TopKSelector(COMPARED_ITEMS);
+    /**
+     * A ModelComparison object containing the measures of the comparison with the
+     * active model.
+     */
+    private final ModelComparison mComparison = new ModelComparison();
+    /**
+     * Arrays of integers containing the best items of the active model and of the templates.
+     */
+    private final int[] mPrimaryItems = new int[COMPARED_ITEMS];
+    private final int[] mTemplateItems = new int[COMPARED_ITEMS];
+    /**
+     * A StageTracer object measuring the matches (null if they are not measured).
+     */
+    private StageTracer mTracer = null;
+
+    public TemplateRecognizer(Context context, ForkJoinPool pool) {
+        this.mContext = context.getApplicationContext();
+        this.mPool = pool;
+    }
+
+    /**
+     * Sets the tracer measuring the matches (as Stage.TEMPLATE_MATCH).
+     *
+     * @param tracer StageTracer object (null if the matches are not measured).
+     */
+    public synchronized void setTracer(StageTracer tracer) {
+        this.mTracer = tracer;
+    }
+
+    /**
+     * Gets the measures of the comparison with the active model, which can be read by
+     * any thread.
+     *
+     * @return The ModelComparison object of the recognizer.
+     */
+    public ModelComparison getComparison() {
+        return mComparison;
+    }
+
+    /**
+     * Gets the measures of the pruning, which can be read by any thread.
+     *
+     * @return The PruningStats object of the recognizer.
+     */
+    public PruningStats getPruning() {
+        return mPruning;
+    }
+
+    /**
+     * Builds the templates and the signatures of the items' sprites, if the items have
+     * been loaded since the last build.
+     *
+     * @return True if at least an item has a template.
+     */
+    private boolean prepare() {
+        int items = ApplicationModel.ITEMS.size();
+        if (mMatcher != null && mMatcher.getCapacity() == items)
+            return mMatcher.getCount() > 0;
+        if (items == 0)
+            return false;
+
+        long startTime = SystemClock.elapsedRealtime();
+        mMatcher = new TemplateMatcher(items, mPool);
+        mIndex = new ColorSignatureIndex(items);
+        mScores = new float[items];
+        mSelector = new TopKSelector(Math.max(items, COMPARED_ITEMS));
+        int[] mSprite = new int[0];
+        for (int i = 0; i < items; i++) {
+            String path = "item_image/" + ApplicationModel.ITEMS.get(i).ID + ".png";
+            try (InputStream mStream = mContext.getAssets().open(path)) {
+                Bitmap mBitmap = BitmapFactory.decodeStream(mStream);
+                if (mBitmap == null)
+                    continue;
+                int width = mBitmap.getWidth(), height = mBitmap.getHeight();
+                if (mSprite.length < width * height)
+                    mSprite = new int[width * height];
+                mBitmap.getPixels(mSprite, 0, width, 0, 0, width, height);
+                mBitmap.recycle();
+                mMatcher.addTemplate(i, mSprite, width, height);
+                mIndex.addSprite(i, mSprite, width, height);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Log.i(TAG_LOG, "Templates of " + mMatcher.getCount() + " items out of " + items + " built in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return mMatcher.getCount() > 0;
+    }
+
+    /**
+     * Scores the crop given against the templates of the candidates kept by the
+     * pruning, leaving the scores in mScores (NO_MATCH for the other items).
+     *
+     * @return An integer containing the number of candidates kept (-1 if the crop has
+     *         not been scored).
+     */
+    private int score(int[] pixels, int offset, int stride, int edge) {
+        if (!prepare())
+            return -1;
+        if (mTracer != null)
+            mTracer.begin(Stage.TEMPLATE_MATCH);
+        try {
+            mPreprocessor.preprocess(pixels, offset, stride, edge, edge, mInput);
+            float[] mCrop = mPreprocessor.getScaled();
+            int width = mPreprocessor.getOutWidth(), height = mPreprocessor.getOutHeight();
+            int count = mIndex.query(mCrop, width, height, PRUNED_CANDIDATES, mCandidates);
+            mMatcher.match(mCrop, width, height, mScores, mCandidates, count);
+            return count;
+        } finally {
+            if (mTracer != null)
+                mTracer.end(Stage.TEMPLATE_MATCH);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "templates";
+    }
+
+    /**
+     * Recognizes the items in a square crop.
+     *
+     * @throws IOException if no template has been built (for instance if the items
+     *         or their sprites have not been loaded).
+     */
+    @Override
+    public synchronized List<Prediction> recognize(int[] pixels, int width, int height, int left, int top,
+                                                   int edge, int k) throws IOException {
+        if (score(pixels, top * width + left, width, edge) < 0)
+            throw new IOException("No item template has been built");
+        mSelector.select(mScores, mScores.length, k);
+        return mSelector.toPredictions();
+    }
+
+    /**
+     * Scores the crop recognized by the active model with the templates, then records
+     * the best items and the latencies of both engines. The crop is matched against
+     * every template too, in order to measure the pruning.
+     *
+     * @param pixels array of integers containing ARGB pixels.
+     * @param offset integer containing the index of the top-left pixel of the crop.
+     * @param stride integer containing the number of pixels between two rows.
+     * @param edge integer containing the length of the crop's edge.
+     * @param primaryScores array of floats containing the scores of the active model.
+     * @param primaryModel ModelInfo object of the active model.
+     * @param primaryNanos long containing the latency of the active model in nanoseconds.
+     */
+    public synchronized void compare(int[] pixels, int offset, int stride, int edge,
+                                     float[] primaryScores, ModelInfo primaryModel, long primaryNanos) {
+        // Building the templates is not part of the measured latency
+        if (!prepare())
+            return;
+        int primaryCount = Math.min(primaryModel.getItems(), primaryScores.length);
+        if (mSelector.select(primaryScores, primaryCount, COMPARED_ITEMS) < COMPARED_ITEMS)
+            return;
+        for (int i = 0; i < COMPARED_ITEMS; i++)
+            mPrimaryItems[i] = primaryModel.getItem(mSelector.getIndex(i));
+
+        long startTime = StageTracer.now();
+        int count = score(pixels, offset, stride, edge);
+        long templateNanos = StageTracer.now() - startTime;
+        if (count < 0 || mSelector.select(mScores, mScores.length, COMPARED_ITEMS) < COMPARED_ITEMS)
+            return;
+        for (int i = 0; i < COMPARED_ITEMS; i++)
+            mTemplateItems[i] = mSelector.getIndex(i);
+        mComparison.record(mPrimaryItems, mTemplateItems, COMPARED_ITEMS, primaryNanos, templateNanos);
+
+        // Matching the crop (already preprocessed) against every template, whose latency
+        // is compared with the one of the pruning and of the pruned matching
+        float[] mCrop = mPreprocessor.getScaled();
+        int width = mPreprocessor.getOutWidth(), height = mPreprocessor.getOutHeight();
+        startTime = StageTracer.now();
+        count = mIndex.query(mCrop, width, height, PRUNED_CANDIDATES, mCandidates);
+        mMatcher.match(mCrop, width, height, mScores, mCandidates, count);
+        long prunedNanos = StageTracer.now() - startTime;
+        startTime = StageTracer.now();
+        mMatcher.match(mCrop, width, height, mScores);
+        long fullNanos = StageTracer.now() - startTime;
+        mPruning.record(PruningStats.contains(mCandidates, count, mPrimaryItems[0]), prunedNanos, fullNanos);
+
+        if (mComparison.getCompared() % LOG_INTERVAL == 1) {
+            Log.i(TAG_LOG, primaryModel + " vs templates: " + mComparison.report());
+            Log.i(TAG_LOG, "Colour pruning: " + mPruning.report());
+        }
+    }
+}
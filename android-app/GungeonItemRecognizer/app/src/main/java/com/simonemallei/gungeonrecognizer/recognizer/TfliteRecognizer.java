@@ -0,0 +1,140 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.GungeonRecognizerApplication;
+import com.simonemallei.gungeonrecognizer.core.CropVariants;
+import com.simonemallei.gungeonrecognizer.core.ImagePreprocessor;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.Prediction;
+import com.simonemallei.gungeonrecognizer.core.RecognitionCache;
+import com.simonemallei.gungeonrecognizer.core.Recognizer;
+import com.simonemallei.gungeonrecognizer.core.TopKSelector;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.recognizer.TfliteRecognizer
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * TfliteRecognizer class containing the recognition engine of the application's model,
+ * run by TensorFlow Lite in the application's RecognizerSession.
+ * When more than one crop variant is requested, the variants are scored in a single
+ * batched invocation and their scores are averaged. The scores of a recent crop with
+ * (nearly) the same hash are reused, otherwise the crop is scored by the model (or by
+ * the cascade, if enabled) and, in comparison mode, by the candidate model and the
+ * templates too.
+ */
+public class TfliteRecognizer implements Recognizer {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = TfliteRecognizer.class.getName();
+    /**
+     * A GungeonRecognizerApplication object owning the session, the cascade and the
+     * comparators.
+     */
+    private final GungeonRecognizerApplication mApp;
+    /**
+     * An integer containing the number of crop variants scored (1 if the test-time
+     * augmentation is disabled).
+     */
+    private volatile int mVariants = 1;
+
+    public TfliteRecognizer(GungeonRecognizerApplication app) {
+        this.mApp = app;
+    }
+
+    @Override
+    public String getName() {
+        return "tflite " + mApp.getRecognizerSession().getNextModelInfo();
+    }
+
+    /**
+     * Sets the number of crop variants scored by the next recognitions.
+     *
+     * @param variants integer containing the number of variants (1 if the test-time
+     *                 augmentation is disabled).
+     */
+    public void setVariants(int variants) {
+        this.mVariants = variants;
+    }
+
+    @Override
+    public List<Prediction> recognize(int[] pixels, int width, int height, int left, int top, int edge, int k)
+            throws IOException {
+        RecognizerSession mSession = mApp.getRecognizerSession();
+        StageTracer mTracer = mApp.getStageTracer();
+        int variants = mVariants;
+        // The session's buffers are reused by every recognition
+        synchronized (mSession) {
+            // The preprocessor and the input tensors depend on the loaded model
+            mSession.prepare();
+            ImagePreprocessor mPreprocessor = mSession.getPreprocessor();
+
+            // Equalizing, scaling the crop (or each variant) to the model's input size
+            // and normalizing RGB values in [0-1] range (quantized if needed) directly
+            // in the input tensor
+            long startTime = SystemClock.elapsedRealtime();
+            long startNanos = StageTracer.now();
+            mTracer.begin(Stage.PREPROCESS);
+            if (variants == 1)
+                mPreprocessor.preprocess(pixels, top * width + left, width, edge, edge, mSession.getInput());
+            else
+                CropVariants.preprocess(mPreprocessor, pixels, width, width, height,
+                        left, top, edge, variants, mSession.getInput(variants));
+            long hash = mPreprocessor.dHash();
+            mTracer.end(Stage.PREPROCESS);
+
+            // Reusing the scores of a recent image with (nearly) the same hash, scored by
+            // the same model and cascade, otherwise running the model (or the cascade, if
+            // enabled) and caching its scores
+            RecognitionCache mCache = mSession.getCache();
+            RecognizerCascade mCascade = mApp.getCascade();
+            String model = mSession.getModelInfo().getId();
+            int entry = mCache.lookup(hash, variants, model, mCascade != null);
+            float[] mScores;
+            if (entry >= 0)
+                mScores = mCache.getScores(entry);
+            else {
+                mScores = mCascade != null ? mCascade.scoreAll(mSession, variants) : mSession.scoreAll(variants);
+                mCache.put(hash, variants, model, mCascade != null, mScores, mSession.getItems());
+            }
+            long modelNanos = StageTracer.now() - startNanos;
+
+            // Finding the *k* best scored items
+            mTracer.begin(Stage.TOP_K);
+            TopKSelector mSelector = mSession.getSelector();
+            mSelector.select(mScores, mSession.getItems(), k);
+            mTracer.end(Stage.TOP_K);
+            Log.i(TAG_LOG, (entry >= 0 ? "Cached scores of " : "Inference of ") + variants
+                    + " variants obtained in " + (SystemClock.elapsedRealtime() - startTime)
+                    + " ms (cache hit rate " + mCache.getHitRate() + ")");
+
+            List<Prediction> mPredictions = mSession.getModelInfo().toItems(mSelector.toPredictions());
+
+            // Scoring the same crop with the templates and the candidate model (if any)
+            // too, in comparison mode (the cached scores have no comparable latency)
+            if (mApp.isComparing() && entry < 0) {
+                ModelComparator mComparator = mApp.getComparator();
+                if (mComparator != null)
+                    mComparator.compare(pixels, width, height, left, top, edge, variants,
+                            mScores, mSession.getModelInfo(), modelNanos);
+                mApp.getTemplateRecognizer().compare(pixels, top * width + left, width, edge,
+                        mScores, mSession.getModelInfo(), modelNanos);
+            }
+            return mPredictions;
+        }
+    }
+}
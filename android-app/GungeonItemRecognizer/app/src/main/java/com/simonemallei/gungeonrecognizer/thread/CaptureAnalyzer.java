@@ -0,0 +1,182 @@
+package com.simonemallei.gungeonrecognizer.thread;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import com.simonemallei.gungeonrecognizer.core.CropVariants;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.YuvConverter;
+import com.simonemallei.gungeonrecognizer.recognizer.StageTracer;
+import com.simonemallei.gungeonrecognizer.ui.main.RecognizerFragment;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.thread.CaptureAnalyzer
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * CaptureAnalyzer class containing the capture of the photo taken by the user, from
+ * the frames of an ImageAnalysis bound at a reduced target resolution (instead of the
+ * full-screen bitmap of the preview, read on the main thread).
+ * The frames are closed right away until a capture is requested: then only the region
+ * needed is converted from the next frame to ARGB pixels, on the analyzer's thread.
+ * The green square and the surroundings sampled by the crop variants are converted,
+ * or the whole square shown by the preview if the photo is scanned.
+ * The pixels are written in a buffer reused by every capture, hence the analyzer's
+ * thread waits for the recognition before accepting another frame. If the recognition
+ * is cancelled or fails, the fragment is told so, in order to restart the camera.
+ */
+public class CaptureAnalyzer implements ImageAnalysis.Analyzer {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = CaptureAnalyzer.class.getName();
+    /**
+     * A WeakReference of RecognizerFragment object in order to update
+     * the prediction in the recognition tab.
+     */
+    private final WeakReference<RecognizerFragment> mFragRef;
+    /**
+     * An integer containing the number of columns in the recognition tab.
+     */
+    private final int NUM_COLS;
+    /**
+     * A YuvConverter object used to convert the region of the captured frame.
+     */
+    private final YuvConverter mConverter = new YuvConverter();
+    /**
+     * An array of integers containing the ARGB pixels of the last capture (reused).
+     */
+    private int[] mPixels = new int[0];
+    /**
+     * A long containing the time (in nanoseconds, as StageTracer.now()) the pending
+     * capture has been requested (0 if no capture is pending).
+     */
+    private volatile long mRequestNanos = 0L;
+    /**
+     * A boolean that verifies whether the pending capture is scanned.
+     */
+    private volatile boolean mScan = false;
+    /**
+     * An integer containing the number of captures performed.
+     */
+    private int mCaptures = 0;
+
+    public CaptureAnalyzer(RecognizerFragment mFrag, int num_cols) {
+        this.mFragRef = new WeakReference<>(mFrag);
+        this.NUM_COLS = num_cols;
+    }
+
+    /**
+     * Asks for the capture of the next frame: it can be called by any thread.
+     *
+     * @param scan boolean that verifies whether the whole square shown is scanned
+     *             (otherwise only the green square is recognized).
+     */
+    public void request(boolean scan) {
+        mScan = scan;
+        mRequestNanos = StageTracer.now();
+    }
+
+    /**
+     * Closes the frame given, unless a capture has been requested: in that case its
+     * region is converted and recognized (or scanned).
+     *
+     * @param image ImageProxy containing the YUV_420_888 frame.
+     */
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        RecognizerFragment mFrag = mFragRef.get();
+        long requestNanos = mRequestNanos;
+        boolean scan = mScan;
+        int width, height, edgeLength = 0, left = 0, top = 0;
+        try {
+            if (mFrag == null || requestNanos == 0L)
+                return;
+            mRequestNanos = 0L;
+            StageTracer mTracer = mFrag.getStageTracer();
+            mTracer.record(Stage.CAPTURE, requestNanos);
+
+            ImageProxy.PlaneProxy[] mPlanes = image.getPlanes();
+            mConverter.setFrame(mPlanes[0].getBuffer(), mPlanes[0].getRowStride(), mPlanes[0].getPixelStride(),
+                    mPlanes[1].getBuffer(), mPlanes[2].getBuffer(), mPlanes[1].getRowStride(),
+                    mPlanes[1].getPixelStride(), image.getWidth(), image.getHeight(),
+                    image.getImageInfo().getRotationDegrees());
+
+            // The preview shows the centered square of the frame (FILL_CENTER), and the
+            // green square is centered in it
+            int frameWidth = mConverter.getUprightWidth();
+            int frameHeight = mConverter.getUprightHeight();
+            int side = Math.min(frameWidth, frameHeight);
+            int x, y;
+            if (scan) {
+                x = (frameWidth - side) / 2;
+                y = (frameHeight - side) / 2;
+                width = side;
+                height = side;
+            }
+            else {
+                double chosenRatio = mFrag.getChosenRatio();
+                int startPixel = (int) ((side - side * chosenRatio) / 2);
+                edgeLength = (int) (side * chosenRatio);
+                left = (frameWidth - side) / 2 + startPixel;
+                top = (frameHeight - side) / 2 + startPixel;
+                // Converting the surroundings sampled by the crop variants too
+                int contextEdge = CropVariants.contextEdge(edgeLength, mFrag.getVariants());
+                x = CropVariants.contextStart(left, edgeLength, contextEdge, frameWidth);
+                y = CropVariants.contextStart(top, edgeLength, contextEdge, frameHeight);
+                width = Math.min(contextEdge, frameWidth);
+                height = Math.min(contextEdge, frameHeight);
+                left -= x;
+                top -= y;
+            }
+            if (mPixels.length < width * height)
+                mPixels = new int[width * height];
+            mTracer.begin(Stage.CONVERT);
+            mConverter.convert(x, y, width, height, mPixels);
+            mTracer.end(Stage.CONVERT);
+            mCaptures++;
+            Log.i(TAG_LOG, "Capture " + mCaptures + " of " + width + "x" + height + " pixels from a "
+                    + frameWidth + "x" + frameHeight + " frame");
+        } finally {
+            image.close();
+        }
+
+        // The frame has been captured, hence the camera can be stopped
+        mFrag.onCaptured();
+        // Waiting for the recognition, since the captured pixels are reused
+        try {
+            Future<?> mFuture;
+            if (scan)
+                mFuture = new ScanThread(mFrag, mPixels, width, height).start();
+            else
+                mFuture = new RecognizeThread(mFrag, mPixels, width, height, left, top, edgeLength,
+                        NUM_COLS).start();
+            mFuture.get();
+        } catch (CancellationException e) {
+            // The fragment has been detached meanwhile
+            mFrag.onRecognitionAborted();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            mFrag.onRecognitionAborted();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mFrag.onRecognitionAborted();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.simonemallei.gungeonrecognizer.thread;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import com.simonemallei.gungeonrecognizer.BuildConfig;
+import com.simonemallei.gungeonrecognizer.core.CropVariants;
+import com.simonemallei.gungeonrecognizer.core.FrameQualityGate;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.YuvConverter;
+import com.simonemallei.gungeonrecognizer.recognizer.StageTracer;
+import com.simonemallei.gungeonrecognizer.ui.main.RecognizerFragment;
+
+import java.lang.ref.WeakReference;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.thread.LiveAnalyzer
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * LiveAnalyzer class containing the continuous recognition of the camera frames.
+ * It must be used by an ImageAnalysis with the STRATEGY_KEEP_ONLY_LATEST backpressure
+ * strategy: frames that arrive while a recognition is running are replaced by the
+ * newest one instead of being queued, and frames that arrive before the interval of
+ * the target rate has passed are closed right away.
+ * Only the green square of each frame is converted to ARGB pixels, then preprocessed
+ * by a PipelinedRecognizer on the analyzer's thread: its inference stage runs on the
+ * application's scheduler, hence the next frame is converted and preprocessed while
+ * the previous one is in the model.
+ * The scores of consecutive frames are averaged by a ScoreSmoother, so that the shown
+ * predictions do not flicker: once the result is settled the frames are recognized at
+ * SETTLED_RATE only, until its margin drops (the camera has moved to another item).
+ * The average restarts whenever the green square, the crop variants or the model change.
+ * Before any conversion, a FrameQualityGate measures a small luminance grid of the
+ * green square of every frame: blurry or moving frames are not recognized.
+ */
+public class LiveAnalyzer implements ImageAnalysis.Analyzer {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = LiveAnalyzer.class.getName();
+    /**
+     * An integer containing the number of frames between two statistics logs.
+     */
+    private final static int LOG_INTERVAL = 100;
+    /**
+     * A float containing the weight kept by the average of the scores at each frame.
+     */
+    private final static float SMOOTHING_DECAY = 0.6f;
+    /**
+     * A float containing the margin between the two best averaged scores that settles
+     * the result.
+     */
+    private final static float SETTLE_MARGIN = 0.25f;
+    /**
+     * An integer containing the minimum number of frames averaged by a settled result.
+     */
+    private final static int SETTLE_FRAMES = 3;
+    /**
+     * A float containing the number of recognitions performed each second while
+     * the result is settled.
+     */
+    private final static float SETTLED_RATE = 1.0f;
+    /**
+     * An integer containing the length of the edge of the luminance grid measured
+     * by the quality gate.
+     */
+    private final static int GATE_SIZE = 64;
+    /**
+     * A float containing the minimum Laplacian variance of a recognized frame.
+     */
+    private final static float MIN_SHARPNESS = 25.0f;
+    /**
+     * A float containing the maximum mean squared luminance difference between
+     * a recognized frame and the previous one.
+     */
+    private final static float MAX_MOTION = 300.0f;
+    /**
+     * A WeakReference of RecognizerFragment object in order to update
+     * the prediction in the recognition tab.
+     */
+    private final WeakReference<RecognizerFragment> mFragRef;
+    /**
+     * An integer containing the number of columns in the recognition tab.
+     */
+    private final int NUM_COLS;
+    /**
+     * A YuvConverter object used to convert the green square of each frame.
+     */
+    private final YuvConverter mConverter = new YuvConverter();
+    /**
+     * An array of integers containing the ARGB pixels of the last green square and of
+     * its surroundings sampled by the crop variants (reused).
+     */
+    private int[] mPixels = new int[0];
+    /**
+     * A long containing the minimum time (in milliseconds) between two recognitions.
+     */
+    private volatile long mIntervalMillis;
+    /**
+     * A long containing the time (in milliseconds) of the last recognition started.
+     */
+    private long mLastRunMillis = 0L;
+    /**
+     * A PipelinedRecognizer object preprocessing the frames on the analyzer's thread
+     * and scoring them on the scheduler's worker, averaging the scores of consecutive
+     * frames.
+     */
+    private final PipelinedRecognizer mPipeline;
+    /**
+     * A FrameQualityGate object rejecting the blurry and the moving frames.
+     */
+    private final FrameQualityGate mGate = new FrameQualityGate(GATE_SIZE, MIN_SHARPNESS, MAX_MOTION);
+    /**
+     * A boolean that verifies whether the average must restart at the next frame.
+     */
+    private volatile boolean mResetRequested = false;
+    /**
+     * Integers containing the edge of the green square and the crop variants of the
+     * last recognition.
+     */
+    private int mLastEdge = 0;
+    private int mLastVariants = 0;
+    /**
+     * A boolean that verifies whether the average must restart at the next frame
+     * published (a dropped frame keeps it pending).
+     */
+    private boolean mResetPending = false;
+    /**
+     * An integer containing the number of frames received.
+     */
+    private int mFrames = 0;
+    /**
+     * An integer containing the number of frames recognized.
+     */
+    private int mRecognized = 0;
+
+    public LiveAnalyzer(RecognizerFragment mFrag, int num_cols, float targetRate) {
+        this.mFragRef = new WeakReference<>(mFrag);
+        this.NUM_COLS = num_cols;
+        this.mPipeline = new PipelinedRecognizer(mFrag.getRecognizerApplication(), num_cols, SMOOTHING_DECAY,
+                SETTLE_MARGIN, SETTLE_FRAMES);
+        setTargetRate(targetRate);
+    }
+
+    /**
+     * Sets the maximum number of recognitions performed each second.
+     *
+     * @param targetRate float containing the target rate (recognitions per second).
+     */
+    public void setTargetRate(float targetRate) {
+        if (targetRate <= 0.0f)
+            throw new IllegalArgumentException("Target rate must be positive: " + targetRate);
+        mIntervalMillis = (long) (1000.0f / targetRate);
+    }
+
+    /**
+     * Gets the pipeline recognizing the frames, which owns the requests of the
+     * inference stage.
+     *
+     * @return The PipelinedRecognizer object of the analyzer.
+     */
+    public PipelinedRecognizer getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Gets the quality gate, whose counters tell how many inferences it has saved:
+     * it must be used by the analyzer's thread only.
+     *
+     * @return The FrameQualityGate object of the analyzer.
+     */
+    public FrameQualityGate getQualityGate() {
+        return mGate;
+    }
+
+    /**
+     * Restarts the average of the scores at the next frame (for instance when live
+     * mode is enabled again): it can be called by any thread.
+     */
+    public void reset() {
+        mResetRequested = true;
+    }
+
+    /**
+     * Converts the green square of the frame given and recognizes its item, if the
+     * interval of the target rate has passed since the last recognition and the
+     * quality gate accepts the frame (it measures every frame).
+     * The frame is closed as soon as its green square has been converted, and the
+     * analyzer does not wait for the inference.
+     *
+     * @param image ImageProxy containing the YUV_420_888 frame.
+     */
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        RecognizerFragment mFrag = mFragRef.get();
+        int edgeLength, contextWidth, contextHeight, left, top, variants;
+        try {
+            mFrames++;
+            if (mFrag == null)
+                return;
+
+            ImageProxy.PlaneProxy[] mPlanes = image.getPlanes();
+            mConverter.setFrame(mPlanes[0].getBuffer(), mPlanes[0].getRowStride(), mPlanes[0].getPixelStride(),
+                    mPlanes[1].getBuffer(), mPlanes[2].getBuffer(), mPlanes[1].getRowStride(),
+                    mPlanes[1].getPixelStride(), image.getWidth(), image.getHeight(),
+                    image.getImageInfo().getRotationDegrees());
+
+            // The preview shows the centered square of the frame (FILL_CENTER), and the
+            // green square is centered in it
+            int width = mConverter.getUprightWidth();
+            int height = mConverter.getUprightHeight();
+            int side = Math.min(width, height);
+            double chosenRatio = mFrag.getChosenRatio();
+            int startPixel = (int) ((side - side * chosenRatio) / 2);
+            edgeLength = (int) (side * chosenRatio);
+            left = (width - side) / 2 + startPixel;
+            top = (height - side) / 2 + startPixel;
+
+            // The scores (and the luminance) of another crop can not be compared
+            // with the previous ones (the pipeline restarts the average for another model)
+            variants = mFrag.getVariants();
+            if (mResetRequested || edgeLength != mLastEdge || variants != mLastVariants) {
+                mResetRequested = false;
+                mLastEdge = edgeLength;
+                mLastVariants = variants;
+                mGate.reset();
+                mResetPending = true;
+            }
+
+            // Measuring every frame, so that the motion is computed between consecutive ones
+            mConverter.sampleLuma(left, top, edgeLength, GATE_SIZE, mGate.getLuma());
+            mGate.update();
+            long now = SystemClock.elapsedRealtime();
+            long interval = mPipeline.isSettled() && !mResetPending ? Math.max(mIntervalMillis, (long) (1000.0f / SETTLED_RATE))
+                    : mIntervalMillis;
+            if (now - mLastRunMillis < interval || !mGate.accept())
+                return;
+            mLastRunMillis = now;
+
+            // Converting the surroundings sampled by the crop variants too
+            int contextEdge = CropVariants.contextEdge(edgeLength, variants);
+            int contextX = CropVariants.contextStart(left, edgeLength, contextEdge, width);
+            int contextY = CropVariants.contextStart(top, edgeLength, contextEdge, height);
+            contextWidth = Math.min(contextEdge, width);
+            contextHeight = Math.min(contextEdge, height);
+            if (mPixels.length < contextWidth * contextHeight)
+                mPixels = new int[contextWidth * contextHeight];
+            StageTracer mTracer = mFrag.getStageTracer();
+            mTracer.begin(Stage.CONVERT);
+            mConverter.convert(contextX, contextY, contextWidth, contextHeight, mPixels);
+            mTracer.end(Stage.CONVERT);
+            left -= contextX;
+            top -= contextY;
+        } finally {
+            image.close();
+        }
+
+        // Preprocessing the green square into the pipeline, which scores it meanwhile
+        if (!mPipeline.offer(mFrag, mPixels, contextWidth, contextHeight, left, top, edgeLength,
+                variants, mFrag.isAutoCrop(), mResetPending))
+            return;
+        mResetPending = false;
+        mRecognized++;
+        if (mRecognized % LOG_INTERVAL == 0) {
+            Log.i(TAG_LOG, "Recognized " + mRecognized + " frames out of " + mFrames + ", quality gate saved "
+                    + mGate.getSaved() + " inferences (" + mGate.getBlurry() + " blurry, "
+                    + mGate.getMoving() + " moving), pipeline dropped " + mPipeline.getDropped()
+                    + " frames");
+            if (BuildConfig.DEBUG)
+                mFrag.getStageTracer().dump();
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.simonemallei.gungeonrecognizer.thread;
+
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.GungeonRecognizerApplication;
+import com.simonemallei.gungeonrecognizer.core.CropVariants;
+import com.simonemallei.gungeonrecognizer.core.ImagePreprocessor;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.Prediction;
+import com.simonemallei.gungeonrecognizer.core.RecognitionCache;
+import com.simonemallei.gungeonrecognizer.core.SaliencyRoiFinder;
+import com.simonemallei.gungeonrecognizer.core.ScoreSmoother;
+import com.simonemallei.gungeonrecognizer.core.SpscRing;
+import com.simonemallei.gungeonrecognizer.core.TopKSelector;
+import com.simonemallei.gungeonrecognizer.listener.OnRecognitionListener;
+import com.simonemallei.gungeonrecognizer.recognizer.ModelInfo;
+import com.simonemallei.gungeonrecognizer.recognizer.RecognizerCascade;
+import com.simonemallei.gungeonrecognizer.recognizer.RecognizerSession;
+import com.simonemallei.gungeonrecognizer.recognizer.StageTracer;
+import com.simonemallei.gungeonrecognizer.ui.main.RecognizerFragment;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.thread.PipelinedRecognizer
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * PipelinedRecognizer class containing the two-stage recognition of the live frames:
+ * the preprocessing stage runs on the analyzer's thread, the inference stage on the
+ * application's RecognitionScheduler, and they are connected by a SpscRing of
+ * preallocated input tensors. The analyzer's thread can therefore prepare a frame while
+ * the previous one is in the model, and the frame rate approaches the one of the slower
+ * stage instead of the one of both stages in sequence.
+ * The preprocessing stage uses its own copy of the session's preprocessor (refreshed
+ * when the model changes) and its own salient object finder; a frame arriving while
+ * every slot is waiting for the inference stage is dropped.
+ * The inference stage scores every published slot in order, averages the scores with
+ * a ScoreSmoother and shows the predictions of the newest frame. Its requests are owned
+ * by the pipeline, so that they never replace (nor are replaced by) the photos taken.
+ */
+public class PipelinedRecognizer {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = PipelinedRecognizer.class.getName();
+    /**
+     * An integer containing the number of slots of the ring: one filled by the
+     * preprocessing stage while the other one is scored.
+     */
+    private final static int NUM_SLOTS = 2;
+    /**
+     * An integer containing the number of frames scored between two throughput logs.
+     */
+    private final static int LOG_INTERVAL = 100;
+    /**
+     * An integer containing the number of item rows in the recognition tab.
+     */
+    private final static int NUM_ROWS = 2;
+    /**
+     * An integer containing the number of predictions shown.
+     */
+    private final int NUM_ITEMS;
+    /**
+     * Floats and an integer containing the settings of the smoother.
+     */
+    private final float mDecay, mSettleMargin;
+    private final int mSettleFrames;
+    /**
+     * A SpscRing object containing the slots shared by the two stages.
+     */
+    private final SpscRing<Slot> mRing;
+    /**
+     * A SaliencyRoiFinder object used by the preprocessing stage only.
+     */
+    private final SaliencyRoiFinder mRoiFinder = new SaliencyRoiFinder();
+    /**
+     * A GungeonRecognizerApplication object owning the recognizer session and the
+     * scheduler (the analyzer may deliver a frame after the fragment is detached).
+     */
+    private final GungeonRecognizerApplication mApp;
+    /**
+     * An ImagePreprocessor object used by the preprocessing stage only (null until
+     * the first frame), configured for mPreparedModel.
+     */
+    private ImagePreprocessor mPreprocessor = null;
+    /**
+     * A ModelInfo object containing the model the preprocessor has been configured for.
+     */
+    private ModelInfo mPreparedModel = null;
+    /**
+     * A long containing the number of frames dropped by the preprocessing stage.
+     */
+    private volatile long mDropped = 0L;
+    /**
+     * A ScoreSmoother object averaging the scores, used by the inference stage only.
+     */
+    private ScoreSmoother mSmoother = null;
+    /**
+     * An integer containing the number of scores averaged by the smoother at most.
+     */
+    private int mSmootherCapacity = 0;
+    /**
+     * A ModelInfo object containing the model of the last frame scored.
+     */
+    private ModelInfo mLastModel = null;
+    /**
+     * A boolean that verifies whether the last averaged result was settled.
+     */
+    private volatile boolean mSettled = false;
+    /**
+     * A long containing the number of frames scored by the inference stage.
+     */
+    private long mScored = 0L;
+    /**
+     * A long containing the time (in nanoseconds) of the first frame scored since the
+     * last throughput log.
+     */
+    private long mIntervalStartNanos = 0L;
+
+    public PipelinedRecognizer(GungeonRecognizerApplication mApp, int num_cols, float decay,
+                               float settleMargin, int settleFrames) {
+        this.mApp = mApp;
+        this.NUM_ITEMS = num_cols * NUM_ROWS;
+        this.mDecay = decay;
+        this.mSettleMargin = settleMargin;
+        this.mSettleFrames = settleFrames;
+        Slot[] mSlots = new Slot[NUM_SLOTS];
+        for (int i = 0; i < NUM_SLOTS; i++)
+            mSlots[i] = new Slot();
+        this.mRing = new SpscRing<>(mSlots);
+    }
+
+    /**
+     * Preprocesses the green square of a frame into a free slot and asks the inference
+     * stage to score it, without waiting (preprocessing stage only).
+     *
+     * @param mFrag RecognizerFragment object showing the predictions.
+     * @param pixels array of integers containing the ARGB pixels around the green square
+     *               (they can be reused as soon as the method returns).
+     * @param width integer containing the width of the pixels' region.
+     * @param height integer containing the height of the pixels' region.
+     * @param left integer containing the left column of the green square.
+     * @param top integer containing the top row of the green square.
+     * @param edge integer containing the length of the green square's edge.
+     * @param variants integer containing the number of crop variants scored.
+     * @param autoCrop boolean that verifies whether the crop is tightened around the
+     *                 most salient object of the green square.
+     * @param reset boolean that verifies whether the average of the scores must restart.
+     * @return True if the frame has been published, false if it has been dropped.
+     */
+    public boolean offer(RecognizerFragment mFrag, int[] pixels, int width, int height, int left, int top,
+                         int edge, int variants, boolean autoCrop, boolean reset) {
+        Slot mSlot = mRing.claim();
+        if (mSlot == null) {
+            mDropped++;
+            return false;
+        }
+        StageTracer mTracer = mApp.getStageTracer();
+        RecognizerSession mSession = mApp.getRecognizerSession();
+        if (mPreprocessor == null || mSession.getNextModelInfo() != mPreparedModel) {
+            // The preprocessor depends on the loaded model: it is copied once per model
+            try {
+                synchronized (mSession) {
+                    mSession.prepare();
+                    mPreprocessor = new ImagePreprocessor(mSession.getPreprocessor());
+                    mPreparedModel = mSession.getModelInfo();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        if (reset)
+            mSettled = false;
+
+        // Tightening the crop around the most salient object of the green square
+        int cropEdge = edge;
+        if (autoCrop) {
+            mTracer.begin(Stage.ROI);
+            if (mRoiFinder.find(pixels, top * width + left, width, edge)) {
+                left += mRoiFinder.getLeft();
+                top += mRoiFinder.getTop();
+                cropEdge = mRoiFinder.getEdge();
+            }
+            mTracer.end(Stage.ROI);
+        }
+
+        mTracer.begin(Stage.PREPROCESS);
+        ByteBuffer mInput = mSlot.getInput(mPreparedModel, mPreprocessor.getInputBytes(), variants);
+        if (variants == 1)
+            mPreprocessor.preprocess(pixels, top * width + left, width, cropEdge, cropEdge, mInput);
+        else
+            CropVariants.preprocess(mPreprocessor, pixels, width, width, height, left, top, cropEdge,
+                    variants, mInput);
+        mSlot.mHash = mPreprocessor.dHash();
+        mTracer.end(Stage.PREPROCESS);
+        mSlot.mVariants = variants;
+        mSlot.mReset = reset;
+        mSlot.mRequestNanos = StageTracer.now();
+        mRing.publish();
+
+        InferenceTask mTask = new InferenceTask(mFrag);
+        mApp.getRecognitionScheduler().submit(this, mTask, mTask);
+        return true;
+    }
+
+    /**
+     * Verifies whether the result of the last frame scored is settled: it can be
+     * called by any thread.
+     *
+     * @return True if the averaged result is settled.
+     */
+    public boolean isSettled() {
+        return mSettled;
+    }
+
+    /**
+     * Gets the number of frames dropped because every slot was waiting for the
+     * inference stage.
+     *
+     * @return A long containing the number of frames dropped.
+     */
+    public long getDropped() {
+        return mDropped;
+    }
+
+    /**
+     * Scores every published slot in order (inference stage only).
+     *
+     * @param mApp GungeonRecognizerApplication object owning the session.
+     * @param mTask InferenceTask object receiving the request time of the newest frame.
+     * @return The List of the best predictions of the newest frame (null if no frame
+     *         has been scored).
+     */
+    private List<Prediction> drain(GungeonRecognizerApplication mApp, InferenceTask mTask) {
+        List<Prediction> newPredictions = null;
+        StageTracer mTracer = mApp.getStageTracer();
+        RecognizerSession mSession = mApp.getRecognizerSession();
+        Slot mSlot;
+        while ((mSlot = mRing.peek()) != null) {
+            mTracer.begin(Stage.RECOGNITION);
+            try {
+                synchronized (mSession) {
+                    mSession.prepare();
+                    // The frames preprocessed for a previous model are dropped
+                    if (mSlot.mModel == mSession.getModelInfo()) {
+                        newPredictions = score(mApp, mSession, mSlot);
+                        mTask.mRequestNanos = mSlot.mRequestNanos;
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                mTracer.end(Stage.RECOGNITION);
+                mRing.release();
+            }
+        }
+        return newPredictions;
+    }
+
+    /**
+     * Scores a slot (or reuses the cached scores of its image), averages the scores
+     * with the previous frames and selects the best predictions. It must be called
+     * while holding the session's lock.
+     */
+    private List<Prediction> score(GungeonRecognizerApplication mApp, RecognizerSession mSession,
+                                   Slot mSlot) throws IOException {
+        StageTracer mTracer = mApp.getStageTracer();
+        ByteBuffer mInput = mSlot.mInputs[mSlot.mVariants];
+        RecognitionCache mCache = mSession.getCache();
+        RecognizerCascade mCascade = mApp.getCascade();
+        String model = mSlot.mModel.getId();
+        int entry = mCache.lookup(mSlot.mHash, mSlot.mVariants, model, mCascade != null);
+        float[] mScores;
+        if (entry >= 0)
+            mScores = mCache.getScores(entry);
+        else {
+            mScores = mCascade != null ? mCascade.scoreAll(mSession, mInput, mSlot.mVariants)
+                    : mSession.scoreAll(mInput, mSlot.mVariants);
+            mCache.put(mSlot.mHash, mSlot.mVariants, model, mCascade != null, mScores, mSession.getItems());
+        }
+
+        mTracer.begin(Stage.TOP_K);
+        int items = mSession.getItems();
+        if (mSmoother == null || mSmootherCapacity < items) {
+            mSmootherCapacity = Math.max(items, RecognizerSession.ITEMS_NUM);
+            mSmoother = new ScoreSmoother(mSmootherCapacity, mDecay, mSettleMargin, mSettleFrames);
+        }
+        else if (mSlot.mReset || mSlot.mModel != mLastModel)
+            mSmoother.reset();
+        mLastModel = mSlot.mModel;
+        mSmoother.update(mScores, items);
+        TopKSelector mSelector = mSession.getSelector();
+        mSelector.select(mSmoother.getScores(), items, NUM_ITEMS);
+        mTracer.end(Stage.TOP_K);
+
+        boolean settled = mSmoother.isSettled();
+        if (settled != mSettled) {
+            mSettled = settled;
+            Log.i(TAG_LOG, (settled ? "Result settled on item " + mSlot.mModel.getItem(mSmoother.getBest())
+                    : "Result unsettled") + " after " + mSmoother.getFrames() + " frames (margin "
+                    + mSmoother.getMargin() + ")");
+        }
+        logThroughput();
+        return mSlot.mModel.toItems(mSelector.toPredictions());
+    }
+
+    /**
+     * Logs the frame rate of the inference stage every LOG_INTERVAL frames.
+     */
+    private void logThroughput() {
+        long now = StageTracer.now();
+        if (mScored++ % LOG_INTERVAL == 0) {
+            if (mScored > 1)
+                Log.i(TAG_LOG, String.format(Locale.US,
+                        "Pipeline scored %d frames at %.1f frames/s (%d dropped by a full ring)",
+                        mScored - 1, LOG_INTERVAL * 1e9 / (now - mIntervalStartNanos), mDropped));
+            mIntervalStartNanos = now;
+        }
+    }
+
+    /**
+     * Slot class containing a preprocessed frame, reused by the ring.
+     */
+    private static class Slot {
+
+        /**
+         * An array of direct ByteBuffers (native order) containing, for each number of
+         * crop variants, the input tensor (allocated on first use).
+         */
+        private final ByteBuffer[] mInputs = new ByteBuffer[CropVariants.MAX_VARIANTS + 1];
+        /**
+         * A ModelInfo object containing the model the input tensors have been
+         * preprocessed for.
+         */
+        private ModelInfo mModel = null;
+        /**
+         * An integer containing the number of crop variants of the frame.
+         */
+        private int mVariants = 1;
+        /**
+         * A long containing the perceptual hash of the frame's crop.
+         */
+        private long mHash = 0L;
+        /**
+         * A boolean that verifies whether the average of the scores must restart.
+         */
+        private boolean mReset = false;
+        /**
+         * A long containing the time (in nanoseconds, as StageTracer.now()) the frame
+         * has been published.
+         */
+        private long mRequestNanos = 0L;
+
+        /**
+         * Gets the input tensor of the slot for the model and the variants given,
+         * discarding the tensors of another model.
+         */
+        private ByteBuffer getInput(ModelInfo model, int inputBytes, int variants) {
+            if (model != mModel) {
+                Arrays.fill(mInputs, null);
+                mModel = model;
+            }
+            if (mInputs[variants] == null || mInputs[variants].capacity() != variants * inputBytes)
+                mInputs[variants] = ByteBuffer.allocateDirect(variants * inputBytes)
+                        .order(ByteOrder.nativeOrder());
+            return mInputs[variants];
+        }
+    }
+
+    /**
+     * InferenceTask class containing a request of the inference stage: it scores every
+     * published slot, and its listener shows the predictions of the newest one.
+     */
+    private class InferenceTask implements Callable<List<Prediction>>, OnRecognitionListener<List<Prediction>> {
+
+        /**
+         * A WeakReference of RecognizerFragment object showing the predictions.
+         */
+        private final WeakReference<RecognizerFragment> mFragRef;
+        /**
+         * A long containing the time (in nanoseconds) the newest frame scored has been
+         * published (written by the worker before the listener is called).
+         */
+        private volatile long mRequestNanos = 0L;
+
+        public InferenceTask(RecognizerFragment mFrag) {
+            this.mFragRef = new WeakReference<>(mFrag);
+        }
+
+        @Override
+        public List<Prediction> call() {
+            RecognizerFragment mFrag = mFragRef.get();
+            if (mFrag == null)
+                return null;
+            return drain(mApp, this);
+        }
+
+        @Override
+        public void onRecognition(List<Prediction> newPredictions) {
+            RecognizerFragment mFrag = mFragRef.get();
+            // A request finding the ring already drained by the previous one shows nothing
+            if (mFrag != null && newPredictions != null)
+                RecognizeThread.showPredictions(mFrag, newPredictions, mRequestNanos);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.simonemallei.gungeonrecognizer.thread;
+
+import com.simonemallei.gungeonrecognizer.listener.OnRecognitionListener;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.thread.RecognitionScheduler
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * RecognitionScheduler class containing the single worker that performs every recognition.
+ * At most one recognition is running, and each owner (for instance a fragment, or the
+ * application warming up the recognizer) has at most one request waiting: a new request
+ * replaces (and cancels) the waiting one of the same owner, so rapid repeated requests
+ * collapse into the most recent, while the requests of different owners never replace
+ * each other and are performed in the order submitted.
+ * The waiting and running requests of an owner can be cancelled at once: the listener
+ * of a cancelled request is never called.
+ * The get() methods of the Futures returned wait for the task to return even if it has
+ * been cancelled while running, since the task may still read the caller's buffers.
+ * Recognitions are serialized, hence their results can not race with each other.
+ */
+public class RecognitionScheduler {
+
+    /**
+     * A String containing the name of the worker thread.
+     */
+    private final static String THREAD_NAME = "RecognitionScheduler";
+    /**
+     * A ThreadPoolExecutor containing the single worker, with a queue of at most one
+     * request for each owner.
+     */
+    private final ThreadPoolExecutor mExecutor;
+    /**
+     * A Map containing the request waiting for the worker of each owner.
+     */
+    private final Map<Object, Request<?>> mPending = new IdentityHashMap<>();
+    /**
+     * A Request object containing the request performed by the worker (null if none).
+     */
+    private Request<?> mRunning = null;
+    /**
+     * A long containing the number of requests submitted.
+     */
+    private long mSubmitted = 0L;
+    /**
+     * A long containing the number of requests replaced by a more recent one.
+     */
+    private long mCoalesced = 0L;
+    /**
+     * A long containing the number of requests cancelled with their owner.
+     */
+    private long mCancelled = 0L;
+    /**
+     * A long containing the number of requests completed.
+     */
+    private long mCompleted = 0L;
+
+    public RecognitionScheduler() {
+        mExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, THREAD_NAME);
+            }
+        });
+    }
+
+    /**
+     * Submits a recognition, replacing the one of the same owner waiting for the worker
+     * (if any).
+     *
+     * @param owner Object owning the request (used by cancel()).
+     * @param task Callable performing the recognition.
+     * @param listener OnRecognitionListener called with the result if the request is
+     *                 completed without being cancelled (it may be null).
+     * @return The Future of the recognition, cancelled if the request is replaced or its
+     *         owner is cancelled: its get() methods return (or throw) once the task has
+     *         returned, or once the request has been removed before being started.
+     */
+    public synchronized <T> Future<T> submit(Object owner, Callable<T> task,
+                                             OnRecognitionListener<T> listener) {
+        Request<T> mRequest = new Request<>(owner, task, listener);
+        mSubmitted++;
+        // Collapsing the waiting request of the same owner into the new one
+        if (discard(mPending.put(owner, mRequest)))
+            mCoalesced++;
+        mExecutor.execute(mRequest);
+        return mRequest;
+    }
+
+    /**
+     * Cancels the waiting and running requests of the owner given: the running
+     * recognition is completed but its result is discarded.
+     *
+     * @param owner Object owning the requests.
+     */
+    public synchronized void cancel(Object owner) {
+        if (discard(mPending.remove(owner)))
+            mCancelled++;
+        if (mRunning != null && mRunning.mOwner == owner && mRunning.cancel(false))
+            mCancelled++;
+    }
+
+    /**
+     * Cancels a waiting request and removes it from the worker's queue.
+     *
+     * @param mRequest Request waiting (it may be null).
+     * @return True if a request has been cancelled.
+     */
+    private boolean discard(Request<?> mRequest) {
+        if (mRequest == null)
+            return false;
+        mRequest.cancel(false);
+        // A request taken by the worker meanwhile signals its end when run() returns
+        if (mExecutor.remove(mRequest))
+            mRequest.mFinished.countDown();
+        return true;
+    }
+
+    /**
+     * Stops the worker once the running request has been completed, cancelling the waiting one.
+     */
+    public synchronized void shutdown() {
+        Iterator<Request<?>> mIterator = mPending.values().iterator();
+        while (mIterator.hasNext()) {
+            discard(mIterator.next());
+            mIterator.remove();
+        }
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Waits for the worker to stop after shutdown().
+     *
+     * @param timeout long containing the maximum time to wait.
+     * @param unit TimeUnit of the timeout.
+     * @return True if the worker has stopped, false if the timeout has elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+
+    public synchronized long getSubmitted() {
+        return mSubmitted;
+    }
+
+    public synchronized long getCoalesced() {
+        return mCoalesced;
+    }
+
+    public synchronized long getCancelled() {
+        return mCancelled;
+    }
+
+    public synchronized long getCompleted() {
+        return mCompleted;
+    }
+
+    /**
+     * Updates the state of the scheduler when the worker starts a request.
+     *
+     * @param mRequest Request started.
+     */
+    private synchronized void onStart(Request<?> mRequest) {
+        if (mPending.get(mRequest.mOwner) == mRequest)
+            mPending.remove(mRequest.mOwner);
+        mRunning = mRequest;
+    }
+
+    /**
+     * Updates the state of the scheduler when the worker ends a request.
+     *
+     * @param mRequest Request ended.
+     */
+    private synchronized void onEnd(Request<?> mRequest) {
+        if (mRunning == mRequest)
+            mRunning = null;
+        if (!mRequest.isCancelled())
+            mCompleted++;
+    }
+
+    /**
+     * Request class containing a recognition submitted to the scheduler.
+     */
+    private class Request<T> extends FutureTask<T> {
+
+        /**
+         * An Object owning the request.
+         */
+        private final Object mOwner;
+        /**
+         * An OnRecognitionListener called with the result (it may be null).
+         */
+        private final OnRecognitionListener<T> mListener;
+        /**
+         * A CountDownLatch released once the task has returned (or once the request has
+         * been removed before being started).
+         */
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+
+        public Request(Object owner, Callable<T> task, OnRecognitionListener<T> listener) {
+            super(task);
+            this.mOwner = owner;
+            this.mListener = listener;
+        }
+
+        @Override
+        public void run() {
+            onStart(this);
+            try {
+                super.run();
+            } finally {
+                onEnd(this);
+                mFinished.countDown();
+            }
+        }
+
+        /**
+         * Waits for the task to return, even if the request has been cancelled meanwhile,
+         * then gets its result.
+         */
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            mFinished.await();
+            return super.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!mFinished.await(timeout, unit))
+                throw new TimeoutException();
+            return super.get(0L, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Calls the listener if the request has been completed, not cancelled: done() is
+         * called once, either by the worker or by the first successful cancel().
+         */
+        @Override
+        protected void done() {
+            if (mListener == null || isCancelled())
+                return;
+            try {
+                // The task has returned, hence its result is ready
+                mListener.onRecognition(super.get());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -1,24 +1,26 @@
 package com.simonemallei.gungeonrecognizer.thread;
 
-import android.content.res.AssetFileDescriptor;
-import android.graphics.Bitmap;
-import android.graphics.Color;
-
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.GungeonRecognizerApplication;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.Prediction;
+import com.simonemallei.gungeonrecognizer.core.RecognizerSelector;
+import com.simonemallei.gungeonrecognizer.core.SaliencyRoiFinder;
+import com.simonemallei.gungeonrecognizer.listener.OnRecognitionListener;
 import com.simonemallei.gungeonrecognizer.model.ApplicationModel;
 import com.simonemallei.gungeonrecognizer.model.ItemModel;
+import com.simonemallei.gungeonrecognizer.recognizer.RecognizerSession;
+import com.simonemallei.gungeonrecognizer.recognizer.StageTracer;
 import com.simonemallei.gungeonrecognizer.ui.main.RecognizerFragment;
 
-import org.tensorflow.lite.Interpreter;
-
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /*
  * Class Name
@@ -33,30 +35,30 @@ import java.util.List;
 
 /**
  * RecognizeThread class containing steps to recognition items in a photo.
+ * The recognition is performed by the application's RecognitionScheduler, and its
+ * result is shown only if the request has not been replaced or cancelled meanwhile.
+ * If the automatic crop is enabled, the crop is tightened around the most salient
+ * object of the green square before recognizing it.
+ * The crop is recognized by the application's RecognizerSelector: by the model (which
+ * scores the crop variants asked by the fragment), or by matching it against the
+ * items' templates if the model keeps failing (for instance if it can not be loaded).
  */
-public class RecognizeThread implements Runnable {
+public class RecognizeThread implements Callable<List<Prediction>>, OnRecognitionListener<List<Prediction>> {
 
     /**
-     * A boolean that verifies if the thread is running.
+     * A String used for log debugging.
      */
-    private volatile boolean mRunning;
+    private static final String TAG_LOG = RecognizeThread.class.getName();
     /**
      * A WeakReference of RecognizerFragment object in order to update
      * the prediction in the recognition tab.
      */
     private WeakReference<RecognizerFragment> mFragRef;
     /**
-     * An integer containing the scaled width of the image considered.
-     */
-    private final static int WIDTH_VAL=32;
-    /**
-     * An integer containing the scaled height of the image considered.
-     */
-    private final static int HEIGHT_VAL=32;
-    /**
-     * An integer containing the number of the channels of the image.
+     * A GungeonRecognizerApplication object owning the recognizer and the scheduler
+     * (resolved once, since the fragment may be detached before the recognition runs).
      */
-    private final static int NUM_CHANNELS=3;
+    private final GungeonRecognizerApplication mApp;
     /**
      * An integer containing the number of each prediction
      * for each row (number of columns in the recognition tab).
@@ -67,186 +69,151 @@ public class RecognizeThread implements Runnable {
      */
     private final static int NUM_ROWS = 2;
     /**
-     * A String containing the path to the recognition model.
+     * An integer containing the length of the green square's edge (height and width).
      */
-    private final static String FILE_PATH="recognizer_model/";
+    private int edgeLength;
     /**
-     * An integer containing the number of items
-     * (hence the size of the output array obtained by the neural network).
+     * An integer containing the number of crop variants scored (1 if the
+     * test-time augmentation is disabled).
      */
-    private final static int ITEMS_NUM = 509;
+    private int mVariants;
     /**
-     * An integer containing the (x,y) value (x == y) of the top-left
-     * pixel in the image.
+     * A boolean that verifies whether the crop is tightened around the most salient
+     * object of the green square.
      */
-    private int startPixel;
+    private boolean mAutoCrop;
     /**
-     * An integer containing the length of the image's edge (height and width).
+     * An array of integers containing the ARGB pixels of the image (row-major).
      */
-    private int edgeLength;
+    private int[] mRaster;
+    /**
+     * Integers containing the width and the height of the raster.
+     */
+    private int mRasterWidth, mRasterHeight;
     /**
-     * A Thread object referring to the thread called by the class.
+     * Integers containing the left column and the top row of the green square in the raster.
      */
-    private Thread mThread;
+    private int mRasterLeft, mRasterTop;
     /**
-     * A Bitmap object containing the image during the prediction process.
+     * A long containing the time (in nanoseconds, as StageTracer.now()) the recognition
+     * has been requested.
      */
-    private Bitmap mBitmap = null;
+    private final long mRequestNanos = StageTracer.now();
 
-    public RecognizeThread(RecognizerFragment mFrag, Bitmap mBitmap, int num_cols){
+    public RecognizeThread(RecognizerFragment mFrag, int[] mRaster, int width, int height,
+                           int left, int top, int edgeLength, int num_cols){
         this.mFragRef = new WeakReference<>(mFrag);
-        this.mBitmap = mBitmap;
-        this.startPixel = 0;
-        this.edgeLength = mBitmap.getWidth();
+        this.mApp = mFrag.getRecognizerApplication();
+        this.mRaster = mRaster;
+        this.mRasterWidth = width;
+        this.mRasterHeight = height;
+        this.mRasterLeft = left;
+        this.mRasterTop = top;
+        this.edgeLength = edgeLength;
+        this.mVariants = mFrag.getVariants();
+        this.mAutoCrop = mFrag.isAutoCrop();
         NUM_ITEMS = num_cols * NUM_ROWS;
     }
 
-    public void start() {
-        if (!mRunning) {
-            mRunning = true;
-            mThread = new Thread(this);
-            mThread.start();
-        }
-    }
-
     /**
-     * Performs histEqualization of a HSV image (with size width * height)
-     * on V values.
+     * Submits the recognition to the application's scheduler, replacing the fragment's one
+     * waiting for it (if any).
      *
-     * @param hsvColor array of HSV values in range [0; 1] where:
-     *                 - hsvColor[x][y][0] contains H value on (x, y) pixel,
-     *                 - hsvColor[x][y][1] contains S value on (x, y) pixel,
-     *                 - hsvColor[x][y][2] contains V value on (x, y) pixel.
-     * @param width size of first dimension of hsvColor (x-axis).
-     * @param height size of second dimension of hsvColor (y-axis).
-     */
-    private void histEqualization(float[][][] hsvColor, int width, int height){
-        // Performing hist equalization on V values (from HSV image)
-        float [] vValues = new float[width * height];
-        for (int x = 0; x < width; x++)
-            for (int y = 0; y < height; y++)
-                    vValues[x*height + y] = hsvColor[x][y][2];
-        Arrays.sort(vValues);
-
-        // Finding minimum cumulative distribution function
-        int min_cdf = 1;
-        while (min_cdf != width * height && vValues[min_cdf] == vValues[min_cdf-1])
-            min_cdf++;
-
-        // Finding cumulative distribution for each pixel and converting it into
-        // new V value for the resulting HSV image
-        for (int x = 0; x < width; x++){
-            for (int y = 0; y < height; y++){
-                int start = 1;
-                int end = width * height;
-                int pix_cdf = width * height;
-                while (start <= end){
-                    int medium = (start + end) / 2;
-                    if (vValues[medium-1] > hsvColor[x][y][2]){
-                        pix_cdf = medium;
-                        end = medium - 1;
-                    }
-                    else
-                        start = medium + 1;
-                }
-                hsvColor[x][y][2] = ((float) (pix_cdf - min_cdf)) / ((float) (width * height - min_cdf));
-            }
-        }
+     * @return The Future of the predictions (cancelled if the request is replaced or
+     *         the fragment is detached).
+     */
+    public Future<List<Prediction>> start() {
+        return mApp.getRecognitionScheduler().submit(mFragRef.get(), this, this);
     }
 
     /**
-     * Performs histogram equalization on V values, then it scales the bitmap obtained
-     * to a 32x32 image.
-     * Afterwards the neural networks predicts the items in the image and eventually the
-     * thread updates recognition tab's model.
+     * Reads the pixels around the green square (tightening the crop if needed), then
+     * recognizes the items in it with the fastest healthy engine.
+     *
+     * @return The List of the best predictions (empty if the recognition fails).
      */
-    public void run() {
+    @Override
+    public List<Prediction> call() {
         RecognizerFragment mFrag = mFragRef.get();
 
-        List<ItemModel> newModel = new ArrayList<>();
-        if (mBitmap != null) {
-
-            // Mapping RGB to HSV
-            float[][][] hsvColor = new float[mBitmap.getWidth()][mBitmap.getHeight()][NUM_CHANNELS];
-            for (int x = 0; x < mBitmap.getWidth(); x++) {
-                for (int y = 0; y < mBitmap.getHeight(); y++) {
-                    int mPixel = mBitmap.getPixel(x, y);
-                    int[] pixelColor = new int[NUM_CHANNELS];
-                    pixelColor[0] = (mPixel >> 16) & 0xff;
-                    pixelColor[1] = (mPixel >> 8) & 0xff;
-                    pixelColor[2] = mPixel & 0xff;
-                    Color.RGBToHSV(pixelColor[0], pixelColor[1], pixelColor[2], hsvColor[x][y]);
-                }
-            }
-            // Applying Histogram Equalization on V
-            histEqualization(hsvColor, mBitmap.getWidth(), mBitmap.getHeight());
-            // Mapping HSV to RGB
-            int[] newBitmap = new int[mBitmap.getWidth() * mBitmap.getHeight()];
-            for (int x = 0; x < mBitmap.getWidth(); x++)
-                for (int y = 0; y < mBitmap.getHeight(); y++){
-                    newBitmap[y * mBitmap.getHeight() + x] = Color.HSVToColor(hsvColor[x][y]);
-                }
-            mBitmap = Bitmap.createBitmap(newBitmap, mBitmap.getWidth(), mBitmap.getHeight(), Bitmap.Config.ARGB_8888);
-            mBitmap = Bitmap.createBitmap(mBitmap, startPixel, startPixel, edgeLength, edgeLength);
-
-            // Scaling bitmap to *WIDTH_VAL*, *HEIGHT_VAL*
-            mBitmap = Bitmap.createScaledBitmap(mBitmap, WIDTH_VAL, HEIGHT_VAL, true);
-
-            AssetFileDescriptor mDescriptor = null;
+        List<Prediction> newPredictions = Collections.emptyList();
+        if (mFrag != null) {
+            StageTracer mTracer = mApp.getStageTracer();
+            mTracer.begin(Stage.RECOGNITION);
             try {
-                // Loading TensorFlow Lite model
-                String modelPath = FILE_PATH + "GungeonModel.tflite";
-                mDescriptor = mFrag.getContext().getAssets().openFd(modelPath);
-                FileInputStream mStream = new FileInputStream(mDescriptor.getFileDescriptor());
-                FileChannel mChannel = mStream.getChannel();
-                MappedByteBuffer mBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY,
-                        mDescriptor.getStartOffset(), mDescriptor.getDeclaredLength());
-                Interpreter mInterpreter = new Interpreter((ByteBuffer)(mBuffer));
-                float [][][][] mInput = new float[1][WIDTH_VAL][HEIGHT_VAL][NUM_CHANNELS];
-                float [][] mOutput = new float[1][ITEMS_NUM];
-                // From RGB [0-255] range, to RGB [0-1] range
-                // Y is the row
-                // X is the column
-                for (int x = 0; x < WIDTH_VAL; x++)
-                    for (int y = 0; y < HEIGHT_VAL; y++){
-                        int mPixel = mBitmap.getPixel(x, y);
-                        float [] pixelColor = new float[NUM_CHANNELS];
-                        pixelColor[0] = (mPixel >> 16) & 0xff;
-                        pixelColor[1] = (mPixel >> 8) & 0xff;
-                        pixelColor[2] = mPixel & 0xff;
-                        for (int col = 0; col < pixelColor.length; col++)
-                            mInput[0][y][x][col] = pixelColor[col] / 255.0f;
-                    }
-
-                // Model prediction
-                mInterpreter.run(mInput, mOutput);
-
-                // Finding *NUM_ITEMS* result items and adding them into the new model
-                int [] max_ind = new int[NUM_ITEMS];
-                Arrays.fill(max_ind, -1);
-                for (int i = 0; i < mOutput[0].length; i++) {
-                    int j = 0;
-                    while(j < max_ind.length && max_ind[j] != -1 && mOutput[0][i] < mOutput[0][max_ind[j]])
-                        j++;
-                    if (j != max_ind.length) {
-                        if (max_ind[j] == -1)
-                            max_ind[j] = i;
-                        else {
-                            for (int k = max_ind.length-1; k > j; k--)
-                                max_ind[k] = max_ind[k-1];
-                            max_ind[j] = i;
+                // Getting the TensorFlow Lite session shared by the application, whose
+                // buffers are reused by every recognition
+                RecognizerSession mSession = mApp.getRecognizerSession();
+                synchronized (mSession) {
+                    // The pixels sampled by the crop variants have been captured already,
+                    // and the session is not prepared here so that the templates can
+                    // recognize the crop when the model can not be loaded
+                    int[] mPixels = mRaster;
+                    int width = mRasterWidth, height = mRasterHeight;
+                    int left = mRasterLeft, top = mRasterTop;
+
+                    // Tightening the crop around the most salient object of the green square,
+                    // which becomes the area searched (the whole square is kept if nothing
+                    // stands out of the floor)
+                    int cropEdge = edgeLength;
+                    if (mAutoCrop) {
+                        SaliencyRoiFinder mFinder = mApp.getRoiFinder();
+                        mTracer.begin(Stage.ROI);
+                        if (mFinder.find(mPixels, top * width + left, width, edgeLength)) {
+                            left += mFinder.getLeft();
+                            top += mFinder.getTop();
+                            cropEdge = mFinder.getEdge();
+                            Log.i(TAG_LOG, "Automatic crop of " + cropEdge + "px out of " + edgeLength + "px");
                         }
+                        mTracer.end(Stage.ROI);
                     }
-                }
-                for (int i = 0; i < max_ind.length; i++)
-                    newModel.add(ApplicationModel.ITEMS.get(max_ind[i]));
 
+                    // Recognizing the crop with the fastest healthy engine: the model, or the
+                    // templates if the model keeps failing
+                    mApp.getTfliteRecognizer().setVariants(mVariants);
+                    RecognizerSelector mRecognizer = mApp.getRecognizer();
+                    newPredictions = mRecognizer.recognize(mPixels, width, height, left, top, cropEdge, NUM_ITEMS);
+                    Log.i(TAG_LOG, "Recognition engines: " + mRecognizer.report());
+                }
             } catch (IOException | NullPointerException e) {
                 e.printStackTrace();
+            } finally {
+                mTracer.end(Stage.RECOGNITION);
             }
         }
+        return newPredictions;
+    }
+
+    /**
+     * Updates recognition tab's model with the predictions given.
+     *
+     * @param newPredictions List of the best predictions.
+     */
+    @Override
+    public void onRecognition(List<Prediction> newPredictions) {
+        RecognizerFragment mFrag = mFragRef.get();
+        if (mFrag == null)
+            return;
+        showPredictions(mFrag, newPredictions, mRequestNanos);
+    }
+
+    /**
+     * Updates recognition tab's model with the predictions of a recognition (on the
+     * UI thread).
+     *
+     * @param mFrag RecognizerFragment object showing the predictions.
+     * @param newPredictions List of the best predictions.
+     * @param requestNanos long containing the time (as StageTracer.now()) the
+     *                     predictions have been requested.
+     */
+    static void showPredictions(RecognizerFragment mFrag, List<Prediction> newPredictions, long requestNanos) {
+        List<ItemModel> newModel = new ArrayList<>();
+        for (Prediction mPrediction : newPredictions)
+            newModel.add(ApplicationModel.ITEMS.get(mPrediction.getIndex()));
         mFrag.mModel.clear();
         mFrag.mModel = newModel;
-        mFrag.updateResult();
+        mFrag.mPredictions = newPredictions;
+        mFrag.clearDetections();
+        mFrag.updateResult(requestNanos);
     }
 }
@@ -0,0 +1,180 @@
+package com.simonemallei.gungeonrecognizer.thread;
+
+import android.util.Log;
+
+import com.simonemallei.gungeonrecognizer.GungeonRecognizerApplication;
+import com.simonemallei.gungeonrecognizer.core.Detection;
+import com.simonemallei.gungeonrecognizer.core.ImagePreprocessor;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.WindowScanner;
+import com.simonemallei.gungeonrecognizer.listener.OnRecognitionListener;
+import com.simonemallei.gungeonrecognizer.recognizer.ModelInfo;
+import com.simonemallei.gungeonrecognizer.recognizer.RecognizerSession;
+import com.simonemallei.gungeonrecognizer.recognizer.StageTracer;
+import com.simonemallei.gungeonrecognizer.ui.main.RecognizerFragment;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.thread.ScanThread
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * ScanThread class containing the scan of a whole photo, in order to recognize
+ * every item in it (for instance in a shop or in a chest room).
+ * The windows of the application's WindowScanner are preprocessed in parallel and
+ * scored in batches of SCAN_BATCH windows, then the overlapping detections are
+ * suppressed. The scan is performed by the application's RecognitionScheduler, and
+ * its throughput (windows per second) is logged with the detections.
+ * The photo is a raster of ARGB pixels (captured from a camera frame), which is
+ * scanned in place.
+ */
+public class ScanThread implements Callable<List<Detection>>, OnRecognitionListener<List<Detection>> {
+
+    /**
+     * A String used for log debugging.
+     */
+    private static final String TAG_LOG = ScanThread.class.getName();
+    /**
+     * An integer containing the number of windows scored by each invocation.
+     */
+    private final static int SCAN_BATCH = RecognizerSession.MAX_BATCH;
+    /**
+     * A float containing the minimum score of a detection.
+     */
+    private final static float MIN_SCORE = 0.5f;
+    /**
+     * A float containing the maximum intersection over union between two detections kept.
+     */
+    private final static float MAX_OVERLAP = 0.3f;
+    /**
+     * A WeakReference of RecognizerFragment object in order to update
+     * the detections in the recognition tab.
+     */
+    private WeakReference<RecognizerFragment> mFragRef;
+    /**
+     * A GungeonRecognizerApplication object owning the recognizer and the scheduler
+     * (resolved once, since the fragment may be detached before the scan runs).
+     */
+    private final GungeonRecognizerApplication mApp;
+    /**
+     * An array of integers containing the ARGB pixels of the photo to scan.
+     */
+    private final int[] mRaster;
+    /**
+     * Integers containing the width and the height of the photo.
+     */
+    private final int mWidth, mHeight;
+    /**
+     * A long containing the time (in nanoseconds, as StageTracer.now()) the scan
+     * has been requested.
+     */
+    private final long mRequestNanos = StageTracer.now();
+
+    public ScanThread(RecognizerFragment mFrag, int[] mRaster, int width, int height) {
+        this.mFragRef = new WeakReference<>(mFrag);
+        this.mApp = mFrag.getRecognizerApplication();
+        this.mRaster = mRaster;
+        this.mWidth = width;
+        this.mHeight = height;
+    }
+
+    /**
+     * Submits the scan to the application's scheduler, replacing the fragment's recognition
+     * waiting for it (if any).
+     *
+     * @return The Future of the detections (cancelled if the request is replaced or
+     *         the fragment is detached).
+     */
+    public Future<List<Detection>> start() {
+        return mApp.getRecognitionScheduler().submit(mFragRef.get(), this, this);
+    }
+
+    /**
+     * Scans the windows of the whole photo and keeps the best detections.
+     *
+     * @return The List of the detections sorted by descending score (empty if the scan fails).
+     */
+    @Override
+    public List<Detection> call() {
+        RecognizerFragment mFrag = mFragRef.get();
+
+        List<Detection> mDetections = Collections.emptyList();
+        if (mFrag != null) {
+            StageTracer mTracer = mApp.getStageTracer();
+            WindowScanner mScanner = mApp.getWindowScanner();
+            mTracer.begin(Stage.SCAN);
+            long startNanos = StageTracer.now();
+            try {
+                RecognizerSession mSession = mApp.getRecognizerSession();
+                synchronized (mSession) {
+                    mSession.prepare();
+                    ImagePreprocessor mPreprocessor = mSession.getPreprocessor();
+                    int width = mWidth, height = mHeight;
+                    int[] mPixels = mRaster;
+
+                    // Preprocessing and scoring the windows one batch at a time
+                    int count = mScanner.layout(width, height);
+                    List<Detection> mFound = new ArrayList<>();
+                    for (int first = 0; first < count; first += SCAN_BATCH) {
+                        int batch = Math.min(SCAN_BATCH, count - first);
+                        mTracer.begin(Stage.PREPROCESS);
+                        mScanner.preprocess(mPreprocessor, mPixels, width, first, batch, mSession.getInput(batch));
+                        mTracer.end(Stage.PREPROCESS);
+                        float[][] mScores = mSession.scoreBatch(batch);
+                        mScanner.detect(mScores, mSession.getItems(), first, batch, MIN_SCORE, mFound);
+                    }
+                    mDetections = WindowScanner.suppress(mFound, MAX_OVERLAP);
+
+                    // Referring the detections to the items of the catalogue
+                    ModelInfo mModel = mSession.getModelInfo();
+                    for (int i = 0; i < mDetections.size(); i++) {
+                        Detection mDetection = mDetections.get(i);
+                        mDetections.set(i, new Detection(mModel.getItem(mDetection.getIndex()),
+                                mDetection.getScore(), mDetection.getLeft(), mDetection.getTop(),
+                                mDetection.getEdge()));
+                    }
+
+                    long nanos = StageTracer.now() - startNanos;
+                    mScanner.recordScan(count, nanos);
+                    Log.i(TAG_LOG, String.format(Locale.US,
+                            "Scanned %d windows in %d ms (%.1f windows/s, %.1f overall): %d detections",
+                            count, nanos / 1000000, count * 1e9 / nanos, mScanner.getWindowsPerSecond(),
+                            mDetections.size()));
+                }
+            } catch (IOException | NullPointerException e) {
+                e.printStackTrace();
+            } finally {
+                mTracer.end(Stage.SCAN);
+            }
+        }
+        return mDetections;
+    }
+
+    /**
+     * Updates recognition tab's model with the detections given.
+     *
+     * @param detections List of the detections sorted by descending score.
+     */
+    @Override
+    public void onRecognition(List<Detection> detections) {
+        RecognizerFragment mFrag = mFragRef.get();
+        if (mFrag == null)
+            return;
+        mFrag.setDetections(detections, mWidth, mRequestNanos);
+    }
+}
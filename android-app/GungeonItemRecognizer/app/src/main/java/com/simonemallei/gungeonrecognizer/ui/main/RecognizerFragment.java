@@ -6,6 +6,7 @@ import androidx.camera.camera2.interop.Camera2Interop;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraControl;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.CameraController;
@@ -21,7 +22,6 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.PixelFormat;
@@ -34,28 +34,48 @@ import android.os.Message;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import android.util.Log;
+import android.util.Size;
 import android.view.LayoutInflater;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CompoundButton;
 import android.widget.GridView;
 import android.widget.SeekBar;
+import android.widget.Spinner;
+import android.widget.Switch;
 
+import com.simonemallei.gungeonrecognizer.BuildConfig;
+import com.simonemallei.gungeonrecognizer.GungeonRecognizerApplication;
 import com.simonemallei.gungeonrecognizer.MainActivity;
 import com.simonemallei.gungeonrecognizer.R;
 import com.simonemallei.gungeonrecognizer.adapter.GeneralAdapter;
 import com.simonemallei.gungeonrecognizer.adapter.ItemIconAdapter;
+import com.simonemallei.gungeonrecognizer.core.CropVariants;
+import com.simonemallei.gungeonrecognizer.core.Detection;
+import com.simonemallei.gungeonrecognizer.core.PipelineStats.Stage;
+import com.simonemallei.gungeonrecognizer.core.Prediction;
 import com.simonemallei.gungeonrecognizer.listener.OnItemSelectedListener;
+import com.simonemallei.gungeonrecognizer.model.ApplicationModel;
 import com.simonemallei.gungeonrecognizer.model.ItemModel;
-import com.simonemallei.gungeonrecognizer.thread.RecognizeThread;
+import com.simonemallei.gungeonrecognizer.recognizer.ModelInfo;
+import com.simonemallei.gungeonrecognizer.recognizer.RecognizerSession;
+import com.simonemallei.gungeonrecognizer.recognizer.StageTracer;
+import com.simonemallei.gungeonrecognizer.thread.CaptureAnalyzer;
+import com.simonemallei.gungeonrecognizer.thread.LiveAnalyzer;
+import com.simonemallei.gungeonrecognizer.thread.RecognitionScheduler;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /*
  * Class Name
@@ -81,6 +101,15 @@ public class RecognizerFragment extends Fragment {
      * An integer that contains the "what" value of an update message obtained by the UpdateHandler.
      */
     private final static int UPDATE_RESULT = 0;
+    /**
+     * An integer containing the code of the message sent when a photo has been captured.
+     */
+    private final static int CAPTURED = 1;
+    /**
+     * An integer containing the code of the message sent when the recognition of a
+     * captured photo has been cancelled or has failed.
+     */
+    private final static int ABORTED = 2;
     /**
      * An integer that codifies the recognition state:
      * - STATE_REC == -1 if the fragment has been started and has to start the camera.
@@ -112,11 +141,49 @@ public class RecognizerFragment extends Fragment {
      * to the camera view's width).
      */
     private final static double MAX_RATIO = 0.95;
+    /**
+     * A float containing the number of recognitions performed each second in live mode.
+     */
+    private final static float LIVE_TARGET_RATE = 4.0f;
+    /**
+     * An integer containing the default number of crop variants scored by each
+     * recognition (1 disables the test-time augmentation).
+     */
+    private final static int DEFAULT_VARIANTS = 1;
+    /**
+     * An integer containing the number of crop variants scored by each recognition when
+     * the test-time augmentation is enabled: the green square, its scales and its rotations.
+     */
+    private final static int AUGMENTED_VARIANTS = 5;
+    /**
+     * A Size containing the target resolution (portrait) of the analyzed frames: even
+     * the smallest green square keeps about three pixels for each pixel of the model's input.
+     */
+    private final static Size CAPTURE_RESOLUTION = new Size(480, 640);
     /**
      * A double containing the chosen ratio for the size of the square (in proportion
      * to the camera view's width).
      */
-    private double chosenRatio = MIN_RATIO;
+    private volatile double chosenRatio = MIN_RATIO;
+    /**
+     * A boolean that verifies if the live mode (continuous recognition of the
+     * camera frames) is enabled.
+     */
+    private boolean mLiveMode = false;
+    /**
+     * A boolean that verifies if the scan mode (recognition of every item in the
+     * whole photo) is enabled.
+     */
+    private boolean mScanMode = false;
+    /**
+     * A boolean that verifies if the crop is tightened around the most salient object
+     * of the green square (which becomes the area searched).
+     */
+    private volatile boolean mAutoCrop = true;
+    /**
+     * An integer containing the number of crop variants scored by each recognition.
+     */
+    private volatile int mVariants = DEFAULT_VARIANTS;
     /**
      * A float containing the current linear zoom of the camera.
      */
@@ -133,6 +200,24 @@ public class RecognizerFragment extends Fragment {
      * A List of ItemModel objects containing the recognition tab model.
      */
     public List<ItemModel> mModel;
+    /**
+     * A List of Prediction objects containing the scores of the items in mModel.
+     */
+    public List<Prediction> mPredictions;
+    /**
+     * A List of Detection objects containing the windows of the items in mModel found
+     * by the last scan (empty if the last photo has not been scanned).
+     */
+    private volatile List<Detection> mDetections = new ArrayList<>();
+    /**
+     * An integer containing the width of the photo scanned (in order to scale its windows).
+     */
+    private volatile int mDetectionsWidth = 1;
+    /**
+     * A boolean that verifies whether the overlying surface shows the detections
+     * instead of the green square (used by the UI thread only).
+     */
+    private boolean mDetectionsDrawn = false;
     /**
      * A GeneralAdapter reference to the adapter used by the recognition tab (ItemIconAdapter).
      */
@@ -165,10 +250,32 @@ public class RecognizerFragment extends Fragment {
      * A ListenableFuture instance of the ProcessCameraProvider to the camera used.
      */
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
+    /**
+     * An ImageAnalysis reference to the use case delivering the frames in live mode.
+     */
+    private ImageAnalysis mAnalysis;
+    /**
+     * A LiveAnalyzer object recognizing the frames in live mode.
+     */
+    private LiveAnalyzer mAnalyzer;
+    /**
+     * A CaptureAnalyzer object capturing the frame of the photo taken.
+     */
+    private CaptureAnalyzer mCapturer;
+    /**
+     * An ExecutorService containing the thread that analyzes the frames in live mode.
+     */
+    private ExecutorService mAnalysisExecutor;
+    /**
+     * Longs containing the time (in nanoseconds, as StageTracer.now()) the predictions
+     * to show have been requested and the time the update has been asked.
+     */
+    private volatile long mRequestNanos, mUpdateNanos;
 
     public RecognizerFragment() {
         super();
         mModel = new ArrayList<ItemModel>();
+        mPredictions = new ArrayList<Prediction>();
         mUpdateHandler = new UpdateHandler(this);
     }
 
@@ -186,6 +293,11 @@ public class RecognizerFragment extends Fragment {
     @Override
     public void onDetach() {
         super.onDetach();
+        // Discarding the recognitions that can not be shown anymore
+        RecognitionScheduler mScheduler = ((GungeonRecognizerApplication) mContext.getApplicationContext())
+                .getRecognitionScheduler();
+        mScheduler.cancel(this);
+        mScheduler.cancel(mAnalyzer.getPipeline());
         if (mOnItemSelectedListenerRef != null) {
             mOnItemSelectedListenerRef.clear();
             mOnItemSelectedListenerRef = null;
@@ -198,9 +310,23 @@ public class RecognizerFragment extends Fragment {
         pageViewModel = new ViewModelProvider(this).get(PageViewModel.class);
         int index = 1;
         pageViewModel.setIndex(index);
+        mAnalyzer = new LiveAnalyzer(this, NUM_ICONS, LIVE_TARGET_RATE);
+        mCapturer = new CaptureAnalyzer(this, NUM_ICONS);
+        mAnalysisExecutor = Executors.newSingleThreadExecutor();
         cameraPermission();
     }
 
+    /**
+     * When the fragment is destroyed, stops the thread that analyzes the frames.
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mAnalysis != null)
+            mAnalysis.clearAnalyzer();
+        mAnalysisExecutor.shutdown();
+    }
+
     /**
      * onStart method: sets the green square's SurfaceView in order to obtain the
      * expected performance (green square on top of the previewView).
@@ -242,12 +368,15 @@ public class RecognizerFragment extends Fragment {
     }
 
     /**
-     * When the fragment is paused, sets the state of the camera as not started (STATE_REC != 0).
+     * When the fragment is paused, sets the state of the camera as not started (STATE_REC != 0)
+     * and, in debug builds, logs the report of the recognitions' stages.
      */
     @Override
     public void onPause() {
         super.onPause();
         STATE_REC = -1;
+        if (BuildConfig.DEBUG)
+            getStageTracer().dump();
     }
 
     /**
@@ -278,7 +407,6 @@ public class RecognizerFragment extends Fragment {
 
         final Button mButton = root.findViewById(R.id.change_state);
         mButton.setText(getContext().getResources().getString(PHOTO_TEXT));
-        final RecognizerFragment mFrag = this;
         // Setting the button's click listener
         mButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -289,26 +417,122 @@ public class RecognizerFragment extends Fragment {
                     // Performing item recognition if the camera is granted
                     if (isCameraGranted()) {
                         STATE_REC = 1;
-                        previewView = root.findViewById(R.id.camera);
-                        Bitmap mBitmap = previewView.getBitmap();
-                        int startPixel = (int) ((mBitmap.getWidth() - mBitmap.getWidth() * chosenRatio) / 2);
-                        int edgeLength = (int) (mBitmap.getWidth() * chosenRatio);
                         Log.i("Chosen Ratio", String.valueOf(chosenRatio));
-                        Log.i("Start Pixel", String.valueOf(startPixel));
-                        Log.i("Edge Length", String.valueOf(edgeLength));
-                        mBitmap = Bitmap.createBitmap(mBitmap, startPixel, startPixel, edgeLength, edgeLength);
-
-                        new RecognizeThread(mFrag, mBitmap, NUM_ICONS).start();
+                        // The green square (and its surroundings, used by the crop variants)
+                        // is converted from the next analyzed frame, unless the whole photo
+                        // is scanned: the camera is stopped once it has been captured
+                        mCapturer.request(mScanMode);
 
                         final GridView mGridView = root.findViewById(R.id.result_grid);
                         final OnItemSelectedListener listener = mOnItemSelectedListenerRef.get();
                         mGridView.setOnItemClickListener(listener.getItemListener(mAdapter));
-                        mProvider.unbindAll();
                     }
                 }
             }
         });
 
+        // Setting live mode's switch: the frames are recognized continuously,
+        // hence the button is disabled
+        Switch mLiveSwitch = root.findViewById(R.id.live_mode);
+        mLiveSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton compoundButton, boolean checked) {
+                mLiveMode = checked;
+                mButton.setEnabled(!checked);
+                Log.i(TAG_LOG, "Live mode " + (checked ? "enabled" : "disabled"));
+                if (checked)
+                    mAnalyzer.reset();
+                // Changing the frames' analyzer if the camera is running
+                if (STATE_REC == 0 && mProvider != null)
+                    bindAnalysis();
+            }
+        });
+
+        // Setting scan mode's switch: each photo is scanned with windows of several
+        // sizes, instead of recognizing the green square only
+        Switch mScanSwitch = root.findViewById(R.id.scan_mode);
+        mScanSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton compoundButton, boolean checked) {
+                mScanMode = checked;
+                Log.i(TAG_LOG, "Scan mode " + (checked ? "enabled" : "disabled"));
+            }
+        });
+
+        // Setting automatic crop's switch: the green square becomes the area where
+        // the item is searched
+        Switch mAutoCropSwitch = root.findViewById(R.id.auto_crop);
+        mAutoCropSwitch.setChecked(mAutoCrop);
+        mAutoCropSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton compoundButton, boolean checked) {
+                mAutoCrop = checked;
+                Log.i(TAG_LOG, "Automatic crop " + (checked ? "enabled" : "disabled"));
+            }
+        });
+
+        // Setting the model's choice: the recognizer swaps to the chosen model at the
+        // next recognition
+        final GungeonRecognizerApplication mApp = (GungeonRecognizerApplication) mContext.getApplicationContext();
+        final List<ModelInfo> mModels = mApp.getModelRegistry().getModels();
+        Spinner mModelSpinner = root.findViewById(R.id.model_choice);
+        mModelSpinner.setAdapter(new ArrayAdapter<>(mContext, android.R.layout.simple_spinner_dropdown_item,
+                mModels));
+        mModelSpinner.setSelection(mModels.indexOf(mApp.getRecognizerSession().getNextModelInfo()));
+        mModelSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> adapterView, View view, int position, long id) {
+                mApp.setActiveModel(mModels.get(position).getId());
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> adapterView) {
+            }
+        });
+
+        // Setting comparison mode's switch: each crop is also matched against the
+        // templates and scored by another model (if any), whose agreement and latency
+        // are logged
+        Switch mCompareSwitch = root.findViewById(R.id.compare_models);
+        mCompareSwitch.setChecked(mApp.isComparing());
+        mCompareSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton compoundButton, boolean checked) {
+                boolean enabled = mApp.setComparison(checked);
+                if (enabled != checked)
+                    compoundButton.setChecked(enabled);
+                Log.i(TAG_LOG, "Comparison mode " + (enabled ? "enabled" : "disabled"));
+            }
+        });
+
+        // Setting cascade's switch: a small model scores each crop first, and the chosen
+        // model runs only when the small one is uncertain (the switch is disabled if the
+        // registry declares no cascade)
+        Switch mCascadeSwitch = root.findViewById(R.id.cascade);
+        mCascadeSwitch.setChecked(mApp.getCascade() != null);
+        mCascadeSwitch.setEnabled(mApp.getModelRegistry().getFirstStage() != null);
+        mCascadeSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton compoundButton, boolean checked) {
+                boolean enabled = mApp.setCascade(checked);
+                if (enabled != checked)
+                    compoundButton.setChecked(enabled);
+                Log.i(TAG_LOG, "Cascade " + (enabled ? "enabled" : "disabled"));
+            }
+        });
+
+        // Setting crop variants' switch: each recognition scores several variants of the
+        // green square in one batch, and averages their scores
+        Switch mVariantsSwitch = root.findViewById(R.id.crop_variants);
+        mVariantsSwitch.setChecked(mVariants > 1);
+        mVariantsSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton compoundButton, boolean checked) {
+                setVariants(checked ? AUGMENTED_VARIANTS : DEFAULT_VARIANTS);
+                Log.i(TAG_LOG, "Crop variants: " + mVariants);
+            }
+        });
+
         // Setting Square SeekBar
         SeekBar mSeekBar = root.findViewById(R.id.thumb);
         mSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
@@ -467,14 +691,122 @@ public class RecognizerFragment extends Fragment {
         Preview preview = builder.build();
 
         // Setting last information about the camera used
-        CameraSelector cameraSelector = new CameraSelector.Builder()
-                .requireLensFacing(CameraSelector.LENS_FACING_BACK).build();
         preview.setSurfaceProvider(previewView.getSurfaceProvider());
-        mCamera = cameraProvider.bindToLifecycle((LifecycleOwner)this, cameraSelector, preview);
+        mCamera = cameraProvider.bindToLifecycle((LifecycleOwner)this, getCameraSelector(), preview);
         CameraControl mControl = mCamera.getCameraControl();
         mControl.setLinearZoom(mZoom);
         mProvider = cameraProvider;
+        bindAnalysis();
+
+    }
+
+    /**
+     * Gets the selector of the camera used (the back one).
+     *
+     * @return The CameraSelector of the camera used.
+     */
+    private CameraSelector getCameraSelector() {
+        return new CameraSelector.Builder()
+                .requireLensFacing(CameraSelector.LENS_FACING_BACK).build();
+    }
+
+    /**
+     * Binds the frames' analysis to the camera used, next to its preview: the frames
+     * are recognized continuously in live mode, otherwise they are captured when
+     * a photo is taken.
+     * The frames are requested at a reduced resolution, and only the latest one is
+     * kept while the analyzer is busy, so that the latency of the results does not
+     * grow on slow devices.
+     */
+    private void bindAnalysis() {
+        if (mAnalysis == null)
+            mAnalysis = new ImageAnalysis.Builder()
+                    .setTargetResolution(CAPTURE_RESOLUTION)
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .build();
+        mAnalysis.setAnalyzer(mAnalysisExecutor, mLiveMode ? mAnalyzer : mCapturer);
+        if (!mProvider.isBound(mAnalysis))
+            mProvider.bindToLifecycle((LifecycleOwner)this, getCameraSelector(), mAnalysis);
+    }
 
+    /**
+     * Gets the number of crop variants scored by each recognition.
+     *
+     * @return An integer in range [1; CropVariants.MAX_VARIANTS].
+     */
+    public int getVariants() {
+        return mVariants;
+    }
+
+    /**
+     * Sets the number of crop variants scored by each recognition: more variants
+     * are more robust to the position of the green square, but slower.
+     *
+     * @param variants integer in range [1; CropVariants.MAX_VARIANTS].
+     */
+    public void setVariants(int variants) {
+        if (variants < 1 || variants > CropVariants.MAX_VARIANTS)
+            throw new IllegalArgumentException("Variants must be in range [1; "
+                    + CropVariants.MAX_VARIANTS + "]: " + variants);
+        this.mVariants = variants;
+    }
+
+    /**
+     * Verifies whether the crop is tightened around the most salient object of the green square.
+     *
+     * @return True if the automatic crop is enabled.
+     */
+    public boolean isAutoCrop() {
+        return mAutoCrop;
+    }
+
+    /**
+     * Gets the chosen ratio for the size of the green square.
+     *
+     * @return A double containing the ratio (in proportion to the camera view's width).
+     */
+    public double getChosenRatio() {
+        return chosenRatio;
+    }
+
+    /**
+     * Draws the windows of the last scan's detections in the parameter, numbered by
+     * descending score.
+     *
+     * @param mOverlyingSurface SurfaceView that will contain the windows.
+     */
+    private void drawDetections(SurfaceView mOverlyingSurface) {
+        SurfaceHolder mHolder = mOverlyingSurface.getHolder();
+        try {
+            Canvas mCanvas = mHolder.lockCanvas();
+
+            Paint mPaint = new Paint();
+            int widthSurface = mOverlyingSurface.getMeasuredWidth();
+            float scale = (float) widthSurface / mDetectionsWidth;
+            // Clearing Surface View
+            mCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+            mPaint.setAlpha(255);
+            mPaint.setColor(0xff00ff00);
+            mPaint.setStrokeWidth((float) (widthSurface * (WIDTH_SQUARE / 4)));
+            mPaint.setTextSize((float) (widthSurface * WIDTH_SQUARE * 2));
+            List<Detection> mShown = mDetections;
+            for (int i = 0; i < mShown.size(); i++) {
+                Detection mDetection = mShown.get(i);
+                float left = mDetection.getLeft() * scale, top = mDetection.getTop() * scale;
+                float edge = mDetection.getEdge() * scale;
+                mPaint.setStyle(Paint.Style.STROKE);
+                mCanvas.drawRect(left, top, left + edge, top + edge, mPaint);
+                mPaint.setStyle(Paint.Style.FILL);
+                mCanvas.drawText(String.valueOf(i + 1), left + mPaint.getStrokeWidth() * 2,
+                        top + mPaint.getTextSize(), mPaint);
+            }
+
+            mHolder.unlockCanvasAndPost(mCanvas);
+        }
+        catch (NullPointerException e) {
+            e.printStackTrace();
+            Log.i("EXCEPTION", e.getClass().toString());
+        }
     }
 
     /**
@@ -536,17 +868,124 @@ public class RecognizerFragment extends Fragment {
      * Performs steps to show the neural network's prediction to the user.
      */
     private void showPrediction() {
-        // Setting camera again
-        startCamera();
+        // Setting camera again after a photo (the live mode keeps it running)
+        if (STATE_REC == 1)
+            startCamera();
         // Updating adapter model
         mAdapter.setModel(mModel);
         mAdapter.notifyDataSetChanged();
+        // Showing where the scanned items are (the green square otherwise)
+        SurfaceView mOverlyingSurface = root.findViewById(R.id.overlying_surface);
+        if (!mDetections.isEmpty()) {
+            drawDetections(mOverlyingSurface);
+            mDetectionsDrawn = true;
+        }
+        else if (mDetectionsDrawn) {
+            drawSquare(mOverlyingSurface);
+            mDetectionsDrawn = false;
+        }
+    }
+
+    /**
+     * Sets the detections of a scan as the recognition tab's model (ordered by
+     * descending score) and asks for an update.
+     *
+     * @param detections List of the detections sorted by descending score.
+     * @param width integer containing the width of the photo scanned.
+     * @param requestNanos long containing the time (as StageTracer.now()) the
+     *                     scan has been requested.
+     */
+    public void setDetections(List<Detection> detections, int width, long requestNanos) {
+        List<ItemModel> newModel = new ArrayList<>();
+        List<Prediction> newPredictions = new ArrayList<>();
+        for (int i = 0; i < detections.size(); i++) {
+            Detection mDetection = detections.get(i);
+            newModel.add(ApplicationModel.ITEMS.get(mDetection.getIndex()));
+            newPredictions.add(new Prediction(mDetection.getIndex(), mDetection.getScore(), i));
+        }
+        mModel = newModel;
+        mPredictions = newPredictions;
+        mDetectionsWidth = Math.max(1, width);
+        mDetections = detections;
+        updateResult(requestNanos);
+    }
+
+    /**
+     * Removes the detections of the last scan (for instance when a new recognition is shown).
+     */
+    public void clearDetections() {
+        mDetections = new ArrayList<>();
+    }
+
+    /**
+     * Stops the camera once the frame of the photo taken has been captured: it can be
+     * called by any thread.
+     */
+    public void onCaptured() {
+        mUpdateHandler.sendMessage(mUpdateHandler.obtainMessage(CAPTURED));
+    }
+
+    /**
+     * Restarts the camera stopped by the capture when its recognition has been cancelled
+     * or has failed, since no result will restart it: it can be called by any thread.
+     */
+    public void onRecognitionAborted() {
+        mUpdateHandler.sendMessage(mUpdateHandler.obtainMessage(ABORTED));
+    }
+
+    /**
+     * Writes in logcat the latency of the first recognition shown, next to the warm-up
+     * it has been spared (if any), in order to compare the first photo with and without it.
+     */
+    private void logFirstRecognition() {
+        GungeonRecognizerApplication mApp = (GungeonRecognizerApplication) mContext.getApplicationContext();
+        long firstMillis = getStageTracer().getStats().getFirst(Stage.TOTAL) / 1000;
+        long warmUpMillis = mApp.getWarmUpMillis();
+        if (warmUpMillis >= 0)
+            Log.i(TAG_LOG, "First recognition shown in " + firstMillis + " ms, after a warm-up of "
+                    + warmUpMillis + " ms");
+        else
+            Log.i(TAG_LOG, "First recognition shown in " + firstMillis + " ms, without warm-up (model loaded in "
+                    + mApp.getRecognizerSession().getLoadTimeMillis() + " ms)");
+    }
+
+    /**
+     * Gets the application owning the recognizer: unlike getContext(), it is available
+     * after the fragment is detached too.
+     *
+     * @return The GungeonRecognizerApplication object of the fragment's context.
+     */
+    public GungeonRecognizerApplication getRecognizerApplication() {
+        return (GungeonRecognizerApplication) mContext.getApplicationContext();
+    }
+
+    /**
+     * Gets the recognizer session of the recognitions.
+     *
+     * @return The RecognizerSession object of the application.
+     */
+    public RecognizerSession getRecognizerSession() {
+        return ((GungeonRecognizerApplication) mContext.getApplicationContext()).getRecognizerSession();
+    }
+
+    /**
+     * Gets the tracer measuring the stages of the recognitions.
+     *
+     * @return The StageTracer object of the application.
+     */
+    public StageTracer getStageTracer() {
+        return ((GungeonRecognizerApplication) mContext.getApplicationContext()).getStageTracer();
     }
 
     /**
      * Method that sends the message to the UpdateHandler, asking for an update.
+     *
+     * @param requestNanos long containing the time (as StageTracer.now()) the
+     *                     predictions have been requested.
      */
-    public void updateResult() {
+    public void updateResult(long requestNanos) {
+        mRequestNanos = requestNanos;
+        mUpdateNanos = StageTracer.now();
         final Message updateMessage = mUpdateHandler.obtainMessage(UPDATE_RESULT);
         mUpdateHandler.sendMessage(updateMessage);
     }
@@ -562,8 +1001,28 @@ public class RecognizerFragment extends Fragment {
         public void handleMessage(Message msg) {
             if (msg.what == UPDATE_RESULT) {
                 final RecognizerFragment mFrag = mFragRef.get();
-                if (mFrag != null)
+                if (mFrag != null) {
+                    StageTracer mTracer = mFrag.getStageTracer();
+                    mTracer.record(Stage.UI_HOP, mFrag.mUpdateNanos);
+                    mTracer.begin(Stage.UI_UPDATE);
                     mFrag.showPrediction();
+                    mTracer.end(Stage.UI_UPDATE);
+                    mTracer.record(Stage.TOTAL, mFrag.mRequestNanos);
+                    if (mTracer.getStats().getHistogram(Stage.TOTAL).getCount() == 1)
+                        mFrag.logFirstRecognition();
+                }
+            }
+            else if (msg.what == CAPTURED) {
+                final RecognizerFragment mFrag = mFragRef.get();
+                // The result may have already restarted the camera
+                if (mFrag != null && mFrag.STATE_REC == 1 && mFrag.mProvider != null)
+                    mFrag.mProvider.unbindAll();
+            }
+            else if (msg.what == ABORTED) {
+                final RecognizerFragment mFrag = mFragRef.get();
+                // A paused fragment restarts the camera when it is resumed
+                if (mFrag != null && mFrag.STATE_REC == 1 && mFrag.isAdded())
+                    mFrag.startCamera();
             }
         }
     }
@@ -0,0 +1,41 @@
+package com.simonemallei.gungeonrecognizer.recognizer;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the interpreter's configurations probed and stored on the device.
+ */
+public class RecognizerConfigTest {
+
+    @Test
+    public void encode_roundTrips() {
+        for (RecognizerConfig mConfig : RecognizerConfig.candidates(8)) {
+            RecognizerConfig mDecoded = RecognizerConfig.decode(mConfig.encode());
+            assertEquals(mConfig, mDecoded);
+            assertEquals(mConfig.hashCode(), mDecoded.hashCode());
+        }
+    }
+
+    @Test
+    public void decode_rejectsInvalidStrings() {
+        for (String encoded : new String[]{null, "", "4", "0,true", "-1,false", "x,true", "2,yes", "2,true,1"})
+            assertNull(encoded, RecognizerConfig.decode(encoded));
+    }
+
+    @Test
+    public void candidates_doNotExceedProcessors() {
+        List<RecognizerConfig> single = RecognizerConfig.candidates(1);
+        assertEquals(2, single.size());
+        for (RecognizerConfig mConfig : single)
+            assertEquals(1, mConfig.getNumThreads());
+
+        List<RecognizerConfig> quad = RecognizerConfig.candidates(4);
+        assertEquals(6, quad.size());
+        assertTrue(quad.contains(new RecognizerConfig(4, true)));
+        assertTrue(quad.contains(new RecognizerConfig(2, false)));
+    }
+}
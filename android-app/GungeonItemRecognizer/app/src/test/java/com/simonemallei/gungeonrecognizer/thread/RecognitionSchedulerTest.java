@@ -0,0 +1,196 @@
+package com.simonemallei.gungeonrecognizer.thread;
+
+import com.simonemallei.gungeonrecognizer.listener.OnRecognitionListener;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the coalescing (per owner) and cancellation of the recognition scheduler.
+ */
+public class RecognitionSchedulerTest {
+
+    private static final long TIMEOUT = 5;
+
+    /**
+     * Creates a task that waits for the latch given, then returns its value.
+     */
+    private static Callable<Integer> blockingTask(final CountDownLatch started,
+                                                  final CountDownLatch release, final int value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                started.countDown();
+                assertTrue(release.await(TIMEOUT, TimeUnit.SECONDS));
+                return value;
+            }
+        };
+    }
+
+    private static Callable<Integer> task(final int value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return value;
+            }
+        };
+    }
+
+    private static OnRecognitionListener<Integer> collector(final List<Integer> results) {
+        return new OnRecognitionListener<Integer>() {
+            @Override
+            public void onRecognition(Integer result) {
+                results.add(result);
+            }
+        };
+    }
+
+    @Test
+    public void repeatedRequests_collapseIntoTheLatest() throws Exception {
+        RecognitionScheduler mScheduler = new RecognitionScheduler();
+        List<Integer> results = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        Object owner = new Object();
+
+        Future<Integer> first = mScheduler.submit(owner, blockingTask(started, release, 0), collector(results));
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        Future<Integer> second = mScheduler.submit(owner, task(1), collector(results));
+        Future<Integer> third = mScheduler.submit(owner, task(2), collector(results));
+        Future<Integer> last = mScheduler.submit(owner, task(3), collector(results));
+        release.countDown();
+
+        assertEquals(Integer.valueOf(0), first.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(3), last.get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(second.isCancelled());
+        assertTrue(third.isCancelled());
+        mScheduler.shutdown();
+        assertTrue(mScheduler.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(2, mScheduler.getCoalesced());
+        assertEquals(4, mScheduler.getSubmitted());
+        assertEquals(2, mScheduler.getCompleted());
+        assertEquals(0, (int) results.get(0));
+        assertEquals(3, (int) results.get(1));
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void cancelledOwner_isNeverNotified() throws Exception {
+        RecognitionScheduler mScheduler = new RecognitionScheduler();
+        List<Integer> results = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        Object detached = new Object(), other = new Object();
+
+        Future<Integer> running = mScheduler.submit(detached, blockingTask(started, release, 0), collector(results));
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        Future<Integer> waiting = mScheduler.submit(detached, task(1), collector(results));
+        mScheduler.cancel(other);
+        assertFalse(waiting.isCancelled());
+        mScheduler.cancel(detached);
+        assertTrue(running.isCancelled());
+        assertTrue(waiting.isCancelled());
+        release.countDown();
+
+        // The worker is still usable once the cancelled task has returned
+        Future<Integer> next = mScheduler.submit(other, task(2), collector(results));
+        assertEquals(Integer.valueOf(2), next.get(TIMEOUT, TimeUnit.SECONDS));
+        mScheduler.shutdown();
+        assertTrue(mScheduler.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(2, mScheduler.getCancelled());
+        assertEquals(1, results.size());
+        assertEquals(2, (int) results.get(0));
+    }
+
+    @Test
+    public void differentOwners_neverReplaceEachOther() throws Exception {
+        RecognitionScheduler mScheduler = new RecognitionScheduler();
+        List<Integer> results = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        Object warmUp = new Object(), fragment = new Object(), live = new Object();
+
+        Future<Integer> running = mScheduler.submit(warmUp, blockingTask(started, release, 0), collector(results));
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        Future<Integer> tap = mScheduler.submit(fragment, task(1), collector(results));
+        Future<Integer> frame = mScheduler.submit(live, task(2), collector(results));
+        Future<Integer> next = mScheduler.submit(warmUp, task(3), collector(results));
+        assertFalse(tap.isCancelled());
+        assertFalse(frame.isCancelled());
+        release.countDown();
+
+        // The waiting requests are performed in the order submitted
+        assertEquals(Integer.valueOf(0), running.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1), tap.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), frame.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(3), next.get(TIMEOUT, TimeUnit.SECONDS));
+        mScheduler.shutdown();
+        assertTrue(mScheduler.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, mScheduler.getCoalesced());
+        assertEquals(4, mScheduler.getCompleted());
+        assertEquals(4, results.size());
+        for (int i = 0; i < 4; i++)
+            assertEquals(i, (int) results.get(i));
+    }
+
+    @Test
+    public void cancelledRunningTask_isWaitedUntilItReturns() throws Exception {
+        RecognitionScheduler mScheduler = new RecognitionScheduler();
+        final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        final AtomicBoolean returned = new AtomicBoolean(false);
+        Object owner = new Object();
+
+        Future<Integer> running = mScheduler.submit(owner, new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                started.countDown();
+                assertTrue(release.await(TIMEOUT, TimeUnit.SECONDS));
+                returned.set(true);
+                return 0;
+            }
+        }, null);
+        assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+        mScheduler.cancel(owner);
+        assertTrue(running.isCancelled());
+
+        // The task still reads the caller's buffers, hence get() keeps waiting
+        try {
+            running.get(100, TimeUnit.MILLISECONDS);
+            fail("get() must wait for the cancelled task");
+        } catch (TimeoutException e) {
+            assertFalse(returned.get());
+        }
+        release.countDown();
+        try {
+            running.get();
+            fail("get() must report the cancellation");
+        } catch (CancellationException e) {
+            assertTrue(returned.get());
+        }
+
+        // A request cancelled before being started is not waited for
+        CountDownLatch blocked = new CountDownLatch(1), unblock = new CountDownLatch(1);
+        Object other = new Object();
+        mScheduler.submit(other, blockingTask(blocked, unblock, 1), null);
+        assertTrue(blocked.await(TIMEOUT, TimeUnit.SECONDS));
+        Future<Integer> waiting = mScheduler.submit(owner, task(2), null);
+        mScheduler.cancel(owner);
+        try {
+            waiting.get(TIMEOUT, TimeUnit.SECONDS);
+            fail("get() must report the cancellation");
+        } catch (CancellationException e) {
+            // Expected, while the other owner's task is still running
+        }
+        unblock.countDown();
+        mScheduler.shutdown();
+        assertTrue(mScheduler.awaitTermination(TIMEOUT, TimeUnit.SECONDS));
+    }
+}
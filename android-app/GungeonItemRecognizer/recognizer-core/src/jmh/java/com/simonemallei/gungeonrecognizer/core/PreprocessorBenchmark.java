@@ -0,0 +1,87 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the preprocessing kernels on square crops of 32x32, 512x512 and
+ * 1024x1024 pixels: throughput (ops/s) and, with the gc profiler, allocations per
+ * operation (which are expected to be zero once the buffers have been allocated).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PreprocessorBenchmark {
+
+    private static final int SIZE = 32;
+
+    @Param({"32", "512", "1024"})
+    public int edge;
+
+    private int[] mPixels;
+    private int mStride;
+    private ImagePreprocessor mPreprocessor;
+    private ImagePreprocessor mScaledPreprocessor;
+    private ImagePreprocessor mQuantizedPreprocessor;
+    private ByteBuffer mInput;
+    private ByteBuffer mQuantizedInput;
+    private ByteBuffer mBatchInput;
+
+    @Setup
+    public void setUp() {
+        // A crop with the surroundings sampled by every crop variant
+        mStride = CropVariants.contextEdge(edge, CropVariants.MAX_VARIANTS);
+        Random mRandom = new Random(0);
+        mPixels = new int[mStride * mStride];
+        for (int i = 0; i < mPixels.length; i++)
+            mPixels[i] = 0xff000000 | mRandom.nextInt(1 << 24);
+
+        mPreprocessor = new ImagePreprocessor(SIZE, SIZE);
+        mScaledPreprocessor = new ImagePreprocessor(SIZE, SIZE);
+        mScaledPreprocessor.setEqualizeAfterScaling(true);
+        mQuantizedPreprocessor = new ImagePreprocessor(SIZE, SIZE);
+        mQuantizedPreprocessor.setQuantizedInput(1.0f / 255, 0, false);
+        mInput = ByteBuffer.allocateDirect(mPreprocessor.getInputBytes()).order(ByteOrder.nativeOrder());
+        mQuantizedInput = ByteBuffer.allocateDirect(mQuantizedPreprocessor.getInputBytes())
+                .order(ByteOrder.nativeOrder());
+        mBatchInput = ByteBuffer.allocateDirect(CropVariants.MAX_VARIANTS * mPreprocessor.getInputBytes())
+                .order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public ByteBuffer fusedStage() {
+        mPreprocessor.preprocess(mPixels, 0, mStride, edge, edge, mInput);
+        return mInput;
+    }
+
+    @Benchmark
+    public ByteBuffer fusedStageEqualizeAfterScaling() {
+        mScaledPreprocessor.preprocess(mPixels, 0, mStride, edge, edge, mInput);
+        return mInput;
+    }
+
+    @Benchmark
+    public ByteBuffer fusedStageQuantized() {
+        mQuantizedPreprocessor.preprocess(mPixels, 0, mStride, edge, edge, mQuantizedInput);
+        return mQuantizedInput;
+    }
+
+    @Benchmark
+    public ByteBuffer cropVariants() {
+        int margin = (mStride - edge) / 2;
+        CropVariants.preprocess(mPreprocessor, mPixels, mStride, mStride, mStride, margin, margin, edge,
+                CropVariants.MAX_VARIANTS, mBatchInput);
+        return mBatchInput;
+    }
+}
@@ -0,0 +1,56 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the top-K selection over the model's 509 scores, on float
+ * and raw quantized outputs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TopKSelectorBenchmark {
+
+    private static final int ITEMS_NUM = 509;
+
+    @Param({"1", "10"})
+    public int k;
+
+    private float[] mScores;
+    private byte[] mQuantizedScores;
+    private TopKSelector mSelector;
+
+    @Setup
+    public void setUp() {
+        Random mRandom = new Random(0);
+        mScores = new float[ITEMS_NUM];
+        for (int i = 0; i < ITEMS_NUM; i++)
+            mScores[i] = mRandom.nextFloat();
+        mQuantizedScores = new byte[ITEMS_NUM];
+        mRandom.nextBytes(mQuantizedScores);
+        mSelector = new TopKSelector(ITEMS_NUM);
+    }
+
+    @Benchmark
+    public int selectFloat() {
+        mSelector.select(mScores, ITEMS_NUM, k);
+        return mSelector.getIndex(0);
+    }
+
+    @Benchmark
+    public int selectQuantized() {
+        mSelector.select(mQuantizedScores, ITEMS_NUM, k, false);
+        mSelector.dequantize(1.0f / 256, 0);
+        return mSelector.getIndex(0);
+    }
+}
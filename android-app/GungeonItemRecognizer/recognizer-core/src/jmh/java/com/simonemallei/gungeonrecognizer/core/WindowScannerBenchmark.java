@@ -0,0 +1,66 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the preprocessing of a batch of scan windows, serial and spread
+ * over a fork/join pool: the score is in windows per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WindowScannerBenchmark {
+
+    private static final int FRAME_EDGE = 1024;
+    private static final int MODEL_EDGE = 32;
+    private static final int BATCH = 16;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private int[] mPixels;
+    private ForkJoinPool mPool;
+    private WindowScanner mScanner;
+    private ImagePreprocessor mPreprocessor;
+    private ByteBuffer mInput;
+
+    @Setup
+    public void setUp() {
+        Random mRandom = new Random(0);
+        mPixels = new int[FRAME_EDGE * FRAME_EDGE];
+        for (int i = 0; i < mPixels.length; i++)
+            mPixels[i] = 0xff000000 | mRandom.nextInt(0x1000000);
+        mPool = new ForkJoinPool(parallelism);
+        mScanner = new WindowScanner(mPool);
+        mScanner.layout(FRAME_EDGE, FRAME_EDGE);
+        mPreprocessor = new ImagePreprocessor(MODEL_EDGE, MODEL_EDGE);
+        mInput = ByteBuffer.allocateDirect(BATCH * mPreprocessor.getInputBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public ByteBuffer preprocessBatch() {
+        mScanner.preprocess(mPreprocessor, mPixels, FRAME_EDGE, 0, BATCH, mInput);
+        return mInput;
+    }
+}
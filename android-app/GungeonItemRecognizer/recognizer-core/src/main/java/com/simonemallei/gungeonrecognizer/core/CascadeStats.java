@@ -0,0 +1,157 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.Locale;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.CascadeStats
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * CascadeStats class containing the measures of a two-tier recognizer: a small first-stage
+ * model scores every request, and the full model runs only when the first stage is
+ * uncertain (its top-1 margin is below a threshold), so that the request is escalated.
+ * The latency of the cascade is compared with the one of always running the full model,
+ * which is estimated by the full model's latency on the escalated requests.
+ * The methods are synchronized, so that the report can be read by any thread.
+ */
+public class CascadeStats {
+
+    /**
+     * A float containing the minimum top-1 margin of a first-stage result.
+     */
+    private final float mMinMargin;
+    /**
+     * LatencyHistogram objects containing the latencies of the whole cascade and of the
+     * full model on the escalated requests.
+     */
+    private final LatencyHistogram mCascadeLatency = new LatencyHistogram();
+    private final LatencyHistogram mFullLatency = new LatencyHistogram();
+    /**
+     * Longs containing the number of requests and of escalated requests.
+     */
+    private long mRequests = 0L;
+    private long mEscalated = 0L;
+
+    public CascadeStats(float minMargin) {
+        if (minMargin < 0.0f)
+            throw new IllegalArgumentException("Margin must not be negative: " + minMargin);
+        this.mMinMargin = minMargin;
+    }
+
+    /**
+     * Computes the top-1 margin of the scores: the difference between the best and the
+     * second best score.
+     *
+     * @param scores array of floats containing the scores.
+     * @param size integer containing the number of scores considered.
+     * @return A float containing the margin (the best score if there is only one).
+     */
+    public static float margin(float[] scores, int size) {
+        if (size < 1)
+            return 0.0f;
+        float best = Float.NEGATIVE_INFINITY, second = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            float score = scores[i];
+            if (score > best) {
+                second = best;
+                best = score;
+            }
+            else if (score > second)
+                second = score;
+        }
+        return size == 1 ? best : best - second;
+    }
+
+    /**
+     * Verifies whether the first-stage scores are too uncertain to be the result.
+     *
+     * @param scores array of floats containing the first-stage scores.
+     * @param size integer containing the number of scores considered.
+     * @return True if the request must be escalated to the full model.
+     */
+    public boolean escalates(float[] scores, int size) {
+        return margin(scores, size) < mMinMargin;
+    }
+
+    public float getMinMargin() {
+        return mMinMargin;
+    }
+
+    /**
+     * Records a request.
+     *
+     * @param firstNanos long containing the latency of the first stage in nanoseconds.
+     * @param fullNanos long containing the latency of the full model in nanoseconds
+     *                  (negative if the request has not been escalated).
+     */
+    public synchronized void record(long firstNanos, long fullNanos) {
+        mRequests++;
+        if (fullNanos >= 0L) {
+            mEscalated++;
+            mFullLatency.record(fullNanos);
+            mCascadeLatency.record(firstNanos + fullNanos);
+        }
+        else
+            mCascadeLatency.record(firstNanos);
+    }
+
+    public synchronized long getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * Gets the fraction of the requests escalated to the full model.
+     *
+     * @return A double in range [0; 1] (0 if no request has been recorded).
+     */
+    public synchronized double getEscalationRate() {
+        return mRequests == 0 ? 0.0 : (double) mEscalated / mRequests;
+    }
+
+    /**
+     * Gets the mean latency of the cascade.
+     *
+     * @return A double containing the mean latency in microseconds.
+     */
+    public double getMeanLatency() {
+        return mCascadeLatency.getMean();
+    }
+
+    /**
+     * Gets the mean latency of the full model, measured on the escalated requests: it
+     * estimates the mean latency of always running the full model.
+     *
+     * @return A double containing the mean latency in microseconds (0 if no request
+     *         has been escalated).
+     */
+    public double getFullMeanLatency() {
+        return mFullLatency.getMean();
+    }
+
+    /**
+     * Removes every recorded request.
+     */
+    public synchronized void reset() {
+        mRequests = 0L;
+        mEscalated = 0L;
+        mCascadeLatency.reset();
+        mFullLatency.reset();
+    }
+
+    /**
+     * Creates the report of the cascade.
+     *
+     * @return A String containing the escalation rate and the mean latencies.
+     */
+    public synchronized String report() {
+        return String.format(Locale.US, "n=%d escalated=%.3f mean=%.0fus full model mean=%.0fus",
+                mRequests, getEscalationRate(), getMeanLatency(), getFullMeanLatency());
+    }
+}
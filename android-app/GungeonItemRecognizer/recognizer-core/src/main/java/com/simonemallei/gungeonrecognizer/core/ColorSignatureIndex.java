@@ -0,0 +1,215 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.ColorSignatureIndex
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * ColorSignatureIndex class containing a compact colour signature of each item's sprite,
+ * used to prune the candidates of a crop before scoring them: only the items whose
+ * palette is found in the crop are scored (for instance by a TemplateMatcher).
+ * A signature is a histogram of NUM_BINS bins, normalized to sum 1: HUE_BINS bins for the
+ * hues of the coloured pixels and GRAY_BINS bins for the V values of the others (whose
+ * hue is meaningless). The sprite's pixels whose alpha is below MIN_ALPHA are ignored,
+ * and their V values are equalized as the ImagePreprocessor does on the crop.
+ * The similarity between a sprite and a crop is the intersection of their histograms
+ * (the sum of the minimum of each bin), hence the background of the crop only lowers
+ * the similarity of every sprite, without favouring any of them.
+ * The signatures are stored in a single array of floats [capacity][NUM_BINS].
+ * Signatures are added before querying; query() can be called by a single thread at a time.
+ */
+public class ColorSignatureIndex {
+
+    /**
+     * Integers containing the number of hue bins, of gray bins and of bins of a signature.
+     */
+    public final static int HUE_BINS = 12;
+    public final static int GRAY_BINS = 4;
+    public final static int NUM_BINS = HUE_BINS + GRAY_BINS;
+    /**
+     * Floats containing the minimum saturation and V value of a coloured pixel.
+     */
+    private final static float MIN_SATURATION = 0.25f;
+    private final static float MIN_VALUE = 0.2f;
+    /**
+     * An integer containing the minimum alpha of a sprite's pixel.
+     */
+    private final static int MIN_ALPHA = 128;
+    /**
+     * A float containing the maximum value of a channel.
+     */
+    private final static float MAX_CHANNEL = 255.0f;
+    /**
+     * An array of floats containing the signature of each item [capacity][NUM_BINS].
+     */
+    private final float[] mSignatures;
+    /**
+     * An array of booleans that verifies whether each item has a signature.
+     */
+    private final boolean[] mIndexed;
+    /**
+     * An integer containing the number of items with a signature.
+     */
+    private int mCount = 0;
+    /**
+     * An array of floats containing the signature of the last crop queried.
+     */
+    private final float[] mQuery = new float[NUM_BINS];
+    /**
+     * An array of floats containing the similarity of each item with the last crop queried.
+     */
+    private final float[] mSimilarity;
+    /**
+     * A TopKSelector object used to find the most similar items.
+     */
+    private final TopKSelector mSelector;
+    /**
+     * A HistogramEqualizer object used to equalize the sprites.
+     */
+    private final HistogramEqualizer mEqualizer = new HistogramEqualizer();
+    /**
+     * Arrays of floats containing the working RGB values and V values of a sprite.
+     */
+    private float[] mRgb = new float[0], mVal = new float[0];
+
+    public ColorSignatureIndex(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.mSignatures = new float[capacity * NUM_BINS];
+        this.mIndexed = new boolean[capacity];
+        this.mSimilarity = new float[capacity];
+        this.mSelector = new TopKSelector(capacity);
+    }
+
+    public int getCapacity() {
+        return mIndexed.length;
+    }
+
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Adds the signature of an item's sprite, replacing its previous one.
+     *
+     * @param index integer containing the item's index (in range [0; getCapacity())).
+     * @param argb array of integers containing the ARGB pixels of the sprite.
+     * @param width integer containing the width of the sprite.
+     * @param height integer containing the height of the sprite.
+     * @return True if the sprite has at least a pixel that is not transparent.
+     */
+    public synchronized boolean addSprite(int index, int[] argb, int width, int height) {
+        int size = width * height;
+        if (width < 1 || height < 1 || argb.length < size)
+            throw new IllegalArgumentException("Invalid sprite: " + width + "x" + height);
+        if (mVal.length < size) {
+            mRgb = new float[size * ImagePreprocessor.NUM_CHANNELS];
+            mVal = new float[size];
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int pixel = argb[i];
+            if ((pixel >>> 24) < MIN_ALPHA)
+                continue;
+            int base = count * ImagePreprocessor.NUM_CHANNELS;
+            mRgb[base] = (pixel >> 16) & 0xFF;
+            mRgb[base + 1] = (pixel >> 8) & 0xFF;
+            mRgb[base + 2] = pixel & 0xFF;
+            mVal[count++] = Math.max(mRgb[base], Math.max(mRgb[base + 1], mRgb[base + 2])) / MAX_CHANNEL;
+        }
+        if (count > 0)
+            mEqualizer.equalizeHistogram(mVal, count);
+
+        int offset = index * NUM_BINS;
+        for (int b = 0; b < NUM_BINS; b++)
+            mSignatures[offset + b] = 0.0f;
+        for (int i = 0; i < count; i++) {
+            int base = i * ImagePreprocessor.NUM_CHANNELS;
+            mSignatures[offset + binOf(mRgb[base], mRgb[base + 1], mRgb[base + 2], mVal[i])] += 1.0f / count;
+        }
+        boolean indexed = count > 0;
+        if (indexed != mIndexed[index])
+            mCount += indexed ? 1 : -1;
+        mIndexed[index] = indexed;
+        return indexed;
+    }
+
+    /**
+     * Finds the items whose signature is the most similar to the one of an equalized crop.
+     * Items without a signature are never candidates.
+     *
+     * @param rgb array of floats containing the crop's RGB values (in range [0; 255]),
+     *            [height][width][NUM_CHANNELS], as the ImagePreprocessor's scaled image.
+     * @param width integer containing the width of the crop.
+     * @param height integer containing the height of the crop.
+     * @param k integer containing the number of candidates requested.
+     * @param candidates array of integers that will contain the candidates' indexes, from
+     *                   the most similar one.
+     * @return An integer containing the number of candidates (min(k, getCount())).
+     */
+    public synchronized int query(float[] rgb, int width, int height, int k, int[] candidates) {
+        int size = width * height;
+        for (int b = 0; b < NUM_BINS; b++)
+            mQuery[b] = 0.0f;
+        for (int i = 0; i < size; i++) {
+            int base = i * ImagePreprocessor.NUM_CHANNELS;
+            float red = rgb[base], green = rgb[base + 1], blue = rgb[base + 2];
+            float value = Math.max(red, Math.max(green, blue)) / MAX_CHANNEL;
+            mQuery[binOf(red, green, blue, value)] += 1.0f / size;
+        }
+
+        for (int item = 0; item < mIndexed.length; item++) {
+            if (!mIndexed[item]) {
+                mSimilarity[item] = -1.0f;
+                continue;
+            }
+            float similarity = 0.0f;
+            int offset = item * NUM_BINS;
+            for (int b = 0; b < NUM_BINS; b++)
+                similarity += Math.min(mSignatures[offset + b], mQuery[b]);
+            mSimilarity[item] = similarity;
+        }
+        int count = mSelector.select(mSimilarity, mIndexed.length, Math.min(k, mCount));
+        for (int rank = 0; rank < count; rank++)
+            candidates[rank] = mSelector.getIndex(rank);
+        return count;
+    }
+
+    /**
+     * Gets the similarity of an item with the last crop queried.
+     *
+     * @param index integer containing the item's index.
+     * @return A float in range [0; 1] (-1 if the item has no signature).
+     */
+    public synchronized float getSimilarity(int index) {
+        return mSimilarity[index];
+    }
+
+    /**
+     * Finds the bin of a pixel: the hue's bin if it is coloured, otherwise the V value's one.
+     */
+    private static int binOf(float red, float green, float blue, float value) {
+        float max = Math.max(red, Math.max(green, blue));
+        float min = Math.min(red, Math.min(green, blue));
+        float delta = max - min;
+        if (max <= 0.0f || delta / max < MIN_SATURATION || value < MIN_VALUE)
+            return HUE_BINS + Math.min(GRAY_BINS - 1, (int) (value * GRAY_BINS));
+        float hue;
+        if (max == red)
+            hue = (green - blue) / delta;
+        else if (max == green)
+            hue = 2.0f + (blue - red) / delta;
+        else
+            hue = 4.0f + (red - green) / delta;
+        if (hue < 0.0f)
+            hue += 6.0f;
+        return Math.min(HUE_BINS - 1, (int) (hue / 6.0f * HUE_BINS));
+    }
+}
@@ -0,0 +1,137 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.CropVariants
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * CropVariants class containing the test-time augmentation of the green square: N variants
+ * of the crop are written in a batched input tensor, so that the model scores all of them
+ * in a single invocation, and their scores are averaged.
+ * The variants follow the perturbations of the training samples (createSample in the
+ * Python project): edges from 0.8 to 2 times the item, shifts of a few pixels and rotations
+ * of at most 4 degrees. The training never mirrors the samples (and rotates by 90 degrees
+ * a single item), hence those variants are not used.
+ * The first N variants of the table are used, in order:
+ * - 0: the green square,
+ * - 1, 2: scaled by 0.9 and 1.1,
+ * - 3, 4: rotated by +4 and -4 degrees,
+ * - 5, 6, 7: shifted by SHIFT along the diagonals.
+ */
+public class CropVariants {
+
+    /**
+     * An integer containing the maximum number of variants.
+     */
+    public final static int MAX_VARIANTS = 8;
+    /**
+     * A float containing the shift of the shifted variants (in proportion to the edge).
+     */
+    private final static float SHIFT = 0.06f;
+    /**
+     * Arrays of floats containing, for each variant, the edge's scale, the shift of
+     * the center (in proportion to the edge) and the rotation (in degrees).
+     */
+    private final static float[] SCALES = {1.0f, 0.9f, 1.1f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f};
+    private final static float[] SHIFTS_X = {0.0f, 0.0f, 0.0f, 0.0f, 0.0f, -SHIFT, SHIFT, SHIFT};
+    private final static float[] SHIFTS_Y = {0.0f, 0.0f, 0.0f, 0.0f, 0.0f, -SHIFT, SHIFT, -SHIFT};
+    private final static float[] ANGLES = {0.0f, 0.0f, 0.0f, 4.0f, -4.0f, 0.0f, 0.0f, 0.0f};
+
+    private CropVariants() {
+    }
+
+    /**
+     * Gets the length of the square (centered in the green square) containing
+     * every pixel sampled by the first variants.
+     *
+     * @param edge integer containing the length of the green square's edge.
+     * @param variants integer containing the number of variants used.
+     * @return An integer containing the length of the square's edge.
+     */
+    public static int contextEdge(int edge, int variants) {
+        float extent = 1.0f;
+        for (int i = 0; i < checkVariants(variants); i++) {
+            double angle = Math.toRadians(ANGLES[i]);
+            float rotated = SCALES[i] * (float) (Math.abs(Math.cos(angle)) + Math.abs(Math.sin(angle)));
+            float shift = 2 * Math.max(Math.abs(SHIFTS_X[i]), Math.abs(SHIFTS_Y[i]));
+            extent = Math.max(extent, rotated + shift);
+        }
+        return (int) Math.ceil(edge * extent);
+    }
+
+    /**
+     * Gets the first coordinate of the context square along an axis, moving it
+     * inside the image if needed.
+     *
+     * @param start integer containing the first coordinate of the green square.
+     * @param edge integer containing the length of the green square's edge.
+     * @param contextEdge integer containing the length of the context's edge.
+     * @param size integer containing the size of the image along the axis.
+     * @return An integer containing the first coordinate of the context.
+     */
+    public static int contextStart(int start, int edge, int contextEdge, int size) {
+        int contextStart = start - (contextEdge - edge) / 2;
+        return Math.max(0, Math.min(size - Math.min(contextEdge, size), contextStart));
+    }
+
+    /**
+     * Writes the first variants of the green square in consecutive input tensors,
+     * starting from the beginning of the buffer given.
+     *
+     * @param mPreprocessor ImagePreprocessor used to write each variant.
+     * @param pixels array of integers containing ARGB pixels.
+     * @param stride integer containing the number of pixels between two rows.
+     * @param width integer containing the width of the image.
+     * @param height integer containing the height of the image.
+     * @param left integer containing the left column of the green square.
+     * @param top integer containing the top row of the green square.
+     * @param edge integer containing the length of the green square's edge.
+     * @param variants integer containing the number of variants.
+     * @param output ByteBuffer with native order that will contain the batched input tensor.
+     */
+    public static void preprocess(ImagePreprocessor mPreprocessor, int[] pixels, int stride,
+                                  int width, int height, int left, int top, int edge,
+                                  int variants, ByteBuffer output) {
+        float centerX = left + edge / 2.0f;
+        float centerY = top + edge / 2.0f;
+        for (int i = 0; i < checkVariants(variants); i++) {
+            output.position(i * mPreprocessor.getInputBytes());
+            mPreprocessor.preprocess(pixels, stride, width, height,
+                    centerX + SHIFTS_X[i] * edge, centerY + SHIFTS_Y[i] * edge,
+                    SCALES[i] * edge, ANGLES[i], output);
+        }
+        output.position(0);
+    }
+
+    /**
+     * Averages the scores of the variants.
+     *
+     * @param scores array of floats with shape [variants][size] containing the scores.
+     * @param variants integer containing the number of variants.
+     * @param size integer containing the number of scores of each variant.
+     * @param result array of floats that will contain the size averaged scores.
+     */
+    public static void average(float[][] scores, int variants, int size, float[] result) {
+        System.arraycopy(scores[0], 0, result, 0, size);
+        for (int i = 1; i < variants; i++)
+            for (int j = 0; j < size; j++)
+                result[j] += scores[i][j];
+        for (int j = 0; j < size; j++)
+            result[j] /= variants;
+    }
+
+    private static int checkVariants(int variants) {
+        if (variants < 1 || variants > MAX_VARIANTS)
+            throw new IllegalArgumentException("Variants must be in range [1; " + MAX_VARIANTS + "]: " + variants);
+        return variants;
+    }
+}
@@ -0,0 +1,82 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.Detection
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * Detection class containing (immutably) an item found by a scan of the whole frame:
+ * its index, its score and the square window (in pixels of the scanned image) where
+ * it has been found.
+ */
+public final class Detection {
+
+    /**
+     * An integer containing the index of the item.
+     */
+    private final int mIndex;
+    /**
+     * A float containing the score of the item in its window.
+     */
+    private final float mScore;
+    /**
+     * Integers containing the left column, the top row and the edge of the window.
+     */
+    private final int mLeft, mTop, mEdge;
+
+    public Detection(int index, float score, int left, int top, int edge) {
+        this.mIndex = index;
+        this.mScore = score;
+        this.mLeft = left;
+        this.mTop = top;
+        this.mEdge = edge;
+    }
+
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public float getScore() {
+        return mScore;
+    }
+
+    public int getLeft() {
+        return mLeft;
+    }
+
+    public int getTop() {
+        return mTop;
+    }
+
+    public int getEdge() {
+        return mEdge;
+    }
+
+    /**
+     * Computes the overlap of the windows of two detections.
+     *
+     * @param other Detection object to compare.
+     * @return A float containing the intersection over union of the windows (in range [0; 1]).
+     */
+    public float overlap(Detection other) {
+        int width = Math.min(mLeft + mEdge, other.mLeft + other.mEdge) - Math.max(mLeft, other.mLeft);
+        int height = Math.min(mTop + mEdge, other.mTop + other.mEdge) - Math.max(mTop, other.mTop);
+        if (width <= 0 || height <= 0)
+            return 0.0f;
+        float intersection = (float) width * height;
+        return intersection / ((float) mEdge * mEdge + (float) other.mEdge * other.mEdge - intersection);
+    }
+
+    @Override
+    public String toString() {
+        return "Detection{index=" + mIndex + ", score=" + mScore + ", left=" + mLeft
+                + ", top=" + mTop + ", edge=" + mEdge + "}";
+    }
+}
@@ -0,0 +1,195 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.FrameQualityGate
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * FrameQualityGate class containing a cheap check of the frames placed in front of
+ * the recognizer: it works on a small grid of luminance values sampled from the green
+ * square, filled by the caller in getLuma() for each frame.
+ * The sharpness is the variance of the grid's Laplacian (low when the camera is out of
+ * focus) and the motion is the mean squared difference from the previous frame's grid
+ * (high when the camera or the item is moving).
+ * update() measures every frame, so that the motion is always computed between
+ * consecutive frames, while accept() is called only for the frames that would be
+ * recognized and counts the inferences saved by the rejected ones.
+ * The grids are allocated once. An instance is not thread-safe.
+ */
+public class FrameQualityGate {
+
+    /**
+     * An integer containing the length of the grid's edge.
+     */
+    private final int mSize;
+    /**
+     * Arrays of integers containing the luminance grids of the current and of the
+     * previous frame (swapped at each update).
+     */
+    private int[] mLuma;
+    private int[] mPrevious;
+    /**
+     * A boolean that verifies whether the previous frame's grid is valid.
+     */
+    private boolean mHasPrevious = false;
+    /**
+     * A float containing the minimum sharpness of an accepted frame.
+     */
+    private float mMinSharpness;
+    /**
+     * A float containing the maximum motion of an accepted frame.
+     */
+    private float mMaxMotion;
+    /**
+     * Floats containing the sharpness and the motion of the last frame measured.
+     */
+    private float mSharpness = 0.0f;
+    private float mMotion = 0.0f;
+    /**
+     * Longs containing the number of frames accepted, rejected because blurry and
+     * rejected because moving.
+     */
+    private long mAccepted = 0L;
+    private long mBlurry = 0L;
+    private long mMoving = 0L;
+
+    /**
+     * @param size integer containing the length of the grid's edge (at least 3).
+     * @param minSharpness float containing the minimum Laplacian variance of an accepted frame.
+     * @param maxMotion float containing the maximum mean squared difference of an accepted frame.
+     */
+    public FrameQualityGate(int size, float minSharpness, float maxMotion) {
+        if (size < 3)
+            throw new IllegalArgumentException("Grid size must be at least 3: " + size);
+        this.mSize = size;
+        this.mLuma = new int[size * size];
+        this.mPrevious = new int[size * size];
+        setThresholds(minSharpness, maxMotion);
+    }
+
+    /**
+     * Sets the thresholds of the accepted frames.
+     *
+     * @param minSharpness float containing the minimum Laplacian variance (0 disables the check).
+     * @param maxMotion float containing the maximum mean squared difference
+     *                  (Float.POSITIVE_INFINITY disables the check).
+     */
+    public void setThresholds(float minSharpness, float maxMotion) {
+        this.mMinSharpness = minSharpness;
+        this.mMaxMotion = maxMotion;
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Gets the grid to fill with the luminance of the next frame.
+     *
+     * @return An array of integers (getSize() * getSize() long, row-major) that will
+     * contain Y values in range [0; 255].
+     */
+    public int[] getLuma() {
+        return mLuma;
+    }
+
+    /**
+     * Measures the sharpness and the motion of the grid filled, which becomes the
+     * previous frame's grid.
+     */
+    public void update() {
+        // Variance of the 4-neighbours Laplacian on the grid's interior
+        long sum = 0L, squares = 0L;
+        for (int y = 1; y < mSize - 1; y++) {
+            int row = y * mSize;
+            for (int x = 1; x < mSize - 1; x++) {
+                int i = row + x;
+                long laplacian = 4 * mLuma[i] - mLuma[i - 1] - mLuma[i + 1] - mLuma[i - mSize] - mLuma[i + mSize];
+                sum += laplacian;
+                squares += laplacian * laplacian;
+            }
+        }
+        int interior = (mSize - 2) * (mSize - 2);
+        double mean = (double) sum / interior;
+        mSharpness = (float) ((double) squares / interior - mean * mean);
+
+        // Mean squared difference from the previous frame
+        if (mHasPrevious) {
+            long energy = 0L;
+            for (int i = 0; i < mLuma.length; i++) {
+                long difference = mLuma[i] - mPrevious[i];
+                energy += difference * difference;
+            }
+            mMotion = (float) ((double) energy / mLuma.length);
+        }
+        else
+            mMotion = 0.0f;
+
+        int[] mSwap = mPrevious;
+        mPrevious = mLuma;
+        mLuma = mSwap;
+        mHasPrevious = true;
+    }
+
+    /**
+     * Verifies whether the last frame measured is worth recognizing, counting it.
+     *
+     * @return True if the frame is sharp and still enough.
+     */
+    public boolean accept() {
+        if (mSharpness < mMinSharpness) {
+            mBlurry++;
+            return false;
+        }
+        if (mMotion > mMaxMotion) {
+            mMoving++;
+            return false;
+        }
+        mAccepted++;
+        return true;
+    }
+
+    /**
+     * Forgets the previous frame (for instance when the green square changes), so that
+     * the next one has no motion.
+     */
+    public void reset() {
+        mHasPrevious = false;
+    }
+
+    public float getSharpness() {
+        return mSharpness;
+    }
+
+    public float getMotion() {
+        return mMotion;
+    }
+
+    public long getAccepted() {
+        return mAccepted;
+    }
+
+    public long getBlurry() {
+        return mBlurry;
+    }
+
+    public long getMoving() {
+        return mMoving;
+    }
+
+    /**
+     * Gets the number of inferences saved by the gate.
+     *
+     * @return A long containing the number of frames rejected.
+     */
+    public long getSaved() {
+        return mBlurry + mMoving;
+    }
+}
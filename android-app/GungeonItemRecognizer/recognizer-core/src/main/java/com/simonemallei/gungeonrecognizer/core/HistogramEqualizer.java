@@ -0,0 +1,188 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.Arrays;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.HistogramEqualizer
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * HistogramEqualizer class containing the histogram equalization performed on the V values
+ * (in range [0; 1]) of an HSV image.
+ * Each value v is mapped to (min(cdf(v) + 1, N) - min_cdf) / (N - min_cdf), where cdf(v) is
+ * the number of values <= v and min_cdf is the number of values equal to the minimum one
+ * (the formula used by the original binary search on the sorted values).
+ * Two modes are available:
+ * - SORTED sorts a copy of the values and binary-searches each of them (O(N log N)),
+ * - HISTOGRAM counts the values in NUM_BINS fixed bins and maps them with a cumulative
+ *   lookup table (O(N) with a constant-size working set).
+ * The modes give the same results (up to float rounding, 1e-6) when every value is a
+ * multiple of 1/255, as the V values obtained from 8-bit RGB channels. Otherwise, distinct
+ * values that share a bin (width 1/255) are counted together, hence the difference of a
+ * value is at most (values in its bin + values in the minimum bin) / (N - min_cdf).
+ * When all the values are equal, both modes map them to 1 (as the training preprocessing).
+ * An instance is not thread-safe.
+ */
+public class HistogramEqualizer {
+
+    /**
+     * Enum containing the available equalization modes.
+     */
+    public enum Mode { SORTED, HISTOGRAM }
+
+    /**
+     * An integer containing the number of bins of the histogram (one for each 8-bit V value).
+     */
+    public final static int NUM_BINS = 256;
+    /**
+     * An array of integers containing the number of values in each bin.
+     */
+    private final int[] mHistogram = new int[NUM_BINS];
+    /**
+     * An array of floats containing the equalized value of each bin.
+     */
+    private final float[] mLut = new float[NUM_BINS];
+    /**
+     * An array of floats containing the sorted values used by the SORTED mode.
+     */
+    private float[] mSorted = new float[0];
+
+    /**
+     * Performs histogram equalization on the first size values given, using the mode given.
+     *
+     * @param values array of floats containing V values in range [0; 1] (overwritten).
+     * @param size integer containing the number of values considered.
+     * @param mode Mode used to perform the equalization.
+     */
+    public void equalize(float[] values, int size, Mode mode) {
+        if (mode == Mode.SORTED)
+            equalizeSorted(values, size);
+        else
+            equalizeHistogram(values, size);
+    }
+
+    /**
+     * Performs histogram equalization on the first size values given, sorting them.
+     *
+     * @param values array of floats containing V values in range [0; 1] (overwritten).
+     * @param size integer containing the number of values considered.
+     */
+    public void equalizeSorted(float[] values, int size) {
+        if (mSorted.length < size)
+            mSorted = new float[size];
+        System.arraycopy(values, 0, mSorted, 0, size);
+        Arrays.sort(mSorted, 0, size);
+
+        // Finding minimum cumulative distribution function
+        int min_cdf = 1;
+        while (min_cdf < size && mSorted[min_cdf] == mSorted[min_cdf-1])
+            min_cdf++;
+
+        // Finding cumulative distribution for each value and converting it into
+        // the new V value
+        for (int i = 0; i < size; i++) {
+            int start = 1;
+            int end = size;
+            int pix_cdf = size;
+            while (start <= end) {
+                int medium = (start + end) / 2;
+                if (mSorted[medium-1] > values[i]) {
+                    pix_cdf = medium;
+                    end = medium - 1;
+                }
+                else
+                    start = medium + 1;
+            }
+            values[i] = equalizedValue(pix_cdf, min_cdf, size);
+        }
+    }
+
+    /**
+     * Performs histogram equalization on the first size values given, using
+     * a fixed-bin histogram and its cumulative lookup table.
+     *
+     * @param values array of floats containing V values in range [0; 1] (overwritten).
+     * @param size integer containing the number of values considered.
+     */
+    public void equalizeHistogram(float[] values, int size) {
+        clearHistogram();
+        for (int i = 0; i < size; i++)
+            mHistogram[toBin(values[i])]++;
+        buildLut(size);
+        for (int i = 0; i < size; i++)
+            values[i] = mLut[toBin(values[i])];
+    }
+
+    /**
+     * Sets every bin of the histogram to zero.
+     */
+    public void clearHistogram() {
+        Arrays.fill(mHistogram, 0);
+    }
+
+    /**
+     * Gets the histogram of the equalizer, so that it can be filled directly
+     * (for instance with the maximum 8-bit channel of each pixel).
+     *
+     * @return The array of integers (with length NUM_BINS) containing the histogram.
+     */
+    public int[] getHistogram() {
+        return mHistogram;
+    }
+
+    /**
+     * Builds the cumulative lookup table from the histogram.
+     *
+     * @param size integer containing the number of values counted in the histogram.
+     * @return The array of floats (with length NUM_BINS) containing the equalized
+     *         value of each bin.
+     */
+    public float[] buildLut(int size) {
+        // Finding minimum cumulative distribution function
+        int bin = 0;
+        while (bin < NUM_BINS - 1 && mHistogram[bin] == 0)
+            bin++;
+        int min_cdf = mHistogram[bin];
+
+        // Finding cumulative distribution of each bin
+        int cdf = 0;
+        for (int i = 0; i < NUM_BINS; i++) {
+            cdf += mHistogram[i];
+            // Empty bins before the minimum one are never looked up
+            mLut[i] = cdf == 0 ? 0.0f : equalizedValue(Math.min(cdf + 1, size), min_cdf, size);
+        }
+        return mLut;
+    }
+
+    /**
+     * Gets the bin of the histogram containing the value given.
+     *
+     * @param value float containing a V value in range [0; 1].
+     * @return An integer in range [0; NUM_BINS - 1].
+     */
+    public static int toBin(float value) {
+        int bin = (int) (value * (NUM_BINS - 1) + 0.5f);
+        return Math.max(0, Math.min(NUM_BINS - 1, bin));
+    }
+
+    /**
+     * Gets the equalized value of a cumulative distribution.
+     *
+     * @param cdf integer containing the cumulative distribution of the value considered.
+     * @param min_cdf integer containing the number of values equal to the minimum one.
+     * @param size integer containing the number of values.
+     * @return A float containing the equalized value in range [0; 1].
+     */
+    private static float equalizedValue(int cdf, int min_cdf, int size) {
+        if (size == min_cdf)
+            return 1.0f;
+        return ((float) (cdf - min_cdf)) / ((float) (size - min_cdf));
+    }
+}
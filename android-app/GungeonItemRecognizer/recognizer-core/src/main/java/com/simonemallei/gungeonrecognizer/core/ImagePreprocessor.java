@@ -0,0 +1,641 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.ImagePreprocessor
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * ImagePreprocessor class containing the steps performed on an ARGB image before
+ * the recognition: histogram equalization on V values (from the HSV image), scaling to
+ * the model's input size and normalization of RGB values in range [0; 1].
+ * preprocess() performs all of them in a single fused stage that writes the model's
+ * input tensor, while equalize() keeps the full-resolution HSV round-trip as reference.
+ * Every step works on flat primitive buffers that are reused between calls, hence
+ * no allocation is performed once the buffers have reached the size of the images
+ * considered. An instance is not thread-safe.
+ * The input tensor is made of floats by default; for quantized models (uint8/int8 input)
+ * each scaled 8-bit value is quantized and written as a single byte instead.
+ */
+public class ImagePreprocessor {
+
+    /**
+     * An integer containing the maximum value of an 8-bit channel.
+     */
+    private final static int MAX_CHANNEL = 255;
+    /**
+     * An integer containing the number of the channels written in the input tensor.
+     */
+    public final static int NUM_CHANNELS = 3;
+    /**
+     * An integer containing the number of bytes of a float.
+     */
+    private final static int FLOAT_BYTES = 4;
+    /**
+     * A float containing the threshold under which a saturation is considered zero.
+     */
+    private final static float NEARLY_ZERO = 1.0f / (1 << 12);
+    /**
+     * Integers containing the number of rows and of columns of bits of the perceptual
+     * hash (HASH_ROWS * HASH_COLS = 64).
+     */
+    private final static int HASH_ROWS = 8, HASH_COLS = 8;
+    /**
+     * An array of integers containing the ARGB pixels of the image (row by row).
+     */
+    private int[] mPixels = new int[0];
+    /**
+     * An array of floats containing the H value (in range [0; 360)) of each pixel
+     * (allocated by equalize() only, as the S and V buffers).
+     */
+    private float[] mHue = new float[0];
+    /**
+     * An array of floats containing the S value (in range [0; 1]) of each pixel.
+     */
+    private float[] mSat = new float[0];
+    /**
+     * An array of floats containing the V value (in range [0; 1]) of each pixel.
+     */
+    private float[] mVal = new float[0];
+    /**
+     * A HistogramEqualizer object used to equalize V values.
+     */
+    private final HistogramEqualizer mEqualizer = new HistogramEqualizer();
+    /**
+     * A Mode containing the equalization mode used (linear-time histogram by default).
+     */
+    private HistogramEqualizer.Mode mMode = HistogramEqualizer.Mode.HISTOGRAM;
+    /**
+     * A boolean that verifies whether preprocess() equalizes the image after
+     * scaling it (hence on WIDTH_VAL * HEIGHT_VAL pixels) or before.
+     */
+    private boolean mEqualizeAfterScaling = false;
+    /**
+     * A boolean that verifies whether the input tensor is quantized (one byte per value).
+     */
+    private boolean mQuantized = false;
+    /**
+     * A float containing the factor that converts an 8-bit value (in range [0; 255])
+     * into a quantized one (1 / (255 * scale)).
+     */
+    private float mQuantFactor = 1.0f;
+    /**
+     * Integers containing the zero point and the range of the quantized values.
+     */
+    private int mZeroPoint = 0, mMinQuantized = 0, mMaxQuantized = MAX_CHANNEL;
+    /**
+     * An integer containing the width of the input tensor.
+     */
+    private final int mOutWidth;
+    /**
+     * An integer containing the height of the input tensor.
+     */
+    private final int mOutHeight;
+    /**
+     * An array of floats containing the equalizing factor of each maximum 8-bit channel.
+     */
+    private final float[] mScale = new float[MAX_CHANNEL + 1];
+    /**
+     * Arrays containing, for each column of the input tensor, the two source
+     * columns used by the bilinear sampling and the weight of the second one.
+     */
+    private final int[] mCol0, mCol1;
+    private final float[] mColWeight;
+    /**
+     * Arrays containing, for each row of the input tensor, the two source
+     * rows used by the bilinear sampling and the weight of the second one.
+     */
+    private final int[] mRow0, mRow1;
+    private final float[] mRowWeight;
+    /**
+     * An array of floats containing the RGB values (in range [0; 255]) of the scaled image.
+     */
+    private final float[] mScaled;
+    /**
+     * Arrays of floats containing the V values of the scaled image, before
+     * and after the equalization.
+     */
+    private final float[] mScaledVal, mScaledEqVal;
+    /**
+     * An array of floats containing the mean luminance of the cells of the scaled
+     * image compared by the perceptual hash (HASH_ROWS x (HASH_COLS + 1)).
+     */
+    private final float[] mHashCells = new float[HASH_ROWS * (HASH_COLS + 1)];
+
+    public ImagePreprocessor(int outWidth, int outHeight) {
+        this.mOutWidth = outWidth;
+        this.mOutHeight = outHeight;
+        mCol0 = new int[outWidth];
+        mCol1 = new int[outWidth];
+        mColWeight = new float[outWidth];
+        mRow0 = new int[outHeight];
+        mRow1 = new int[outHeight];
+        mRowWeight = new float[outHeight];
+        mScaled = new float[outWidth * outHeight * NUM_CHANNELS];
+        mScaledVal = new float[outWidth * outHeight];
+        mScaledEqVal = new float[outWidth * outHeight];
+    }
+
+    /**
+     * Creates a preprocessor with the same input size and settings of the one given
+     * (but its own buffers), for instance in order to preprocess on another thread.
+     *
+     * @param other ImagePreprocessor object whose settings are copied.
+     */
+    public ImagePreprocessor(ImagePreprocessor other) {
+        this(other.mOutWidth, other.mOutHeight);
+        this.mMode = other.mMode;
+        this.mEqualizeAfterScaling = other.mEqualizeAfterScaling;
+        this.mQuantized = other.mQuantized;
+        this.mQuantFactor = other.mQuantFactor;
+        this.mZeroPoint = other.mZeroPoint;
+        this.mMinQuantized = other.mMinQuantized;
+        this.mMaxQuantized = other.mMaxQuantized;
+    }
+
+    /**
+     * Verifies whether the preprocessor writes the same input tensor as another one,
+     * hence whether it has the same output size and the settings copied by the copy
+     * constructor.
+     *
+     * @param other ImagePreprocessor object to compare with.
+     * @return True if both preprocessors have the same settings.
+     */
+    public boolean hasSettingsOf(ImagePreprocessor other) {
+        return mOutWidth == other.mOutWidth && mOutHeight == other.mOutHeight
+                && mMode == other.mMode && mEqualizeAfterScaling == other.mEqualizeAfterScaling
+                && mQuantized == other.mQuantized && mQuantFactor == other.mQuantFactor
+                && mZeroPoint == other.mZeroPoint && mMinQuantized == other.mMinQuantized
+                && mMaxQuantized == other.mMaxQuantized;
+    }
+
+    /**
+     * Sets the equalization mode used by the preprocessor.
+     *
+     * @param mode Mode to use in the next equalizations.
+     */
+    public void setEqualizationMode(HistogramEqualizer.Mode mode) {
+        this.mMode = mode;
+    }
+
+    /**
+     * Sets whether preprocess() equalizes the image after scaling it: the work does
+     * not depend on the image's size anymore, but the histogram is computed on
+     * WIDTH_VAL * HEIGHT_VAL interpolated pixels instead of the original ones.
+     *
+     * @param equalizeAfterScaling True in order to equalize the scaled image.
+     */
+    public void setEqualizeAfterScaling(boolean equalizeAfterScaling) {
+        this.mEqualizeAfterScaling = equalizeAfterScaling;
+    }
+
+    /**
+     * Sets the input tensor as made of floats (RGB values in range [0; 1]).
+     */
+    public void setFloatInput() {
+        this.mQuantized = false;
+    }
+
+    /**
+     * Sets the input tensor as quantized: a value x in range [0; 1] is written as the
+     * byte round(x / scale) + zeroPoint, clamped to the range of the type.
+     *
+     * @param scale float containing the quantization scale of the input tensor.
+     * @param zeroPoint integer containing the quantization zero point of the input tensor.
+     * @param signed boolean that is true for an int8 tensor, false for a uint8 one.
+     */
+    public void setQuantizedInput(float scale, int zeroPoint, boolean signed) {
+        if (scale <= 0.0f)
+            throw new IllegalArgumentException("Quantization scale must be positive: " + scale);
+        this.mQuantized = true;
+        this.mQuantFactor = 1.0f / (MAX_CHANNEL * scale);
+        this.mZeroPoint = zeroPoint;
+        this.mMinQuantized = signed ? Byte.MIN_VALUE : 0;
+        this.mMaxQuantized = signed ? Byte.MAX_VALUE : MAX_CHANNEL;
+    }
+
+    /**
+     * Gets the number of bytes of the input tensor written by preprocess().
+     *
+     * @return An integer containing the size of the tensor in bytes.
+     */
+    public int getInputBytes() {
+        return mOutWidth * mOutHeight * NUM_CHANNELS * (mQuantized ? 1 : FLOAT_BYTES);
+    }
+
+    /**
+     * Fused stage that crops, equalizes, scales (bilinear sampling, as
+     * Bitmap.createScaledBitmap with filtering) and normalizes an ARGB image,
+     * writing the input tensor [height][width][NUM_CHANNELS] (RGB values in range
+     * [0; 1], quantized if needed) from the current position of the buffer given
+     * (which is not moved).
+     *
+     * @param pixels array of integers containing ARGB pixels.
+     * @param offset integer containing the index of the top-left pixel of the crop.
+     * @param stride integer containing the number of pixels between two rows.
+     * @param width integer containing the width of the crop.
+     * @param height integer containing the height of the crop.
+     * @param output ByteBuffer with native order that will contain the input tensor.
+     */
+    public void preprocess(int[] pixels, int offset, int stride, int width, int height,
+                           ByteBuffer output) {
+        computeSampling(width, height);
+        if (!mEqualizeAfterScaling)
+            computeScale(pixels, offset, stride, width, height);
+
+        // Scaling the image with bilinear sampling
+        int index = 0;
+        for (int y = 0; y < mOutHeight; y++) {
+            int row0 = offset + mRow0[y] * stride;
+            int row1 = offset + mRow1[y] * stride;
+            float wy = mRowWeight[y];
+            for (int x = 0; x < mOutWidth; x++) {
+                float wx = mColWeight[x];
+                float w00 = (1.0f - wx) * (1.0f - wy);
+                float w01 = wx * (1.0f - wy);
+                float w10 = (1.0f - wx) * wy;
+                float w11 = wx * wy;
+                mScaled[index] = 0.0f;
+                mScaled[index + 1] = 0.0f;
+                mScaled[index + 2] = 0.0f;
+                accumulate(pixels[row0 + mCol0[x]], w00, index);
+                accumulate(pixels[row0 + mCol1[x]], w01, index);
+                accumulate(pixels[row1 + mCol0[x]], w10, index);
+                accumulate(pixels[row1 + mCol1[x]], w11, index);
+                index += NUM_CHANNELS;
+            }
+        }
+        if (mEqualizeAfterScaling)
+            equalizeScaled();
+        writeInput(output);
+    }
+
+    /**
+     * Fused stage that equalizes, samples (bilinear) and normalizes a square crop
+     * that may be rotated around its center, writing the input tensor as preprocess().
+     * The histogram is computed on the axis-aligned bounding square of the crop, which
+     * also limits the sampled pixels; with a zero angle and integer bounds the result is
+     * the same of preprocess() on the crop.
+     *
+     * @param pixels array of integers containing ARGB pixels.
+     * @param stride integer containing the number of pixels between two rows.
+     * @param width integer containing the width of the image.
+     * @param height integer containing the height of the image.
+     * @param centerX float containing the x coordinate of the crop's center.
+     * @param centerY float containing the y coordinate of the crop's center.
+     * @param edge float containing the length of the crop's edge.
+     * @param angle float containing the rotation of the crop (in degrees).
+     * @param output ByteBuffer with native order that will contain the input tensor.
+     */
+    public void preprocess(int[] pixels, int stride, int width, int height, float centerX,
+                           float centerY, float edge, float angle, ByteBuffer output) {
+        float cos = (float) Math.cos(Math.toRadians(angle));
+        float sin = (float) Math.sin(Math.toRadians(angle));
+        // Bounding square of the crop, inside the image
+        float half = edge / 2 * (Math.abs(cos) + Math.abs(sin));
+        int left = Math.max(0, Math.min(width - 1, Math.round(centerX - half)));
+        int top = Math.max(0, Math.min(height - 1, Math.round(centerY - half)));
+        int right = Math.max(left + 1, Math.min(width, Math.round(centerX + half)));
+        int bottom = Math.max(top + 1, Math.min(height, Math.round(centerY + half)));
+        if (!mEqualizeAfterScaling)
+            computeScale(pixels, top * stride + left, stride, right - left, bottom - top);
+
+        // Sampling the center of each destination pixel in the rotated crop
+        float stepX = edge / mOutWidth, stepY = edge / mOutHeight;
+        int index = 0;
+        for (int y = 0; y < mOutHeight; y++) {
+            float v = (y + 0.5f) * stepY - edge / 2;
+            for (int x = 0; x < mOutWidth; x++) {
+                float u = (x + 0.5f) * stepX - edge / 2;
+                float srcX = Math.max(left, Math.min(right - 1, centerX + cos * u - sin * v - 0.5f));
+                float srcY = Math.max(top, Math.min(bottom - 1, centerY + sin * u + cos * v - 0.5f));
+                int col0 = (int) srcX, row0 = (int) srcY;
+                int col1 = Math.min(col0 + 1, right - 1), row1 = Math.min(row0 + 1, bottom - 1);
+                float wx = srcX - col0, wy = srcY - row0;
+                mScaled[index] = 0.0f;
+                mScaled[index + 1] = 0.0f;
+                mScaled[index + 2] = 0.0f;
+                accumulate(pixels[row0 * stride + col0], (1.0f - wx) * (1.0f - wy), index);
+                accumulate(pixels[row0 * stride + col1], wx * (1.0f - wy), index);
+                accumulate(pixels[row1 * stride + col0], (1.0f - wx) * wy, index);
+                accumulate(pixels[row1 * stride + col1], wx * wy, index);
+                index += NUM_CHANNELS;
+            }
+        }
+        if (mEqualizeAfterScaling)
+            equalizeScaled();
+        writeInput(output);
+    }
+
+    /**
+     * Computes the difference hash (dHash) of the last image preprocessed, once equalized
+     * and scaled: the image is split into HASH_ROWS x (HASH_COLS + 1) cells and each bit
+     * tells whether the mean luminance of a cell is lower than the one of its right neighbour.
+     * Similar images have hashes within a small Hamming distance, and since the image is
+     * equalized the hash does not depend on the exposure.
+     *
+     * @return A long containing the 64-bit hash.
+     */
+    public long dHash() {
+        for (int cy = 0; cy < HASH_ROWS; cy++) {
+            int y0 = Math.min(mOutHeight - 1, cy * mOutHeight / HASH_ROWS);
+            int y1 = Math.max(y0 + 1, (cy + 1) * mOutHeight / HASH_ROWS);
+            for (int cx = 0; cx <= HASH_COLS; cx++) {
+                int x0 = Math.min(mOutWidth - 1, cx * mOutWidth / (HASH_COLS + 1));
+                int x1 = Math.max(x0 + 1, (cx + 1) * mOutWidth / (HASH_COLS + 1));
+                float sum = 0.0f;
+                for (int y = y0; y < y1; y++)
+                    for (int x = x0; x < x1; x++) {
+                        int index = (y * mOutWidth + x) * NUM_CHANNELS;
+                        sum += 0.299f * mScaled[index] + 0.587f * mScaled[index + 1] + 0.114f * mScaled[index + 2];
+                    }
+                mHashCells[cy * (HASH_COLS + 1) + cx] = sum / ((y1 - y0) * (x1 - x0));
+            }
+        }
+        long hash = 0L;
+        for (int cy = 0; cy < HASH_ROWS; cy++)
+            for (int cx = 0; cx < HASH_COLS; cx++) {
+                int cell = cy * (HASH_COLS + 1) + cx;
+                if (mHashCells[cell] < mHashCells[cell + 1])
+                    hash |= 1L << (cy * HASH_COLS + cx);
+            }
+        return hash;
+    }
+
+    /**
+     * Gets the RGB values of the last image preprocessed, once equalized and scaled
+     * (for instance in order to match it against templates): it is overwritten by the
+     * next preprocessing.
+     *
+     * @return An array of floats containing the RGB values (in range [0; 255]) of the
+     *         scaled image [height][width][NUM_CHANNELS].
+     */
+    public float[] getScaled() {
+        return mScaled;
+    }
+
+    public int getOutWidth() {
+        return mOutWidth;
+    }
+
+    public int getOutHeight() {
+        return mOutHeight;
+    }
+
+    /**
+     * Normalizes the RGB values of the scaled image in range [0; 1] (or quantizes them),
+     * writing them from the current position of the buffer given (which is not moved).
+     *
+     * @param output ByteBuffer with native order that will contain the input tensor.
+     */
+    private void writeInput(ByteBuffer output) {
+        int base = output.position();
+        int size = mOutWidth * mOutHeight * NUM_CHANNELS;
+        if (mQuantized) {
+            // With the usual scale (1 / 255) the 8-bit values are only rounded
+            for (int i = 0; i < size; i++) {
+                int value = round(mScaled[i] * mQuantFactor) + mZeroPoint;
+                output.put(base + i, (byte) Math.max(mMinQuantized, Math.min(mMaxQuantized, value)));
+            }
+        }
+        else {
+            for (int i = 0; i < size; i++)
+                output.putFloat(base + i * FLOAT_BYTES, mScaled[i] / MAX_CHANNEL);
+        }
+    }
+
+    /**
+     * Computes, for each row and column of the input tensor, the source pixels
+     * used by the bilinear sampling.
+     *
+     * @param width integer containing the width of the source image.
+     * @param height integer containing the height of the source image.
+     */
+    private void computeSampling(int width, int height) {
+        samplingOf(width, mOutWidth, mCol0, mCol1, mColWeight);
+        samplingOf(height, mOutHeight, mRow0, mRow1, mRowWeight);
+    }
+
+    private static void samplingOf(int srcSize, int dstSize, int[] first, int[] second, float[] weight) {
+        float ratio = (float) srcSize / dstSize;
+        for (int i = 0; i < dstSize; i++) {
+            // Sampling the center of the destination pixel
+            float src = Math.max(0.0f, Math.min(srcSize - 1, (i + 0.5f) * ratio - 0.5f));
+            first[i] = (int) src;
+            second[i] = Math.min(first[i] + 1, srcSize - 1);
+            weight[i] = src - first[i];
+        }
+    }
+
+    /**
+     * Computes the equalizing factor of each maximum 8-bit channel using the histogram
+     * of the crop: since H and S values do not change, an equalized pixel is the original
+     * one scaled by (equalized V) / V.
+     *
+     * @param pixels array of integers containing ARGB pixels.
+     * @param offset integer containing the index of the top-left pixel of the crop.
+     * @param stride integer containing the number of pixels between two rows.
+     * @param width integer containing the width of the crop.
+     * @param height integer containing the height of the crop.
+     */
+    private void computeScale(int[] pixels, int offset, int stride, int width, int height) {
+        mEqualizer.clearHistogram();
+        int[] mHistogram = mEqualizer.getHistogram();
+        for (int y = 0; y < height; y++) {
+            int row = offset + y * stride;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[row + x];
+                int max = Math.max((pixel >> 16) & 0xff, Math.max((pixel >> 8) & 0xff, pixel & 0xff));
+                mHistogram[max]++;
+            }
+        }
+        float[] mLut = mEqualizer.buildLut(width * height);
+        // A black pixel becomes a gray one with the equalized V
+        mScale[0] = mLut[0] * MAX_CHANNEL;
+        for (int max = 1; max <= MAX_CHANNEL; max++)
+            mScale[max] = mLut[max] * MAX_CHANNEL / max;
+    }
+
+    /**
+     * Adds the weighted RGB values of a pixel (equalized if needed) to the scaled image.
+     *
+     * @param pixel integer containing the ARGB pixel.
+     * @param weight float containing the weight of the pixel.
+     * @param index integer containing the index of the scaled image to update.
+     */
+    private void accumulate(int pixel, float weight, int index) {
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+        if (mEqualizeAfterScaling) {
+            mScaled[index] += weight * r;
+            mScaled[index + 1] += weight * g;
+            mScaled[index + 2] += weight * b;
+            return;
+        }
+        int max = Math.max(r, Math.max(g, b));
+        if (max == 0) {
+            mScaled[index] += weight * mScale[0];
+            mScaled[index + 1] += weight * mScale[0];
+            mScaled[index + 2] += weight * mScale[0];
+        }
+        else {
+            float factor = weight * mScale[max];
+            mScaled[index] += factor * r;
+            mScaled[index + 1] += factor * g;
+            mScaled[index + 2] += factor * b;
+        }
+    }
+
+    /**
+     * Performs histogram equalization on V values of the scaled image.
+     */
+    private void equalizeScaled() {
+        int size = mOutWidth * mOutHeight;
+        for (int i = 0; i < size; i++) {
+            int index = i * NUM_CHANNELS;
+            float max = Math.max(mScaled[index], Math.max(mScaled[index + 1], mScaled[index + 2]));
+            mScaledVal[i] = max / MAX_CHANNEL;
+        }
+        System.arraycopy(mScaledVal, 0, mScaledEqVal, 0, size);
+        mEqualizer.equalizeHistogram(mScaledEqVal, size);
+        for (int i = 0; i < size; i++) {
+            int index = i * NUM_CHANNELS;
+            if (mScaledVal[i] == 0.0f) {
+                float gray = mScaledEqVal[i] * MAX_CHANNEL;
+                mScaled[index] = gray;
+                mScaled[index + 1] = gray;
+                mScaled[index + 2] = gray;
+            }
+            else {
+                float factor = mScaledEqVal[i] / mScaledVal[i];
+                mScaled[index] *= factor;
+                mScaled[index + 1] *= factor;
+                mScaled[index + 2] *= factor;
+            }
+        }
+    }
+
+    /**
+     * Gets the ARGB buffer of the preprocessor, enlarging it if it can not
+     * contain the number of pixels given.
+     *
+     * @param size integer containing the number of pixels needed.
+     * @return The array of integers (with length >= size) used as ARGB buffer.
+     */
+    public int[] getPixels(int size) {
+        if (mPixels.length < size)
+            mPixels = new int[size];
+        return mPixels;
+    }
+
+    /**
+     * Performs histogram equalization on V values of the first size pixels
+     * contained in the ARGB buffer, writing the resulting pixels in the same buffer.
+     *
+     * @param size integer containing the number of pixels of the image.
+     */
+    public void equalize(int size) {
+        getPixels(size);
+        // The HSV buffers are needed by the reference round-trip only
+        if (mVal.length < size) {
+            mHue = new float[size];
+            mSat = new float[size];
+            mVal = new float[size];
+        }
+        // Mapping RGB to HSV
+        for (int i = 0; i < size; i++)
+            rgbToHsv(mPixels[i], i);
+        // Applying Histogram Equalization on V
+        mEqualizer.equalize(mVal, size, mMode);
+        // Mapping HSV to RGB
+        for (int i = 0; i < size; i++)
+            mPixels[i] = hsvToColor(mHue[i], mSat[i], mVal[i]);
+    }
+
+    /**
+     * Converts an ARGB pixel into HSV values (same results of
+     * android.graphics.Color.RGBToHSV), storing them at the index given.
+     *
+     * @param pixel integer containing the ARGB pixel.
+     * @param index integer containing the index of the HSV buffers to write.
+     */
+    private void rgbToHsv(int pixel, int index) {
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+        int max = Math.max(r, Math.max(g, b));
+        int delta = max - Math.min(r, Math.min(g, b));
+        mVal[index] = (float) max / MAX_CHANNEL;
+        if (delta == 0) {
+            // Shade of gray
+            mHue[index] = 0.0f;
+            mSat[index] = 0.0f;
+            return;
+        }
+        float h;
+        if (r == max)
+            h = (float) (g - b) / delta;
+        else if (g == max)
+            h = 2.0f + (float) (b - r) / delta;
+        else
+            h = 4.0f + (float) (r - g) / delta;
+        h *= 60.0f;
+        if (h < 0.0f)
+            h += 360.0f;
+        mHue[index] = h;
+        mSat[index] = (float) delta / max;
+    }
+
+    /**
+     * Converts HSV values into an opaque ARGB pixel (same results of
+     * android.graphics.Color.HSVToColor).
+     *
+     * @param hue float containing the H value in range [0; 360).
+     * @param sat float containing the S value in range [0; 1].
+     * @param val float containing the V value in range [0; 1].
+     * @return An integer containing the ARGB pixel.
+     */
+    public static int hsvToColor(float hue, float sat, float val) {
+        float s = Math.max(0.0f, Math.min(1.0f, sat));
+        float v = Math.max(0.0f, Math.min(1.0f, val));
+        int vByte = round(v * MAX_CHANNEL);
+        if (Math.abs(s) <= NEARLY_ZERO)
+            return 0xff000000 | (vByte << 16) | (vByte << 8) | vByte;
+
+        float hx = (hue < 0.0f || hue >= 360.0f) ? 0.0f : hue / 60.0f;
+        float w = (float) Math.floor(hx);
+        float f = hx - w;
+        int p = round((1.0f - s) * v * MAX_CHANNEL);
+        int q = round((1.0f - (s * f)) * v * MAX_CHANNEL);
+        int t = round((1.0f - (s * (1.0f - f))) * v * MAX_CHANNEL);
+        int r, g, b;
+        switch ((int) w) {
+            case 0: r = vByte; g = t; b = p; break;
+            case 1: r = q; g = vByte; b = p; break;
+            case 2: r = p; g = vByte; b = t; break;
+            case 3: r = p; g = q; b = vByte; break;
+            case 4: r = t; g = p; b = vByte; break;
+            default: r = vByte; g = p; b = q; break;
+        }
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Rounds a float to the nearest integer (halves are rounded up).
+     *
+     * @param value float to round.
+     * @return The integer obtained.
+     */
+    private static int round(float value) {
+        return (int) Math.floor(value + 0.5f);
+    }
+}
@@ -0,0 +1,146 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.LatencyHistogram
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * LatencyHistogram class containing a fixed-size histogram of latencies (in microseconds),
+ * from which percentiles are estimated.
+ * The buckets are log-linear: values below 2 * SUB_BUCKETS have a bucket each, then every
+ * power of two is split into SUB_BUCKETS buckets, hence an estimate is at most 12.5%
+ * above the recorded value. Values above MAX_MICROS fall in the last bucket.
+ * Recording never allocates, and the methods are synchronized so that stages running on
+ * different threads can share an instance.
+ */
+public class LatencyHistogram {
+
+    /**
+     * An integer containing the number of bits of the sub-buckets.
+     */
+    private final static int SUB_BITS = 3;
+    /**
+     * An integer containing the number of buckets of each power of two.
+     */
+    private final static int SUB_BUCKETS = 1 << SUB_BITS;
+    /**
+     * A long containing the largest value that has its own bucket (about 35 minutes).
+     */
+    public final static long MAX_MICROS = (1L << 31) - 1;
+    /**
+     * An integer containing the number of buckets.
+     */
+    public final static int NUM_BUCKETS = index(MAX_MICROS) + 1;
+    /**
+     * An array of longs containing the number of values of each bucket.
+     */
+    private final long[] mCounts = new long[NUM_BUCKETS];
+    /**
+     * Longs containing the number of values, their sum, their minimum and their maximum.
+     */
+    private long mCount = 0L;
+    private long mSum = 0L;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax = 0L;
+
+    /**
+     * Gets the bucket of the value given.
+     *
+     * @param micros long containing a non-negative value.
+     * @return An integer containing the index of the bucket.
+     */
+    static int index(long micros) {
+        if (micros < 2 * SUB_BUCKETS)
+            return (int) micros;
+        int shift = 63 - Long.numberOfLeadingZeros(Math.min(micros, MAX_MICROS)) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (Math.min(micros, MAX_MICROS) >> shift);
+    }
+
+    /**
+     * Gets the largest value of the bucket given.
+     *
+     * @param index integer containing the index of the bucket.
+     * @return A long containing the bucket's upper bound.
+     */
+    static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos long containing the latency in nanoseconds (negative values count as 0).
+     */
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0L, nanos / 1000);
+        mCounts[index(micros)]++;
+        mCount++;
+        mSum += micros;
+        mMin = Math.min(mMin, micros);
+        mMax = Math.max(mMax, micros);
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies.
+     *
+     * @param percentile double containing the percentile in range [0; 100].
+     * @return A long containing the estimated latency in microseconds (0 if empty).
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mCount == 0)
+            return 0L;
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * mCount));
+        long seen = 0L;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank)
+                return Math.max(mMin, Math.min(mMax, upperBound(i)));
+        }
+        return mMax;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Gets the mean of the recorded latencies.
+     *
+     * @return A double containing the mean in microseconds (0 if empty).
+     */
+    public synchronized double getMean() {
+        return mCount == 0 ? 0.0 : (double) mSum / mCount;
+    }
+
+    /**
+     * Gets the largest recorded latency.
+     *
+     * @return A long containing the maximum in microseconds (0 if empty).
+     */
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Removes every recorded latency.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            mCounts[i] = 0L;
+        mCount = 0L;
+        mSum = 0L;
+        mMin = Long.MAX_VALUE;
+        mMax = 0L;
+    }
+}
@@ -0,0 +1,129 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.Locale;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.ModelComparison
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * ModelComparison class containing the side-by-side measures of two models scoring
+ * the same crops: the model in use (primary) and the one evaluated (candidate).
+ * For each crop, the best items of both models are compared: the agreement is the
+ * fraction of crops with the same best item, the overlap the mean fraction of the
+ * best K items found by both. The latency of each model is kept in a LatencyHistogram.
+ * The items are compared by their catalogue's index, so that models with different
+ * label mappings can be compared. The methods are synchronized, so that the report
+ * can be read by any thread.
+ */
+public class ModelComparison {
+
+    /**
+     * LatencyHistogram objects containing the latencies of the primary and of the
+     * candidate model.
+     */
+    private final LatencyHistogram mPrimaryLatency = new LatencyHistogram();
+    private final LatencyHistogram mCandidateLatency = new LatencyHistogram();
+    /**
+     * A long containing the number of crops compared.
+     */
+    private long mCompared = 0L;
+    /**
+     * A long containing the number of crops with the same best item.
+     */
+    private long mAgreed = 0L;
+    /**
+     * A double containing the sum of the overlaps of the best items.
+     */
+    private double mOverlapSum = 0.0;
+
+    /**
+     * Records the comparison of a crop.
+     *
+     * @param primaryItems array of integers containing the best items of the primary
+     *                     model, sorted by descending score.
+     * @param candidateItems array of integers containing the best items of the candidate
+     *                       model, sorted by descending score.
+     * @param k integer containing the number of best items compared (at most the length
+     *          of both arrays).
+     * @param primaryNanos long containing the latency of the primary model in nanoseconds.
+     * @param candidateNanos long containing the latency of the candidate model in nanoseconds.
+     */
+    public synchronized void record(int[] primaryItems, int[] candidateItems, int k,
+                                    long primaryNanos, long candidateNanos) {
+        if (k < 1 || k > primaryItems.length || k > candidateItems.length)
+            throw new IllegalArgumentException("Invalid number of items compared: " + k);
+        int shared = 0;
+        for (int i = 0; i < k; i++)
+            for (int j = 0; j < k; j++)
+                if (primaryItems[i] == candidateItems[j]) {
+                    shared++;
+                    break;
+                }
+        mCompared++;
+        if (primaryItems[0] == candidateItems[0])
+            mAgreed++;
+        mOverlapSum += (double) shared / k;
+        mPrimaryLatency.record(primaryNanos);
+        mCandidateLatency.record(candidateNanos);
+    }
+
+    public synchronized long getCompared() {
+        return mCompared;
+    }
+
+    /**
+     * Gets the fraction of the crops whose best item is the same for both models.
+     *
+     * @return A double in range [0; 1] (0 if no crop has been compared).
+     */
+    public synchronized double getAgreement() {
+        return mCompared == 0 ? 0.0 : (double) mAgreed / mCompared;
+    }
+
+    /**
+     * Gets the mean fraction of the best items found by both models.
+     *
+     * @return A double in range [0; 1] (0 if no crop has been compared).
+     */
+    public synchronized double getOverlap() {
+        return mCompared == 0 ? 0.0 : mOverlapSum / mCompared;
+    }
+
+    public LatencyHistogram getPrimaryLatency() {
+        return mPrimaryLatency;
+    }
+
+    public LatencyHistogram getCandidateLatency() {
+        return mCandidateLatency;
+    }
+
+    /**
+     * Removes every recorded comparison.
+     */
+    public synchronized void reset() {
+        mCompared = 0L;
+        mAgreed = 0L;
+        mOverlapSum = 0.0;
+        mPrimaryLatency.reset();
+        mCandidateLatency.reset();
+    }
+
+    /**
+     * Creates the report of the comparison.
+     *
+     * @return A String containing the agreement, the overlap and the median latencies.
+     */
+    public synchronized String report() {
+        return String.format(Locale.US, "n=%d agreement=%.3f overlap=%.3f primary p50=%dus candidate p50=%dus",
+                mCompared, getAgreement(), getOverlap(), mPrimaryLatency.getPercentile(50),
+                mCandidateLatency.getPercentile(50));
+    }
+}
@@ -0,0 +1,232 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.PipelineStats
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * PipelineStats class containing the registry of the latencies (and of the allocations)
+ * of every stage of the recognition pipeline.
+ * Each stage has a fixed-size LatencyHistogram, so p50/p95/p99 can be queried at any
+ * moment; recording a stage never allocates. The report is meant for logs and it is
+ * the only method that allocates.
+ */
+public class PipelineStats {
+
+    /**
+     * Stage enum containing the stages of the recognition pipeline.
+     */
+    public enum Stage {
+        /**
+         * Waiting for the camera frame captured after a tap.
+         */
+        CAPTURE,
+        /**
+         * Converting the YUV frame's region to ARGB pixels.
+         */
+        CONVERT,
+        /**
+         * Finding the most salient object in the green square (automatic crop).
+         */
+        ROI,
+        /**
+         * Cropping, equalizing, scaling and normalizing (each variant) into the input tensor.
+         */
+        PREPROCESS,
+        /**
+         * Mapping the model and creating the interpreter.
+         */
+        MODEL_LOAD,
+        /**
+         * Running the interpreter once on a zero input, before the first recognition.
+         */
+        WARM_UP,
+        /**
+         * Running the small first-stage model of the cascade.
+         */
+        FIRST_STAGE,
+        /**
+         * Running the interpreter.
+         */
+        INFERENCE,
+        /**
+         * Equalizing, scaling and matching the crop against the items' templates.
+         */
+        TEMPLATE_MATCH,
+        /**
+         * Averaging the variants and selecting the best scores.
+         */
+        TOP_K,
+        /**
+         * Waiting for the UI thread to handle the update message.
+         */
+        UI_HOP,
+        /**
+         * Updating the recognition tab with the predictions.
+         */
+        UI_UPDATE,
+        /**
+         * The whole recognition performed by the worker.
+         */
+        RECOGNITION,
+        /**
+         * Scanning the windows of the whole frame (scan mode).
+         */
+        SCAN,
+        /**
+         * From the recognition request to the predictions shown.
+         */
+        TOTAL;
+
+        /**
+         * A String containing the name of the stage's trace section.
+         */
+        private final String mSectionName = "GungeonRecognizer." + name();
+
+        public String getSectionName() {
+            return mSectionName;
+        }
+    }
+
+    /**
+     * An array containing the LatencyHistogram of each stage.
+     */
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[Stage.values().length];
+    /**
+     * Arrays of longs containing, for each stage, the number of objects allocated
+     * and the number of measures of the allocations.
+     */
+    private final long[] mAllocations = new long[Stage.values().length];
+    private final long[] mAllocationSamples = new long[Stage.values().length];
+    /**
+     * An array of longs containing, for each stage, the first latency recorded in
+     * microseconds (-1 if never recorded), such as the one of the first recognition.
+     */
+    private final long[] mFirst = new long[Stage.values().length];
+
+    public PipelineStats() {
+        for (int i = 0; i < mHistograms.length; i++)
+            mHistograms[i] = new LatencyHistogram();
+        Arrays.fill(mFirst, -1L);
+    }
+
+    /**
+     * Records the latency of a stage.
+     *
+     * @param stage Stage measured.
+     * @param nanos long containing the latency in nanoseconds.
+     */
+    public void record(Stage stage, long nanos) {
+        mHistograms[stage.ordinal()].record(nanos);
+        if (mFirst[stage.ordinal()] < 0L)
+            recordFirst(stage, nanos);
+    }
+
+    /**
+     * Records the first latency of a stage, unless another thread has just done it.
+     */
+    private synchronized void recordFirst(Stage stage, long nanos) {
+        if (mFirst[stage.ordinal()] < 0L)
+            mFirst[stage.ordinal()] = nanos / 1000;
+    }
+
+    /**
+     * Gets the first latency recorded by a stage (for instance the latency of the first
+     * recognition, which may pay the model's loading).
+     *
+     * @param stage Stage measured.
+     * @return A long containing the latency in microseconds (-1 if never recorded).
+     */
+    public synchronized long getFirst(Stage stage) {
+        return mFirst[stage.ordinal()];
+    }
+
+    /**
+     * Records the number of objects allocated by a stage.
+     *
+     * @param stage Stage measured.
+     * @param allocations long containing the number of objects allocated.
+     */
+    public synchronized void recordAllocations(Stage stage, long allocations) {
+        mAllocations[stage.ordinal()] += allocations;
+        mAllocationSamples[stage.ordinal()]++;
+    }
+
+    /**
+     * Gets the histogram of a stage.
+     *
+     * @param stage Stage measured.
+     * @return The LatencyHistogram of the stage.
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return mHistograms[stage.ordinal()];
+    }
+
+    /**
+     * Estimates a percentile of the latencies of a stage.
+     *
+     * @param stage Stage measured.
+     * @param percentile double containing the percentile in range [0; 100].
+     * @return A long containing the estimated latency in microseconds.
+     */
+    public long getPercentile(Stage stage, double percentile) {
+        return mHistograms[stage.ordinal()].getPercentile(percentile);
+    }
+
+    /**
+     * Gets the mean number of objects allocated by a stage.
+     *
+     * @param stage Stage measured.
+     * @return A double containing the mean allocations (-1 if never measured).
+     */
+    public synchronized double getMeanAllocations(Stage stage) {
+        long samples = mAllocationSamples[stage.ordinal()];
+        return samples == 0 ? -1.0 : (double) mAllocations[stage.ordinal()] / samples;
+    }
+
+    /**
+     * Removes every recorded measure.
+     */
+    public synchronized void reset() {
+        for (Stage stage : Stage.values()) {
+            mHistograms[stage.ordinal()].reset();
+            mAllocations[stage.ordinal()] = 0L;
+            mAllocationSamples[stage.ordinal()] = 0L;
+            mFirst[stage.ordinal()] = -1L;
+        }
+    }
+
+    /**
+     * Creates the report of the stages measured at least once, one line each.
+     *
+     * @return A String containing the report.
+     */
+    public String report() {
+        StringBuilder mReport = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram mHistogram = mHistograms[stage.ordinal()];
+            if (mHistogram.getCount() == 0)
+                continue;
+            if (mReport.length() > 0)
+                mReport.append('\n');
+            mReport.append(String.format(Locale.US, "%-12s n=%d p50=%dus p95=%dus p99=%dus max=%dus first=%dus",
+                    stage.name(), mHistogram.getCount(), mHistogram.getPercentile(50),
+                    mHistogram.getPercentile(95), mHistogram.getPercentile(99), mHistogram.getMax(),
+                    getFirst(stage)));
+            double allocations = getMeanAllocations(stage);
+            if (allocations >= 0)
+                mReport.append(String.format(Locale.US, " allocs=%.1f", allocations));
+        }
+        return mReport.toString();
+    }
+}
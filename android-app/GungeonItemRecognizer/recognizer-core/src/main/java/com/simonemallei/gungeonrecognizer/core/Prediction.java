@@ -0,0 +1,56 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.Prediction
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * Prediction class containing an (immutable) item predicted by a recognition, with its
+ * score and its rank.
+ */
+public final class Prediction {
+
+    /**
+     * An integer containing the index of the item predicted, which is the index of the
+     * model's output (the corresponding item ID is index + 1).
+     */
+    private final int mIndex;
+    /**
+     * A float containing the score given to the item.
+     */
+    private final float mScore;
+    /**
+     * An integer containing the rank of the prediction (0 is the best one).
+     */
+    private final int mRank;
+
+    public Prediction(int index, float score, int rank) {
+        this.mIndex = index;
+        this.mScore = score;
+        this.mRank = rank;
+    }
+
+    public int getIndex() {
+        return mIndex;
+    }
+
+    public float getScore() {
+        return mScore;
+    }
+
+    public int getRank() {
+        return mRank;
+    }
+
+    @Override
+    public String toString() {
+        return "Prediction{index=" + mIndex + ", score=" + mScore + ", rank=" + mRank + "}";
+    }
+}
@@ -0,0 +1,125 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.Locale;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.PruningStats
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * PruningStats class containing the measures of a candidate pruning: each request keeps
+ * the K most plausible candidates, and only those are scored.
+ * The recall@K is the fraction of requests whose reference item (for instance the best
+ * item of the model) is among the candidates kept, and the time saved is the difference
+ * between the latency of scoring every candidate and the one of pruning and scoring the
+ * candidates kept.
+ * The methods are synchronized, so that the report can be read by any thread.
+ */
+public class PruningStats {
+
+    /**
+     * An integer containing the number of candidates kept by each request.
+     */
+    private final int mK;
+    /**
+     * LatencyHistogram objects containing the latencies of the pruned scoring (pruning
+     * included) and of the scoring of every candidate.
+     */
+    private final LatencyHistogram mPrunedLatency = new LatencyHistogram();
+    private final LatencyHistogram mFullLatency = new LatencyHistogram();
+    /**
+     * Longs containing the number of requests and of requests whose reference item is kept.
+     */
+    private long mRequests = 0L;
+    private long mHits = 0L;
+
+    public PruningStats(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("At least a candidate must be kept: " + k);
+        this.mK = k;
+    }
+
+    public int getK() {
+        return mK;
+    }
+
+    /**
+     * Verifies whether an item is among the candidates kept.
+     *
+     * @param candidates array of integers containing the candidates kept.
+     * @param count integer containing the number of candidates kept.
+     * @param item integer containing the item searched.
+     * @return True if the item is a candidate.
+     */
+    public static boolean contains(int[] candidates, int count, int item) {
+        for (int i = 0; i < count; i++)
+            if (candidates[i] == item)
+                return true;
+        return false;
+    }
+
+    /**
+     * Records a request.
+     *
+     * @param hit boolean that verifies whether the reference item has been kept.
+     * @param prunedNanos long containing the latency of the pruned scoring in nanoseconds.
+     * @param fullNanos long containing the latency of scoring every candidate in nanoseconds.
+     */
+    public synchronized void record(boolean hit, long prunedNanos, long fullNanos) {
+        mRequests++;
+        if (hit)
+            mHits++;
+        mPrunedLatency.record(prunedNanos);
+        mFullLatency.record(fullNanos);
+    }
+
+    public synchronized long getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * Gets the recall@K of the pruning.
+     *
+     * @return A double in range [0; 1] (0 if no request has been recorded).
+     */
+    public synchronized double getRecall() {
+        return mRequests == 0 ? 0.0 : (double) mHits / mRequests;
+    }
+
+    /**
+     * Gets the mean time saved by the pruning.
+     *
+     * @return A double containing the mean time saved in microseconds (negative if the
+     *         pruning is slower than scoring every candidate).
+     */
+    public double getMeanSaving() {
+        return mFullLatency.getMean() - mPrunedLatency.getMean();
+    }
+
+    /**
+     * Removes every recorded request.
+     */
+    public synchronized void reset() {
+        mRequests = 0L;
+        mHits = 0L;
+        mPrunedLatency.reset();
+        mFullLatency.reset();
+    }
+
+    /**
+     * Creates the report of the pruning.
+     *
+     * @return A String containing the recall@K and the mean latencies.
+     */
+    public synchronized String report() {
+        return String.format(Locale.US, "n=%d recall@%d=%.3f pruned mean=%.0fus full mean=%.0fus saved=%.0fus",
+                mRequests, mK, getRecall(), mPrunedLatency.getMean(), mFullLatency.getMean(), getMeanSaving());
+    }
+}
@@ -0,0 +1,212 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.RecognitionCache
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * RecognitionCache class containing a bounded cache of the scores of the recognized
+ * images, keyed by a 64-bit perceptual hash of the model's input (see
+ * ImagePreprocessor.dHash()). An image whose hash is within a Hamming distance from
+ * a cached one is considered the same image, hence its scores are not computed again,
+ * provided that they have been computed in the same way: by the same model, with or
+ * without the cascade, on the same number of crop variants.
+ * The least recently used entry is evicted when the cache is full. Since the cache holds
+ * only a few entries, a lookup is a linear scan; the scores of every entry are allocated
+ * once, so neither a lookup nor an insertion allocates.
+ * The methods are synchronized, so that the cache can be cleared by any thread.
+ */
+public class RecognitionCache {
+
+    /**
+     * An integer containing the maximum number of entries.
+     */
+    private final int mCapacity;
+    /**
+     * An integer containing the maximum Hamming distance between the hashes of
+     * the same image.
+     */
+    private final int mMaxDistance;
+    /**
+     * An array of longs containing the hash of each entry.
+     */
+    private final long[] mHashes;
+    /**
+     * An array of integers containing the number of crop variants scored by each entry.
+     */
+    private final int[] mVariants;
+    /**
+     * An array of Strings containing the identifier of the model scoring each entry.
+     */
+    private final String[] mModels;
+    /**
+     * An array of booleans that verifies whether each entry has been scored by the cascade.
+     */
+    private final boolean[] mCascaded;
+    /**
+     * An array of longs containing the last use of each entry (0 if the entry is empty).
+     */
+    private final long[] mLastUse;
+    /**
+     * An array of arrays of floats containing the scores of each entry.
+     */
+    private final float[][] mScores;
+    /**
+     * An array of integers containing the number of scores of each entry.
+     */
+    private final int[] mSizes;
+    /**
+     * A long containing the counter of the uses (incremented by each lookup and insertion).
+     */
+    private long mClock = 0L;
+    /**
+     * Longs containing the number of hits, of misses and of evicted entries.
+     */
+    private long mHits = 0L;
+    private long mMisses = 0L;
+    private long mEvictions = 0L;
+
+    /**
+     * @param capacity integer containing the maximum number of entries.
+     * @param items integer containing the maximum number of scores of each entry.
+     * @param maxDistance integer containing the maximum Hamming distance between the
+     *                    hashes of the same image (0 matches identical hashes only).
+     */
+    public RecognitionCache(int capacity, int items, int maxDistance) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.mCapacity = capacity;
+        this.mMaxDistance = maxDistance;
+        this.mHashes = new long[capacity];
+        this.mVariants = new int[capacity];
+        this.mModels = new String[capacity];
+        this.mCascaded = new boolean[capacity];
+        this.mLastUse = new long[capacity];
+        this.mScores = new float[capacity][items];
+        this.mSizes = new int[capacity];
+    }
+
+    /**
+     * Looks for the cached entry nearest to the hash given.
+     *
+     * @param hash long containing the perceptual hash of the image.
+     * @param variants integer containing the number of crop variants scored.
+     * @param model String containing the identifier of the model scoring the image.
+     * @param cascaded boolean that verifies whether the image is scored by the cascade.
+     * @return An integer containing the entry found (-1 if it is a miss).
+     */
+    public synchronized int lookup(long hash, int variants, String model, boolean cascaded) {
+        int found = -1, foundDistance = mMaxDistance + 1;
+        for (int i = 0; i < mCapacity; i++) {
+            if (mLastUse[i] == 0L || mVariants[i] != variants || mCascaded[i] != cascaded
+                    || !mModels[i].equals(model))
+                continue;
+            int distance = Long.bitCount(hash ^ mHashes[i]);
+            if (distance < foundDistance) {
+                found = i;
+                foundDistance = distance;
+            }
+        }
+        if (found < 0) {
+            mMisses++;
+            return -1;
+        }
+        mHits++;
+        mLastUse[found] = ++mClock;
+        return found;
+    }
+
+    /**
+     * Gets the scores of an entry: they are valid until the entry is evicted.
+     *
+     * @param entry integer containing the entry returned by lookup().
+     * @return An array of floats whose first getSize(entry) values are the scores.
+     */
+    public synchronized float[] getScores(int entry) {
+        return mScores[entry];
+    }
+
+    public synchronized int getSize(int entry) {
+        return mSizes[entry];
+    }
+
+    /**
+     * Caches the scores of an image, evicting the least recently used entry if full.
+     *
+     * @param hash long containing the perceptual hash of the image.
+     * @param variants integer containing the number of crop variants scored.
+     * @param model String containing the identifier of the model that scored the image.
+     * @param cascaded boolean that verifies whether the image has been scored by the cascade.
+     * @param scores array of floats containing the scores (copied).
+     * @param size integer containing the number of scores.
+     */
+    public synchronized void put(long hash, int variants, String model, boolean cascaded,
+                                 float[] scores, int size) {
+        if (size > mScores[0].length)
+            throw new IllegalArgumentException("Size " + size + " exceeds capacity " + mScores[0].length);
+        // Replacing an empty entry or the least recently used one
+        int entry = 0;
+        for (int i = 1; i < mCapacity && mLastUse[entry] != 0L; i++)
+            if (mLastUse[i] < mLastUse[entry])
+                entry = i;
+        if (mLastUse[entry] != 0L)
+            mEvictions++;
+        mHashes[entry] = hash;
+        mVariants[entry] = variants;
+        mModels[entry] = model;
+        mCascaded[entry] = cascaded;
+        mLastUse[entry] = ++mClock;
+        System.arraycopy(scores, 0, mScores[entry], 0, size);
+        mSizes[entry] = size;
+    }
+
+    /**
+     * Removes every entry (for instance when the model changes), keeping the counters.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mCapacity; i++)
+            mLastUse[i] = 0L;
+    }
+
+    /**
+     * Gets the number of cached entries.
+     *
+     * @return An integer in range [0; capacity].
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (int i = 0; i < mCapacity; i++)
+            if (mLastUse[i] != 0L)
+                size++;
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * Gets the fraction of the lookups that were hits.
+     *
+     * @return A double in range [0; 1] (0 if no lookup has been performed).
+     */
+    public synchronized double getHitRate() {
+        long lookups = mHits + mMisses;
+        return lookups == 0 ? 0.0 : (double) mHits / lookups;
+    }
+}
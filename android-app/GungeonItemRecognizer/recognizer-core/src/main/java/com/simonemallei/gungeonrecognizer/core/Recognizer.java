@@ -0,0 +1,49 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Interface Name
+ * com.simonemallei.gungeonrecognizer.core.Recognizer
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * Recognizer interface containing the method of a recognition engine: the items in a
+ * square crop of ARGB pixels are scored, and the best ones are returned as predictions
+ * whose indexes are the catalogue's ones.
+ * The crop is given within the region of pixels read around it, so that an engine can
+ * sample some context (for instance the crop variants).
+ */
+public interface Recognizer {
+
+    /**
+     * Gets the name of the engine, as shown in the reports.
+     *
+     * @return A String containing the engine's name.
+     */
+    String getName();
+
+    /**
+     * Recognizes the items in a square crop.
+     *
+     * @param pixels array of integers containing the ARGB pixels read around the crop.
+     * @param width integer containing the width of the pixels' region.
+     * @param height integer containing the height of the pixels' region.
+     * @param left integer containing the left column of the crop.
+     * @param top integer containing the top row of the crop.
+     * @param edge integer containing the length of the crop's edge.
+     * @param k integer containing the number of predictions.
+     * @return The List of the best predictions, ordered by rank.
+     * @throws IOException if the engine can not recognize the crop (for instance if
+     *         its model or its templates can not be read).
+     */
+    List<Prediction> recognize(int[] pixels, int width, int height, int left, int top, int edge, int k)
+            throws IOException;
+}
@@ -0,0 +1,284 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.RecognizerSelector
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * RecognizerSelector class containing a recognizer that delegates each request to the
+ * fastest healthy engine among several ones.
+ * The latency and the failure rate of each engine are rolling averages (exponentially
+ * weighted, by WEIGHT) of its requests, and an engine is healthy while its failure rate
+ * is below MAX_FAILURE_RATE. Each engine is tried once before the latencies are compared
+ * (in the order given, hence the preferred engine first), then the healthy engine with
+ * the lowest latency is chosen. Every PROBE_INTERVAL requests the engine used least
+ * recently is chosen instead, so that the averages of the other engines follow the load
+ * and an unhealthy engine can recover.
+ * Fallback engines (for instance faster but less accurate ones) are chosen only when no
+ * other engine is healthy, and they are never probed.
+ * If the chosen engine fails, the request is retried by the next engine (the healthy
+ * ones first), hence it fails only if every engine does.
+ * The engines are called without holding the selector's lock: they must be thread-safe
+ * if the selector is used by several threads.
+ */
+public class RecognizerSelector implements Recognizer {
+
+    /**
+     * A double containing the weight of the last request in the rolling averages.
+     */
+    private final static double WEIGHT = 0.2;
+    /**
+     * A double containing the failure rate above which an engine is not healthy.
+     */
+    private final static double MAX_FAILURE_RATE = 0.5;
+    /**
+     * An integer containing the number of requests between two probes.
+     */
+    private final static int PROBE_INTERVAL = 20;
+    /**
+     * An array of Recognizer objects containing the engines, from the preferred one,
+     * followed by the fallback engines.
+     */
+    private final Recognizer[] mEngines;
+    /**
+     * An array of booleans that verifies whether each engine is a fallback one.
+     */
+    private final boolean[] mFallback;
+    /**
+     * Arrays of doubles containing the rolling latency (in microseconds) and the rolling
+     * failure rate of each engine.
+     */
+    private final double[] mLatency, mFailureRate;
+    /**
+     * Arrays of longs containing the number of requests and of failures of each engine.
+     */
+    private final long[] mUses, mFailures;
+    /**
+     * An array of longs containing the last request handled by each engine (-1 if none).
+     */
+    private final long[] mLastRequest;
+    /**
+     * A long containing the number of requests.
+     */
+    private long mRequests = 0L;
+
+    public RecognizerSelector(Recognizer... engines) {
+        this(engines, new Recognizer[0]);
+    }
+
+    /**
+     * @param engines array of Recognizer objects containing the engines, from the
+     *                preferred one.
+     * @param fallbacks array of Recognizer objects containing the engines chosen only
+     *                  when no other engine is healthy, from the preferred one.
+     */
+    public RecognizerSelector(Recognizer[] engines, Recognizer[] fallbacks) {
+        if (engines.length < 1)
+            throw new IllegalArgumentException("At least an engine is needed");
+        int count = engines.length + fallbacks.length;
+        this.mEngines = new Recognizer[count];
+        System.arraycopy(engines, 0, mEngines, 0, engines.length);
+        System.arraycopy(fallbacks, 0, mEngines, engines.length, fallbacks.length);
+        this.mFallback = new boolean[count];
+        for (int i = engines.length; i < count; i++)
+            mFallback[i] = true;
+        this.mLatency = new double[count];
+        this.mFailureRate = new double[count];
+        this.mUses = new long[count];
+        this.mFailures = new long[count];
+        this.mLastRequest = new long[count];
+        for (int i = 0; i < count; i++)
+            mLastRequest[i] = -1L;
+    }
+
+    @Override
+    public String getName() {
+        return "selector";
+    }
+
+    /**
+     * Recognizes the items in a square crop with the fastest healthy engine, retrying
+     * with the other engines if it fails.
+     *
+     * @throws IOException if every engine fails (with the last failure as cause).
+     */
+    @Override
+    public List<Prediction> recognize(int[] pixels, int width, int height, int left, int top, int edge, int k)
+            throws IOException {
+        boolean[] tried = new boolean[mEngines.length];
+        long request;
+        synchronized (this) {
+            request = mRequests++;
+        }
+        Exception mFailure = null;
+        for (int attempt = 0; attempt < mEngines.length; attempt++) {
+            int engine = choose(request, tried, attempt == 0);
+            tried[engine] = true;
+            long startTime = now();
+            try {
+                List<Prediction> predictions = mEngines[engine].recognize(pixels, width, height, left, top,
+                        edge, k);
+                record(engine, request, now() - startTime, false);
+                return predictions;
+            } catch (IOException | RuntimeException e) {
+                record(engine, request, now() - startTime, true);
+                mFailure = e;
+            }
+        }
+        throw new IOException("Every engine failed", mFailure);
+    }
+
+    /**
+     * Chooses the engine of a request among the ones not tried yet.
+     */
+    private synchronized int choose(long request, boolean[] tried, boolean first) {
+        // Probing the engine (not a fallback one) used least recently
+        if (first && request % PROBE_INTERVAL == PROBE_INTERVAL - 1) {
+            int oldest = 0;
+            for (int i = 1; i < mEngines.length && !mFallback[i]; i++)
+                if (mLastRequest[i] < mLastRequest[oldest])
+                    oldest = i;
+            return oldest;
+        }
+        int best = -1;
+        for (int i = 0; i < mEngines.length; i++) {
+            if (tried[i])
+                continue;
+            // Engines never used are tried first, in the order given
+            if (mUses[i] == 0 && !mFallback[i])
+                return i;
+            if (best < 0 || isBetter(i, best))
+                best = i;
+        }
+        return best;
+    }
+
+    /**
+     * Verifies whether an engine is better than another one: healthy engines are better
+     * than healthy fallback engines, which are better than unhealthy ones; then the
+     * fastest healthy engine (or the most reliable unhealthy one) is better.
+     */
+    private boolean isBetter(int engine, int other) {
+        int tier = tierOf(engine), otherTier = tierOf(other);
+        if (tier != otherTier)
+            return tier < otherTier;
+        if (tier < 2)
+            return mLatency[engine] < mLatency[other];
+        return mFailureRate[engine] < mFailureRate[other];
+    }
+
+    private int tierOf(int engine) {
+        if (!isHealthy(engine))
+            return 2;
+        return mFallback[engine] ? 1 : 0;
+    }
+
+    /**
+     * Records a request handled by an engine.
+     */
+    private synchronized void record(int engine, long request, long nanos, boolean failed) {
+        double micros = nanos / 1000.0;
+        double failure = failed ? 1.0 : 0.0;
+        if (mUses[engine] == 0) {
+            mFailureRate[engine] = failure;
+            if (!failed)
+                mLatency[engine] = micros;
+        }
+        else {
+            mFailureRate[engine] += WEIGHT * (failure - mFailureRate[engine]);
+            // A failure has no meaningful latency
+            if (!failed)
+                mLatency[engine] = mFailures[engine] == mUses[engine] ? micros
+                        : mLatency[engine] + WEIGHT * (micros - mLatency[engine]);
+        }
+        mUses[engine]++;
+        if (failed)
+            mFailures[engine]++;
+        mLastRequest[engine] = Math.max(mLastRequest[engine], request);
+    }
+
+    /**
+     * Gets the current time: it can be replaced (for instance by a deterministic clock).
+     *
+     * @return A long containing the time in nanoseconds.
+     */
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    public int getEngines() {
+        return mEngines.length;
+    }
+
+    public Recognizer getEngine(int index) {
+        return mEngines[index];
+    }
+
+    public boolean isFallback(int index) {
+        return mFallback[index];
+    }
+
+    /**
+     * Verifies whether an engine is healthy.
+     *
+     * @param index integer containing the engine's index.
+     * @return True if the engine's rolling failure rate is below MAX_FAILURE_RATE.
+     */
+    public synchronized boolean isHealthy(int index) {
+        return mFailureRate[index] < MAX_FAILURE_RATE;
+    }
+
+    /**
+     * Gets the rolling latency of an engine.
+     *
+     * @param index integer containing the engine's index.
+     * @return A double containing the latency in microseconds (0 if the engine has not
+     *         recognized any crop).
+     */
+    public synchronized double getLatency(int index) {
+        return mLatency[index];
+    }
+
+    /**
+     * Gets the rolling failure rate of an engine.
+     *
+     * @param index integer containing the engine's index.
+     * @return A double in range [0; 1].
+     */
+    public synchronized double getFailureRate(int index) {
+        return mFailureRate[index];
+    }
+
+    public synchronized long getUses(int index) {
+        return mUses[index];
+    }
+
+    /**
+     * Creates the report of the engines.
+     *
+     * @return A String containing the requests, the failure rate and the latency of
+     *         each engine.
+     */
+    public synchronized String report() {
+        StringBuilder mReport = new StringBuilder();
+        for (int i = 0; i < mEngines.length; i++) {
+            if (i > 0)
+                mReport.append(", ");
+            mReport.append(String.format(Locale.US, "%s: n=%d failures=%.3f latency=%.0fus%s",
+                    mEngines[i].getName(), mUses[i], mFailureRate[i], mLatency[i],
+                    isHealthy(i) ? "" : " (unhealthy)"));
+        }
+        return mReport.toString();
+    }
+}
@@ -0,0 +1,258 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.Arrays;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.SaliencyRoiFinder
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * SaliencyRoiFinder class containing the search of a tight square around the most
+ * salient object of a square region (the green square), so that only the object is
+ * preprocessed, as in the crops the model has been trained on.
+ * The region is sampled on a small grid. The floor's colour is the median colour of
+ * the grid's border, and the saliency of a cell is its colour distance from the floor
+ * plus the strength of its luminance edges; only the saliency above the one found on
+ * the border counts. The square is centered on the bulk of the salient mass (trimming
+ * TRIM of it on each side), enlarged by a margin.
+ * If the salient mass is too small (for instance on a flat scene) the whole region is
+ * kept. Every buffer is allocated once. An instance is not thread-safe.
+ */
+public class SaliencyRoiFinder {
+
+    /**
+     * An integer containing the default length of the grid's edge.
+     */
+    public final static int DEFAULT_SIZE = 48;
+    /**
+     * An integer containing the width (in cells) of the border sampling the floor.
+     */
+    private final static int BORDER = 2;
+    /**
+     * A float containing the weight of the edges in the saliency.
+     */
+    private final static float EDGE_WEIGHT = 0.5f;
+    /**
+     * A float containing the number of standard deviations of the border's saliency
+     * that are considered floor.
+     */
+    private final static float NOISE_DEVIATIONS = 3.0f;
+    /**
+     * A float containing the fraction of the salient mass trimmed on each side.
+     */
+    private final static float TRIM = 0.05f;
+    /**
+     * A float containing the minimum salient mass of a found object, in proportion to the
+     * cells and to the maximum saliency of a cell (about 9 cells of a 48x48 grid).
+     */
+    private final static float MIN_MASS = 0.004f;
+    /**
+     * An integer containing the number of values of an 8-bit channel.
+     */
+    private final static int LEVELS = 256;
+    /**
+     * An integer containing the length of the grid's edge.
+     */
+    private final int mSize;
+    /**
+     * A float containing the minimum edge of the square, in proportion to the region.
+     */
+    private final float mMinEdge;
+    /**
+     * A float containing the margin added around the object, in proportion to its size.
+     */
+    private final float mMargin;
+    /**
+     * An array of integers containing the RGB colour of each cell.
+     */
+    private final int[] mColors;
+    /**
+     * Arrays of floats containing the luminance and the saliency of each cell.
+     */
+    private final float[] mLuma, mSaliency;
+    /**
+     * Arrays of floats containing the salient mass of each column and of each row.
+     */
+    private final float[] mColMass, mRowMass;
+    /**
+     * An array of integers containing the histogram of each channel on the border.
+     */
+    private final int[] mHistogram = new int[3 * LEVELS];
+    /**
+     * Integers containing the left column, the top row and the edge of the last
+     * square found (relative to the region).
+     */
+    private int mLeft = 0, mTop = 0, mEdge = 0;
+
+    public SaliencyRoiFinder() {
+        this(DEFAULT_SIZE, 0.25f, 0.15f);
+    }
+
+    /**
+     * @param size integer containing the length of the grid's edge (greater than 2 * BORDER).
+     * @param minEdge float containing the minimum edge of the square, in proportion to the region.
+     * @param margin float containing the margin added around the object, in proportion to its size.
+     */
+    public SaliencyRoiFinder(int size, float minEdge, float margin) {
+        if (size <= 2 * BORDER + 2)
+            throw new IllegalArgumentException("Grid size too small: " + size);
+        this.mSize = size;
+        this.mMinEdge = minEdge;
+        this.mMargin = margin;
+        this.mColors = new int[size * size];
+        this.mLuma = new float[size * size];
+        this.mSaliency = new float[size * size];
+        this.mColMass = new float[size];
+        this.mRowMass = new float[size];
+    }
+
+    /**
+     * Looks for the most salient object of a square region of ARGB pixels.
+     *
+     * @param pixels array of integers containing ARGB pixels.
+     * @param offset integer containing the index of the region's top-left pixel.
+     * @param stride integer containing the number of pixels between two rows.
+     * @param edge integer containing the length of the region's edge.
+     * @return True if an object has been found, false if the whole region is kept:
+     *         the square is given by getLeft(), getTop() and getEdge() in both cases.
+     */
+    public boolean find(int[] pixels, int offset, int stride, int edge) {
+        mLeft = 0;
+        mTop = 0;
+        mEdge = edge;
+
+        // Sampling the region and finding the floor's (median) colour on the border
+        Arrays.fill(mHistogram, 0);
+        int borderCells = 0;
+        for (int y = 0; y < mSize; y++) {
+            int row = offset + (2 * y + 1) * edge / (2 * mSize) * stride;
+            for (int x = 0; x < mSize; x++) {
+                int color = pixels[row + (2 * x + 1) * edge / (2 * mSize)] & 0xffffff;
+                int i = y * mSize + x;
+                mColors[i] = color;
+                mLuma[i] = 0.299f * (color >> 16) + 0.587f * ((color >> 8) & 0xff) + 0.114f * (color & 0xff);
+                if (isBorder(x, y)) {
+                    mHistogram[color >> 16]++;
+                    mHistogram[LEVELS + ((color >> 8) & 0xff)]++;
+                    mHistogram[2 * LEVELS + (color & 0xff)]++;
+                    borderCells++;
+                }
+            }
+        }
+        int floorR = median(0, borderCells), floorG = median(LEVELS, borderCells);
+        int floorB = median(2 * LEVELS, borderCells);
+
+        // Colour distance from the floor plus the luminance edges (central differences)
+        float borderSum = 0.0f, borderSquares = 0.0f, maxSaliency = 0.0f;
+        for (int y = 0; y < mSize; y++)
+            for (int x = 0; x < mSize; x++) {
+                int i = y * mSize + x;
+                int color = mColors[i];
+                float contrast = Math.abs((color >> 16) - floorR) + Math.abs(((color >> 8) & 0xff) - floorG)
+                        + Math.abs((color & 0xff) - floorB);
+                float dx = mLuma[y * mSize + Math.min(mSize - 1, x + 1)] - mLuma[y * mSize + Math.max(0, x - 1)];
+                float dy = mLuma[Math.min(mSize - 1, y + 1) * mSize + x] - mLuma[Math.max(0, y - 1) * mSize + x];
+                float saliency = contrast + EDGE_WEIGHT * (Math.abs(dx) + Math.abs(dy));
+                mSaliency[i] = saliency;
+                maxSaliency = Math.max(maxSaliency, saliency);
+                if (isBorder(x, y)) {
+                    borderSum += saliency;
+                    borderSquares += saliency * saliency;
+                }
+            }
+        float borderMean = borderSum / borderCells;
+        float borderDeviation = (float) Math.sqrt(Math.max(0.0f, borderSquares / borderCells - borderMean * borderMean));
+        float threshold = borderMean + NOISE_DEVIATIONS * borderDeviation;
+
+        // Projecting the saliency above the floor's one on the columns and the rows
+        Arrays.fill(mColMass, 0.0f);
+        Arrays.fill(mRowMass, 0.0f);
+        float mass = 0.0f;
+        for (int y = 0; y < mSize; y++)
+            for (int x = 0; x < mSize; x++) {
+                float salient = mSaliency[y * mSize + x] - threshold;
+                if (salient > 0.0f) {
+                    mColMass[x] += salient;
+                    mRowMass[y] += salient;
+                    mass += salient;
+                }
+            }
+        if (mass <= MIN_MASS * mSize * mSize * Math.max(1.0f, maxSaliency - threshold))
+            return false;
+
+        // Tight box around the bulk of the mass, then the enlarged square around its center
+        int x0 = bound(mColMass, mass * TRIM), x1 = mSize - 1 - boundReversed(mColMass, mass * TRIM);
+        int y0 = bound(mRowMass, mass * TRIM), y1 = mSize - 1 - boundReversed(mRowMass, mass * TRIM);
+        float side = Math.max(x1 - x0 + 1, y1 - y0 + 1) * (1.0f + mMargin);
+        side = Math.min(mSize, Math.max(side, mMinEdge * mSize));
+        float centerX = (x0 + x1 + 1) / 2.0f, centerY = (y0 + y1 + 1) / 2.0f;
+        float scale = (float) edge / mSize;
+        mEdge = Math.max(1, Math.min(edge, Math.round(side * scale)));
+        mLeft = Math.max(0, Math.min(edge - mEdge, Math.round((centerX - side / 2) * scale)));
+        mTop = Math.max(0, Math.min(edge - mEdge, Math.round((centerY - side / 2) * scale)));
+        return true;
+    }
+
+    private boolean isBorder(int x, int y) {
+        return x < BORDER || y < BORDER || x >= mSize - BORDER || y >= mSize - BORDER;
+    }
+
+    /**
+     * Gets the median of a channel's histogram.
+     */
+    private int median(int base, int count) {
+        int seen = 0;
+        for (int value = 0; value < LEVELS; value++) {
+            seen += mHistogram[base + value];
+            if (2 * seen >= count)
+                return value;
+        }
+        return LEVELS - 1;
+    }
+
+    /**
+     * Gets the first index where the cumulative mass exceeds the trimmed one.
+     */
+    private static int bound(float[] masses, float trimmed) {
+        float seen = 0.0f;
+        for (int i = 0; i < masses.length; i++) {
+            seen += masses[i];
+            if (seen > trimmed)
+                return i;
+        }
+        return masses.length - 1;
+    }
+
+    /**
+     * Gets the first index, counted from the end, where the cumulative mass exceeds
+     * the trimmed one.
+     */
+    private static int boundReversed(float[] masses, float trimmed) {
+        float seen = 0.0f;
+        for (int i = masses.length - 1; i >= 0; i--) {
+            seen += masses[i];
+            if (seen > trimmed)
+                return masses.length - 1 - i;
+        }
+        return masses.length - 1;
+    }
+
+    public int getLeft() {
+        return mLeft;
+    }
+
+    public int getTop() {
+        return mTop;
+    }
+
+    public int getEdge() {
+        return mEdge;
+    }
+}
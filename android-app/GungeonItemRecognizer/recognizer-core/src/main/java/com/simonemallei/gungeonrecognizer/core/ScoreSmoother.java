@@ -0,0 +1,171 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.ScoreSmoother
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * ScoreSmoother class containing the temporal aggregation of the scores of consecutive
+ * frames: a decayed running average (exponential moving average) of the score vector,
+ * kept in a primitive array allocated once.
+ * The result is settled once at least a minimum number of frames has been averaged and
+ * the margin between the best and the second best averaged scores reaches a threshold,
+ * so that the recognitions can be slowed down until the margin drops again (for instance
+ * when the camera moves to another item).
+ * An instance is not thread-safe.
+ */
+public class ScoreSmoother {
+
+    /**
+     * An array of floats containing the averaged scores.
+     */
+    private final float[] mAverage;
+    /**
+     * A float containing the weight kept by the average at each frame (in range [0; 1)).
+     */
+    private final float mDecay;
+    /**
+     * A float containing the margin between the two best scores that settles the result.
+     */
+    private final float mMargin;
+    /**
+     * An integer containing the minimum number of frames averaged by a settled result.
+     */
+    private final int mMinFrames;
+    /**
+     * An integer containing the number of scores of each frame (0 until the first update).
+     */
+    private int mSize = 0;
+    /**
+     * An integer containing the number of frames averaged since the last reset.
+     */
+    private int mFrames = 0;
+    /**
+     * An integer containing the index of the best averaged score.
+     */
+    private int mBest = -1;
+    /**
+     * A float containing the margin between the two best averaged scores.
+     */
+    private float mCurrentMargin = 0.0f;
+
+    /**
+     * @param capacity integer containing the maximum number of scores of each frame.
+     * @param decay float containing the weight kept by the average at each frame
+     *              (0 keeps the last frame only).
+     * @param margin float containing the margin between the two best scores that
+     *               settles the result.
+     * @param minFrames integer containing the minimum number of frames of a settled result.
+     */
+    public ScoreSmoother(int capacity, float decay, float margin, int minFrames) {
+        if (decay < 0.0f || decay >= 1.0f)
+            throw new IllegalArgumentException("Decay must be in range [0; 1): " + decay);
+        this.mAverage = new float[capacity];
+        this.mDecay = decay;
+        this.mMargin = margin;
+        this.mMinFrames = Math.max(1, minFrames);
+    }
+
+    /**
+     * Adds the scores of a frame to the average.
+     *
+     * @param scores array of floats containing the scores of the frame.
+     * @param size integer containing the number of scores (the same for every frame
+     *             until the next reset).
+     * @return True if the result is settled.
+     */
+    public boolean update(float[] scores, int size) {
+        if (mFrames == 0) {
+            if (size > mAverage.length)
+                throw new IllegalArgumentException("Size " + size + " exceeds capacity " + mAverage.length);
+            System.arraycopy(scores, 0, mAverage, 0, size);
+            mSize = size;
+        }
+        else {
+            if (size != mSize)
+                throw new IllegalArgumentException("Size changed from " + mSize + " to " + size);
+            float weight = 1.0f - mDecay;
+            for (int i = 0; i < size; i++)
+                mAverage[i] += weight * (scores[i] - mAverage[i]);
+        }
+        mFrames++;
+
+        // Finding the two best averaged scores
+        int best = -1;
+        float first = Float.NEGATIVE_INFINITY, second = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            float score = mAverage[i];
+            if (score > first) {
+                second = first;
+                first = score;
+                best = i;
+            }
+            else if (score > second)
+                second = score;
+        }
+        mBest = best;
+        mCurrentMargin = size > 1 ? first - second : first;
+        return isSettled();
+    }
+
+    /**
+     * Verifies whether the averaged result is settled.
+     *
+     * @return True if enough frames have been averaged and the margin reaches the threshold.
+     */
+    public boolean isSettled() {
+        return mFrames >= mMinFrames && mCurrentMargin >= mMargin;
+    }
+
+    /**
+     * Removes every frame from the average.
+     */
+    public void reset() {
+        mFrames = 0;
+        mSize = 0;
+        mBest = -1;
+        mCurrentMargin = 0.0f;
+    }
+
+    /**
+     * Gets the averaged scores: they are valid until the next update.
+     *
+     * @return An array of floats whose first getSize() values are the averaged scores.
+     */
+    public float[] getScores() {
+        return mAverage;
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    public int getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * Gets the index of the best averaged score.
+     *
+     * @return An integer containing the index (-1 if no frame has been averaged).
+     */
+    public int getBest() {
+        return mBest;
+    }
+
+    /**
+     * Gets the margin between the two best averaged scores.
+     *
+     * @return A float containing the margin.
+     */
+    public float getMargin() {
+        return mCurrentMargin;
+    }
+}
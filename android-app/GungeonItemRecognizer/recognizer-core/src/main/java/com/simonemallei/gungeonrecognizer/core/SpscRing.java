@@ -0,0 +1,107 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.SpscRing
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * SpscRing class containing a lock-free ring of preallocated slots shared by a single
+ * producer thread and a single consumer thread, for instance the stages of a pipeline.
+ * The producer claims the next free slot, fills it and publishes it; the consumer
+ * peeks the oldest published slot, uses it and releases it, so that the producer can
+ * fill it again. No slot is ever allocated after the construction.
+ * The positions are published with ordered writes (lazySet) and read with volatile
+ * reads, hence the content of a slot written before publish() (or read before
+ * release()) is visible to the other thread. Each method must be called only by its
+ * own side: claim() and publish() by the producer, peek() and release() by the consumer.
+ */
+public class SpscRing<T> {
+
+    /**
+     * An array of Objects containing the preallocated slots.
+     */
+    private final Object[] mSlots;
+    /**
+     * AtomicLong objects containing the position of the next slot consumed (head) and
+     * of the next slot produced (tail): the ring is empty when they are equal, and full
+     * when they are the capacity apart.
+     */
+    private final AtomicLong mHead = new AtomicLong(0L);
+    private final AtomicLong mTail = new AtomicLong(0L);
+
+    public SpscRing(T[] slots) {
+        if (slots.length < 1)
+            throw new IllegalArgumentException("The ring needs at least one slot");
+        this.mSlots = slots.clone();
+    }
+
+    /**
+     * Claims the next free slot (producer only): it can be filled until publish().
+     *
+     * @return The slot to fill (null if every slot is waiting for the consumer).
+     */
+    @SuppressWarnings("unchecked")
+    public T claim() {
+        long tail = mTail.get();
+        if (tail - mHead.get() >= mSlots.length)
+            return null;
+        return (T) mSlots[(int) (tail % mSlots.length)];
+    }
+
+    /**
+     * Publishes the slot claimed (producer only), making it visible to the consumer.
+     */
+    public void publish() {
+        long tail = mTail.get();
+        if (tail - mHead.get() >= mSlots.length)
+            throw new IllegalStateException("No slot claimed");
+        mTail.lazySet(tail + 1);
+    }
+
+    /**
+     * Gets the oldest published slot (consumer only): it can be read until release().
+     *
+     * @return The slot to consume (null if the ring is empty).
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        long head = mHead.get();
+        if (head == mTail.get())
+            return null;
+        return (T) mSlots[(int) (head % mSlots.length)];
+    }
+
+    /**
+     * Releases the slot peeked (consumer only), so that the producer can fill it again.
+     */
+    public void release() {
+        long head = mHead.get();
+        if (head == mTail.get())
+            throw new IllegalStateException("No slot to release");
+        mHead.lazySet(head + 1);
+    }
+
+    /**
+     * Gets the number of published slots not released yet: it can be called by any
+     * thread, hence the value may be stale.
+     *
+     * @return An integer in range [0; getCapacity()].
+     */
+    public int size() {
+        long head = mHead.get();
+        return (int) (mTail.get() - head);
+    }
+
+    public int getCapacity() {
+        return mSlots.length;
+    }
+}
@@ -0,0 +1,408 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.TemplateMatcher
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * TemplateMatcher class containing a recognizer without a model: each item's sprite is
+ * downscaled into a small square grid (a template) and an equalized crop is scored by its
+ * normalized cross-correlation (NCC) with every template.
+ * Each sprite is fitted in the grid at several scales (the crop may be loose around the
+ * item), and the pixels whose alpha is below MIN_ALPHA are masked out, so that only the
+ * item's pixels are compared and the background of the crop is ignored. The template's V
+ * values are equalized as the ImagePreprocessor does on the crop (the hue and the
+ * saturation are kept), and the score of an item is its best NCC over the scales, in
+ * range [-1; 1]: it does not change if the crop's brightness or contrast does.
+ * The candidates are scored in parallel by a fork/join pool, then the scores can be
+ * selected by a TopKSelector as the ones of a model.
+ * Templates are added before matching; match() can be called by a single thread at a time.
+ */
+public class TemplateMatcher {
+
+    /**
+     * An array of floats containing the default edges of the fitted sprites, in
+     * proportion to the grid's edge.
+     */
+    public final static float[] DEFAULT_SCALES = {0.6f, 0.8f, 1.0f};
+    /**
+     * An integer containing the default edge (in pixels) of the grid.
+     */
+    public final static int DEFAULT_SIZE = 16;
+    /**
+     * An integer containing the minimum alpha of a template's pixel.
+     */
+    private final static int MIN_ALPHA = 128;
+    /**
+     * An integer containing the minimum number of pixels of a template.
+     */
+    private final static int MIN_PIXELS = 8;
+    /**
+     * An integer containing the maximum number of candidates scored by a single task.
+     */
+    private final static int TASK_CANDIDATES = 32;
+    /**
+     * A float containing the score of a candidate without templates (the minimum NCC).
+     */
+    public final static float NO_MATCH = -1.0f;
+    /**
+     * A float containing the minimum variance of a crop's pixels under a template.
+     */
+    private final static float NEARLY_ZERO = 1.0f / (1 << 12);
+    /**
+     * An integer containing the edge (in pixels) of the grid.
+     */
+    private final int mSize;
+    /**
+     * An array of floats containing the edges of the fitted sprites.
+     */
+    private final float[] mScales;
+    /**
+     * A ForkJoinPool object scoring the candidates in parallel.
+     */
+    private final ForkJoinPool mPool;
+    /**
+     * A matrix of Template objects containing the template of each candidate at each
+     * scale (null if it has not been added).
+     */
+    private final Template[][] mTemplates;
+    /**
+     * A HistogramEqualizer object used to equalize the templates.
+     */
+    private final HistogramEqualizer mEqualizer = new HistogramEqualizer();
+    /**
+     * An array of floats containing the RGB values of the crop resampled in the grid.
+     */
+    private final float[] mCrop;
+    /**
+     * Arrays of floats containing the working RGB values, V values and weights of a template.
+     */
+    private final float[] mRgb, mVal, mWeight;
+    /**
+     * An integer containing the number of candidates with at least a template.
+     */
+    private int mCount = 0;
+
+    public TemplateMatcher(int capacity, ForkJoinPool pool) {
+        this(capacity, pool, DEFAULT_SIZE, DEFAULT_SCALES);
+    }
+
+    /**
+     * @param capacity integer containing the number of candidates.
+     * @param pool ForkJoinPool object scoring the candidates in parallel (null to score
+     *             them on the calling thread).
+     * @param size integer containing the edge (in pixels) of the grid.
+     * @param scales array of floats containing the edges of the fitted sprites, in
+     *               proportion to the grid's edge (in range (0; 1]).
+     */
+    public TemplateMatcher(int capacity, ForkJoinPool pool, int size, float[] scales) {
+        if (capacity < 1 || size < 2 || scales.length < 1)
+            throw new IllegalArgumentException("Invalid matcher: " + capacity + " candidates, size " + size);
+        for (float scale : scales)
+            if (scale <= 0.0f || scale > 1.0f)
+                throw new IllegalArgumentException("Scale out of range: " + scale);
+        this.mSize = size;
+        this.mScales = scales.clone();
+        this.mPool = pool;
+        this.mTemplates = new Template[capacity][scales.length];
+        this.mCrop = new float[size * size * ImagePreprocessor.NUM_CHANNELS];
+        this.mRgb = new float[size * size * ImagePreprocessor.NUM_CHANNELS];
+        this.mVal = new float[size * size];
+        this.mWeight = new float[size * size];
+    }
+
+    public int getCapacity() {
+        return mTemplates.length;
+    }
+
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Adds the templates of a candidate, replacing its previous ones.
+     *
+     * @param index integer containing the candidate's index (in range [0; getCapacity())).
+     * @param argb array of integers containing the ARGB pixels of the sprite.
+     * @param width integer containing the width of the sprite.
+     * @param height integer containing the height of the sprite.
+     * @return True if at least a template has enough pixels to be matched.
+     */
+    public synchronized boolean addTemplate(int index, int[] argb, int width, int height) {
+        if (width < 1 || height < 1 || argb.length < width * height)
+            throw new IllegalArgumentException("Invalid sprite: " + width + "x" + height);
+        boolean hadTemplates = hasTemplates(index);
+        boolean added = false;
+        for (int s = 0; s < mScales.length; s++) {
+            mTemplates[index][s] = buildTemplate(argb, width, height, mScales[s]);
+            added |= mTemplates[index][s] != null;
+        }
+        if (added != hadTemplates)
+            mCount += added ? 1 : -1;
+        return added;
+    }
+
+    private boolean hasTemplates(int index) {
+        for (Template mTemplate : mTemplates[index])
+            if (mTemplate != null)
+                return true;
+        return false;
+    }
+
+    /**
+     * Scores an equalized crop against every candidate.
+     *
+     * @param rgb array of floats containing the crop's RGB values (in range [0; 255]),
+     *            [height][width][NUM_CHANNELS], as the ImagePreprocessor's scaled image.
+     * @param width integer containing the width of the crop.
+     * @param height integer containing the height of the crop.
+     * @param scores array of floats containing at least getCapacity() values, overwritten
+     *               with the score of each candidate (NO_MATCH if it has no templates).
+     */
+    public void match(float[] rgb, int width, int height, float[] scores) {
+        match(rgb, width, height, scores, null, mTemplates.length);
+    }
+
+    /**
+     * Scores an equalized crop against some candidates only (for instance the ones
+     * pruned by a ColorSignatureIndex).
+     *
+     * @param rgb array of floats containing the crop's RGB values (in range [0; 255]),
+     *            [height][width][NUM_CHANNELS], as the ImagePreprocessor's scaled image.
+     * @param width integer containing the width of the crop.
+     * @param height integer containing the height of the crop.
+     * @param scores array of floats containing at least getCapacity() values, overwritten
+     *               with the score of each candidate (NO_MATCH if it has no templates or
+     *               it is not scored).
+     * @param candidates array of integers containing the indexes of the candidates scored
+     *                   (null to score every candidate).
+     * @param count integer containing the number of candidates scored.
+     */
+    public synchronized void match(float[] rgb, int width, int height, float[] scores,
+                                   int[] candidates, int count) {
+        if (scores.length < mTemplates.length)
+            throw new IllegalArgumentException("Scores must contain " + mTemplates.length + " values");
+        resample(rgb, width, height);
+        if (candidates != null)
+            for (int i = 0; i < mTemplates.length; i++)
+                scores[i] = NO_MATCH;
+        if (mPool == null)
+            matchRange(0, count, scores, candidates);
+        else
+            mPool.invoke(new MatchTask(0, count, scores, candidates));
+    }
+
+    /**
+     * Scores a range of candidates, keeping the best NCC of each one over its templates.
+     */
+    private void matchRange(int from, int to, float[] scores, int[] candidates) {
+        for (int i = from; i < to; i++) {
+            int candidate = candidates == null ? i : candidates[i];
+            float best = NO_MATCH;
+            for (Template mTemplate : mTemplates[candidate])
+                if (mTemplate != null)
+                    best = Math.max(best, correlate(mTemplate));
+            scores[candidate] = best;
+        }
+    }
+
+    /**
+     * Resamples the crop in the grid, averaging the pixels that fall in each cell.
+     */
+    private void resample(float[] rgb, int width, int height) {
+        int channels = ImagePreprocessor.NUM_CHANNELS;
+        for (int y = 0; y < mSize; y++) {
+            int top = y * height / mSize, bottom = Math.max(top + 1, (y + 1) * height / mSize);
+            for (int x = 0; x < mSize; x++) {
+                int left = x * width / mSize, right = Math.max(left + 1, (x + 1) * width / mSize);
+                float red = 0.0f, green = 0.0f, blue = 0.0f;
+                for (int row = top; row < bottom; row++)
+                    for (int col = left; col < right; col++) {
+                        int base = (row * width + col) * channels;
+                        red += rgb[base];
+                        green += rgb[base + 1];
+                        blue += rgb[base + 2];
+                    }
+                float weight = 1.0f / ((bottom - top) * (right - left));
+                int index = (y * mSize + x) * channels;
+                mCrop[index] = red * weight;
+                mCrop[index + 1] = green * weight;
+                mCrop[index + 2] = blue * weight;
+            }
+        }
+    }
+
+    /**
+     * Builds the template of a sprite fitted in the grid at the scale given: the sprite
+     * is centered, its longer side covers scale * mSize cells and each cell averages the
+     * sprite's pixels weighted by their alpha.
+     *
+     * @return The Template object (null if it has less than MIN_PIXELS pixels or no variance).
+     */
+    private Template buildTemplate(int[] argb, int width, int height, float scale) {
+        int channels = ImagePreprocessor.NUM_CHANNELS;
+        // Sprite's pixels covered by a cell
+        float step = Math.max(width, height) / (scale * mSize);
+        float originX = width / 2.0f - step * mSize / 2.0f;
+        float originY = height / 2.0f - step * mSize / 2.0f;
+        int count = 0;
+        short[] mCells = new short[mSize * mSize];
+        for (int y = 0; y < mSize; y++) {
+            int top = (int) Math.floor(originY + y * step);
+            int bottom = Math.max(top + 1, (int) Math.floor(originY + (y + 1) * step));
+            for (int x = 0; x < mSize; x++) {
+                int left = (int) Math.floor(originX + x * step);
+                int right = Math.max(left + 1, (int) Math.floor(originX + (x + 1) * step));
+                float alpha = 0.0f, red = 0.0f, green = 0.0f, blue = 0.0f;
+                for (int row = Math.max(top, 0); row < Math.min(bottom, height); row++)
+                    for (int col = Math.max(left, 0); col < Math.min(right, width); col++) {
+                        int pixel = argb[row * width + col];
+                        float weight = (pixel >>> 24) & 0xFF;
+                        alpha += weight;
+                        red += weight * ((pixel >> 16) & 0xFF);
+                        green += weight * ((pixel >> 8) & 0xFF);
+                        blue += weight * (pixel & 0xFF);
+                    }
+                // Cells partially outside of the sprite count the outside as transparent
+                if (alpha < MIN_ALPHA * (bottom - top) * (right - left))
+                    continue;
+                int base = count * channels;
+                mRgb[base] = red / alpha;
+                mRgb[base + 1] = green / alpha;
+                mRgb[base + 2] = blue / alpha;
+                mVal[count] = Math.max(mRgb[base], Math.max(mRgb[base + 1], mRgb[base + 2])) / 255.0f;
+                mWeight[count] = mVal[count];
+                mCells[count++] = (short) (y * mSize + x);
+            }
+        }
+        if (count < MIN_PIXELS)
+            return null;
+
+        // Equalizes the V values of the item's pixels, keeping their hue and saturation
+        mEqualizer.equalizeHistogram(mVal, count);
+        float sum = 0.0f;
+        for (int i = 0; i < count; i++)
+            for (int c = 0; c < channels; c++) {
+                int index = i * channels + c;
+                mRgb[index] = mWeight[i] > 0.0f ? mRgb[index] * mVal[i] / mWeight[i] : mVal[i] * 255.0f;
+                sum += mRgb[index];
+            }
+        // Zero mean and unit norm, so that the NCC is a dot product
+        int values = count * channels;
+        float mean = sum / values;
+        float norm = 0.0f;
+        for (int i = 0; i < values; i++) {
+            mRgb[i] -= mean;
+            norm += mRgb[i] * mRgb[i];
+        }
+        if (norm < NEARLY_ZERO)
+            return null;
+        float[] mValues = new float[values];
+        float factor = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < values; i++)
+            mValues[i] = mRgb[i] * factor;
+        short[] mTemplateCells = new short[count];
+        System.arraycopy(mCells, 0, mTemplateCells, 0, count);
+        return new Template(mTemplateCells, mValues);
+    }
+
+    /**
+     * Computes the NCC between the resampled crop and a template: the template is
+     * zero-mean and unit-norm, hence the crop's values need only to be normalized.
+     */
+    private float correlate(Template mTemplate) {
+        int channels = ImagePreprocessor.NUM_CHANNELS;
+        short[] mCells = mTemplate.mCells;
+        float[] mValues = mTemplate.mValues;
+        float dot = 0.0f, sum = 0.0f, squares = 0.0f;
+        for (int i = 0; i < mCells.length; i++) {
+            int base = mCells[i] * channels;
+            for (int c = 0; c < channels; c++) {
+                float value = mCrop[base + c];
+                dot += value * mValues[i * channels + c];
+                sum += value;
+                squares += value * value;
+            }
+        }
+        float variance = squares - sum * sum / mValues.length;
+        if (variance < NEARLY_ZERO)
+            return 0.0f;
+        return (float) (dot / Math.sqrt(variance));
+    }
+
+    /**
+     * Template class containing the cells covered by a fitted sprite and their zero-mean,
+     * unit-norm RGB values.
+     */
+    private static class Template {
+
+        /**
+         * An array of shorts containing the index of each cell in the grid.
+         */
+        private final short[] mCells;
+        /**
+         * An array of floats containing the RGB values of each cell [cells][NUM_CHANNELS].
+         */
+        private final float[] mValues;
+
+        private Template(short[] cells, float[] values) {
+            this.mCells = cells;
+            this.mValues = values;
+        }
+    }
+
+    /**
+     * MatchTask class containing the scoring of a range of candidates (or of positions
+     * in the array of the candidates scored), split in halves until each task scores at
+     * most TASK_CANDIDATES candidates.
+     */
+    private class MatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Integers containing the first candidate and the candidate following the last one.
+         */
+        private final int mFrom, mTo;
+        /**
+         * An array of floats containing the score of each candidate.
+         */
+        private final float[] mScores;
+        /**
+         * An array of integers containing the candidates scored (null if every one is).
+         */
+        private final int[] mCandidates;
+
+        public MatchTask(int from, int to, float[] scores, int[] candidates) {
+            this.mFrom = from;
+            this.mTo = to;
+            this.mScores = scores;
+            this.mCandidates = candidates;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= TASK_CANDIDATES) {
+                matchRange(mFrom, mTo, mScores, mCandidates);
+                return;
+            }
+            int middle = (mFrom + mTo) / 2;
+            invokeAll(new MatchTask(mFrom, middle, mScores, mCandidates),
+                    new MatchTask(middle, mTo, mScores, mCandidates));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.TopKSelector
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * TopKSelector class containing the selection of the K best scores of the model's output,
+ * performed in O(n log K) with a bounded min-heap on primitive arrays.
+ * The arrays are allocated once for the maximum K (capacity), hence any K <= capacity can
+ * be requested without allocations. Equal scores are ranked by lower index first.
+ * Quantized scores (uint8/int8) are selected on their raw values, since dequantization
+ * preserves their order: only the K selected scores need to be dequantized.
+ * An instance is not thread-safe.
+ */
+public class TopKSelector {
+
+    /**
+     * Arrays containing the heap (indices and scores): the root is the worst selected score.
+     */
+    private final int[] mHeapIndex;
+    private final float[] mHeapScore;
+    /**
+     * Arrays containing the result of the last selection, ordered by rank.
+     */
+    private final int[] mIndex;
+    private final float[] mScore;
+    /**
+     * An integer containing the number of results of the last selection.
+     */
+    private int mCount = 0;
+    /**
+     * An integer containing the number of scores in the heap.
+     */
+    private int mHeapSize = 0;
+
+    public TopKSelector(int capacity) {
+        mHeapIndex = new int[capacity];
+        mHeapScore = new float[capacity];
+        mIndex = new int[capacity];
+        mScore = new float[capacity];
+    }
+
+    /**
+     * Selects the K best scores among the first size scores given.
+     *
+     * @param scores array of floats containing the scores (for instance the model's output).
+     * @param size integer containing the number of scores considered.
+     * @param k integer containing the number of results requested (min(k, size) must not
+     *          exceed the capacity).
+     * @return An integer containing the number of results (min(k, size)).
+     */
+    public int select(float[] scores, int size, int k) {
+        k = checkResults(k, size);
+        for (int i = 0; i < size && k > 0; i++)
+            offer(i, scores[i], k);
+        return drain();
+    }
+
+    /**
+     * Selects the K best raw quantized scores among the first size scores given.
+     *
+     * @param scores array of bytes containing the quantized scores.
+     * @param size integer containing the number of scores considered.
+     * @param k integer containing the number of results requested (min(k, size) must not
+     *          exceed the capacity).
+     * @param signed boolean that is true for int8 scores, false for uint8 ones.
+     * @return An integer containing the number of results (min(k, size)).
+     */
+    public int select(byte[] scores, int size, int k, boolean signed) {
+        k = checkResults(k, size);
+        for (int i = 0; i < size && k > 0; i++)
+            offer(i, signed ? scores[i] : scores[i] & 0xff, k);
+        return drain();
+    }
+
+    /**
+     * Converts the raw quantized scores of the last selection into real values
+     * (scale * (score - zeroPoint)).
+     *
+     * @param scale float containing the quantization scale (positive).
+     * @param zeroPoint integer containing the quantization zero point.
+     */
+    public void dequantize(float scale, int zeroPoint) {
+        for (int rank = 0; rank < mCount; rank++)
+            mScore[rank] = scale * (mScore[rank] - zeroPoint);
+    }
+
+    /**
+     * Verifies the number of results requested.
+     *
+     * @return An integer containing min(k, size).
+     */
+    private int checkResults(int k, int size) {
+        k = Math.min(k, size);
+        if (k > mHeapIndex.length)
+            throw new IllegalArgumentException("Requested " + k + " results, capacity is " + mHeapIndex.length);
+        mHeapSize = 0;
+        return k;
+    }
+
+    /**
+     * Adds a score to the heap if it is among the K best ones seen so far.
+     */
+    private void offer(int index, float score, int k) {
+        if (mHeapSize < k) {
+            // Filling the heap
+            mHeapIndex[mHeapSize] = index;
+            mHeapScore[mHeapSize] = score;
+            siftUp(mHeapSize++);
+        }
+        else if (isWorse(mHeapIndex[0], mHeapScore[0], index, score)) {
+            // Replacing the worst selected score
+            mHeapIndex[0] = index;
+            mHeapScore[0] = score;
+            siftDown(0, mHeapSize);
+        }
+    }
+
+    /**
+     * Empties the heap into the result of the selection.
+     *
+     * @return An integer containing the number of results.
+     */
+    private int drain() {
+        // Popping the worst score each time, hence filling the result from the last rank
+        int heapSize = mHeapSize;
+        mCount = heapSize;
+        while (heapSize > 0) {
+            mIndex[heapSize - 1] = mHeapIndex[0];
+            mScore[heapSize - 1] = mHeapScore[0];
+            heapSize--;
+            mHeapIndex[0] = mHeapIndex[heapSize];
+            mHeapScore[0] = mHeapScore[heapSize];
+            siftDown(0, heapSize);
+        }
+        mHeapSize = 0;
+        return mCount;
+    }
+
+    /**
+     * Gets the number of results of the last selection.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Gets the index of the result with the rank given (0 is the best one).
+     */
+    public int getIndex(int rank) {
+        return mIndex[rank];
+    }
+
+    /**
+     * Gets the score of the result with the rank given (0 is the best one).
+     */
+    public float getScore(int rank) {
+        return mScore[rank];
+    }
+
+    /**
+     * Creates the immutable list of the predictions obtained by the last selection.
+     *
+     * @return A List of Prediction objects ordered by rank.
+     */
+    public List<Prediction> toPredictions() {
+        List<Prediction> predictions = new ArrayList<>(mCount);
+        for (int rank = 0; rank < mCount; rank++)
+            predictions.add(new Prediction(mIndex[rank], mScore[rank], rank));
+        return Collections.unmodifiableList(predictions);
+    }
+
+    /**
+     * Verifies whether the first score is worse than the second one.
+     */
+    private static boolean isWorse(int firstIndex, float firstScore, int secondIndex, float secondScore) {
+        if (firstScore != secondScore)
+            return firstScore < secondScore;
+        return firstIndex > secondIndex;
+    }
+
+    private void siftUp(int node) {
+        while (node > 0) {
+            int parent = (node - 1) / 2;
+            if (!isWorse(mHeapIndex[node], mHeapScore[node], mHeapIndex[parent], mHeapScore[parent]))
+                return;
+            swap(node, parent);
+            node = parent;
+        }
+    }
+
+    private void siftDown(int node, int heapSize) {
+        while (true) {
+            int worst = node;
+            int left = 2 * node + 1;
+            int right = left + 1;
+            if (left < heapSize && isWorse(mHeapIndex[left], mHeapScore[left], mHeapIndex[worst], mHeapScore[worst]))
+                worst = left;
+            if (right < heapSize && isWorse(mHeapIndex[right], mHeapScore[right], mHeapIndex[worst], mHeapScore[worst]))
+                worst = right;
+            if (worst == node)
+                return;
+            swap(node, worst);
+            node = worst;
+        }
+    }
+
+    private void swap(int first, int second) {
+        int index = mHeapIndex[first];
+        float score = mHeapScore[first];
+        mHeapIndex[first] = mHeapIndex[second];
+        mHeapScore[first] = mHeapScore[second];
+        mHeapIndex[second] = index;
+        mHeapScore[second] = score;
+    }
+}
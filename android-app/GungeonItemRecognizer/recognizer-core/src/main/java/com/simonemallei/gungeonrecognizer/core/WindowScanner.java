@@ -0,0 +1,338 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.WindowScanner
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * WindowScanner class containing the scan of a whole image with a multi-scale grid of
+ * square windows, in order to find several items in it (for instance in a shop).
+ * The windows of each scale are placed with a stride proportional to their edge, and
+ * the last row and column of each scale are aligned to the image's borders.
+ * The windows of a batch are preprocessed in parallel by a fork/join pool: each worker
+ * has its own ImagePreprocessor (with the settings of the session's one, copied again
+ * only when they change) and writes its windows in its own slices of the batched
+ * input tensor.
+ * The best item of each window is a detection if its score reaches a threshold, then
+ * overlapping detections are suppressed keeping the best scored one (non-maximum
+ * suppression).
+ * The throughput (windows per second) of the scans is recorded. An instance must be
+ * used by a single scan at a time.
+ */
+public class WindowScanner {
+
+    /**
+     * An array of floats containing the default edges of the windows, in proportion
+     * to the shorter side of the image.
+     */
+    public final static float[] DEFAULT_SCALES = {0.5f, 0.35f, 0.25f};
+    /**
+     * A float containing the default stride between two windows, in proportion to their edge.
+     */
+    public final static float DEFAULT_STRIDE = 0.5f;
+    /**
+     * An integer containing the minimum edge (in pixels) of a window.
+     */
+    private final static int MIN_EDGE = 8;
+    /**
+     * A ForkJoinPool object preprocessing the windows in parallel.
+     */
+    private final ForkJoinPool mPool;
+    /**
+     * An array of floats containing the edges of the windows of each scale.
+     */
+    private final float[] mScales;
+    /**
+     * A float containing the stride between two windows, in proportion to their edge.
+     */
+    private final float mStride;
+    /**
+     * Arrays of integers containing the left column, the top row and the edge of each window.
+     */
+    private int[] mLefts = new int[0], mTops = new int[0], mEdges = new int[0];
+    /**
+     * An integer containing the number of windows of the last layout.
+     */
+    private int mCount = 0;
+    /**
+     * An array containing the ImagePreprocessor object of each worker (null until its
+     * first batch).
+     */
+    private final ImagePreprocessor[] mWorkers;
+    /**
+     * Longs containing the number of windows scanned and the time (in nanoseconds) spent.
+     */
+    private long mWindows = 0L;
+    private long mNanos = 0L;
+
+    public WindowScanner(ForkJoinPool pool) {
+        this(pool, DEFAULT_SCALES, DEFAULT_STRIDE);
+    }
+
+    /**
+     * @param pool ForkJoinPool object preprocessing the windows in parallel.
+     * @param scales array of floats containing the edges of the windows of each scale,
+     *               in proportion to the shorter side of the image (in range (0; 1]).
+     * @param stride float containing the stride between two windows, in proportion to
+     *               their edge (in range (0; 1]).
+     */
+    public WindowScanner(ForkJoinPool pool, float[] scales, float stride) {
+        if (stride <= 0.0f || stride > 1.0f)
+            throw new IllegalArgumentException("Stride must be in range (0; 1]: " + stride);
+        this.mPool = pool;
+        this.mScales = scales.clone();
+        this.mStride = stride;
+        this.mWorkers = new ImagePreprocessor[pool.getParallelism()];
+    }
+
+    /**
+     * Places the windows of every scale over an image.
+     *
+     * @param width integer containing the width of the image.
+     * @param height integer containing the height of the image.
+     * @return An integer containing the number of windows.
+     */
+    public int layout(int width, int height) {
+        int side = Math.min(width, height);
+        int count = 0;
+        for (float scale : mScales) {
+            int edge = Math.max(MIN_EDGE, Math.min(side, Math.round(side * scale)));
+            int step = Math.max(1, Math.round(edge * mStride));
+            count += steps(width, edge, step) * steps(height, edge, step);
+        }
+        if (mLefts.length < count) {
+            mLefts = new int[count];
+            mTops = new int[count];
+            mEdges = new int[count];
+        }
+
+        mCount = 0;
+        for (float scale : mScales) {
+            int edge = Math.max(MIN_EDGE, Math.min(side, Math.round(side * scale)));
+            int step = Math.max(1, Math.round(edge * mStride));
+            int rows = steps(height, edge, step), cols = steps(width, edge, step);
+            for (int row = 0; row < rows; row++)
+                for (int col = 0; col < cols; col++) {
+                    mLefts[mCount] = Math.min(col * step, width - edge);
+                    mTops[mCount] = Math.min(row * step, height - edge);
+                    mEdges[mCount] = edge;
+                    mCount++;
+                }
+        }
+        return mCount;
+    }
+
+    /**
+     * Gets the number of windows along a side, so that the last one reaches its end.
+     */
+    private static int steps(int size, int edge, int step) {
+        return size <= edge ? 1 : (size - edge + step - 1) / step + 1;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getLeft(int window) {
+        return mLefts[window];
+    }
+
+    public int getTop(int window) {
+        return mTops[window];
+    }
+
+    public int getEdge(int window) {
+        return mEdges[window];
+    }
+
+    /**
+     * Preprocesses consecutive windows in parallel, writing the batched input tensor.
+     *
+     * @param prototype ImagePreprocessor object whose settings are used by the workers.
+     * @param pixels array of integers containing the ARGB pixels of the image.
+     * @param stride integer containing the number of pixels between two rows.
+     * @param first integer containing the first window of the batch.
+     * @param count integer containing the number of windows of the batch.
+     * @param output ByteBuffer with native order that will contain the input tensor
+     *               [count][height][width][NUM_CHANNELS] (its position is not moved).
+     */
+    public void preprocess(ImagePreprocessor prototype, int[] pixels, int stride, int first,
+                           int count, ByteBuffer output) {
+        int workers = Math.min(mWorkers.length, count);
+        // The workers' buffers are reused by every batch, until the prototype's settings change
+        for (int i = 0; i < workers; i++)
+            if (mWorkers[i] == null || !mWorkers[i].hasSettingsOf(prototype))
+                mWorkers[i] = new ImagePreprocessor(prototype);
+        mPool.invoke(new PreprocessTask(0, workers, pixels, stride, first, count, first, output,
+                prototype.getInputBytes()));
+    }
+
+    /**
+     * Adds the best item of each window of a batch whose score reaches the threshold
+     * to the detections.
+     *
+     * @param scores array of arrays of floats with shape [count][items] containing the scores.
+     * @param items integer containing the number of scores of each window.
+     * @param first integer containing the first window of the batch.
+     * @param count integer containing the number of windows of the batch.
+     * @param minScore float containing the minimum score of a detection.
+     * @param detections List of Detection objects that will contain the new ones.
+     */
+    public void detect(float[][] scores, int items, int first, int count, float minScore,
+                       List<Detection> detections) {
+        for (int i = 0; i < count; i++) {
+            float[] mWindowScores = scores[i];
+            int best = 0;
+            for (int j = 1; j < items; j++)
+                if (mWindowScores[j] > mWindowScores[best])
+                    best = j;
+            if (mWindowScores[best] >= minScore)
+                detections.add(new Detection(best, mWindowScores[best], mLefts[first + i],
+                        mTops[first + i], mEdges[first + i]));
+        }
+    }
+
+    /**
+     * Suppresses the detections overlapping a better scored one (whatever their item,
+     * since a window shows a single item).
+     *
+     * @param detections List of Detection objects found by the scan.
+     * @param maxOverlap float containing the maximum intersection over union between
+     *                   two detections kept.
+     * @return The List of the detections kept, sorted by descending score.
+     */
+    public static List<Detection> suppress(List<Detection> detections, float maxOverlap) {
+        List<Detection> mSorted = new ArrayList<>(detections);
+        Collections.sort(mSorted, new Comparator<Detection>() {
+            @Override
+            public int compare(Detection first, Detection second) {
+                return Float.compare(second.getScore(), first.getScore());
+            }
+        });
+        List<Detection> mKept = new ArrayList<>();
+        for (Detection mDetection : mSorted) {
+            boolean suppressed = false;
+            for (Detection mBetter : mKept)
+                if (mBetter.overlap(mDetection) > maxOverlap) {
+                    suppressed = true;
+                    break;
+                }
+            if (!suppressed)
+                mKept.add(mDetection);
+        }
+        return mKept;
+    }
+
+    /**
+     * Records the throughput of a scan.
+     *
+     * @param windows integer containing the number of windows scanned.
+     * @param nanos long containing the time spent (in nanoseconds).
+     */
+    public synchronized void recordScan(int windows, long nanos) {
+        mWindows += windows;
+        mNanos += nanos;
+    }
+
+    /**
+     * Gets the throughput of the scans recorded.
+     *
+     * @return A double containing the windows scanned per second (0 if none).
+     */
+    public synchronized double getWindowsPerSecond() {
+        return mNanos == 0L ? 0.0 : mWindows * 1e9 / mNanos;
+    }
+
+    public synchronized long getWindows() {
+        return mWindows;
+    }
+
+    /**
+     * PreprocessTask class containing the preprocessing of a range of windows by
+     * a range of workers: the ranges are split in halves until a single worker is left.
+     */
+    private class PreprocessTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Integers containing the first worker and the worker following the last one.
+         */
+        private final int mFromWorker, mToWorker;
+        /**
+         * An array of integers containing the ARGB pixels of the image.
+         */
+        private final int[] mPixels;
+        /**
+         * An integer containing the number of pixels between two rows.
+         */
+        private final int mRowStride;
+        /**
+         * Integers containing the first window and the number of windows of the task.
+         */
+        private final int mFirst, mCount;
+        /**
+         * An integer containing the window written at the output's position.
+         */
+        private final int mBase;
+        /**
+         * A ByteBuffer containing the batched input tensor.
+         */
+        private final ByteBuffer mOutput;
+        /**
+         * An integer containing the number of bytes of each window's input.
+         */
+        private final int mInputBytes;
+
+        public PreprocessTask(int fromWorker, int toWorker, int[] pixels, int stride, int first,
+                              int count, int base, ByteBuffer output, int inputBytes) {
+            this.mFromWorker = fromWorker;
+            this.mToWorker = toWorker;
+            this.mPixels = pixels;
+            this.mRowStride = stride;
+            this.mFirst = first;
+            this.mCount = count;
+            this.mBase = base;
+            this.mOutput = output;
+            this.mInputBytes = inputBytes;
+        }
+
+        @Override
+        protected void compute() {
+            if (mToWorker - mFromWorker <= 1) {
+                // Each task moves the position of its own view of the tensor
+                ImagePreprocessor mWorker = mWorkers[mFromWorker];
+                ByteBuffer mView = mOutput.duplicate().order(ByteOrder.nativeOrder());
+                int start = mOutput.position();
+                for (int i = mFirst; i < mFirst + mCount; i++) {
+                    mView.position(start + (i - mBase) * mInputBytes);
+                    mWorker.preprocess(mPixels, mTops[i] * mRowStride + mLefts[i], mRowStride,
+                            mEdges[i], mEdges[i], mView);
+                }
+                return;
+            }
+            int middleWorker = (mFromWorker + mToWorker) / 2;
+            int split = mCount * (middleWorker - mFromWorker) / (mToWorker - mFromWorker);
+            invokeAll(new PreprocessTask(mFromWorker, middleWorker, mPixels, mRowStride, mFirst,
+                            split, mBase, mOutput, mInputBytes),
+                    new PreprocessTask(middleWorker, mToWorker, mPixels, mRowStride, mFirst + split,
+                            mCount - split, mBase, mOutput, mInputBytes));
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Class Name
+ * com.simonemallei.gungeonrecognizer.core.YuvConverter
+ *
+ * Version information
+ * 1.1.5
+ *
+ * Date (m/d/y)
+ * 11/05/2021 22:20
+ */
+
+/**
+ * YuvConverter class containing the conversion of a region of interest of a
+ * YUV_420_888 frame into upright ARGB pixels.
+ * Only the pixels of the region are read (the rest of the frame is never touched),
+ * the planes are accessed through their row and pixel strides (so both planar and
+ * semi-planar layouts are supported) and the frame's rotation is applied while reading.
+ * The conversion uses the full-range BT.601 coefficients of the camera's JPEG encoder,
+ * in 16.16 fixed point.
+ * An instance is not thread-safe.
+ */
+public class YuvConverter {
+
+    /**
+     * An integer containing the fixed point coefficient of V in the red channel (1.402).
+     */
+    private final static int COEFF_RV = 91881;
+    /**
+     * An integer containing the fixed point coefficient of U in the green channel (0.344136).
+     */
+    private final static int COEFF_GU = 22554;
+    /**
+     * An integer containing the fixed point coefficient of V in the green channel (0.714136).
+     */
+    private final static int COEFF_GV = 46802;
+    /**
+     * An integer containing the fixed point coefficient of U in the blue channel (1.772).
+     */
+    private final static int COEFF_BU = 116130;
+    /**
+     * An integer containing the number of fractional bits of the fixed point coefficients.
+     */
+    private final static int SHIFT = 16;
+    /**
+     * An integer containing the rounding term of the fixed point coefficients.
+     */
+    private final static int HALF = 1 << (SHIFT - 1);
+    /**
+     * A ByteBuffer containing the Y plane of the frame.
+     */
+    private ByteBuffer mY;
+    /**
+     * A ByteBuffer containing the U plane of the frame.
+     */
+    private ByteBuffer mU;
+    /**
+     * A ByteBuffer containing the V plane of the frame.
+     */
+    private ByteBuffer mV;
+    /**
+     * An integer containing the row stride of the Y plane.
+     */
+    private int mYRowStride;
+    /**
+     * An integer containing the pixel stride of the Y plane.
+     */
+    private int mYPixelStride;
+    /**
+     * An integer containing the row stride of the U and V planes.
+     */
+    private int mUvRowStride;
+    /**
+     * An integer containing the pixel stride of the U and V planes.
+     */
+    private int mUvPixelStride;
+    /**
+     * An integer containing the width of the frame (as read by the sensor).
+     */
+    private int mWidth;
+    /**
+     * An integer containing the height of the frame (as read by the sensor).
+     */
+    private int mHeight;
+    /**
+     * An integer containing the clockwise rotation (0, 90, 180 or 270 degrees)
+     * that makes the frame upright.
+     */
+    private int mRotation;
+
+    /**
+     * Sets the frame converted by the next calls of convert().
+     *
+     * @param y ByteBuffer containing the Y plane.
+     * @param yRowStride integer containing the row stride of the Y plane.
+     * @param yPixelStride integer containing the pixel stride of the Y plane.
+     * @param u ByteBuffer containing the U plane.
+     * @param v ByteBuffer containing the V plane.
+     * @param uvRowStride integer containing the row stride of the U and V planes.
+     * @param uvPixelStride integer containing the pixel stride of the U and V planes.
+     * @param width integer containing the width of the frame.
+     * @param height integer containing the height of the frame.
+     * @param rotation integer containing the clockwise rotation (in degrees) that makes
+     *                 the frame upright.
+     */
+    public void setFrame(ByteBuffer y, int yRowStride, int yPixelStride,
+                         ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                         int width, int height, int rotation) {
+        if (rotation % 90 != 0)
+            throw new IllegalArgumentException("Rotation must be a multiple of 90 degrees: " + rotation);
+        this.mY = y;
+        this.mYRowStride = yRowStride;
+        this.mYPixelStride = yPixelStride;
+        this.mU = u;
+        this.mV = v;
+        this.mUvRowStride = uvRowStride;
+        this.mUvPixelStride = uvPixelStride;
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mRotation = ((rotation % 360) + 360) % 360;
+    }
+
+    /**
+     * Gets the width of the frame once it is upright.
+     *
+     * @return An integer containing the upright width.
+     */
+    public int getUprightWidth() {
+        return mRotation % 180 == 0 ? mWidth : mHeight;
+    }
+
+    /**
+     * Gets the height of the frame once it is upright.
+     *
+     * @return An integer containing the upright height.
+     */
+    public int getUprightHeight() {
+        return mRotation % 180 == 0 ? mHeight : mWidth;
+    }
+
+    /**
+     * Converts the square region given (in upright coordinates) into ARGB pixels.
+     *
+     * @param left integer containing the left column of the region.
+     * @param top integer containing the top row of the region.
+     * @param edge integer containing the length of the region's edge.
+     * @param pixels array of integers (at least edge * edge long) that will contain the
+     *               upright ARGB pixels of the region (row-major, stride edge).
+     */
+    public void convert(int left, int top, int edge, int[] pixels) {
+        convert(left, top, edge, edge, pixels);
+    }
+
+    /**
+     * Converts the region given (in upright coordinates) into ARGB pixels.
+     *
+     * @param left integer containing the left column of the region.
+     * @param top integer containing the top row of the region.
+     * @param width integer containing the width of the region.
+     * @param height integer containing the height of the region.
+     * @param pixels array of integers (at least width * height long) that will contain the
+     *               upright ARGB pixels of the region (row-major, stride width).
+     */
+    public void convert(int left, int top, int width, int height, int[] pixels) {
+        if (left < 0 || top < 0 || left + width > getUprightWidth() || top + height > getUprightHeight())
+            throw new IllegalArgumentException("Region out of the frame: " + left + ", " + top
+                    + ", " + width + "x" + height);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                // Finding the sensor's pixel shown at (left + x, top + y) once upright
+                int ux = left + x, uy = top + y;
+                int sx, sy;
+                switch (mRotation) {
+                    case 90:
+                        sx = uy;
+                        sy = mHeight - 1 - ux;
+                        break;
+                    case 180:
+                        sx = mWidth - 1 - ux;
+                        sy = mHeight - 1 - uy;
+                        break;
+                    case 270:
+                        sx = mWidth - 1 - uy;
+                        sy = ux;
+                        break;
+                    default:
+                        sx = ux;
+                        sy = uy;
+                }
+                int lum = mY.get(sy * mYRowStride + sx * mYPixelStride) & 0xff;
+                int chroma = (sy >> 1) * mUvRowStride + (sx >> 1) * mUvPixelStride;
+                pixels[row + x] = toArgb(lum, (mU.get(chroma) & 0xff) - 128, (mV.get(chroma) & 0xff) - 128);
+            }
+        }
+    }
+
+    /**
+     * Samples the luminance of the square region given (in upright coordinates) on a
+     * smaller grid, picking the nearest pixel of each cell: the chroma planes are not read.
+     *
+     * @param left integer containing the left column of the region.
+     * @param top integer containing the top row of the region.
+     * @param edge integer containing the length of the region's edge.
+     * @param size integer containing the length of the grid's edge.
+     * @param luma array of integers (at least size * size long) that will contain the
+     *             Y values in range [0; 255] (row-major, stride size).
+     */
+    public void sampleLuma(int left, int top, int edge, int size, int[] luma) {
+        if (left < 0 || top < 0 || left + edge > getUprightWidth() || top + edge > getUprightHeight())
+            throw new IllegalArgumentException("Region out of the frame: " + left + ", " + top
+                    + ", " + edge + "x" + edge);
+        for (int y = 0; y < size; y++) {
+            int uy = top + (2 * y + 1) * edge / (2 * size);
+            for (int x = 0; x < size; x++) {
+                int ux = left + (2 * x + 1) * edge / (2 * size);
+                int sx, sy;
+                switch (mRotation) {
+                    case 90:
+                        sx = uy;
+                        sy = mHeight - 1 - ux;
+                        break;
+                    case 180:
+                        sx = mWidth - 1 - ux;
+                        sy = mHeight - 1 - uy;
+                        break;
+                    case 270:
+                        sx = mWidth - 1 - uy;
+                        sy = ux;
+                        break;
+                    default:
+                        sx = ux;
+                        sy = uy;
+                }
+                luma[y * size + x] = mY.get(sy * mYRowStride + sx * mYPixelStride) & 0xff;
+            }
+        }
+    }
+
+    /**
+     * Converts a full-range YUV triple into an opaque ARGB color.
+     *
+     * @param lum integer containing the Y value in range [0; 255].
+     * @param u integer containing the U value minus 128.
+     * @param v integer containing the V value minus 128.
+     * @return An integer containing the ARGB color.
+     */
+    public static int toArgb(int lum, int u, int v) {
+        int base = (lum << SHIFT) + HALF;
+        int r = clamp((base + COEFF_RV * v) >> SHIFT);
+        int g = clamp((base - COEFF_GU * u - COEFF_GV * v) >> SHIFT);
+        int b = clamp((base + COEFF_BU * u) >> SHIFT);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
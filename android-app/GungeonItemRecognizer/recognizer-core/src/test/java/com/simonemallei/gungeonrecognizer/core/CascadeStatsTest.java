@@ -0,0 +1,53 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the escalation rule and of the measures of a two-tier recognizer.
+ */
+public class CascadeStatsTest {
+
+    @Test
+    public void margin_isDifferenceOfTwoBestScores() {
+        assertEquals(0.5f, CascadeStats.margin(new float[]{0.1f, 0.7f, 0.2f}, 3), 1e-6f);
+        // Only the first scores are considered
+        assertEquals(0.1f, CascadeStats.margin(new float[]{0.4f, 0.3f, 0.9f}, 2), 1e-6f);
+        assertEquals(0.0f, CascadeStats.margin(new float[]{0.5f, 0.5f}, 2), 0.0f);
+        assertEquals(0.8f, CascadeStats.margin(new float[]{0.8f}, 1), 0.0f);
+    }
+
+    @Test
+    public void escalates_belowMinMargin() {
+        CascadeStats mStats = new CascadeStats(0.3f);
+        assertFalse(mStats.escalates(new float[]{0.9f, 0.05f, 0.05f}, 3));
+        assertTrue(mStats.escalates(new float[]{0.45f, 0.35f, 0.2f}, 3));
+    }
+
+    @Test
+    public void record_measuresEscalationAndLatency() {
+        CascadeStats mStats = new CascadeStats(0.3f);
+        assertEquals(0.0, mStats.getEscalationRate(), 0.0);
+
+        mStats.record(1_000_000L, -1L);
+        mStats.record(1_000_000L, -1L);
+        mStats.record(1_000_000L, -1L);
+        mStats.record(1_000_000L, 4_000_000L);
+
+        assertEquals(4, mStats.getRequests());
+        assertEquals(0.25, mStats.getEscalationRate(), 1e-9);
+        assertEquals(2000.0, mStats.getMeanLatency(), 1e-9);
+        assertEquals(4000.0, mStats.getFullMeanLatency(), 1e-9);
+        assertTrue(mStats.report().startsWith("n=4 escalated=0.250 mean=2000us"));
+
+        mStats.reset();
+        assertEquals(0, mStats.getRequests());
+        assertEquals(0.0, mStats.getFullMeanLatency(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNegativeMargin() {
+        new CascadeStats(-0.1f);
+    }
+}
@@ -0,0 +1,104 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.simonemallei.gungeonrecognizer.core.TestSprites.EDGE;
+import static com.simonemallei.gungeonrecognizer.core.TestSprites.crop;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the colour signatures: the sprite of a crop must be among the candidates kept,
+ * whatever the crop's background, and the template matching of the candidates kept must
+ * give them the scores of the full matching.
+ */
+public class ColorSignatureIndexTest {
+
+    private static final int ITEMS = 100;
+    private static final int CANDIDATES = 10;
+
+    @Test
+    public void query_keepsTheSprite() {
+        Random mRandom = new Random(21);
+        int[][] sprites = new int[ITEMS][];
+        ColorSignatureIndex mIndex = new ColorSignatureIndex(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            sprites[i] = TestSprites.twoHues(mRandom);
+            assertTrue(mIndex.addSprite(i, sprites[i], EDGE, EDGE));
+        }
+        assertEquals(ITEMS, mIndex.getCount());
+
+        PruningStats mStats = new PruningStats(CANDIDATES);
+        int[] candidates = new int[CANDIDATES];
+        int[] backgrounds = {0xff000000, 0xff606060, 0xffffffff};
+        for (int i = 0; i < ITEMS; i++) {
+            int count = mIndex.query(crop(sprites[i], backgrounds[i % backgrounds.length], 1.0f), EDGE, EDGE,
+                    CANDIDATES, candidates);
+            assertEquals(CANDIDATES, count);
+            mStats.record(PruningStats.contains(candidates, count, i), 0L, 0L);
+            for (int rank = 1; rank < count; rank++)
+                assertTrue(mIndex.getSimilarity(candidates[rank - 1]) >= mIndex.getSimilarity(candidates[rank]));
+        }
+        assertTrue("recall@" + CANDIDATES + " " + mStats.getRecall(), mStats.getRecall() >= 0.95);
+    }
+
+    @Test
+    public void sameShapeWithOtherHue_isRankedLower() {
+        // The same shape, drawn with hues six bins apart
+        int hues = 6;
+        int[] shape = TestSprites.random(new Random(24));
+        ColorSignatureIndex mIndex = new ColorSignatureIndex(hues);
+        int[][] sprites = new int[hues][];
+        for (int i = 0; i < hues; i++) {
+            int color = ImagePreprocessor.hsvToColor(i * 360.0f / hues, 0.9f, 1.0f);
+            sprites[i] = new int[shape.length];
+            for (int p = 0; p < shape.length; p++)
+                sprites[i][p] = (shape[p] >>> 24) == 0 ? 0 : color;
+            assertTrue(mIndex.addSprite(i, sprites[i], EDGE, EDGE));
+        }
+
+        int[] candidates = new int[hues];
+        for (int i = 0; i < hues; i++) {
+            assertEquals(hues, mIndex.query(crop(sprites[i], 0xff000000, 1.0f), EDGE, EDGE, hues, candidates));
+            assertEquals(i, candidates[0]);
+            assertTrue(mIndex.getSimilarity(candidates[0]) > mIndex.getSimilarity(candidates[1]));
+        }
+    }
+
+    @Test
+    public void query_skipsItemsWithoutSignature() {
+        ColorSignatureIndex mIndex = new ColorSignatureIndex(3);
+        int[] sprite = TestSprites.twoHues(new Random(22));
+        assertTrue(mIndex.addSprite(1, sprite, EDGE, EDGE));
+        assertFalse(mIndex.addSprite(2, new int[EDGE * EDGE], EDGE, EDGE));
+        assertEquals(1, mIndex.getCount());
+
+        int[] candidates = new int[3];
+        assertEquals(1, mIndex.query(crop(sprite, 0xff000000, 1.0f), EDGE, EDGE, 3, candidates));
+        assertEquals(1, candidates[0]);
+        assertEquals(-1.0f, mIndex.getSimilarity(0), 0.0f);
+    }
+
+    @Test
+    public void prunedMatching_scoresOnlyTheCandidates() {
+        Random mRandom = new Random(23);
+        TemplateMatcher mMatcher = new TemplateMatcher(ITEMS, new ForkJoinPool(2));
+        int[][] sprites = new int[ITEMS][];
+        for (int i = 0; i < ITEMS; i++) {
+            sprites[i] = TestSprites.twoHues(mRandom);
+            mMatcher.addTemplate(i, sprites[i], EDGE, EDGE);
+        }
+        float[] mCrop = crop(sprites[5], 0xff303030, 1.0f);
+        float[] full = new float[ITEMS];
+        mMatcher.match(mCrop, EDGE, EDGE, full);
+
+        int[] candidates = {5, 17, 80};
+        float[] pruned = new float[ITEMS];
+        mMatcher.match(mCrop, EDGE, EDGE, pruned, candidates, candidates.length);
+        for (int i = 0; i < ITEMS; i++)
+            assertEquals(PruningStats.contains(candidates, candidates.length, i) ? full[i] : TemplateMatcher.NO_MATCH,
+                    pruned[i], 0.0f);
+    }
+}
@@ -0,0 +1,89 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the crop variants written in a batched input tensor.
+ */
+public class CropVariantsTest {
+
+    private static final int EDGE = 32;
+
+    private static int[] createImage(int width, int height, long seed) {
+        Random mRandom = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | mRandom.nextInt(1 << 24);
+        return pixels;
+    }
+
+    @Test
+    public void firstVariant_matchesGreenSquare() {
+        int width = 200, height = 180, left = 50, top = 40, edge = 97;
+        int[] image = createImage(width, height, 1);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        int inputBytes = mPreprocessor.getInputBytes();
+        ByteBuffer expected = ByteBuffer.allocateDirect(inputBytes).order(ByteOrder.nativeOrder());
+        mPreprocessor.preprocess(image, top * width + left, width, edge, edge, expected);
+
+        ByteBuffer batch = ByteBuffer.allocateDirect(4 * inputBytes).order(ByteOrder.nativeOrder());
+        CropVariants.preprocess(mPreprocessor, image, width, width, height, left, top, edge, 4, batch);
+        assertEquals(0, batch.position());
+        for (int i = 0; i < EDGE * EDGE * 3; i++)
+            assertEquals(expected.getFloat(i * 4), batch.getFloat(i * 4), 1e-5f);
+
+        // The other variants differ from the green square, but stay normalized
+        boolean different = false;
+        for (int i = EDGE * EDGE * 3; i < 4 * EDGE * EDGE * 3; i++) {
+            float value = batch.getFloat(i * 4);
+            assertTrue(value >= 0.0f && value <= 1.0f + 1e-6f);
+            different |= value != batch.getFloat((i % (EDGE * EDGE * 3)) * 4);
+        }
+        assertTrue(different);
+    }
+
+    @Test
+    public void variantsNearBorder_stayInsideImage() {
+        int width = 64, height = 64;
+        int[] image = createImage(width, height, 2);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        ByteBuffer batch = ByteBuffer.allocateDirect(CropVariants.MAX_VARIANTS * mPreprocessor.getInputBytes())
+                .order(ByteOrder.nativeOrder());
+        // The green square touches the top-left corner: the variants are clamped
+        CropVariants.preprocess(mPreprocessor, image, width, width, height, 0, 0, 60,
+                CropVariants.MAX_VARIANTS, batch);
+    }
+
+    @Test
+    public void context_containsEveryVariant() {
+        assertEquals(100, CropVariants.contextEdge(100, 1));
+        int contextEdge = CropVariants.contextEdge(100, CropVariants.MAX_VARIANTS);
+        // Scale 1.1, rotation of 4 degrees and diagonal shifts
+        assertTrue(contextEdge >= 112 && contextEdge <= 125);
+        assertEquals(44, CropVariants.contextStart(50, 100, 112, 300));
+        assertEquals(0, CropVariants.contextStart(2, 100, 112, 300));
+        assertEquals(188, CropVariants.contextStart(195, 100, 112, 300));
+        assertEquals(0, CropVariants.contextStart(0, 100, 112, 105));
+    }
+
+    @Test
+    public void scores_areAveraged() {
+        float[][] scores = {{1.0f, 0.0f, 0.5f}, {0.0f, 1.0f, 0.5f}, {0.5f, 0.5f, 0.5f}, {0.5f, 0.5f, 0.9f}};
+        float[] result = new float[3];
+        CropVariants.average(scores, 4, 3, result);
+        assertArrayEquals(new float[]{0.5f, 0.5f, 0.6f}, result, 1e-6f);
+        CropVariants.average(scores, 1, 3, result);
+        assertArrayEquals(scores[0], result, 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyVariants_areRejected() {
+        CropVariants.contextEdge(100, CropVariants.MAX_VARIANTS + 1);
+    }
+}
@@ -0,0 +1,108 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the sharpness and motion measures of the frame-quality gate.
+ */
+public class FrameQualityGateTest {
+
+    private static final int SIZE = 16;
+
+    private static void fillFlat(int[] luma, int value) {
+        for (int i = 0; i < luma.length; i++)
+            luma[i] = value;
+    }
+
+    private static void fillCheckerboard(int[] luma, int shift) {
+        for (int y = 0; y < SIZE; y++)
+            for (int x = 0; x < SIZE; x++)
+                luma[y * SIZE + x] = ((x + y + shift) & 1) == 0 ? 40 : 200;
+    }
+
+    @Test
+    public void flatFrame_isBlurry() {
+        FrameQualityGate mGate = new FrameQualityGate(SIZE, 10.0f, Float.POSITIVE_INFINITY);
+        fillFlat(mGate.getLuma(), 128);
+        mGate.update();
+        assertEquals(0.0f, mGate.getSharpness(), 0.0f);
+        assertFalse(mGate.accept());
+        assertEquals(1, mGate.getBlurry());
+        assertEquals(1, mGate.getSaved());
+    }
+
+    @Test
+    public void texturedFrame_isSharp() {
+        FrameQualityGate mGate = new FrameQualityGate(SIZE, 10.0f, Float.POSITIVE_INFINITY);
+        fillCheckerboard(mGate.getLuma(), 0);
+        mGate.update();
+        assertTrue(mGate.getSharpness() > 10.0f);
+        assertTrue(mGate.accept());
+        assertEquals(1, mGate.getAccepted());
+    }
+
+    @Test
+    public void motion_isMeasuredAgainstPreviousFrame() {
+        FrameQualityGate mGate = new FrameQualityGate(SIZE, 0.0f, 100.0f);
+        fillCheckerboard(mGate.getLuma(), 0);
+        mGate.update();
+        assertEquals(0.0f, mGate.getMotion(), 0.0f);
+        assertTrue(mGate.accept());
+
+        // The same frame again is still
+        fillCheckerboard(mGate.getLuma(), 0);
+        mGate.update();
+        assertEquals(0.0f, mGate.getMotion(), 0.0f);
+
+        // A shifted frame differs by 160 in every cell
+        fillCheckerboard(mGate.getLuma(), 1);
+        mGate.update();
+        assertEquals(160.0f * 160.0f, mGate.getMotion(), 0.0f);
+        assertFalse(mGate.accept());
+        assertEquals(1, mGate.getMoving());
+    }
+
+    @Test
+    public void reset_forgetsPreviousFrame() {
+        FrameQualityGate mGate = new FrameQualityGate(SIZE, 0.0f, 100.0f);
+        fillFlat(mGate.getLuma(), 0);
+        mGate.update();
+        mGate.reset();
+        fillFlat(mGate.getLuma(), 255);
+        mGate.update();
+        assertEquals(0.0f, mGate.getMotion(), 0.0f);
+        assertTrue(mGate.accept());
+    }
+
+    @Test
+    public void sharpness_dropsWhenBlurred() {
+        Random mRandom = new Random(3);
+        int[] noise = new int[SIZE * SIZE];
+        for (int i = 0; i < noise.length; i++)
+            noise[i] = mRandom.nextInt(256);
+        FrameQualityGate mGate = new FrameQualityGate(SIZE, 0.0f, Float.POSITIVE_INFINITY);
+        System.arraycopy(noise, 0, mGate.getLuma(), 0, noise.length);
+        mGate.update();
+        float sharp = mGate.getSharpness();
+
+        // 3x3 box blur of the same frame
+        int[] luma = mGate.getLuma();
+        for (int y = 0; y < SIZE; y++)
+            for (int x = 0; x < SIZE; x++) {
+                int sum = 0, count = 0;
+                for (int dy = -1; dy <= 1; dy++)
+                    for (int dx = -1; dx <= 1; dx++)
+                        if (y + dy >= 0 && y + dy < SIZE && x + dx >= 0 && x + dx < SIZE) {
+                            sum += noise[(y + dy) * SIZE + x + dx];
+                            count++;
+                        }
+                luma[y * SIZE + x] = sum / count;
+            }
+        mGate.update();
+        assertTrue(mGate.getSharpness() < sharp / 4);
+    }
+}
@@ -0,0 +1,108 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parity tests between the linear-time (HISTOGRAM) and the sort-based (SORTED)
+ * histogram equalization on synthetic images.
+ */
+public class HistogramEqualizerTest {
+
+    /**
+     * A float containing the tolerance for values that are multiples of 1/255.
+     */
+    private static final float TOLERANCE = 1e-6f;
+
+    /**
+     * Gets the V values of the ARGB pixels given (maximum channel / 255).
+     */
+    private static float[] valuesOf(int[] pixels) {
+        float[] values = new float[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int max = Math.max((pixels[i] >> 16) & 0xff, Math.max((pixels[i] >> 8) & 0xff, pixels[i] & 0xff));
+            values[i] = (float) max / 255;
+        }
+        return values;
+    }
+
+    private static void assertParity(float[] values) {
+        HistogramEqualizer mEqualizer = new HistogramEqualizer();
+        float[] sorted = values.clone();
+        float[] binned = values.clone();
+        mEqualizer.equalize(sorted, sorted.length, HistogramEqualizer.Mode.SORTED);
+        mEqualizer.equalize(binned, binned.length, HistogramEqualizer.Mode.HISTOGRAM);
+        assertArrayEquals(sorted, binned, TOLERANCE);
+    }
+
+    @Test
+    public void randomImage_isEquivalent() {
+        Random mRandom = new Random(42);
+        for (int size : new int[]{1, 2, 32 * 32, 97 * 131, 512 * 512}) {
+            int[] pixels = new int[size];
+            for (int i = 0; i < size; i++)
+                pixels[i] = 0xff000000 | mRandom.nextInt(1 << 24);
+            assertParity(valuesOf(pixels));
+        }
+    }
+
+    @Test
+    public void gradientImage_isEquivalent() {
+        int edge = 300;
+        int[] pixels = new int[edge * edge];
+        for (int y = 0; y < edge; y++)
+            for (int x = 0; x < edge; x++) {
+                int r = x * 255 / (edge - 1);
+                int g = y * 255 / (edge - 1);
+                int b = (x + y) * 255 / (2 * (edge - 1));
+                pixels[y * edge + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        assertParity(valuesOf(pixels));
+    }
+
+    @Test
+    public void fewColoursImage_isEquivalent() {
+        Random mRandom = new Random(7);
+        int[] palette = {0xff000000, 0xff202020, 0xff8040c0, 0xffffffff, 0xff10ff10};
+        int[] pixels = new int[200 * 200];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = palette[mRandom.nextInt(palette.length)];
+        assertParity(valuesOf(pixels));
+    }
+
+    @Test
+    public void uniformImage_isMappedToOne() {
+        float[] values = valuesOf(new int[]{0xff336699, 0xff336699, 0xff336699, 0xff336699});
+        assertParity(values);
+        new HistogramEqualizer().equalizeHistogram(values, values.length);
+        for (float value : values)
+            assertEquals(1.0f, value, TOLERANCE);
+    }
+
+    @Test
+    public void unquantizedValues_areWithinBinTolerance() {
+        Random mRandom = new Random(3);
+        int size = 64 * 64;
+        float[] values = new float[size];
+        for (int i = 0; i < size; i++)
+            values[i] = mRandom.nextFloat();
+        float[] sorted = values.clone();
+        float[] binned = values.clone();
+        HistogramEqualizer mEqualizer = new HistogramEqualizer();
+        mEqualizer.equalizeSorted(sorted, size);
+        mEqualizer.equalizeHistogram(binned, size);
+
+        // Documented tolerance: (values in the same bin + values in the minimum bin) / (N - min_cdf)
+        int[] histogram = mEqualizer.getHistogram();
+        int minCdf = 0;
+        for (int bin = 0; minCdf == 0; bin++)
+            minCdf = histogram[bin];
+        for (int i = 0; i < size; i++) {
+            int binCount = histogram[HistogramEqualizer.toBin(values[i])];
+            assertEquals(sorted[i], binned[i], (float) (binCount + minCdf) / (size - minCdf) + TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the fused preprocessing stage against the full-resolution HSV
+ * round-trip followed by a bilinear scaling.
+ */
+public class ImagePreprocessorTest {
+
+    private static final int EDGE = 32;
+
+    /**
+     * Creates a synthetic image: a noisy background with a bright square in the middle.
+     */
+    private static int[] createImage(int width, int height, long seed) {
+        Random mRandom = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                boolean inside = x > width / 3 && x < 2 * width / 3 && y > height / 3 && y < 2 * height / 3;
+                int base = inside ? 150 : 30;
+                int r = base + mRandom.nextInt(100);
+                int g = base / 2 + mRandom.nextInt(60);
+                int b = mRandom.nextInt(inside ? 255 : 40);
+                pixels[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        return pixels;
+    }
+
+    /**
+     * Samples an equalized ARGB image with the bilinear sampling used by the fused stage.
+     */
+    private static float[] bilinear(int[] pixels, int width, int height) {
+        float[] result = new float[EDGE * EDGE * 3];
+        for (int y = 0; y < EDGE; y++)
+            for (int x = 0; x < EDGE; x++) {
+                float fx = Math.max(0.0f, Math.min(width - 1, (x + 0.5f) * width / EDGE - 0.5f));
+                float fy = Math.max(0.0f, Math.min(height - 1, (y + 0.5f) * height / EDGE - 0.5f));
+                int x0 = (int) fx, y0 = (int) fy;
+                int x1 = Math.min(x0 + 1, width - 1), y1 = Math.min(y0 + 1, height - 1);
+                float wx = fx - x0, wy = fy - y0;
+                for (int c = 0; c < 3; c++) {
+                    int shift = 16 - 8 * c;
+                    float top = (1 - wx) * ((pixels[y0 * width + x0] >> shift) & 0xff)
+                            + wx * ((pixels[y0 * width + x1] >> shift) & 0xff);
+                    float bottom = (1 - wx) * ((pixels[y1 * width + x0] >> shift) & 0xff)
+                            + wx * ((pixels[y1 * width + x1] >> shift) & 0xff);
+                    result[(y * EDGE + x) * 3 + c] = ((1 - wy) * top + wy * bottom) / 255.0f;
+                }
+            }
+        return result;
+    }
+
+    private static ByteBuffer newInput(ImagePreprocessor mPreprocessor) {
+        return ByteBuffer.allocateDirect(mPreprocessor.getInputBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    @Test
+    public void fusedStage_matchesHsvRoundTrip() {
+        int stride = 300, left = 37, top = 21, edge = 211;
+        int[] image = createImage(stride, 260, 11);
+
+        // Reference: full-resolution HSV round-trip on the crop, then scaling
+        ImagePreprocessor mReference = new ImagePreprocessor(EDGE, EDGE);
+        int[] crop = mReference.getPixels(edge * edge);
+        for (int y = 0; y < edge; y++)
+            System.arraycopy(image, (top + y) * stride + left, crop, y * edge, edge);
+        mReference.equalize(edge * edge);
+        float[] expected = bilinear(crop, edge, edge);
+
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        ByteBuffer mInput = newInput(mPreprocessor);
+        mPreprocessor.preprocess(image, top * stride + left, stride, edge, edge, mInput);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], mInput.getFloat(i * 4), 1.0f / 255);
+    }
+
+    @Test
+    public void equalizeAfterScaling_isNormalized() {
+        int edge = 512;
+        int[] image = createImage(edge, edge, 5);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        mPreprocessor.setEqualizeAfterScaling(true);
+        ByteBuffer mInput = newInput(mPreprocessor);
+        mPreprocessor.preprocess(image, 0, edge, edge, edge, mInput);
+
+        float maxValue = 0.0f;
+        for (int i = 0; i < EDGE * EDGE * 3; i++) {
+            float value = mInput.getFloat(i * 4);
+            assertTrue(value >= 0.0f && value <= 1.0f + 1e-6f);
+            maxValue = Math.max(maxValue, value);
+        }
+        // The brightest scaled pixel is equalized to V = 1
+        assertEquals(1.0f, maxValue, 1e-5f);
+    }
+
+    @Test
+    public void preprocess_writesFromBufferPosition() {
+        int edge = 64;
+        int[] image = createImage(edge, edge, 9);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        ByteBuffer first = newInput(mPreprocessor);
+        mPreprocessor.preprocess(image, 0, edge, edge, edge, first);
+
+        ByteBuffer batch = ByteBuffer.allocateDirect(2 * mPreprocessor.getInputBytes())
+                .order(ByteOrder.nativeOrder());
+        batch.position(mPreprocessor.getInputBytes());
+        mPreprocessor.preprocess(image, 0, edge, edge, edge, batch);
+        assertEquals(mPreprocessor.getInputBytes(), batch.position());
+        for (int i = 0; i < EDGE * EDGE * 3; i++) {
+            assertEquals(0.0f, batch.getFloat(i * 4), 0.0f);
+            assertEquals(first.getFloat(i * 4), batch.getFloat(mPreprocessor.getInputBytes() + i * 4), 0.0f);
+        }
+    }
+
+    @Test
+    public void quantizedInput_matchesFloatInput() {
+        int edge = 64;
+        int[] image = createImage(edge, edge, 13);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        ByteBuffer floats = newInput(mPreprocessor);
+        mPreprocessor.preprocess(image, 0, edge, edge, edge, floats);
+
+        // uint8 with the scale of the training data, int8 with a shifted zero point
+        float scale = 1.0f / 255;
+        mPreprocessor.setQuantizedInput(scale, 0, false);
+        assertEquals(EDGE * EDGE * 3, mPreprocessor.getInputBytes());
+        ByteBuffer unsigned = newInput(mPreprocessor);
+        mPreprocessor.preprocess(image, 0, edge, edge, edge, unsigned);
+        mPreprocessor.setQuantizedInput(scale, -128, true);
+        ByteBuffer signed = newInput(mPreprocessor);
+        mPreprocessor.preprocess(image, 0, edge, edge, edge, signed);
+
+        for (int i = 0; i < EDGE * EDGE * 3; i++) {
+            float value = floats.getFloat(i * 4);
+            assertEquals(value, (unsigned.get(i) & 0xff) * scale, scale / 2 + 1e-6f);
+            assertEquals(value, (signed.get(i) + 128) * scale, scale / 2 + 1e-6f);
+        }
+    }
+
+    @Test
+    public void quantizedInput_isClamped() {
+        int edge = 16;
+        int[] image = new int[edge * edge];
+        Arrays.fill(image, 0xffffffff);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        // A scale too small for the range [0; 1] saturates at the largest value of the type
+        mPreprocessor.setQuantizedInput(1.0f / 1000, 0, true);
+        ByteBuffer input = newInput(mPreprocessor);
+        mPreprocessor.preprocess(image, 0, edge, edge, edge, input);
+        assertEquals(Byte.MAX_VALUE, input.get(0));
+    }
+
+    @Test
+    public void dHash_isStableForSimilarImages() {
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        ByteBuffer input = newInput(mPreprocessor);
+        int width = 96;
+        int[] pixels = createImage(width, width, 7);
+        mPreprocessor.preprocess(pixels, 0, width, width, width, input);
+        long hash = mPreprocessor.dHash();
+
+        // A darker copy is equalized back to (nearly) the same image
+        int[] darker = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            darker[i] = 0xff000000 | ((((pixel >> 16) & 0xff) * 3 / 4) << 16)
+                    | ((((pixel >> 8) & 0xff) * 3 / 4) << 8) | ((pixel & 0xff) * 3 / 4);
+        }
+        mPreprocessor.preprocess(darker, 0, width, width, width, input);
+        assertTrue(Long.bitCount(hash ^ mPreprocessor.dHash()) <= 4);
+
+        // A mirrored copy is a different image
+        int[] mirrored = new int[pixels.length];
+        for (int y = 0; y < width; y++)
+            for (int x = 0; x < width; x++)
+                mirrored[y * width + x] = pixels[y * width + width - 1 - x];
+        mPreprocessor.preprocess(mirrored, 0, width, width, width, input);
+        assertTrue(Long.bitCount(hash ^ mPreprocessor.dHash()) > 8);
+    }
+}
@@ -0,0 +1,93 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the fixed-size latency histograms and of the stages' registry.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_areContiguous() {
+        long previous = -1L;
+        for (int i = 0; i < LatencyHistogram.NUM_BUCKETS; i++) {
+            long upper = LatencyHistogram.upperBound(i);
+            assertTrue(upper > previous);
+            assertEquals(i, LatencyHistogram.index(previous + 1));
+            assertEquals(i, LatencyHistogram.index(upper));
+            previous = upper;
+        }
+        assertEquals(LatencyHistogram.MAX_MICROS, previous);
+        assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void percentiles_areWithinBucketError() {
+        Random mRandom = new Random(0);
+        long[] values = new long[10000];
+        LatencyHistogram mHistogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.exp(mRandom.nextGaussian()) * 5000);
+            mHistogram.record(values[i] * 1000);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{50, 95, 99, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = mHistogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + estimate + " < " + exact, estimate >= exact);
+            assertTrue(percentile + ": " + estimate + " > " + exact, estimate <= exact * 1.125 + 1);
+        }
+        assertEquals(values[values.length - 1], mHistogram.getMax());
+        assertEquals(values.length, mHistogram.getCount());
+    }
+
+    @Test
+    public void reset_emptiesTheHistogram() {
+        LatencyHistogram mHistogram = new LatencyHistogram();
+        mHistogram.record(3_000_000L);
+        mHistogram.reset();
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getPercentile(50));
+        assertEquals(0.0, mHistogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void registry_reportsMeasuredStages() {
+        PipelineStats mStats = new PipelineStats();
+        for (int i = 1; i <= 100; i++)
+            mStats.record(PipelineStats.Stage.INFERENCE, i * 1_000_000L);
+        mStats.recordAllocations(PipelineStats.Stage.PREPROCESS, 4);
+        mStats.recordAllocations(PipelineStats.Stage.PREPROCESS, 0);
+        mStats.record(PipelineStats.Stage.PREPROCESS, 10_000L);
+
+        assertEquals(100_000L, mStats.getPercentile(PipelineStats.Stage.INFERENCE, 100));
+        long p50 = mStats.getPercentile(PipelineStats.Stage.INFERENCE, 50);
+        assertTrue(p50 >= 50_000L && p50 <= 50_000L * 1.125);
+        assertEquals(2.0, mStats.getMeanAllocations(PipelineStats.Stage.PREPROCESS), 0.0);
+        assertEquals(-1.0, mStats.getMeanAllocations(PipelineStats.Stage.INFERENCE), 0.0);
+
+        String[] lines = mStats.report().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("PREPROCESS"));
+        assertTrue(lines[0].contains("allocs=2.0"));
+        assertTrue(lines[1].startsWith("INFERENCE"));
+        assertEquals("GungeonRecognizer.TOTAL", PipelineStats.Stage.TOTAL.getSectionName());
+    }
+
+    @Test
+    public void registry_keepsFirstLatency() {
+        PipelineStats mStats = new PipelineStats();
+        assertEquals(-1L, mStats.getFirst(PipelineStats.Stage.TOTAL));
+        mStats.record(PipelineStats.Stage.TOTAL, 900_000_000L);
+        mStats.record(PipelineStats.Stage.TOTAL, 40_000_000L);
+        assertEquals(900_000L, mStats.getFirst(PipelineStats.Stage.TOTAL));
+        assertTrue(mStats.report().contains("first=900000us"));
+        mStats.reset();
+        assertEquals(-1L, mStats.getFirst(PipelineStats.Stage.TOTAL));
+    }
+}
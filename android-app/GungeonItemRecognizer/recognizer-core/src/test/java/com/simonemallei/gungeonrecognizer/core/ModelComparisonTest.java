@@ -0,0 +1,46 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the agreement, overlap and latencies of two models compared side by side.
+ */
+public class ModelComparisonTest {
+
+    @Test
+    public void record_measuresAgreementAndOverlap() {
+        ModelComparison mComparison = new ModelComparison();
+        assertEquals(0.0, mComparison.getAgreement(), 0.0);
+
+        // Same best item, 2 of 3 best items shared
+        mComparison.record(new int[]{4, 7, 9}, new int[]{4, 9, 1}, 3, 2_000_000L, 1_000_000L);
+        // Different best item, every best item shared
+        mComparison.record(new int[]{7, 4, 9}, new int[]{4, 9, 7}, 3, 2_000_000L, 1_000_000L);
+
+        assertEquals(2, mComparison.getCompared());
+        assertEquals(0.5, mComparison.getAgreement(), 1e-9);
+        assertEquals((2.0 / 3.0 + 1.0) / 2.0, mComparison.getOverlap(), 1e-9);
+        assertEquals(2000L, mComparison.getPrimaryLatency().getMax());
+        assertEquals(1000L, mComparison.getCandidateLatency().getMax());
+        assertTrue(mComparison.report().startsWith("n=2 agreement=0.500"));
+
+        mComparison.reset();
+        assertEquals(0, mComparison.getCompared());
+        assertEquals(0, mComparison.getPrimaryLatency().getCount());
+    }
+
+    @Test
+    public void record_comparesOnlyFirstItems() {
+        ModelComparison mComparison = new ModelComparison();
+        mComparison.record(new int[]{1, 2, 3}, new int[]{1, 3, 2}, 1, 1L, 1L);
+        assertEquals(1.0, mComparison.getAgreement(), 0.0);
+        assertEquals(1.0, mComparison.getOverlap(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void record_rejectsTooManyItems() {
+        new ModelComparison().record(new int[]{1}, new int[]{1, 2}, 2, 1L, 1L);
+    }
+}
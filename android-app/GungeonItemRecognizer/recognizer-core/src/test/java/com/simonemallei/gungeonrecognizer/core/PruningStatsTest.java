@@ -0,0 +1,45 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the recall@K and of the time saved by a candidate pruning.
+ */
+public class PruningStatsTest {
+
+    @Test
+    public void contains_searchesTheCandidatesKept() {
+        int[] candidates = {4, 9, 2, 7};
+        assertTrue(PruningStats.contains(candidates, 3, 2));
+        // Only the first candidates are kept
+        assertFalse(PruningStats.contains(candidates, 3, 7));
+        assertFalse(PruningStats.contains(candidates, 0, 4));
+    }
+
+    @Test
+    public void record_measuresRecallAndSaving() {
+        PruningStats mStats = new PruningStats(50);
+        assertEquals(0.0, mStats.getRecall(), 0.0);
+
+        mStats.record(true, 1_000_000L, 3_000_000L);
+        mStats.record(true, 1_000_000L, 3_000_000L);
+        mStats.record(true, 1_000_000L, 3_000_000L);
+        mStats.record(false, 1_000_000L, 3_000_000L);
+
+        assertEquals(4, mStats.getRequests());
+        assertEquals(0.75, mStats.getRecall(), 1e-9);
+        assertEquals(2000.0, mStats.getMeanSaving(), 1e-9);
+        assertTrue(mStats.report().startsWith("n=4 recall@50=0.750 pruned mean=1000us full mean=3000us"));
+
+        mStats.reset();
+        assertEquals(0, mStats.getRequests());
+        assertEquals(0.0, mStats.getMeanSaving(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNoCandidates() {
+        new PruningStats(0);
+    }
+}
@@ -0,0 +1,83 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the Hamming-distance lookup and of the LRU eviction of the recognition cache.
+ */
+public class RecognitionCacheTest {
+
+    private static final String MODEL = "2-1.1";
+
+    private static float[] scores(float value) {
+        return new float[]{value, 1.0f - value, 0.0f};
+    }
+
+    @Test
+    public void nearHash_isHit() {
+        RecognitionCache mCache = new RecognitionCache(4, 3, 2);
+        assertEquals(-1, mCache.lookup(0xF0L, 1, MODEL, false));
+        mCache.put(0xF0L, 1, MODEL, false, scores(0.25f), 3);
+
+        int entry = mCache.lookup(0xF3L, 1, MODEL, false);
+        assertTrue(entry >= 0);
+        assertEquals(0.25f, mCache.getScores(entry)[0], 0.0f);
+        assertEquals(3, mCache.getSize(entry));
+        // Too far, or scored with other variants
+        assertEquals(-1, mCache.lookup(0xF7L, 1, MODEL, false));
+        assertEquals(-1, mCache.lookup(0xF0L, 3, MODEL, false));
+
+        assertEquals(1, mCache.getHits());
+        assertEquals(3, mCache.getMisses());
+        assertEquals(0.25, mCache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void nearestEntry_isReturned() {
+        RecognitionCache mCache = new RecognitionCache(4, 3, 3);
+        mCache.put(0x0L, 1, MODEL, false, scores(0.1f), 3);
+        mCache.put(0x7L, 1, MODEL, false, scores(0.7f), 3);
+        assertEquals(0.7f, mCache.getScores(mCache.lookup(0x6L, 1, MODEL, false))[0], 0.0f);
+        assertEquals(0.1f, mCache.getScores(mCache.lookup(0x1L, 1, MODEL, false))[0], 0.0f);
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvicted() {
+        RecognitionCache mCache = new RecognitionCache(2, 3, 0);
+        mCache.put(1L, 1, MODEL, false, scores(0.1f), 3);
+        mCache.put(2L, 1, MODEL, false, scores(0.2f), 3);
+        // Using the first entry makes the second one the least recently used
+        assertTrue(mCache.lookup(1L, 1, MODEL, false) >= 0);
+        mCache.put(3L, 1, MODEL, false, scores(0.3f), 3);
+
+        assertEquals(2, mCache.size());
+        assertEquals(1, mCache.getEvictions());
+        assertTrue(mCache.lookup(1L, 1, MODEL, false) >= 0);
+        assertEquals(-1, mCache.lookup(2L, 1, MODEL, false));
+        assertTrue(mCache.lookup(3L, 1, MODEL, false) >= 0);
+    }
+
+    @Test
+    public void clear_removesEveryEntry() {
+        RecognitionCache mCache = new RecognitionCache(2, 3, 0);
+        mCache.put(1L, 1, MODEL, false, scores(0.1f), 3);
+        mCache.clear();
+        assertEquals(0, mCache.size());
+        assertEquals(-1, mCache.lookup(1L, 1, MODEL, false));
+    }
+
+    @Test
+    public void otherModelOrCascade_isMiss() {
+        RecognitionCache mCache = new RecognitionCache(4, 3, 2);
+        mCache.put(0xF0L, 1, MODEL, false, scores(0.25f), 3);
+
+        // The same image scored by another model, or by the cascade, has other scores
+        assertEquals(-1, mCache.lookup(0xF0L, 1, "1-1.0", false));
+        assertEquals(-1, mCache.lookup(0xF0L, 1, MODEL, true));
+        mCache.put(0xF0L, 1, MODEL, true, scores(0.75f), 3);
+        assertEquals(0.75f, mCache.getScores(mCache.lookup(0xF1L, 1, MODEL, true))[0], 0.0f);
+        assertEquals(0.25f, mCache.getScores(mCache.lookup(0xF1L, 1, MODEL, false))[0], 0.0f);
+    }
+}
@@ -0,0 +1,171 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the engine selection with deterministic stand-in engines, whose latency
+ * advances a fake clock: the fastest healthy engine must be chosen, and a failing
+ * engine must be replaced until it recovers.
+ */
+public class RecognizerSelectorTest {
+
+    /**
+     * A long containing the time of the fake clock in nanoseconds.
+     */
+    private long mClock = 0L;
+
+    /**
+     * Stand-in engine whose recognition takes a fixed time and returns its own item.
+     */
+    private class StandInEngine implements Recognizer {
+
+        private final String mName;
+        private final int mItem;
+        private long mNanos;
+        private boolean mFailing = false;
+        private int mCalls = 0;
+
+        StandInEngine(String name, int item, long nanos) {
+            this.mName = name;
+            this.mItem = item;
+            this.mNanos = nanos;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public List<Prediction> recognize(int[] pixels, int width, int height, int left, int top, int edge, int k)
+                throws IOException {
+            mCalls++;
+            mClock += mNanos;
+            if (mFailing)
+                throw new IOException(mName + " is failing");
+            return Collections.singletonList(new Prediction(mItem, 1.0f, 0));
+        }
+    }
+
+    private RecognizerSelector selector(Recognizer... engines) {
+        return new RecognizerSelector(engines) {
+            @Override
+            protected long now() {
+                return mClock;
+            }
+        };
+    }
+
+    private static int recognize(RecognizerSelector mSelector) throws IOException {
+        return mSelector.recognize(new int[1], 1, 1, 0, 0, 1, 1).get(0).getIndex();
+    }
+
+    @Test
+    public void fastestEngine_isChosen() throws IOException {
+        StandInEngine mSlow = new StandInEngine("slow", 1, 5_000_000L);
+        StandInEngine mFast = new StandInEngine("fast", 2, 1_000_000L);
+        RecognizerSelector mSelector = selector(mSlow, mFast);
+
+        // Each engine is tried once, in the order given
+        assertEquals(1, recognize(mSelector));
+        assertEquals(2, recognize(mSelector));
+        for (int i = 0; i < 10; i++)
+            assertEquals(2, recognize(mSelector));
+        assertEquals(1, mSlow.mCalls);
+        assertEquals(5000.0, mSelector.getLatency(0), 1e-9);
+        assertEquals(1000.0, mSelector.getLatency(1), 1e-9);
+    }
+
+    @Test
+    public void slowerEngine_isReplacedAfterProbe() throws IOException {
+        StandInEngine mFirst = new StandInEngine("first", 1, 1_000_000L);
+        StandInEngine mSecond = new StandInEngine("second", 2, 2_000_000L);
+        RecognizerSelector mSelector = selector(mFirst, mSecond);
+        recognize(mSelector);
+        recognize(mSelector);
+
+        // The first engine slows down under load, until the probe of the second one
+        mFirst.mNanos = 4_000_000L;
+        for (int i = 0; i < 40; i++)
+            recognize(mSelector);
+        assertTrue(mSelector.getLatency(0) > mSelector.getLatency(1));
+        assertEquals(2, recognize(mSelector));
+    }
+
+    @Test
+    public void failingEngine_fallsBackAndRecovers() throws IOException {
+        StandInEngine mFast = new StandInEngine("fast", 2, 1_000_000L);
+        StandInEngine mBackup = new StandInEngine("backup", 1, 5_000_000L);
+        RecognizerSelector mSelector = selector(mFast, mBackup);
+        recognize(mSelector);
+        recognize(mSelector);
+
+        // The failures are retried by the backup engine within the same request
+        mFast.mFailing = true;
+        for (int i = 0; i < 10; i++)
+            assertEquals(1, recognize(mSelector));
+        assertFalse(mSelector.isHealthy(0));
+        assertTrue(mSelector.isHealthy(1));
+        int calls = mFast.mCalls;
+        recognize(mSelector);
+        assertEquals(calls, mFast.mCalls);
+
+        // The probes let the engine recover
+        mFast.mFailing = false;
+        for (int i = 0; i < 60; i++)
+            recognize(mSelector);
+        assertTrue(mSelector.isHealthy(0));
+        assertEquals(2, recognize(mSelector));
+        assertTrue(mSelector.report().startsWith("fast: n="));
+    }
+
+    @Test
+    public void fallbackEngine_isChosenOnlyWithoutHealthyEngines() throws IOException {
+        StandInEngine mModel = new StandInEngine("model", 2, 5_000_000L);
+        StandInEngine mFallback = new StandInEngine("fallback", 1, 1_000_000L);
+        RecognizerSelector mSelector = new RecognizerSelector(new Recognizer[]{mModel},
+                new Recognizer[]{mFallback}) {
+            @Override
+            protected long now() {
+                return mClock;
+            }
+        };
+        assertTrue(mSelector.isFallback(1));
+
+        // The faster fallback engine is neither chosen nor probed
+        for (int i = 0; i < 50; i++)
+            assertEquals(2, recognize(mSelector));
+        assertEquals(0, mFallback.mCalls);
+
+        mModel.mFailing = true;
+        for (int i = 0; i < 10; i++)
+            assertEquals(1, recognize(mSelector));
+        assertFalse(mSelector.isHealthy(0));
+        int calls = mModel.mCalls;
+        assertEquals(1, recognize(mSelector));
+        assertEquals(calls, mModel.mCalls);
+    }
+
+    @Test
+    public void everyEngineFailing_throws() {
+        StandInEngine mFirst = new StandInEngine("first", 1, 1_000L);
+        StandInEngine mSecond = new StandInEngine("second", 2, 1_000L);
+        mFirst.mFailing = true;
+        mSecond.mFailing = true;
+        RecognizerSelector mSelector = selector(mFirst, mSecond);
+        try {
+            recognize(mSelector);
+            fail("The request must fail");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, mFirst.mCalls);
+        assertEquals(1, mSecond.mCalls);
+    }
+}
@@ -0,0 +1,75 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the search of the most salient object in a square region.
+ */
+public class SaliencyRoiFinderTest {
+
+    private static final int WIDTH = 300;
+    private static final int EDGE = 240;
+    private static final int LEFT = 40, TOP = 30;
+
+    /**
+     * Fills an image with a noisy floor.
+     */
+    private static int[] floor(Random mRandom) {
+        int[] pixels = new int[WIDTH * WIDTH];
+        for (int i = 0; i < pixels.length; i++) {
+            int noise = mRandom.nextInt(9) - 4;
+            pixels[i] = 0xff000000 | (90 + noise) << 16 | (70 + noise) << 8 | (60 + noise);
+        }
+        return pixels;
+    }
+
+    @Test
+    public void find_tightensAroundObject() {
+        int[] pixels = floor(new Random(3));
+        // A 50px item in the region, right of its center
+        int itemLeft = 130, itemTop = 60, itemEdge = 50;
+        for (int y = itemTop; y < itemTop + itemEdge; y++)
+            for (int x = itemLeft; x < itemLeft + itemEdge; x++)
+                pixels[(TOP + y) * WIDTH + LEFT + x] = 0xffe0c020;
+
+        SaliencyRoiFinder mFinder = new SaliencyRoiFinder();
+        assertTrue(mFinder.find(pixels, TOP * WIDTH + LEFT, WIDTH, EDGE));
+        int left = mFinder.getLeft(), top = mFinder.getTop(), edge = mFinder.getEdge();
+        assertTrue(left >= 0 && top >= 0 && left + edge <= EDGE);
+        assertTrue(top + edge <= EDGE);
+        // The item is contained, and the square is much smaller than the region
+        assertTrue(left <= itemLeft && top <= itemTop);
+        assertTrue(left + edge >= itemLeft + itemEdge && top + edge >= itemTop + itemEdge);
+        assertTrue(edge < EDGE / 2);
+    }
+
+    @Test
+    public void find_keepsRegionWhenFlat() {
+        int[] pixels = floor(new Random(4));
+        SaliencyRoiFinder mFinder = new SaliencyRoiFinder();
+        assertFalse(mFinder.find(pixels, TOP * WIDTH + LEFT, WIDTH, EDGE));
+        assertEquals(0, mFinder.getLeft());
+        assertEquals(0, mFinder.getTop());
+        assertEquals(EDGE, mFinder.getEdge());
+    }
+
+    @Test
+    public void find_respectsMinimumEdge() {
+        int[] pixels = floor(new Random(5));
+        // A small item in the corner of the region
+        for (int y = 4; y < 24; y++)
+            for (int x = 4; x < 24; x++)
+                pixels[(TOP + y) * WIDTH + LEFT + x] = 0xff20a0e0;
+
+        SaliencyRoiFinder mFinder = new SaliencyRoiFinder(SaliencyRoiFinder.DEFAULT_SIZE, 0.25f, 0.15f);
+        assertTrue(mFinder.find(pixels, TOP * WIDTH + LEFT, WIDTH, EDGE));
+        // The square is enlarged to the minimum edge and clamped in the region
+        assertEquals(EDGE / 4, mFinder.getEdge());
+        assertEquals(0, mFinder.getLeft());
+        assertEquals(0, mFinder.getTop());
+    }
+}
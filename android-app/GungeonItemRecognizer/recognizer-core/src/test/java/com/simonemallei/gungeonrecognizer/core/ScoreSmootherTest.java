@@ -0,0 +1,70 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the exponential moving average of the scores and of its settling.
+ */
+public class ScoreSmootherTest {
+
+    @Test
+    public void firstFrame_isCopied() {
+        ScoreSmoother mSmoother = new ScoreSmoother(4, 0.5f, 0.1f, 1);
+        float[] scores = {0.1f, 0.6f, 0.2f, 0.1f};
+        assertTrue(mSmoother.update(scores, scores.length));
+        for (int i = 0; i < scores.length; i++)
+            assertEquals(scores[i], mSmoother.getScores()[i], 0.0f);
+        assertEquals(1, mSmoother.getBest());
+        assertEquals(0.4f, mSmoother.getMargin(), 1e-6f);
+    }
+
+    @Test
+    public void update_decaysTowardsNewScores() {
+        ScoreSmoother mSmoother = new ScoreSmoother(2, 0.75f, 0.0f, 1);
+        mSmoother.update(new float[]{1.0f, 0.0f}, 2);
+        mSmoother.update(new float[]{0.0f, 1.0f}, 2);
+        assertEquals(0.75f, mSmoother.getScores()[0], 1e-6f);
+        assertEquals(0.25f, mSmoother.getScores()[1], 1e-6f);
+        assertEquals(0, mSmoother.getBest());
+        assertEquals(2, mSmoother.getFrames());
+    }
+
+    @Test
+    public void settles_afterMinFramesAndMargin() {
+        ScoreSmoother mSmoother = new ScoreSmoother(3, 0.5f, 0.3f, 3);
+        float[] scores = {0.1f, 0.8f, 0.1f};
+        assertFalse(mSmoother.update(scores, 3));
+        assertFalse(mSmoother.update(scores, 3));
+        assertTrue(mSmoother.update(scores, 3));
+
+        // A different item lowers the margin until the average follows it
+        float[] other = {0.8f, 0.1f, 0.1f};
+        assertFalse(mSmoother.update(other, 3));
+        assertEquals(1, mSmoother.getBest());
+        mSmoother.update(other, 3);
+        mSmoother.update(other, 3);
+        assertTrue(mSmoother.update(other, 3));
+        assertEquals(0, mSmoother.getBest());
+    }
+
+    @Test
+    public void reset_restartsTheAverage() {
+        ScoreSmoother mSmoother = new ScoreSmoother(2, 0.9f, 0.0f, 1);
+        mSmoother.update(new float[]{1.0f, 0.0f}, 2);
+        mSmoother.reset();
+        assertFalse(mSmoother.isSettled());
+        assertEquals(-1, mSmoother.getBest());
+        mSmoother.update(new float[]{0.0f, 1.0f}, 2);
+        assertEquals(1.0f, mSmoother.getScores()[1], 0.0f);
+        assertEquals(1, mSmoother.getFrames());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void update_rejectsSizeChange() {
+        ScoreSmoother mSmoother = new ScoreSmoother(4, 0.5f, 0.1f, 1);
+        mSmoother.update(new float[4], 4);
+        mSmoother.update(new float[4], 3);
+    }
+}
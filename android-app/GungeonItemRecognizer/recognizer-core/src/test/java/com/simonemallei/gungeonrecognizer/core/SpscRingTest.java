@@ -0,0 +1,71 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the single-producer/single-consumer ring of preallocated slots.
+ */
+public class SpscRingTest {
+
+    @Test
+    public void ring_reusesSlotsInOrder() {
+        long[][] mSlots = new long[2][1];
+        SpscRing<long[]> mRing = new SpscRing<>(mSlots);
+        assertNull(mRing.peek());
+
+        mRing.claim()[0] = 1L;
+        mRing.publish();
+        mRing.claim()[0] = 2L;
+        mRing.publish();
+        // Both slots are waiting for the consumer
+        assertNull(mRing.claim());
+        assertEquals(2, mRing.size());
+
+        assertEquals(1L, mRing.peek()[0]);
+        mRing.release();
+        assertSame(mSlots[0], mRing.claim());
+        assertEquals(2L, mRing.peek()[0]);
+        mRing.release();
+        assertNull(mRing.peek());
+        assertEquals(0, mRing.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void release_rejectsEmptyRing() {
+        new SpscRing<>(new long[1][1]).release();
+    }
+
+    @Test
+    public void ring_transfersValuesBetweenThreads() throws InterruptedException {
+        final int count = 100000;
+        final SpscRing<long[]> mRing = new SpscRing<>(new long[4][1]);
+        Thread mProducer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long value = 0; value < count; ) {
+                    long[] mSlot = mRing.claim();
+                    if (mSlot == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    mSlot[0] = value++;
+                    mRing.publish();
+                }
+            }
+        });
+        mProducer.start();
+        for (long expected = 0; expected < count; ) {
+            long[] mSlot = mRing.peek();
+            if (mSlot == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected++, mSlot[0]);
+            mRing.release();
+        }
+        mProducer.join();
+        assertNull(mRing.peek());
+    }
+}
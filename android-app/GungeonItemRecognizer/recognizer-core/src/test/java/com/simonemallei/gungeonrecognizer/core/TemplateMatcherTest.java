@@ -0,0 +1,94 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.simonemallei.gungeonrecognizer.core.TestSprites.EDGE;
+import static com.simonemallei.gungeonrecognizer.core.TestSprites.crop;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the template matching: the sprite of a crop must be the best scored one,
+ * whatever the crop's brightness and background, and the parallel scores must be the
+ * serial ones.
+ */
+public class TemplateMatcherTest {
+
+    private static final int ITEMS = 100;
+
+    private static TemplateMatcher matcher(int[][] sprites, ForkJoinPool pool) {
+        TemplateMatcher mMatcher = new TemplateMatcher(ITEMS, pool, EDGE, new float[]{0.8f, 1.0f});
+        for (int i = 0; i < sprites.length; i++)
+            assertTrue(mMatcher.addTemplate(i, sprites[i], EDGE, EDGE));
+        return mMatcher;
+    }
+
+    @Test
+    public void sprite_isTheBestMatch() {
+        Random mRandom = new Random(11);
+        int[][] sprites = new int[ITEMS][];
+        for (int i = 0; i < ITEMS; i++)
+            sprites[i] = TestSprites.random(mRandom);
+        TemplateMatcher mMatcher = matcher(sprites, new ForkJoinPool(2));
+        assertEquals(ITEMS, mMatcher.getCount());
+
+        float[] scores = new float[ITEMS];
+        TopKSelector mSelector = new TopKSelector(3);
+        for (int item : new int[]{0, 42, ITEMS - 1}) {
+            mMatcher.match(crop(sprites[item], 0xff000000, 1.0f), EDGE, EDGE, scores);
+            mSelector.select(scores, ITEMS, 3);
+            assertEquals(item, mSelector.getIndex(0));
+            assertTrue(mSelector.getScore(0) > 0.9f);
+            assertTrue(mSelector.getScore(0) - mSelector.getScore(1) > 0.3f);
+        }
+    }
+
+    @Test
+    public void match_ignoresBrightnessAndBackground() {
+        Random mRandom = new Random(12);
+        int[][] sprites = new int[ITEMS][];
+        for (int i = 0; i < ITEMS; i++)
+            sprites[i] = TestSprites.random(mRandom);
+        TemplateMatcher mMatcher = matcher(sprites, new ForkJoinPool(2));
+
+        float[] scores = new float[ITEMS];
+        TopKSelector mSelector = new TopKSelector(1);
+        int[] backgrounds = {0xff000000, 0xff808080, 0xff2050a0};
+        float[] brightness = {1.0f, 0.5f, 0.8f};
+        for (int i = 0; i < backgrounds.length; i++) {
+            mMatcher.match(crop(sprites[7], backgrounds[i], brightness[i]), EDGE, EDGE, scores);
+            mSelector.select(scores, ITEMS, 1);
+            assertEquals(7, mSelector.getIndex(0));
+        }
+    }
+
+    @Test
+    public void parallelMatching_matchesSerial() {
+        Random mRandom = new Random(13);
+        int[][] sprites = new int[ITEMS / 2][];
+        for (int i = 0; i < sprites.length; i++)
+            sprites[i] = TestSprites.random(mRandom);
+        float[] mCrop = crop(sprites[3], 0xff404040, 1.0f);
+
+        float[] serial = new float[ITEMS];
+        matcher(sprites, null).match(mCrop, EDGE, EDGE, serial);
+        float[] parallel = new float[ITEMS];
+        matcher(sprites, new ForkJoinPool(4)).match(mCrop, EDGE, EDGE, parallel);
+        assertArrayEquals(serial, parallel, 0.0f);
+        // Candidates without templates get the minimum score
+        for (int i = sprites.length; i < ITEMS; i++)
+            assertEquals(TemplateMatcher.NO_MATCH, serial[i], 0.0f);
+    }
+
+    @Test
+    public void graySprite_hasNoTemplate() {
+        TemplateMatcher mMatcher = new TemplateMatcher(2, null);
+        int[] pixels = new int[EDGE * EDGE];
+        Arrays.fill(pixels, 0xff808080);
+        assertFalse(mMatcher.addTemplate(0, pixels, EDGE, EDGE));
+        assertEquals(0, mMatcher.getCount());
+    }
+}
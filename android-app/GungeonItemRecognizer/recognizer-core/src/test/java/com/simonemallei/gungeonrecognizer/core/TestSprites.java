@@ -0,0 +1,64 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Synthetic sprites shared by the tests of the template matching and of the colour
+ * signatures: EDGE x EDGE ARGB images whose border of BORDER pixels is transparent,
+ * and the equalized crops of a sprite drawn on a background.
+ */
+final class TestSprites {
+
+    static final int EDGE = 16;
+    static final int BORDER = 3;
+
+    private TestSprites() {
+    }
+
+    /**
+     * Creates a sprite whose pixels have random colours.
+     */
+    static int[] random(Random mRandom) {
+        int[] pixels = new int[EDGE * EDGE];
+        for (int y = BORDER; y < EDGE - BORDER; y++)
+            for (int x = BORDER; x < EDGE - BORDER; x++)
+                pixels[y * EDGE + x] = 0xff000000 | mRandom.nextInt(0x1000000);
+        return pixels;
+    }
+
+    /**
+     * Creates a sprite whose pixels are shades of two random hues.
+     */
+    static int[] twoHues(Random mRandom) {
+        int[] palette = {ImagePreprocessor.hsvToColor(mRandom.nextFloat() * 360.0f, 0.9f, 1.0f),
+                ImagePreprocessor.hsvToColor(mRandom.nextFloat() * 360.0f, 0.9f, 1.0f)};
+        int[] pixels = new int[EDGE * EDGE];
+        for (int y = BORDER; y < EDGE - BORDER; y++)
+            for (int x = BORDER; x < EDGE - BORDER; x++)
+                pixels[y * EDGE + x] = scale(palette[mRandom.nextInt(palette.length)],
+                        0.6f + 0.4f * mRandom.nextFloat());
+        return pixels;
+    }
+
+    /**
+     * Draws a sprite on a background, scaling its colours, and returns the equalized crop.
+     */
+    static float[] crop(int[] sprite, int background, float brightness) {
+        int[] pixels = new int[EDGE * EDGE];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = scale((sprite[i] >>> 24) == 0 ? background : sprite[i], brightness);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        ByteBuffer mInput = ByteBuffer.allocateDirect(mPreprocessor.getInputBytes()).order(ByteOrder.nativeOrder());
+        mPreprocessor.preprocess(pixels, 0, EDGE, EDGE, EDGE, mInput);
+        return mPreprocessor.getScaled().clone();
+    }
+
+    private static int scale(int pixel, float factor) {
+        int red = Math.min(255, (int) (((pixel >> 16) & 0xFF) * factor));
+        int green = Math.min(255, (int) (((pixel >> 8) & 0xFF) * factor));
+        int blue = Math.min(255, (int) ((pixel & 0xFF) * factor));
+        return 0xff000000 | (red << 16) | (green << 8) | blue;
+    }
+}
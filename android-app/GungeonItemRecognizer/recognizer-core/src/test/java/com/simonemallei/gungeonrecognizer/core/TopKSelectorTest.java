@@ -0,0 +1,99 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the bounded-heap top-K selection against a full sort.
+ */
+public class TopKSelectorTest {
+
+    private static final int ITEMS_NUM = 509;
+
+    private static Integer[] sortedIndices(final float[] scores) {
+        Integer[] indices = new Integer[scores.length];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = i;
+        Arrays.sort(indices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                int result = Float.compare(scores[second], scores[first]);
+                return result != 0 ? result : Integer.compare(first, second);
+            }
+        });
+        return indices;
+    }
+
+    @Test
+    public void select_matchesFullSort() {
+        Random mRandom = new Random(1);
+        TopKSelector mSelector = new TopKSelector(ITEMS_NUM);
+        float[] scores = new float[ITEMS_NUM];
+        for (int k : new int[]{1, 5, 10, 64, ITEMS_NUM}) {
+            for (int i = 0; i < ITEMS_NUM; i++)
+                scores[i] = mRandom.nextFloat();
+            Integer[] expected = sortedIndices(scores);
+            assertEquals(k, mSelector.select(scores, ITEMS_NUM, k));
+            for (int rank = 0; rank < k; rank++) {
+                assertEquals((int) expected[rank], mSelector.getIndex(rank));
+                assertEquals(scores[expected[rank]], mSelector.getScore(rank), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void ties_areRankedByLowerIndex() {
+        float[] scores = {0.1f, 0.5f, 0.5f, 0.9f, 0.5f};
+        TopKSelector mSelector = new TopKSelector(scores.length);
+        mSelector.select(scores, scores.length, 3);
+        assertEquals(3, mSelector.getIndex(0));
+        assertEquals(1, mSelector.getIndex(1));
+        assertEquals(2, mSelector.getIndex(2));
+    }
+
+    @Test
+    public void predictions_haveItemScoreAndRank() {
+        float[] scores = {0.2f, 0.7f, 0.1f};
+        TopKSelector mSelector = new TopKSelector(scores.length);
+        mSelector.select(scores, scores.length, 5);
+        List<Prediction> predictions = mSelector.toPredictions();
+        assertEquals(3, predictions.size());
+        assertEquals(1, predictions.get(0).getIndex());
+        assertEquals(0.7f, predictions.get(0).getScore(), 0.0f);
+        assertEquals(2, predictions.get(2).getRank());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void select_rejectsKOverCapacity() {
+        new TopKSelector(4).select(new float[8], 8, 5);
+    }
+
+    @Test
+    public void quantizedScores_matchFloatSelection() {
+        Random mRandom = new Random(3);
+        byte[] raw = new byte[ITEMS_NUM];
+        float[] scores = new float[ITEMS_NUM];
+        float scale = 1.0f / 256;
+        for (boolean signed : new boolean[]{false, true}) {
+            int zeroPoint = signed ? -128 : 0;
+            mRandom.nextBytes(raw);
+            for (int i = 0; i < ITEMS_NUM; i++)
+                scores[i] = scale * ((signed ? raw[i] : raw[i] & 0xff) - zeroPoint);
+            TopKSelector mExpected = new TopKSelector(ITEMS_NUM);
+            mExpected.select(scores, ITEMS_NUM, 10);
+            TopKSelector mSelector = new TopKSelector(ITEMS_NUM);
+            assertEquals(10, mSelector.select(raw, ITEMS_NUM, 10, signed));
+            mSelector.dequantize(scale, zeroPoint);
+            for (int rank = 0; rank < 10; rank++) {
+                assertEquals(mExpected.getIndex(rank), mSelector.getIndex(rank));
+                assertEquals(mExpected.getScore(rank), mSelector.getScore(rank), 1e-6f);
+            }
+        }
+    }
+}
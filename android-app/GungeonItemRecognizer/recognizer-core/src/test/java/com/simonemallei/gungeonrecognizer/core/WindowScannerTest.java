@@ -0,0 +1,131 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the multi-scale window layout, of the parallel preprocessing of the windows
+ * and of the suppression of overlapping detections.
+ */
+public class WindowScannerTest {
+
+    private static final int EDGE = 32;
+
+    @Test
+    public void layout_coversTheImage() {
+        WindowScanner mScanner = new WindowScanner(new ForkJoinPool(2), new float[]{0.5f, 0.3f}, 0.5f);
+        int width = 200, height = 120;
+        int count = mScanner.layout(width, height);
+        assertEquals(count, mScanner.getCount());
+        boolean[] covered = new boolean[width * height];
+        for (int i = 0; i < count; i++) {
+            int left = mScanner.getLeft(i), top = mScanner.getTop(i), edge = mScanner.getEdge(i);
+            assertTrue(left >= 0 && top >= 0 && left + edge <= width && top + edge <= height);
+            for (int y = top; y < top + edge; y++)
+                for (int x = left; x < left + edge; x++)
+                    covered[y * width + x] = true;
+        }
+        for (boolean pixel : covered)
+            assertTrue(pixel);
+        // 60px windows with 30px stride: 6 columns and 3 rows, then 36px windows
+        // with 18px stride: 11 columns and 6 rows
+        assertEquals(6 * 3 + 11 * 6, count);
+    }
+
+    @Test
+    public void parallelPreprocessing_matchesSerial() {
+        Random mRandom = new Random(5);
+        int width = 160, height = 128;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | mRandom.nextInt(0x1000000);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        WindowScanner mScanner = new WindowScanner(new ForkJoinPool(3));
+        int count = Math.min(10, mScanner.layout(width, height));
+        int bytes = mPreprocessor.getInputBytes();
+
+        ByteBuffer parallel = ByteBuffer.allocateDirect(count * bytes).order(ByteOrder.nativeOrder());
+        mScanner.preprocess(mPreprocessor, pixels, width, 0, count, parallel);
+        assertEquals(0, parallel.position());
+
+        ByteBuffer serial = ByteBuffer.allocateDirect(count * bytes).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < count; i++) {
+            serial.position(i * bytes);
+            mPreprocessor.preprocess(pixels, mScanner.getTop(i) * width + mScanner.getLeft(i), width,
+                    mScanner.getEdge(i), mScanner.getEdge(i), serial);
+        }
+        serial.position(0);
+        assertEquals(serial, parallel);
+    }
+
+    @Test
+    public void changedSettings_areFollowedByTheWorkers() {
+        Random mRandom = new Random(6);
+        int width = 96, height = 64;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xff000000 | mRandom.nextInt(0x1000000);
+        ImagePreprocessor mPreprocessor = new ImagePreprocessor(EDGE, EDGE);
+        WindowScanner mScanner = new WindowScanner(new ForkJoinPool(2));
+        int count = Math.min(4, mScanner.layout(width, height));
+        mScanner.preprocess(mPreprocessor, pixels, width, 0, count,
+                ByteBuffer.allocateDirect(count * mPreprocessor.getInputBytes()).order(ByteOrder.nativeOrder()));
+
+        // The same scanner, after the model's input became quantized
+        mPreprocessor.setQuantizedInput(1.0f / 255.0f, 0, false);
+        int bytes = mPreprocessor.getInputBytes();
+        ByteBuffer parallel = ByteBuffer.allocateDirect(count * bytes).order(ByteOrder.nativeOrder());
+        mScanner.preprocess(mPreprocessor, pixels, width, 0, count, parallel);
+        ByteBuffer serial = ByteBuffer.allocateDirect(count * bytes).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < count; i++) {
+            serial.position(i * bytes);
+            mPreprocessor.preprocess(pixels, mScanner.getTop(i) * width + mScanner.getLeft(i), width,
+                    mScanner.getEdge(i), mScanner.getEdge(i), serial);
+        }
+        serial.position(0);
+        assertEquals(serial, parallel);
+    }
+
+    @Test
+    public void detect_keepsBestItemAboveThreshold() {
+        WindowScanner mScanner = new WindowScanner(new ForkJoinPool(1), new float[]{1.0f}, 1.0f);
+        assertEquals(2, mScanner.layout(20, 10));
+        float[][] scores = {{0.1f, 0.7f, 0.2f}, {0.4f, 0.3f, 0.3f}};
+        List<Detection> mFound = new ArrayList<>();
+        mScanner.detect(scores, 3, 0, 2, 0.5f, mFound);
+        assertEquals(1, mFound.size());
+        assertEquals(1, mFound.get(0).getIndex());
+        assertEquals(0.7f, mFound.get(0).getScore(), 0.0f);
+        assertEquals(0, mFound.get(0).getLeft());
+        assertEquals(10, mFound.get(0).getEdge());
+    }
+
+    @Test
+    public void overlap_isIntersectionOverUnion() {
+        Detection first = new Detection(0, 1.0f, 0, 0, 10);
+        assertEquals(1.0f, first.overlap(new Detection(1, 1.0f, 0, 0, 10)), 1e-6f);
+        assertEquals(50.0f / 150.0f, first.overlap(new Detection(1, 1.0f, 5, 0, 10)), 1e-6f);
+        assertEquals(0.0f, first.overlap(new Detection(1, 1.0f, 10, 0, 10)), 0.0f);
+    }
+
+    @Test
+    public void suppress_keepsBestOfOverlapping() {
+        List<Detection> mFound = new ArrayList<>();
+        mFound.add(new Detection(3, 0.6f, 2, 0, 10));
+        mFound.add(new Detection(3, 0.9f, 0, 0, 10));
+        mFound.add(new Detection(7, 0.7f, 40, 40, 10));
+        mFound.add(new Detection(5, 0.8f, 1, 1, 10));
+        List<Detection> mKept = WindowScanner.suppress(mFound, 0.3f);
+        assertEquals(2, mKept.size());
+        assertEquals(0.9f, mKept.get(0).getScore(), 0.0f);
+        assertEquals(7, mKept.get(1).getIndex());
+    }
+}
@@ -0,0 +1,125 @@
+package com.simonemallei.gungeonrecognizer.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the region of interest conversion of YUV_420_888 frames.
+ */
+public class YuvConverterTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    /**
+     * Creates a Y plane where each luma value encodes the position of its pixel.
+     */
+    private static ByteBuffer createLuma(int rowStride) {
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++)
+            for (int col = 0; col < WIDTH; col++)
+                y.put(row * rowStride + col, (byte) (row * WIDTH + col));
+        return y;
+    }
+
+    /**
+     * Creates a neutral (gray) interleaved chroma plane.
+     */
+    private static ByteBuffer createChroma(int rowStride) {
+        ByteBuffer uv = ByteBuffer.allocateDirect(rowStride * HEIGHT / 2);
+        for (int i = 0; i < uv.capacity(); i++)
+            uv.put(i, (byte) 128);
+        return uv;
+    }
+
+    private static int lumaOf(int color) {
+        return color & 0xff;
+    }
+
+    @Test
+    public void neutralChroma_givesGray() {
+        for (int lum : new int[]{0, 1, 77, 128, 254, 255}) {
+            int color = YuvConverter.toArgb(lum, 0, 0);
+            assertEquals(0xff000000 | (lum << 16) | (lum << 8) | lum, color);
+        }
+    }
+
+    @Test
+    public void primaries_areClamped() {
+        // Pure red in full-range BT.601: Y = 76, U = 85 - 128, V = 255 - 128
+        int red = YuvConverter.toArgb(76, 85 - 128, 255 - 128);
+        assertTrue(((red >> 16) & 0xff) >= 253);
+        assertTrue(((red >> 8) & 0xff) <= 2);
+        assertTrue((red & 0xff) <= 2);
+        // Out of gamut values are clamped to [0; 255]
+        assertEquals(0x00ff00ff, YuvConverter.toArgb(255, 127, 127) & 0x00ff00ff);
+        assertEquals(0x00000000, YuvConverter.toArgb(0, -128, -128) & 0x00ff00ff);
+    }
+
+    @Test
+    public void region_isReadThroughStrides() {
+        int rowStride = WIDTH + 4;
+        YuvConverter mConverter = new YuvConverter();
+        ByteBuffer uv = createChroma(rowStride);
+        mConverter.setFrame(createLuma(rowStride), rowStride, 1, uv, uv, rowStride, 2, WIDTH, HEIGHT, 0);
+        int[] pixels = new int[9];
+        mConverter.convert(2, 1, 3, pixels);
+        for (int y = 0; y < 3; y++)
+            for (int x = 0; x < 3; x++)
+                assertEquals((1 + y) * WIDTH + 2 + x, lumaOf(pixels[y * 3 + x]));
+    }
+
+    @Test
+    public void rotations_areUpright() {
+        YuvConverter mConverter = new YuvConverter();
+        ByteBuffer uv = createChroma(WIDTH);
+        ByteBuffer y = createLuma(WIDTH);
+        int edge = Math.min(WIDTH, HEIGHT);
+        int[] pixels = new int[edge * edge];
+
+        // 90 degrees: the first sensor column becomes the first upright row, reversed
+        mConverter.setFrame(y, WIDTH, 1, uv, uv, WIDTH, 2, WIDTH, HEIGHT, 90);
+        assertEquals(HEIGHT, mConverter.getUprightWidth());
+        assertEquals(WIDTH, mConverter.getUprightHeight());
+        mConverter.convert(0, 0, edge, pixels);
+        for (int x = 0; x < edge; x++)
+            assertEquals((HEIGHT - 1 - x) * WIDTH, lumaOf(pixels[x]));
+
+        // 180 degrees: the last sensor pixel becomes the first upright one
+        mConverter.setFrame(y, WIDTH, 1, uv, uv, WIDTH, 2, WIDTH, HEIGHT, 180);
+        mConverter.convert(0, 0, edge, pixels);
+        assertEquals(HEIGHT * WIDTH - 1, lumaOf(pixels[0]));
+
+        // 270 degrees: the last sensor column becomes the first upright row
+        mConverter.setFrame(y, WIDTH, 1, uv, uv, WIDTH, 2, WIDTH, HEIGHT, 270);
+        mConverter.convert(0, 0, edge, pixels);
+        for (int x = 0; x < edge; x++)
+            assertEquals(x * WIDTH + WIDTH - 1, lumaOf(pixels[x]));
+    }
+
+    @Test
+    public void sampledLuma_matchesConvertedRegion() {
+        YuvConverter mConverter = new YuvConverter();
+        ByteBuffer uv = createChroma(WIDTH);
+        mConverter.setFrame(createLuma(WIDTH), WIDTH, 1, uv, uv, WIDTH, 2, WIDTH, HEIGHT, 90);
+        int[] pixels = new int[16];
+        int[] luma = new int[4];
+        mConverter.convert(1, 2, 4, pixels);
+        // A 2x2 grid picks the center of each 2x2 cell
+        mConverter.sampleLuma(1, 2, 4, 2, luma);
+        for (int y = 0; y < 2; y++)
+            for (int x = 0; x < 2; x++)
+                assertEquals(lumaOf(pixels[(2 * y + 1) * 4 + 2 * x + 1]), luma[y * 2 + x]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void regionOutOfFrame_isRejected() {
+        YuvConverter mConverter = new YuvConverter();
+        ByteBuffer uv = createChroma(WIDTH);
+        mConverter.setFrame(createLuma(WIDTH), WIDTH, 1, uv, uv, WIDTH, 2, WIDTH, HEIGHT, 90);
+        mConverter.convert(0, 0, WIDTH, new int[WIDTH * WIDTH]);
+    }
+}
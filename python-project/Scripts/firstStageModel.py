@@ -0,0 +1,153 @@
+import time
+import numpy as np
+import tensorflow as tf
+from tensorflow import keras
+from sklearn.metrics import top_k_accuracy_score
+from modelFitting import createDataset, loadImages
+
+
+def createSmallModel(n_classes = 10):
+    ''' Creation and compilation of the cascade's first-stage model
+        with {n_classes} classes: a much smaller version of the
+        classification model, reading the same 32x32 RGB input.
+
+    Parameters
+    ----------
+    n_classes : int, default = 10
+        Number of model's original classes.
+
+    Returns
+    -------
+    model : object
+        Compiled first-stage model.
+
+    '''
+    model = keras.models.Sequential([
+        keras.layers.Conv2D(16, 5, activation="relu", padding="same", input_shape=[32, 32, 3]),
+        keras.layers.MaxPooling2D(2),
+        keras.layers.BatchNormalization(),
+        keras.layers.Conv2D(32, 3, activation="relu", padding="same"),
+        keras.layers.MaxPooling2D(2),
+        keras.layers.BatchNormalization(),
+        keras.layers.Conv2D(64, 3, activation="relu", padding="same"),
+        keras.layers.MaxPooling2D(2),
+        keras.layers.BatchNormalization(),
+        keras.layers.Flatten(),
+        keras.layers.Dropout(0.3),
+        keras.layers.Dense(n_classes, activation="softmax")
+        ])
+
+    curr_optimizer = keras.optimizers.Adam(learning_rate=0.001, beta_1=0.9, beta_2=0.999)
+    model.compile(loss="categorical_crossentropy", optimizer=curr_optimizer, metrics=["accuracy"])
+
+    return model
+
+
+def score(tflite_model, X):
+    ''' Returns the scores of a float TFLite model on the samples given
+        and its mean latency per sample.
+
+    Parameters
+    ----------
+    tflite_model : bytes
+        The TFLite model.
+    X : array-like with shape (size, width_im, height_im, num_channels)
+        Array containing the samples' RGB values in the range [0, 1].
+
+    Returns
+    -------
+    y_pred : array-like with shape (size, n_classes)
+        The scores of each sample.
+    latency : float
+        The mean latency per sample, in milliseconds.
+
+    '''
+    interpreter = tf.lite.Interpreter(model_content=tflite_model)
+    interpreter.allocate_tensors()
+    input_det = interpreter.get_input_details()[0]
+    output_det = interpreter.get_output_details()[0]
+    y_pred = []
+    start = time.perf_counter()
+    for i in range(X.shape[0]):
+        interpreter.set_tensor(input_det['index'], X[i:i + 1])
+        interpreter.invoke()
+        y_pred.append(interpreter.get_tensor(output_det['index'])[0].copy())
+    latency = (time.perf_counter() - start) * 1000 / X.shape[0]
+    return np.array(y_pred), latency
+
+
+def margins(y_pred):
+    ''' Returns the top-1 margin of each sample's scores: the difference
+        between the best and the second best score, as the application's
+        cascade computes it.
+
+    '''
+    best_two = np.sort(y_pred, axis=1)[:, -2:]
+    return best_two[:, 1] - best_two[:, 0]
+
+
+def main():
+    ''' Trains the cascade's first-stage model, converts it into a float
+        TFLite model (GungeonModel_small.tflite) and reports, on generated
+        samples, the escalation rate of the cascade, its accuracy and its
+        mean latency against the full model's ones.
+
+    '''
+
+    model_info = {'len_result' : 10,
+                  'num_epochs' : 3,
+                  'num_fit' : 3,
+                  'path' : '../AppModel/',
+                  'train_size' : 70000,
+                  'test_size': 5000,
+                  'valid_size': 5000,
+                  'margin': 0.3
+                  }
+
+    items, item_imgs, floor_imgs, type_floor = loadImages()
+    model = createSmallModel(n_classes = len(items))
+    X_valid, y_valid = createDataset(model_info['valid_size'],
+                                     item_imgs,
+                                     floor_imgs,
+                                     type_floor)
+    for curr_fit in range(model_info['num_fit']):
+        print(f'First stage - Creating training set #{curr_fit + 1}')
+        X_train, y_train = createDataset(model_info['train_size'],
+                                         item_imgs,
+                                         floor_imgs,
+                                         type_floor)
+        model.fit(X_train, y_train, epochs=model_info['num_epochs'],
+                  validation_data=(X_valid, y_valid), verbose=2)
+
+    model.save(f'{model_info["path"]}GungeonModel_small.h5')
+    small_model = tf.lite.TFLiteConverter.from_keras_model(model).convert()
+    with open(f"{model_info['path']}GungeonModel_small.tflite", "wb") as out_tflite:
+        out_tflite.write(small_model)
+
+    # scoring the same samples with both models, then keeping the first stage's
+    # scores whose top-1 margin reaches the cascade's minimum one
+    full_model = tf.lite.TFLiteConverter.from_keras_model(
+        keras.models.load_model(f'{model_info["path"]}GungeonModel.h5')).convert()
+    X_test, y_test = createDataset(model_info['test_size'],
+                                   item_imgs,
+                                   floor_imgs,
+                                   type_floor)
+    y_small, small_latency = score(small_model, X_test)
+    y_full, full_latency = score(full_model, X_test)
+    escalated = margins(y_small) < model_info['margin']
+    y_cascade = np.where(escalated[:, None], y_full, y_small)
+    cascade_latency = small_latency + escalated.mean() * full_latency
+
+    labels = np.arange(y_test.shape[1])
+    y_class = np.argmax(y_test, axis=1)
+    for name, y_pred in [('Full', y_full), ('First stage', y_small), ('Cascade', y_cascade)]:
+        acc = top_k_accuracy_score(y_class, y_pred, k=model_info['len_result'], labels=labels)
+        print(f"{name} model - Accuracy (top {model_info['len_result']}): {np.round(acc, 5)}")
+    print(f"Escalated samples (margin < {model_info['margin']}): {np.round(escalated.mean() * 100, 2)}%")
+    print(f"Mean latency - Full: {np.round(full_latency, 3)} ms, "
+          f"First stage: {np.round(small_latency, 3)} ms, "
+          f"Cascade: {np.round(cascade_latency, 3)} ms")
+
+
+if __name__ == '__main__':
+    main()
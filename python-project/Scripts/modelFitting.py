@@ -116,24 +116,21 @@ def createModel(n_classes = 10):
     return model
 
 
-def fit_recognizer(model_info):
-    ''' Implementation of a trained item's classification model in order
-        to use it for a "Enter The Gungeon".
-
-    Parameters
-    ----------
-    model_info : dict
-        Dictionary containing all the infos needed by the script.
+def loadImages():
+    ''' Loads the items' images and the rooms' images used to create the samples.
 
     Returns
     -------
-    model : object
-        Trained classification model based on {model_info}.
+    items : list of dict
+        The items' data read from Items.json.
+    item_imgs : list of object (PIL.Image)
+        The items' images.
+    floor_imgs : list of list of object (PIL.Image)
+        The floors' images (for each floor there's a list of rooms' images).
+    type_floor:  list of int
+        type_floor[i] contains type of images in floor_imgs[i]
 
     '''
-    print(f'Creating Gungeon model...')
-
-
     # loading items' images
     item_f = open(f'../Data/Items.json', 'r')
     items = json.loads(item_f.read())
@@ -152,6 +149,30 @@ def fit_recognizer(model_info):
             curr_floor.append(Image.open(curr_room_f))
         floor_imgs.append(curr_floor)
 
+    return items, item_imgs, floor_imgs, type_floor
+
+
+def fit_recognizer(model_info):
+    ''' Implementation of a trained item's classification model in order
+        to use it for a "Enter The Gungeon".
+
+    Parameters
+    ----------
+    model_info : dict
+        Dictionary containing all the infos needed by the script.
+
+    Returns
+    -------
+    model : object
+        Trained classification model based on {model_info}.
+
+    '''
+    print(f'Creating Gungeon model...')
+
+
+    # loading items' and rooms' images
+    items, item_imgs, floor_imgs, type_floor = loadImages()
+
     # loading / creating item's classification model
     if model_info['create_model'] == True:
         model = createModel(n_classes = len(items))
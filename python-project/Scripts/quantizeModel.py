@@ -0,0 +1,104 @@
+import numpy as np
+import tensorflow as tf
+from tensorflow import keras
+from sklearn.metrics import top_k_accuracy_score
+from modelFitting import createDataset, loadImages
+
+def representative_dataset(X):
+    ''' Yields the samples used by the converter to calibrate
+        the quantization ranges of the activations.
+
+    Parameters
+    ----------
+    X : array-like with shape (size, width_im, height_im, num_channels)
+        Array containing the samples' RGB values in the range [0, 1].
+
+    '''
+    for i in range(X.shape[0]):
+        yield [X[i:i + 1]]
+
+
+def evaluate(tflite_model, X, y, k):
+    ''' Returns the top-{k} accuracy of a TFLite model (float or quantized)
+        on the samples given.
+
+    Parameters
+    ----------
+    tflite_model : bytes
+        The TFLite model.
+    X : array-like with shape (size, width_im, height_im, num_channels)
+        Array containing the samples' RGB values in the range [0, 1].
+    y : array-like with shape (size, n_classes)
+        Ground-truth for each sample as hot-one vector.
+    k : int
+        The number of results considered.
+
+    Returns
+    -------
+    acc : float
+        The top-{k} accuracy of the model.
+
+    '''
+    interpreter = tf.lite.Interpreter(model_content=tflite_model)
+    interpreter.allocate_tensors()
+    input_det = interpreter.get_input_details()[0]
+    output_det = interpreter.get_output_details()[0]
+    y_pred = []
+    for i in range(X.shape[0]):
+        sample = X[i:i + 1]
+        # quantizing the sample as the application does: round(x / scale) + zero_point
+        if input_det['dtype'] != np.float32:
+            scale, zero_point = input_det['quantization']
+            info = np.iinfo(input_det['dtype'])
+            sample = np.clip(np.round(sample / scale) + zero_point, info.min, info.max)
+        interpreter.set_tensor(input_det['index'], sample.astype(input_det['dtype']))
+        interpreter.invoke()
+        y_pred.append(interpreter.get_tensor(output_det['index'])[0].astype('float32'))
+    return top_k_accuracy_score(np.argmax(y, axis=1), np.array(y_pred), k=k,
+                                labels=np.arange(y.shape[1]))
+
+
+def main():
+    ''' Converts the Keras item's classification model into a full-integer
+        TFLite model (uint8 input and output), which the application
+        detects and uses like the float one.
+
+    '''
+
+    quant_info = {'len_result' : 10,
+                  'path' : '../AppModel/',
+                  'calibration_size' : 1000,
+                  'test_size': 5000
+                  }
+
+    model = keras.models.load_model(f'{quant_info["path"]}GungeonModel.h5')
+    items, item_imgs, floor_imgs, type_floor = loadImages()
+    X_calib, _ = createDataset(quant_info['calibration_size'],
+                               item_imgs,
+                               floor_imgs,
+                               type_floor)
+
+    # converting the Keras model with every operation quantized to 8 bits
+    converter = tf.lite.TFLiteConverter.from_keras_model(model)
+    converter.optimizations = [tf.lite.Optimize.DEFAULT]
+    converter.representative_dataset = lambda: representative_dataset(X_calib)
+    converter.target_spec.supported_ops = [tf.lite.OpsSet.TFLITE_BUILTINS_INT8]
+    converter.inference_input_type = tf.uint8
+    converter.inference_output_type = tf.uint8
+    tflite_model = converter.convert()
+    with open(f"{quant_info['path']}GungeonModel_uint8.tflite", "wb") as out_tflite:
+        out_tflite.write(tflite_model)
+
+    # comparing the accuracy of the quantized model with the float one
+    X_test, y_test = createDataset(quant_info['test_size'],
+                                   item_imgs,
+                                   floor_imgs,
+                                   type_floor)
+    float_model = tf.lite.TFLiteConverter.from_keras_model(model).convert()
+    for name, curr_model in [('Float', float_model), ('Quantized', tflite_model)]:
+        acc = evaluate(curr_model, X_test, y_test, quant_info['len_result'])
+        print(f"{name} model - Accuracy (top {quant_info['len_result']}): {np.round(acc, 5)}")
+
+    
+if __name__ == '__main__':
+    main()